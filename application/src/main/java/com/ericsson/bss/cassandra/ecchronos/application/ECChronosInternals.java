@@ -24,6 +24,7 @@ import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
 import com.ericsson.bss.cassandra.ecchronos.core.*;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetricsImpl;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.RunPolicy;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduleManager;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduleManagerImpl;
@@ -32,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 public class ECChronosInternals implements Closeable
@@ -51,7 +53,7 @@ public class ECChronosInternals implements Closeable
     private final TableReferenceFactory myTableReferenceFactory;
     private final JmxProxyFactory myJmxProxyFactory;
 
-    private final CASLockFactory myLockFactory;
+    private final LockFactory myLockFactory;
 
     public ECChronosInternals(Config configuration, NativeConnectionProvider nativeConnectionProvider,
                               JmxConnectionProvider jmxConnectionProvider, StatementDecorator statementDecorator,
@@ -65,12 +67,8 @@ public class ECChronosInternals implements Closeable
                 .withJmxProxyFactory(myJmxProxyFactory)
                 .build();
 
-        myLockFactory = CASLockFactory.builder()
-                .withNativeConnectionProvider(nativeConnectionProvider)
-                .withHostStates(myHostStatesImpl)
-                .withStatementDecorator(statementDecorator)
-                .withKeyspaceName(configuration.getLockFactory().getCas().getKeyspace())
-                .build();
+        myLockFactory = createLockFactory(configuration.getLockFactory(), nativeConnectionProvider, myHostStatesImpl,
+                statementDecorator, metricRegistry);
 
         Host host = nativeConnectionProvider.getLocalHost();
         Metadata metadata = nativeConnectionProvider.getSession().getCluster().getMetadata();
@@ -102,6 +100,7 @@ public class ECChronosInternals implements Closeable
                 .withLockFactory(myLockFactory)
                 .withRunInterval(configuration.getScheduler().getFrequency().getInterval(TimeUnit.MILLISECONDS),
                         TimeUnit.MILLISECONDS)
+                .withWorkers(configuration.getScheduler().getWorkers())
                 .build();
     }
 
@@ -173,11 +172,50 @@ public class ECChronosInternals implements Closeable
             myTableStorageStatesImpl.close();
         }
 
-        myLockFactory.close();
+        closeLockFactory();
 
         myHostStatesImpl.close();
     }
 
+    private static LockFactory createLockFactory(Config.LockFactoryConfig lockFactoryConfig,
+            NativeConnectionProvider nativeConnectionProvider, HostStates hostStates,
+            StatementDecorator statementDecorator, MetricRegistry metricRegistry)
+    {
+        if (lockFactoryConfig.getType() == Config.LockFactoryType.LEASE)
+        {
+            return LeaseLockFactory.builder()
+                    .withNativeConnectionProvider(nativeConnectionProvider)
+                    .withHostStates(hostStates)
+                    .withStatementDecorator(statementDecorator)
+                    .withKeyspaceName(lockFactoryConfig.getLease().getKeyspace())
+                    .withMetricRegistry(metricRegistry)
+                    .build();
+        }
+
+        return CASLockFactory.builder()
+                .withNativeConnectionProvider(nativeConnectionProvider)
+                .withHostStates(hostStates)
+                .withStatementDecorator(statementDecorator)
+                .withKeyspaceName(lockFactoryConfig.getCas().getKeyspace())
+                .withMetricRegistry(metricRegistry)
+                .build();
+    }
+
+    private void closeLockFactory()
+    {
+        if (myLockFactory instanceof Closeable)
+        {
+            try
+            {
+                ((Closeable) myLockFactory).close();
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Unable to close lock factory", e);
+            }
+        }
+    }
+
     private static class NoOpRepairMetrics implements TableRepairMetrics
     {
 
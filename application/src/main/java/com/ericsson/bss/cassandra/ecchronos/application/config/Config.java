@@ -27,6 +27,7 @@ import com.ericsson.bss.cassandra.ecchronos.connection.JmxConnectionProvider;
 import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
 import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairLockType;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.UnitConverter;
 
 public class Config
 {
@@ -388,6 +389,14 @@ public class Config
 
         private Provider provider = Provider.ECC;
         private String keyspace = "ecchronos";
+        private Interval reconciliation_interval = new Interval(1, TimeUnit.HOURS);
+        private int fetch_size = 5000;
+        private int prefetch_concurrency = 16;
+        private boolean persist_state = true;
+        private File state_directory = new File("./statistics/repair_state");
+        private int cache_max_tables = 1000;
+        private long cache_max_size = UnitConverter.toBytes("100m");
+        private Interval cache_ttl = new Interval(1, TimeUnit.DAYS);
 
         public Provider getProvider()
         {
@@ -408,6 +417,86 @@ public class Config
         {
             this.keyspace = keyspace;
         }
+
+        public Interval getReconciliationInterval()
+        {
+            return reconciliation_interval;
+        }
+
+        public void setReconciliation_interval(Interval reconciliation_interval)
+        {
+            this.reconciliation_interval = reconciliation_interval;
+        }
+
+        public int getFetchSize()
+        {
+            return fetch_size;
+        }
+
+        public void setFetch_size(int fetch_size)
+        {
+            this.fetch_size = fetch_size;
+        }
+
+        public int getPrefetchConcurrency()
+        {
+            return prefetch_concurrency;
+        }
+
+        public void setPrefetch_concurrency(int prefetch_concurrency)
+        {
+            this.prefetch_concurrency = prefetch_concurrency;
+        }
+
+        public boolean isPersistState()
+        {
+            return persist_state;
+        }
+
+        public void setPersist_state(boolean persist_state)
+        {
+            this.persist_state = persist_state;
+        }
+
+        public File getStateDirectory()
+        {
+            return state_directory;
+        }
+
+        public void setState_directory(String state_directory)
+        {
+            this.state_directory = new File(state_directory);
+        }
+
+        public int getCacheMaxTables()
+        {
+            return cache_max_tables;
+        }
+
+        public void setCache_max_tables(int cache_max_tables)
+        {
+            this.cache_max_tables = cache_max_tables;
+        }
+
+        public long getCacheMaxSize()
+        {
+            return cache_max_size;
+        }
+
+        public void setCache_max_size(String cache_max_size)
+        {
+            this.cache_max_size = UnitConverter.toBytes(cache_max_size);
+        }
+
+        public Interval getCacheTtl()
+        {
+            return cache_ttl;
+        }
+
+        public void setCache_ttl(Interval cache_ttl)
+        {
+            this.cache_ttl = cache_ttl;
+        }
     }
 
     public static class Alarm
@@ -473,9 +562,27 @@ public class Config
         }
     }
 
+    public enum LockFactoryType
+    {
+        CAS,
+        LEASE
+    }
+
     public static class LockFactoryConfig
     {
+        private LockFactoryType type = LockFactoryType.CAS;
         private CasLockFactoryConfig cas = new CasLockFactoryConfig();
+        private LeaseLockFactoryConfig lease = new LeaseLockFactoryConfig();
+
+        public LockFactoryType getType()
+        {
+            return type;
+        }
+
+        public void setType(String type)
+        {
+            this.type = LockFactoryType.valueOf(type.toUpperCase(Locale.US));
+        }
 
         public CasLockFactoryConfig getCas()
         {
@@ -486,6 +593,31 @@ public class Config
         {
             this.cas = cas;
         }
+
+        public LeaseLockFactoryConfig getLease()
+        {
+            return lease;
+        }
+
+        public void setLease(LeaseLockFactoryConfig lease)
+        {
+            this.lease = lease;
+        }
+    }
+
+    public static class LeaseLockFactoryConfig
+    {
+        private String keyspace = "ecchronos";
+
+        public String getKeyspace()
+        {
+            return keyspace;
+        }
+
+        public void setKeyspace(String keyspace)
+        {
+            this.keyspace = keyspace;
+        }
     }
 
     public static class CasLockFactoryConfig
@@ -536,6 +668,7 @@ public class Config
     public static class SchedulerConfig
     {
         private Interval frequency = new Interval(30, TimeUnit.SECONDS);
+        private int workers = 1;
 
         public Interval getFrequency()
         {
@@ -546,6 +679,16 @@ public class Config
         {
             this.frequency = frequency;
         }
+
+        public int getWorkers()
+        {
+            return workers;
+        }
+
+        public void setWorkers(int workers)
+        {
+            this.workers = workers;
+        }
     }
 
     public static class RestServerConfig
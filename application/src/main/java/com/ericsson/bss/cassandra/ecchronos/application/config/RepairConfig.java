@@ -26,6 +26,10 @@ public class RepairConfig
             new Config.Interval(10, TimeUnit.DAYS));
     private double unwind_ratio = 0.0d;
     private long size_target = RepairConfiguration.FULL_REPAIR_SIZE;
+    private Config.Interval time_target;
+    private int parallel_groups = 1;
+    private int sessions_per_node = 1;
+    private long coalesce_size_target = RepairConfiguration.NO_COALESCING;
 
     public void setInterval(Config.Interval interval)
     {
@@ -54,6 +58,33 @@ public class RepairConfig
         }
     }
 
+    public void setTime_target(Config.Interval time_target)
+    {
+        this.time_target = time_target;
+    }
+
+    public void setParallel_groups(int parallel_groups)
+    {
+        this.parallel_groups = parallel_groups;
+    }
+
+    public void setSessions_per_node(int sessions_per_node)
+    {
+        this.sessions_per_node = sessions_per_node;
+    }
+
+    public void setCoalesce_size_target(String coalesce_size_target)
+    {
+        if (coalesce_size_target == null)
+        {
+            this.coalesce_size_target = RepairConfiguration.NO_COALESCING;
+        }
+        else
+        {
+            this.coalesce_size_target = UnitConverter.toBytes(coalesce_size_target);
+        }
+    }
+
     public RepairConfiguration asRepairConfiguration()
     {
         return RepairConfiguration.newBuilder()
@@ -65,6 +96,24 @@ public class RepairConfig
                         TimeUnit.MILLISECONDS)
                 .withRepairUnwindRatio(unwind_ratio)
                 .withTargetRepairSizeInBytes(size_target)
+                .withTargetRepairTime(getTargetRepairTimeInMs(), TimeUnit.MILLISECONDS)
+                .withParallelRepairGroups(parallel_groups)
+                .withSessionsPerNode(sessions_per_node)
+                .withCoalesceSizeInBytes(coalesce_size_target)
                 .build();
     }
+
+    private long getTargetRepairTimeInMs()
+    {
+        if (time_target == null)
+        {
+            return RepairConfiguration.NO_TARGET_REPAIR_TIME;
+        }
+
+        long targetRepairTimeInMs = time_target.getInterval(TimeUnit.MILLISECONDS);
+
+        return targetRepairTimeInMs <= 0
+                ? RepairConfiguration.NO_TARGET_REPAIR_TIME
+                : targetRepairTimeInMs;
+    }
 }
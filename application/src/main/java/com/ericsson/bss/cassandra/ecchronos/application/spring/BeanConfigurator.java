@@ -32,6 +32,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.Host;
 import com.datastax.driver.core.Metadata;
 import com.ericsson.bss.cassandra.ecchronos.application.ConfigurationException;
@@ -233,8 +234,8 @@ public class BeanConfigurator
             NodeResolver nodeResolver)
     {
         Host host = nativeConnectionProvider.getLocalHost();
-        Metadata metadata = nativeConnectionProvider.getSession().getCluster().getMetadata();
+        Cluster cluster = nativeConnectionProvider.getSession().getCluster();
 
-        return new ReplicationStateImpl(nodeResolver, metadata, host);
+        return new ReplicationStateImpl(nodeResolver, cluster, host);
     }
 }
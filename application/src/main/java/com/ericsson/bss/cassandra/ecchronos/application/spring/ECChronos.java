@@ -16,6 +16,7 @@ package com.ericsson.bss.cassandra.ecchronos.application.spring;
 
 import java.io.Closeable;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
@@ -34,9 +35,11 @@ import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
 import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
 import com.ericsson.bss.cassandra.ecchronos.core.TimeBasedRunPolicy;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.*;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.FileBasedRepairStateStore;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistory;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistoryProvider;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairStateFactoryImpl;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairStateStore;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicationState;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReferenceFactory;
 import com.ericsson.bss.cassandra.ecchronos.fm.RepairFaultReporter;
@@ -65,11 +68,19 @@ public class ECChronos implements Closeable
 
         Config.GlobalRepairConfig repairConfig = configuration.getRepair();
 
+        Config.RepairHistory repairHistoryConfig = repairConfig.getHistory();
+        RepairStateStore repairStateStore = repairHistoryConfig.isPersistState()
+                ? new FileBasedRepairStateStore(repairHistoryConfig.getStateDirectory())
+                : RepairStateStore.NO_OP;
+
         RepairStateFactoryImpl repairStateFactoryImpl = RepairStateFactoryImpl.builder()
                 .withReplicationState(replicationState)
                 .withHostStates(myECChronosInternals.getHostStates())
                 .withRepairHistoryProvider(repairHistoryProvider)
                 .withTableRepairMetrics(myECChronosInternals.getTableRepairMetrics())
+                .withReconciliationInterval(repairHistoryConfig.getReconciliationInterval()
+                        .getInterval(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS)
+                .withRepairStateStore(repairStateStore)
                 .build();
 
         myTimeBasedRunPolicy = TimeBasedRunPolicy.builder()
@@ -99,6 +110,7 @@ public class ECChronos implements Closeable
                 .withReplicatedTableProvider(myECChronosInternals.getReplicatedTableProvider())
                 .withRepairConfiguration(repairConfigurationProvider::get)
                 .withTableReferenceFactory(myECChronosInternals.getTableReferenceFactory())
+                .withRepairHistoryProvider(repairHistoryProvider)
                 .build();
 
         myOnDemandRepairSchedulerImpl = OnDemandRepairSchedulerImpl.builder()
@@ -19,6 +19,7 @@ import java.util.concurrent.TimeUnit;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.Host;
 import com.datastax.driver.core.Session;
 import com.ericsson.bss.cassandra.ecchronos.application.config.Config;
@@ -35,7 +36,8 @@ public class RepairHistoryBean
     private final RepairHistoryProvider repairHistoryProvider;
 
     public RepairHistoryBean(Config configuration, NativeConnectionProvider nativeConnectionProvider,
-            NodeResolver nodeResolver, StatementDecorator statementDecorator, ReplicationState replicationState)
+            NodeResolver nodeResolver, StatementDecorator statementDecorator, ReplicationState replicationState,
+            MetricRegistry metricRegistry)
     {
         Host host = nativeConnectionProvider.getLocalHost();
         Session session = nativeConnectionProvider.getSession();
@@ -60,6 +62,9 @@ public class RepairHistoryBean
                     .withLookbackTime(repairConfig.getHistoryLookback().getInterval(TimeUnit.MILLISECONDS),
                             TimeUnit.MILLISECONDS)
                     .withKeyspace(repairConfig.getHistory().getKeyspace())
+                    .withFetchSize(repairConfig.getHistory().getFetchSize())
+                    .withPrefetchConcurrency(repairConfig.getHistory().getPrefetchConcurrency())
+                    .withMetricRegistry(metricRegistry)
                     .build();
 
             if (repairConfig.getHistory().getProvider() == Config.RepairHistory.Provider.UPGRADE)
@@ -92,7 +97,22 @@ public class RepairHistoryBean
             Session session,
             NodeResolver nodeResolver, StatementDecorator statementDecorator)
     {
-        return new RepairHistoryProviderImpl(nodeResolver, session, statementDecorator,
-                repairConfig.getHistoryLookback().getInterval(TimeUnit.MILLISECONDS));
+        long lookbackTimeInMs = repairConfig.getHistoryLookback().getInterval(TimeUnit.MILLISECONDS);
+        RepairHistoryProvider repairHistoryProvider = new RepairHistoryProviderImpl(nodeResolver, session,
+                statementDecorator, lookbackTimeInMs);
+
+        Config.RepairHistory historyConfig = repairConfig.getHistory();
+        if (historyConfig.getCacheMaxTables() <= 0)
+        {
+            return repairHistoryProvider;
+        }
+
+        return CachingRepairHistoryProvider.newBuilder()
+                .withRepairHistoryProvider(repairHistoryProvider)
+                .withLookbackTime(lookbackTimeInMs, TimeUnit.MILLISECONDS)
+                .withTimeToLive(historyConfig.getCacheTtl().getInterval(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS)
+                .withMaxTables(historyConfig.getCacheMaxTables())
+                .withMaxSizeInBytes(historyConfig.getCacheMaxSize())
+                .build();
     }
 }
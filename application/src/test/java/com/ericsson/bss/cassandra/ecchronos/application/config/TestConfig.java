@@ -82,6 +82,10 @@ public class TestConfig
                 .withRepairErrorTime(72, TimeUnit.HOURS)
                 .withRepairUnwindRatio(0.5d)
                 .withTargetRepairSizeInBytes(UnitConverter.toBytes("5m"))
+                .withTargetRepairTime(5, TimeUnit.MINUTES)
+                .withParallelRepairGroups(4)
+                .withSessionsPerNode(2)
+                .withCoalesceSizeInBytes(UnitConverter.toBytes("50m"))
                 .build();
 
         Config.GlobalRepairConfig repairConfig = config.getRepair();
@@ -93,19 +97,30 @@ public class TestConfig
         assertThat(repairConfig.getHistoryLookback().getInterval(TimeUnit.DAYS)).isEqualTo(13);
         assertThat(repairConfig.getHistory().getProvider()).isEqualTo(Config.RepairHistory.Provider.CASSANDRA);
         assertThat(repairConfig.getHistory().getKeyspace()).isEqualTo("customkeyspace");
+        assertThat(repairConfig.getHistory().getReconciliationInterval().getInterval(TimeUnit.MINUTES)).isEqualTo(30);
+        assertThat(repairConfig.getHistory().isPersistState()).isFalse();
+        assertThat(repairConfig.getHistory().getStateDirectory()).isEqualTo(new File("./non-default-repair-state"));
+        assertThat(repairConfig.getHistory().getFetchSize()).isEqualTo(100);
+        assertThat(repairConfig.getHistory().getPrefetchConcurrency()).isEqualTo(4);
+        assertThat(repairConfig.getHistory().getCacheMaxTables()).isEqualTo(10);
+        assertThat(repairConfig.getHistory().getCacheMaxSize()).isEqualTo(UnitConverter.toBytes("5m"));
+        assertThat(repairConfig.getHistory().getCacheTtl().getInterval(TimeUnit.HOURS)).isEqualTo(2);
 
         Config.StatisticsConfig statisticsConfig = config.getStatistics();
         assertThat(statisticsConfig.isEnabled()).isFalse();
         assertThat(statisticsConfig.getDirectory()).isEqualTo(new File("./non-default-statistics"));
 
         Config.LockFactoryConfig lockFactoryConfig = config.getLockFactory();
+        assertThat(lockFactoryConfig.getType()).isEqualTo(Config.LockFactoryType.LEASE);
         assertThat(lockFactoryConfig.getCas().getKeyspace()).isEqualTo("ecc");
+        assertThat(lockFactoryConfig.getLease().getKeyspace()).isEqualTo("ecc_lease");
 
         Config.RunPolicyConfig runPolicyConfig = config.getRunPolicy();
         assertThat(runPolicyConfig.getTimeBased().getKeyspace()).isEqualTo("ecc");
 
         Config.SchedulerConfig schedulerConfig = config.getScheduler();
         assertThat(schedulerConfig.getFrequency().getInterval(TimeUnit.SECONDS)).isEqualTo(60);
+        assertThat(schedulerConfig.getWorkers()).isEqualTo(4);
 
         Config.RestServerConfig restServerConfig = config.getRestServer();
         assertThat(restServerConfig.getHost()).isEqualTo("127.0.0.2");
@@ -157,19 +172,30 @@ public class TestConfig
         assertThat(repairConfig.getHistoryLookback().getInterval(TimeUnit.DAYS)).isEqualTo(30);
         assertThat(repairConfig.getHistory().getProvider()).isEqualTo(Config.RepairHistory.Provider.ECC);
         assertThat(repairConfig.getHistory().getKeyspace()).isEqualTo("ecchronos");
+        assertThat(repairConfig.getHistory().getReconciliationInterval().getInterval(TimeUnit.HOURS)).isEqualTo(1);
+        assertThat(repairConfig.getHistory().isPersistState()).isTrue();
+        assertThat(repairConfig.getHistory().getStateDirectory()).isEqualTo(new File("./statistics/repair_state"));
+        assertThat(repairConfig.getHistory().getFetchSize()).isEqualTo(5000);
+        assertThat(repairConfig.getHistory().getPrefetchConcurrency()).isEqualTo(16);
+        assertThat(repairConfig.getHistory().getCacheMaxTables()).isEqualTo(1000);
+        assertThat(repairConfig.getHistory().getCacheMaxSize()).isEqualTo(UnitConverter.toBytes("100m"));
+        assertThat(repairConfig.getHistory().getCacheTtl().getInterval(TimeUnit.DAYS)).isEqualTo(1);
 
         Config.StatisticsConfig statisticsConfig = config.getStatistics();
         assertThat(statisticsConfig.isEnabled()).isTrue();
         assertThat(statisticsConfig.getDirectory()).isEqualTo(new File("./statistics"));
 
         Config.LockFactoryConfig lockFactoryConfig = config.getLockFactory();
+        assertThat(lockFactoryConfig.getType()).isEqualTo(Config.LockFactoryType.CAS);
         assertThat(lockFactoryConfig.getCas().getKeyspace()).isEqualTo("ecchronos");
+        assertThat(lockFactoryConfig.getLease().getKeyspace()).isEqualTo("ecchronos");
 
         Config.RunPolicyConfig runPolicyConfig = config.getRunPolicy();
         assertThat(runPolicyConfig.getTimeBased().getKeyspace()).isEqualTo("ecchronos");
 
         Config.SchedulerConfig schedulerConfig = config.getScheduler();
         assertThat(schedulerConfig.getFrequency().getInterval(TimeUnit.SECONDS)).isEqualTo(30);
+        assertThat(schedulerConfig.getWorkers()).isEqualTo(1);
 
         Config.RestServerConfig restServerConfig = config.getRestServer();
         assertThat(restServerConfig.getHost()).isEqualTo("localhost");
@@ -221,19 +247,30 @@ public class TestConfig
         assertThat(repairConfig.getHistoryLookback().getInterval(TimeUnit.DAYS)).isEqualTo(30);
         assertThat(repairConfig.getHistory().getProvider()).isEqualTo(Config.RepairHistory.Provider.ECC);
         assertThat(repairConfig.getHistory().getKeyspace()).isEqualTo("ecchronos");
+        assertThat(repairConfig.getHistory().getReconciliationInterval().getInterval(TimeUnit.HOURS)).isEqualTo(1);
+        assertThat(repairConfig.getHistory().isPersistState()).isTrue();
+        assertThat(repairConfig.getHistory().getStateDirectory()).isEqualTo(new File("./statistics/repair_state"));
+        assertThat(repairConfig.getHistory().getFetchSize()).isEqualTo(5000);
+        assertThat(repairConfig.getHistory().getPrefetchConcurrency()).isEqualTo(16);
+        assertThat(repairConfig.getHistory().getCacheMaxTables()).isEqualTo(1000);
+        assertThat(repairConfig.getHistory().getCacheMaxSize()).isEqualTo(UnitConverter.toBytes("100m"));
+        assertThat(repairConfig.getHistory().getCacheTtl().getInterval(TimeUnit.DAYS)).isEqualTo(1);
 
         Config.StatisticsConfig statisticsConfig = config.getStatistics();
         assertThat(statisticsConfig.isEnabled()).isTrue();
         assertThat(statisticsConfig.getDirectory()).isEqualTo(new File("./statistics"));
 
         Config.LockFactoryConfig lockFactoryConfig = config.getLockFactory();
+        assertThat(lockFactoryConfig.getType()).isEqualTo(Config.LockFactoryType.CAS);
         assertThat(lockFactoryConfig.getCas().getKeyspace()).isEqualTo("ecchronos");
+        assertThat(lockFactoryConfig.getLease().getKeyspace()).isEqualTo("ecchronos");
 
         Config.RunPolicyConfig runPolicyConfig = config.getRunPolicy();
         assertThat(runPolicyConfig.getTimeBased().getKeyspace()).isEqualTo("ecchronos");
 
         Config.SchedulerConfig schedulerConfig = config.getScheduler();
         assertThat(schedulerConfig.getFrequency().getInterval(TimeUnit.SECONDS)).isEqualTo(30);
+        assertThat(schedulerConfig.getWorkers()).isEqualTo(1);
 
         Config.RestServerConfig restServerConfig = config.getRestServer();
         assertThat(restServerConfig.getHost()).isEqualTo("localhost");
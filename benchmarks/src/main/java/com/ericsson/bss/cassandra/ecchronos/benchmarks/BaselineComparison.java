@@ -0,0 +1,230 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Compares a JMH result file with a baseline result file and prints a report of the differences.
+ * <p>
+ * Both files are expected to be in the JMH JSON format, e.g. produced by {@code -rf json}.
+ * Benchmarks are matched by name and parameters.
+ * A benchmark is reported as a regression if either the score or the normalized allocation rate
+ * (when run with {@code -prof gc}) is worse than the baseline by more than the threshold.
+ * <p>
+ * Usage: {@code BaselineComparison <baseline.json> <result.json> [threshold in percent]}
+ * <p>
+ * The process exits with a non-zero status if any regression is found.
+ */
+public final class BaselineComparison
+{
+    private static final double DEFAULT_THRESHOLD_IN_PERCENT = 10.0d;
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+    private static final String ROW_FORMAT = "%-90s %14s %14s %9s %14s %14s %9s %s%n";
+
+    private BaselineComparison()
+    {
+        // Utility class
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: BaselineComparison <baseline.json> <result.json> [threshold in percent]");
+            System.exit(2);
+        }
+
+        Path baselineFile = Paths.get(args[0]);
+        Path resultFile = Paths.get(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_IN_PERCENT;
+
+        if (!Files.exists(baselineFile))
+        {
+            System.out.printf("No baseline found at %s, copy %s there to use it as baseline%n", baselineFile, resultFile);
+            return;
+        }
+
+        int regressions = compare(readResults(baselineFile), readResults(resultFile), threshold);
+        if (regressions > 0)
+        {
+            System.out.printf("%d benchmark(s) regressed more than %.1f%% compared to the baseline%n", regressions, threshold);
+            System.exit(1);
+        }
+
+        System.out.printf("No benchmark regressed more than %.1f%% compared to the baseline%n", threshold);
+    }
+
+    private static int compare(Map<String, Result> baseline, Map<String, Result> current, double threshold)
+    {
+        System.out.printf(ROW_FORMAT, "Benchmark", "Baseline", "Current", "Change", "Base B/op", "Current B/op", "Change", "");
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet())
+        {
+            Result result = entry.getValue();
+            Result baselineResult = baseline.get(entry.getKey());
+
+            if (baselineResult == null)
+            {
+                System.out.printf(ROW_FORMAT, entry.getKey(), "-", format(result.myScore, result.myUnit), "-",
+                        "-", format(result.myAllocated, "B"), "-", "NEW");
+                continue;
+            }
+
+            double scoreChange = change(baselineResult.myScore, result.myScore);
+            double allocationChange = change(baselineResult.myAllocated, result.myAllocated);
+
+            double scoreRegression = result.isHigherBetter() ? -scoreChange : scoreChange;
+            boolean regressed = scoreRegression > threshold || allocationChange > threshold;
+            if (regressed)
+            {
+                regressions++;
+            }
+
+            System.out.printf(ROW_FORMAT, entry.getKey(),
+                    format(baselineResult.myScore, baselineResult.myUnit), format(result.myScore, result.myUnit),
+                    formatChange(scoreChange),
+                    format(baselineResult.myAllocated, "B"), format(result.myAllocated, "B"),
+                    formatChange(allocationChange),
+                    regressed ? "REGRESSION" : "");
+        }
+
+        for (String removed : baseline.keySet())
+        {
+            if (!current.containsKey(removed))
+            {
+                System.out.printf(ROW_FORMAT, removed, "", "-", "-", "", "-", "-", "MISSING");
+            }
+        }
+
+        return regressions;
+    }
+
+    private static double change(double baseline, double current)
+    {
+        if (Double.isNaN(baseline) || Double.isNaN(current) || baseline == 0.0d)
+        {
+            return Double.NaN;
+        }
+        return (current - baseline) / baseline * 100.0d;
+    }
+
+    private static String format(double value, String unit)
+    {
+        if (Double.isNaN(value))
+        {
+            return "-";
+        }
+        return String.format("%.3f %s", value, unit);
+    }
+
+    private static String formatChange(double change)
+    {
+        if (Double.isNaN(change))
+        {
+            return "-";
+        }
+        return String.format("%+.1f%%", change);
+    }
+
+    private static Map<String, Result> readResults(Path file) throws IOException
+    {
+        Map<String, Result> results = new LinkedHashMap<>();
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            for (JsonElement element : new JsonParser().parse(reader).getAsJsonArray())
+            {
+                JsonObject benchmark = element.getAsJsonObject();
+                JsonObject primaryMetric = benchmark.getAsJsonObject("primaryMetric");
+
+                String key = benchmark.get("benchmark").getAsString()
+                        + parameters(benchmark.getAsJsonObject("params"));
+                String mode = benchmark.get("mode").getAsString();
+                double score = primaryMetric.get("score").getAsDouble();
+                String unit = primaryMetric.get("scoreUnit").getAsString();
+
+                results.put(key, new Result(mode, score, unit, allocated(benchmark.getAsJsonObject("secondaryMetrics"))));
+            }
+        }
+
+        return results;
+    }
+
+    private static String parameters(JsonObject params)
+    {
+        if (params == null)
+        {
+            return "";
+        }
+
+        Map<String, String> sorted = new TreeMap<>();
+        for (Map.Entry<String, JsonElement> param : params.entrySet())
+        {
+            sorted.put(param.getKey(), param.getValue().getAsString());
+        }
+        return sorted.toString();
+    }
+
+    private static double allocated(JsonObject secondaryMetrics)
+    {
+        if (secondaryMetrics != null)
+        {
+            for (Map.Entry<String, JsonElement> metric : secondaryMetrics.entrySet())
+            {
+                // The GC profiler prefixes the metric name with a separator in some versions of JMH
+                if (metric.getKey().endsWith(ALLOCATION_METRIC))
+                {
+                    return metric.getValue().getAsJsonObject().get("score").getAsDouble();
+                }
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static final class Result
+    {
+        private final String myMode;
+        private final double myScore;
+        private final String myUnit;
+        private final double myAllocated;
+
+        Result(String mode, double score, String unit, double allocated)
+        {
+            myMode = mode;
+            myScore = score;
+            myUnit = unit;
+            myAllocated = allocated;
+        }
+
+        boolean isHigherBetter()
+        {
+            return "thrpt".equals(myMode);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.UUID;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A deterministic in-memory cluster used to generate benchmark input.
+ * <p>
+ * The token ring is split into equally sized virtual nodes and each virtual node is replicated to
+ * the local node and a pseudo-randomly selected set of other nodes, producing a realistic number of distinct replica sets.
+ */
+public final class BenchmarkCluster
+{
+    private static final String DATACENTER = "dc1";
+
+    private final List<Node> myNodes;
+    private final Map<LongTokenRange, ImmutableSet<Node>> myTokenRangeToReplicas;
+
+    private BenchmarkCluster(List<Node> nodes, Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicas)
+    {
+        myNodes = nodes;
+        myTokenRangeToReplicas = tokenRangeToReplicas;
+    }
+
+    /**
+     * Create a cluster where the local node replicates the provided amount of virtual nodes.
+     *
+     * @param nodeCount The number of nodes in the cluster.
+     * @param vnodeCount The number of virtual nodes replicated by the local node.
+     * @param replicationFactor The number of replicas for each virtual node.
+     * @param seed The seed used when selecting replicas.
+     * @return The cluster
+     */
+    public static BenchmarkCluster create(int nodeCount, int vnodeCount, int replicationFactor, long seed)
+    {
+        List<Node> nodes = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++)
+        {
+            nodes.add(new BenchmarkNode(i));
+        }
+
+        Random random = new Random(seed);
+        Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicas = new LinkedHashMap<>();
+
+        for (LongTokenRange tokenRange : generateTokenRanges(vnodeCount))
+        {
+            List<Node> remoteNodes = new ArrayList<>(nodes.subList(1, nodeCount));
+            Collections.shuffle(remoteNodes, random);
+
+            ImmutableSet.Builder<Node> replicas = ImmutableSet.builder();
+            replicas.add(nodes.get(0)); // The local node
+            replicas.addAll(remoteNodes.subList(0, replicationFactor - 1));
+
+            tokenRangeToReplicas.put(tokenRange, replicas.build());
+        }
+
+        return new BenchmarkCluster(nodes, tokenRangeToReplicas);
+    }
+
+    /**
+     * Split the full token ring into equally sized ranges.
+     *
+     * @param count The number of ranges to generate.
+     * @return The token ranges in token order.
+     */
+    public static List<LongTokenRange> generateTokenRanges(int count)
+    {
+        BigInteger rangeSize = LongTokenRange.FULL_RANGE.divide(BigInteger.valueOf(count));
+        List<LongTokenRange> tokenRanges = new ArrayList<>(count);
+
+        long start = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++)
+        {
+            long end = i == count - 1
+                    ? Long.MIN_VALUE
+                    : BigInteger.valueOf(start).add(rangeSize).longValueExact();
+            tokenRanges.add(new LongTokenRange(start, end));
+            start = end;
+        }
+
+        return tokenRanges;
+    }
+
+    public List<Node> getNodes()
+    {
+        return myNodes;
+    }
+
+    public Map<LongTokenRange, ImmutableSet<Node>> getTokenRangeToReplicas()
+    {
+        return myTokenRangeToReplicas;
+    }
+
+    /**
+     * Create a number of table references in a single keyspace.
+     *
+     * @param count The number of tables.
+     * @return The table references.
+     */
+    public static List<TableReference> createTables(int count)
+    {
+        List<TableReference> tables = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            tables.add(new BenchmarkTableReference("ks", "tb" + i));
+        }
+        return tables;
+    }
+
+    private static final class BenchmarkNode implements Node
+    {
+        private final UUID myId;
+        private final InetAddress myAddress;
+
+        BenchmarkNode(int index)
+        {
+            myId = new UUID(0, index);
+            try
+            {
+                myAddress = InetAddress.getByAddress(new byte[] { 127, 0, (byte) (index >> 8), (byte) index });
+            }
+            catch (UnknownHostException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public UUID getId()
+        {
+            return myId;
+        }
+
+        @Override
+        public InetAddress getPublicAddress()
+        {
+            return myAddress;
+        }
+
+        @Override
+        public String getDatacenter()
+        {
+            return DATACENTER;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            BenchmarkNode that = (BenchmarkNode) o;
+            return myId.equals(that.myId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return myId.hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return myAddress.getHostAddress();
+        }
+    }
+
+    private static final class BenchmarkTableReference implements TableReference
+    {
+        private final UUID myId = UUID.randomUUID();
+        private final String myKeyspace;
+        private final String myTable;
+
+        BenchmarkTableReference(String keyspace, String table)
+        {
+            myKeyspace = keyspace;
+            myTable = table;
+        }
+
+        @Override
+        public UUID getId()
+        {
+            return myId;
+        }
+
+        @Override
+        public String getTable()
+        {
+            return myTable;
+        }
+
+        @Override
+        public String getKeyspace()
+        {
+            return myKeyspace;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            BenchmarkTableReference that = (BenchmarkTableReference) o;
+            return myId.equals(that.myId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(myId);
+        }
+
+        @Override
+        public String toString()
+        {
+            return myKeyspace + "." + myTable;
+        }
+    }
+}
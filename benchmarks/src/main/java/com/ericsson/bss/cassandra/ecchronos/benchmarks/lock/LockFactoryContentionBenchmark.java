@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks.lock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Session;
+import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
+import com.ericsson.bss.cassandra.ecchronos.core.CASLockFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.HostStates;
+import com.ericsson.bss.cassandra.ecchronos.core.LeaseLockFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+
+/**
+ * Compares the lock/release latency of the CAS and lease lock factories when many locks are taken concurrently.
+ * <p>
+ * Each thread locks its own resources so all locks succeed,
+ * the contention measured is the load the lock operations put on the Cassandra coordinator and replicas.
+ * <p>
+ * Requires a running Cassandra, such as the cassandra-test-image, with the ecChronos keyspace and tables created.
+ * The connection is configured using the system properties {@code benchmark.cassandra.host},
+ * {@code benchmark.cassandra.port}, {@code benchmark.cassandra.username} and {@code benchmark.cassandra.password}.
+ * As it requires Cassandra this benchmark is not part of the default benchmark run.
+ * Example: mvn verify -P benchmark -pl benchmarks -am -Dbenchmark.include=LockFactoryContention
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+@Fork(1)
+public class LockFactoryContentionBenchmark
+{
+    private static final String DATA_CENTER = "datacenter1";
+
+    @Param({ "cas", "lease" })
+    private String lockFactory;
+
+    @Param({ "1", "3" })
+    private int resourcesPerLock;
+
+    private final AtomicInteger myThreadCounter = new AtomicInteger();
+
+    private Cluster myCluster;
+    private LockFactory myLockFactory;
+
+    @Setup
+    public void setup()
+    {
+        myCluster = Cluster.builder()
+                .addContactPoint(System.getProperty("benchmark.cassandra.host", "localhost"))
+                .withPort(Integer.getInteger("benchmark.cassandra.port", 9042))
+                .withCredentials(System.getProperty("benchmark.cassandra.username", "eccuser"),
+                        System.getProperty("benchmark.cassandra.password", "eccpassword"))
+                .build();
+
+        BenchmarkConnectionProvider connectionProvider = new BenchmarkConnectionProvider(myCluster.connect());
+
+        if ("lease".equals(lockFactory))
+        {
+            myLockFactory = LeaseLockFactory.builder()
+                    .withNativeConnectionProvider(connectionProvider)
+                    .withHostStates(new AllHostsUp())
+                    .withStatementDecorator(s -> s)
+                    .build();
+        }
+        else
+        {
+            myLockFactory = CASLockFactory.builder()
+                    .withNativeConnectionProvider(connectionProvider)
+                    .withHostStates(new AllHostsUp())
+                    .withStatementDecorator(s -> s)
+                    .build();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        ((Closeable) myLockFactory).close();
+        myCluster.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadResources
+    {
+        private List<LockFactory.Resource> myResources;
+
+        @Setup
+        public void setup(LockFactoryContentionBenchmark benchmark)
+        {
+            int thread = benchmark.myThreadCounter.getAndIncrement();
+
+            myResources = new ArrayList<>(benchmark.resourcesPerLock);
+            for (int i = 0; i < benchmark.resourcesPerLock; i++)
+            {
+                myResources.add(new LockFactory.Resource(DATA_CENTER, String.format("Benchmark-%s-%d-%d", benchmark.lockFactory, thread, i)));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean lockAndRelease(ThreadResources threadResources)
+    {
+        Map<String, String> metadata = Collections.emptyMap();
+
+        try (LockFactory.DistributedLock lock = myLockFactory.tryLock(threadResources.myResources, 1, metadata))
+        {
+            return lock != null;
+        }
+        catch (LockException e)
+        {
+            return false;
+        }
+    }
+
+    private static final class BenchmarkConnectionProvider implements NativeConnectionProvider
+    {
+        private final Session mySession;
+        private final Host myLocalHost;
+
+        BenchmarkConnectionProvider(Session session)
+        {
+            mySession = session;
+            myLocalHost = session.getCluster().getMetadata().getAllHosts().iterator().next();
+        }
+
+        @Override
+        public Session getSession()
+        {
+            return mySession;
+        }
+
+        @Override
+        public Host getLocalHost()
+        {
+            return myLocalHost;
+        }
+
+        @Override
+        public boolean getRemoteRouting()
+        {
+            return false;
+        }
+    }
+
+    private static final class AllHostsUp implements HostStates
+    {
+        @Override
+        public boolean isUp(InetAddress address)
+        {
+            return true;
+        }
+
+        @Override
+        public boolean isUp(Host host)
+        {
+            return true;
+        }
+
+        @Override
+        public boolean isUp(Node node)
+        {
+            return true;
+        }
+    }
+}
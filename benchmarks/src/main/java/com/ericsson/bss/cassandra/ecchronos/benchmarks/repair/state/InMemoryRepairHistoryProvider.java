@@ -0,0 +1,64 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks.repair.state;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairEntry;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistoryProvider;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+
+/**
+ * A repair history provider keeping all entries in memory, newest first, in the same way they are read from
+ * {@code system_distributed.repair_history}.
+ */
+public class InMemoryRepairHistoryProvider implements RepairHistoryProvider
+{
+    private static final Comparator<RepairEntry> NEWEST_FIRST = Comparator.comparingLong(RepairEntry::getStartedAt).reversed();
+
+    private final Map<TableReference, List<RepairEntry>> myRepairHistory = new HashMap<>();
+
+    public void add(TableReference tableReference, List<RepairEntry> repairEntries)
+    {
+        List<RepairEntry> history = myRepairHistory.computeIfAbsent(tableReference, t -> new ArrayList<>());
+        history.addAll(repairEntries);
+        history.sort(NEWEST_FIRST);
+    }
+
+    @Override
+    public Iterator<RepairEntry> iterate(TableReference tableReference, long to, Predicate<RepairEntry> predicate)
+    {
+        return iterate(tableReference, to, 0L, predicate);
+    }
+
+    @Override
+    public Iterator<RepairEntry> iterate(TableReference tableReference, long to, long from, Predicate<RepairEntry> predicate)
+    {
+        List<RepairEntry> history = myRepairHistory.getOrDefault(tableReference, Collections.emptyList());
+
+        return Iterators.filter(history.iterator(),
+                repairEntry -> repairEntry.getStartedAt() >= from
+                        && repairEntry.getStartedAt() <= to
+                        && predicate.apply(repairEntry));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks.repair.state;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ericsson.bss.cassandra.ecchronos.benchmarks.BenchmarkCluster;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.NormalizedBaseRange;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.NormalizedRange;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TokenSubRangeUtil;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Benchmarks of the {@link NormalizedRange} operations used when summarizing sub-range repair history.
+ * <p>
+ * The base range is the last virtual node of the ring, which wraps around, so the normalization is exercised as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalizedRangeBenchmark
+{
+    @Param({ "100" })
+    private int subRanges;
+
+    private NormalizedBaseRange myBaseRange;
+    private NormalizedRange myFullRange;
+    private List<VnodeRepairState> mySubStates;
+    private List<NormalizedRange> myNormalizedRanges;
+    private List<NormalizedRange> myShuffledRanges;
+
+    @Setup
+    public void setup()
+    {
+        List<LongTokenRange> vnodes = BenchmarkCluster.generateTokenRanges(256);
+        LongTokenRange vnode = vnodes.get(vnodes.size() - 1);
+        VnodeRepairState baseState = new VnodeRepairState(vnode, ImmutableSet.of(), VnodeRepairState.UNREPAIRED);
+
+        myBaseRange = new NormalizedBaseRange(baseState);
+        myFullRange = myBaseRange.transform(baseState);
+
+        BigInteger tokensPerSubRange = vnode.rangeSize().divide(BigInteger.valueOf(subRanges));
+        Random random = new Random(1L);
+        long now = System.currentTimeMillis();
+
+        mySubStates = new ArrayList<>(subRanges);
+        myNormalizedRanges = new ArrayList<>(subRanges);
+        for (LongTokenRange subRange : new TokenSubRangeUtil(vnode).generateSubRanges(tokensPerSubRange))
+        {
+            long finishedAt = now - (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(7));
+            VnodeRepairState subState = new VnodeRepairState(subRange, ImmutableSet.of(), finishedAt, finishedAt);
+            mySubStates.add(subState);
+            myNormalizedRanges.add(myBaseRange.transform(subState));
+        }
+
+        myShuffledRanges = new ArrayList<>(myNormalizedRanges);
+        Collections.shuffle(myShuffledRanges, random);
+    }
+
+    @Benchmark
+    public void transformToNormalized(Blackhole blackhole)
+    {
+        for (VnodeRepairState subState : mySubStates)
+        {
+            blackhole.consume(myBaseRange.transform(subState));
+        }
+    }
+
+    @Benchmark
+    public void transformFromNormalized(Blackhole blackhole)
+    {
+        for (NormalizedRange range : myNormalizedRanges)
+        {
+            blackhole.consume(myBaseRange.transform(range));
+        }
+    }
+
+    @Benchmark
+    public List<NormalizedRange> sort()
+    {
+        List<NormalizedRange> sorted = new ArrayList<>(myShuffledRanges);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    @Benchmark
+    public NormalizedRange combine()
+    {
+        NormalizedRange combined = myNormalizedRanges.get(0);
+        for (int i = 1; i < myNormalizedRanges.size(); i++)
+        {
+            combined = combined.combine(myNormalizedRanges.get(i));
+        }
+        return combined;
+    }
+
+    @Benchmark
+    public void splitEnd(Blackhole blackhole)
+    {
+        for (int i = 0; i < myNormalizedRanges.size() - 1; i++)
+        {
+            NormalizedRange next = myNormalizedRanges.get(i + 1);
+            NormalizedRange overlapping = myNormalizedRanges.get(i).mutateEnd(next.end());
+            blackhole.consume(overlapping.splitEnd(next));
+        }
+    }
+
+    @Benchmark
+    public void between(Blackhole blackhole)
+    {
+        for (int i = 0; i < myNormalizedRanges.size() - 2; i++)
+        {
+            NormalizedRange current = myNormalizedRanges.get(i);
+            blackhole.consume(current.between(myNormalizedRanges.get(i + 2), current.getStartedAt(), current.getFinishedAt()));
+        }
+    }
+
+    @Benchmark
+    public void isCovering(Blackhole blackhole)
+    {
+        for (NormalizedRange range : myNormalizedRanges)
+        {
+            blackhole.consume(myFullRange.isCovering(range));
+        }
+    }
+}
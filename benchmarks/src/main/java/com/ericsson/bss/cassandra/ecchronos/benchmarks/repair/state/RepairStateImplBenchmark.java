@@ -0,0 +1,221 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks.repair.state;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datastax.driver.core.Host;
+import com.ericsson.bss.cassandra.ecchronos.benchmarks.BenchmarkCluster;
+import com.ericsson.bss.cassandra.ecchronos.core.HostStates;
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairConfiguration;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairEntry;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairStateImpl;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicationState;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairGroupFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairStateFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairStateFactoryImpl;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Benchmarks of calculating the repair state of all tables on a node from an in-memory repair history.
+ * <p>
+ * Each table has one successful repair entry per virtual node, spread over a time period longer than the repair
+ * interval so that some virtual nodes are always due for repair and {@link RepairState#update()} recalculates the state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RepairStateImplBenchmark
+{
+    private static final long REPAIR_INTERVAL_IN_MS = TimeUnit.DAYS.toMillis(7);
+    private static final long HISTORY_TIME_IN_MS = TimeUnit.DAYS.toMillis(8);
+    private static final long SESSION_TIME_IN_MS = TimeUnit.MINUTES.toMillis(5);
+
+    @Param({ "1000" })
+    private int tables;
+
+    @Param({ "256" })
+    private int vnodes;
+
+    @Param({ "3" })
+    private int replicationFactor;
+
+    private final RepairConfiguration myRepairConfiguration = RepairConfiguration.newBuilder()
+            .withRepairInterval(REPAIR_INTERVAL_IN_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+    private List<TableReference> myTables;
+    private VnodeRepairStateFactory myVnodeRepairStateFactory;
+    private List<RepairState> myRepairStates;
+
+    @Setup
+    public void setup()
+    {
+        BenchmarkCluster cluster = BenchmarkCluster.create(12, vnodes, replicationFactor, 1L);
+        Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicas = cluster.getTokenRangeToReplicas();
+        InMemoryRepairHistoryProvider repairHistoryProvider = new InMemoryRepairHistoryProvider();
+        Random random = new Random(1L);
+        long now = System.currentTimeMillis();
+
+        myTables = BenchmarkCluster.createTables(tables);
+        for (TableReference tableReference : myTables)
+        {
+            List<RepairEntry> repairEntries = new ArrayList<>(tokenRangeToReplicas.size());
+            for (Map.Entry<LongTokenRange, ImmutableSet<Node>> entry : tokenRangeToReplicas.entrySet())
+            {
+                long startedAt = now - SESSION_TIME_IN_MS - (long) (random.nextDouble() * HISTORY_TIME_IN_MS);
+                repairEntries.add(new RepairEntry(entry.getKey(), startedAt, startedAt + SESSION_TIME_IN_MS, entry.getValue(), "SUCCESS"));
+            }
+            repairHistoryProvider.add(tableReference, repairEntries);
+        }
+
+        myVnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(new StaticReplicationState(tokenRangeToReplicas),
+                repairHistoryProvider, false);
+        myRepairStates = createRepairStates();
+    }
+
+    /**
+     * The initial calculation of the repair state, performed on startup, which reads the full history.
+     */
+    @Benchmark
+    public List<RepairState> createAll()
+    {
+        return createRepairStates();
+    }
+
+    /**
+     * Updating the repair state of all tables, performed whenever the tables are checked by the scheduler.
+     */
+    @Benchmark
+    public List<RepairState> updateAll()
+    {
+        for (RepairState repairState : myRepairStates)
+        {
+            repairState.update();
+        }
+        return myRepairStates;
+    }
+
+    private List<RepairState> createRepairStates()
+    {
+        List<RepairState> repairStates = new ArrayList<>(myTables.size());
+        for (TableReference tableReference : myTables)
+        {
+            repairStates.add(new RepairStateImpl(tableReference, myRepairConfiguration, myVnodeRepairStateFactory,
+                    AllUpHostStates.INSTANCE, NoopTableRepairMetrics.INSTANCE, VnodeRepairGroupFactory.INSTANCE,
+                    repairStateSnapshot -> {}));
+        }
+        return repairStates;
+    }
+
+    private static final class StaticReplicationState implements ReplicationState
+    {
+        private final Map<LongTokenRange, ImmutableSet<Node>> myTokenRangeToReplicas;
+
+        StaticReplicationState(Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicas)
+        {
+            myTokenRangeToReplicas = tokenRangeToReplicas;
+        }
+
+        @Override
+        public ImmutableSet<Node> getNodes(TableReference tableReference, LongTokenRange tokenRange)
+        {
+            return myTokenRangeToReplicas.get(tokenRange);
+        }
+
+        @Override
+        public Map<LongTokenRange, ImmutableSet<Node>> getTokenRangeToReplicas(TableReference tableReference)
+        {
+            return myTokenRangeToReplicas;
+        }
+    }
+
+    private enum AllUpHostStates implements HostStates
+    {
+        INSTANCE;
+
+        @Override
+        public boolean isUp(InetAddress address)
+        {
+            return true;
+        }
+
+        @Override
+        public boolean isUp(Host host)
+        {
+            return true;
+        }
+
+        @Override
+        public boolean isUp(Node node)
+        {
+            return true;
+        }
+    }
+
+    private enum NoopTableRepairMetrics implements TableRepairMetrics
+    {
+        INSTANCE;
+
+        @Override
+        public void repairState(TableReference tableReference, int repairedRanges, int notRepairedRanges)
+        {
+            // NOOP
+        }
+
+        @Override
+        public void lastRepairedAt(TableReference tableReference, long lastRepairedAt)
+        {
+            // NOOP
+        }
+
+        @Override
+        public void remainingRepairTime(TableReference tableReference, long remainingRepairTime)
+        {
+            // NOOP
+        }
+
+        @Override
+        public void repairTiming(TableReference tableReference, long timeTaken, TimeUnit timeUnit, boolean successful)
+        {
+            // NOOP
+        }
+    }
+}
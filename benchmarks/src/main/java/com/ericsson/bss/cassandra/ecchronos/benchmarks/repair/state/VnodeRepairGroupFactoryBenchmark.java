@@ -0,0 +1,88 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks.repair.state;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.bss.cassandra.ecchronos.benchmarks.BenchmarkCluster;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicaRepairGroup;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairGroupFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Benchmarks of grouping the repairable virtual nodes of a table by their replicas.
+ * <p>
+ * The grouping is expected to scale linearly with the number of virtual nodes,
+ * independent of the number of distinct replica sets which grows with the number of nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VnodeRepairGroupFactoryBenchmark
+{
+    @Param({ "256", "1024", "4096" })
+    private int vnodes;
+
+    @Param({ "3" })
+    private int replicationFactor;
+
+    @Param({ "12", "96" })
+    private int nodes;
+
+    private List<VnodeRepairState> myVnodeRepairStates;
+
+    @Setup
+    public void setup()
+    {
+        BenchmarkCluster cluster = BenchmarkCluster.create(nodes, vnodes, replicationFactor, 1L);
+        Random random = new Random(1L);
+        long now = System.currentTimeMillis();
+
+        myVnodeRepairStates = new ArrayList<>(vnodes);
+        for (Map.Entry<LongTokenRange, ImmutableSet<Node>> entry : cluster.getTokenRangeToReplicas().entrySet())
+        {
+            long repairedAt = now - (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(7));
+            myVnodeRepairStates.add(new VnodeRepairState(entry.getKey(), entry.getValue(), repairedAt));
+        }
+    }
+
+    @Benchmark
+    public List<ReplicaRepairGroup> generateReplicaRepairGroups()
+    {
+        return VnodeRepairGroupFactory.INSTANCE.generateReplicaRepairGroups(myVnodeRepairStates);
+    }
+}
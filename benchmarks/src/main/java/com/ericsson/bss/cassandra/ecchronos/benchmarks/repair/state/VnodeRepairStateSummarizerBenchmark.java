@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks.repair.state;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.bss.cassandra.ecchronos.benchmarks.BenchmarkCluster;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairStateSummarizer;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Benchmarks of summarizing sub-range repair history into the virtual nodes of a table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VnodeRepairStateSummarizerBenchmark
+{
+    private static final long SESSION_TIME_IN_MS = TimeUnit.MINUTES.toMillis(5);
+
+    @Param({ "256" })
+    private int vnodes;
+
+    @Param({ "10", "100", "1000" })
+    private int partialsPerVnode;
+
+    private List<VnodeRepairState> myBaseVnodes;
+    private List<VnodeRepairState> myPartialVnodes;
+
+    @Setup
+    public void setup()
+    {
+        BenchmarkCluster cluster = BenchmarkCluster.create(12, vnodes, 3, 1L);
+        Random random = new Random(1L);
+        long now = System.currentTimeMillis();
+
+        myBaseVnodes = new ArrayList<>(vnodes);
+        myPartialVnodes = new ArrayList<>(vnodes * partialsPerVnode);
+
+        for (Map.Entry<LongTokenRange, ImmutableSet<Node>> entry : cluster.getTokenRangeToReplicas().entrySet())
+        {
+            LongTokenRange vnode = entry.getKey();
+            ImmutableSet<Node> replicas = entry.getValue();
+            myBaseVnodes.add(new VnodeRepairState(vnode, replicas, VnodeRepairState.UNREPAIRED));
+
+            long vnodeSize = vnode.rangeSize().longValueExact();
+            for (int i = 0; i < partialsPerVnode; i++)
+            {
+                long first = (long) (random.nextDouble() * vnodeSize);
+                long second = (long) (random.nextDouble() * vnodeSize);
+                if (first == second)
+                {
+                    continue;
+                }
+                LongTokenRange subRange = new LongTokenRange(vnode.start + Math.min(first, second), vnode.start + Math.max(first, second));
+
+                long finishedAt = now - (long) (random.nextDouble() * TimeUnit.DAYS.toMillis(7));
+                myPartialVnodes.add(new VnodeRepairState(subRange, replicas, finishedAt - SESSION_TIME_IN_MS, finishedAt));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<VnodeRepairState> summarizePartialVnodes()
+    {
+        return VnodeRepairStateSummarizer.summarizePartialVnodes(myBaseVnodes, myPartialVnodes);
+    }
+}
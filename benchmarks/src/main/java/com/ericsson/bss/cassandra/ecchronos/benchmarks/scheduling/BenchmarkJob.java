@@ -0,0 +1,72 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks.scheduling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledJob;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledTask;
+
+/**
+ * A job without tasks which has been waiting a configurable time to run.
+ */
+final class BenchmarkJob extends ScheduledJob
+{
+    private static final long RUN_INTERVAL_IN_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long MAX_WAIT_IN_MS = TimeUnit.DAYS.toMillis(2);
+
+    BenchmarkJob(Priority priority, long waitedInMs)
+    {
+        super(new ConfigurationBuilder()
+                .withPriority(priority)
+                .withRunInterval(RUN_INTERVAL_IN_MS, TimeUnit.MILLISECONDS)
+                .build());
+        myLastSuccessfulRun = System.currentTimeMillis() - RUN_INTERVAL_IN_MS - waitedInMs;
+    }
+
+    @Override
+    public Iterator<ScheduledTask> iterator()
+    {
+        return Collections.emptyIterator();
+    }
+
+    /**
+     * Create jobs with random priorities where roughly one in five is not yet runnable.
+     *
+     * @param count The number of jobs to create.
+     * @param seed The seed for the priorities and waiting times.
+     * @return The jobs.
+     */
+    static List<ScheduledJob> createJobs(int count, long seed)
+    {
+        Random random = new Random(seed);
+        Priority[] priorities = Priority.values();
+        List<ScheduledJob> jobs = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++)
+        {
+            Priority priority = priorities[random.nextInt(priorities.length)];
+            long waitedInMs = (long) (random.nextDouble() * MAX_WAIT_IN_MS) - MAX_WAIT_IN_MS / 5;
+            jobs.add(new BenchmarkJob(priority, waitedInMs));
+        }
+
+        return jobs;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks.scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.DefaultJobComparator;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledJob;
+
+/**
+ * Benchmarks of the {@link DefaultJobComparator}, both for single comparisons and for sorting a full queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultJobComparatorBenchmark
+{
+    @Param({ "100", "10000" })
+    private int jobs;
+
+    private final DefaultJobComparator myComparator = new DefaultJobComparator();
+
+    private List<ScheduledJob> myJobs;
+
+    @Setup
+    public void setup()
+    {
+        myJobs = BenchmarkJob.createJobs(jobs, 1L);
+    }
+
+    @Benchmark
+    public int compareAdjacent()
+    {
+        int result = 0;
+        for (int i = 1; i < myJobs.size(); i++)
+        {
+            result += myComparator.compare(myJobs.get(i - 1), myJobs.get(i));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<ScheduledJob> sort()
+    {
+        List<ScheduledJob> sorted = new ArrayList<>(myJobs);
+        sorted.sort(myComparator);
+        return sorted;
+    }
+}
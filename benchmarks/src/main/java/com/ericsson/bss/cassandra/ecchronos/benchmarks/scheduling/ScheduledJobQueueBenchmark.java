@@ -0,0 +1,93 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks.scheduling;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.DefaultJobComparator;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledJob;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledJobQueue;
+
+/**
+ * Benchmarks of the {@link ScheduledJobQueue} operations performed by the schedule manager on each run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScheduledJobQueueBenchmark
+{
+    @Param({ "10000" })
+    private int jobs;
+
+    private ScheduledJobQueue myQueue;
+    private List<ScheduledJob> myJobs;
+    private int myNextJob;
+
+    @Setup
+    public void setup()
+    {
+        myJobs = BenchmarkJob.createJobs(jobs, 1L);
+        myQueue = new ScheduledJobQueue(new DefaultJobComparator());
+        myQueue.addAll(myJobs);
+        myNextJob = 0;
+    }
+
+    @Benchmark
+    public void iterateAll(Blackhole blackhole)
+    {
+        for (ScheduledJob job : myQueue)
+        {
+            blackhole.consume(job);
+        }
+    }
+
+    @Benchmark
+    public ScheduledJob iterateFirst()
+    {
+        Iterator<ScheduledJob> iterator = myQueue.iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Benchmark
+    public long nextChangeTime()
+    {
+        return myQueue.getNextChangeTime(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public void update()
+    {
+        myQueue.update(myJobs.get(myNextJob));
+        myNextJob = (myNextJob + 1) % myJobs.size();
+    }
+}
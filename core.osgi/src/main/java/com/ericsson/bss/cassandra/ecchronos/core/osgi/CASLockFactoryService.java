@@ -31,7 +31,9 @@ import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.Optional;
 
 @Component(service = LockFactory.class)
 @Designate(ocd = CASLockFactoryService.Configuration.class)
@@ -73,6 +75,18 @@ public class CASLockFactoryService implements LockFactory
         return myDelegateLockFactory.tryLock(dataCenter, resource, priority, metadata);
     }
 
+    @Override
+    public DistributedLock tryLock(Collection<Resource> resources, int priority, Map<String, String> metadata) throws LockException
+    {
+        return myDelegateLockFactory.tryLock(resources, priority, metadata);
+    }
+
+    @Override
+    public Optional<LockException> getCachedFailure(String dataCenter, String resource)
+    {
+        return myDelegateLockFactory.getCachedFailure(dataCenter, resource);
+    }
+
     @Override
     public Map<String, String> getLockMetadata(String dataCenter, String resource)
     {
@@ -20,6 +20,7 @@ import com.ericsson.bss.cassandra.ecchronos.core.repair.DefaultRepairConfigurati
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairConfiguration;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairOptions;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairScheduler;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistoryProvider;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReferenceFactory;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.UnitConverter;
 import org.osgi.service.component.annotations.Activate;
@@ -59,6 +60,9 @@ public class DefaultRepairConfigurationProviderComponent
     @Reference(service = TableReferenceFactory.class, cardinality = ReferenceCardinality.MANDATORY, policy = ReferencePolicy.STATIC)
     private volatile TableReferenceFactory myTableReferenceFactory;
 
+    @Reference(service = RepairHistoryProvider.class, cardinality = ReferenceCardinality.MANDATORY, policy = ReferencePolicy.STATIC)
+    private volatile RepairHistoryProvider myRepairHistoryProvider;
+
     private volatile DefaultRepairConfigurationProvider myDelegateRepairConfigurationProvider;
 
     @Activate
@@ -88,6 +92,7 @@ public class DefaultRepairConfigurationProviderComponent
                     .withCluster(myNativeConnectionProvider.getSession().getCluster())
                     .withDefaultRepairConfiguration(repairConfiguration)
                     .withTableReferenceFactory(myTableReferenceFactory)
+                    .withRepairHistoryProvider(myRepairHistoryProvider)
                     .build();
         }
     }
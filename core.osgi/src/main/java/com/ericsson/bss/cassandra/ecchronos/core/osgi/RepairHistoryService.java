@@ -14,6 +14,9 @@
  */
 package com.ericsson.bss.cassandra.ecchronos.core.osgi;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Optional;
 import java.util.Set;
@@ -48,6 +51,16 @@ public class RepairHistoryService implements RepairHistory, RepairHistoryProvide
 
     private static final long DEFAULT_REPAIR_HISTORY_LOOKBACK_SECONDS = 30L * 24L * 60L * 60L;
 
+    private static final int DEFAULT_FETCH_SIZE = 5000;
+
+    private static final int DEFAULT_PREFETCH_CONCURRENCY = 16;
+
+    private static final int DEFAULT_CACHE_MAX_TABLES = 1000;
+
+    private static final long DEFAULT_CACHE_MAX_SIZE_IN_BYTES = 100L * 1024L * 1024L;
+
+    private static final long DEFAULT_CACHE_TTL_SECONDS = 24L * 60L * 60L;
+
     public enum Provider
     {
         CASSANDRA,
@@ -88,8 +101,7 @@ public class RepairHistoryService implements RepairHistory, RepairHistoryProvide
 
         if (configuration.provider() == Provider.CASSANDRA)
         {
-            delegateRepairHistoryProvider = new RepairHistoryProviderImpl(nodeResolver,
-                    session, statementDecorator,
+            delegateRepairHistoryProvider = createCassandraHistoryProvider(configuration, session,
                     lookbackTimeInMillis);
             delegateRepairHistory = RepairHistory.NO_OP;
         }
@@ -101,11 +113,13 @@ public class RepairHistoryService implements RepairHistory, RepairHistoryProvide
                     .withSession(nativeConnectionProvider.getSession())
                     .withStatementDecorator(statementDecorator)
                     .withLookbackTime(lookbackTimeInMillis, TimeUnit.MILLISECONDS)
+                    .withFetchSize(configuration.fetchSize())
+                    .withPrefetchConcurrency(configuration.prefetchConcurrency())
                     .build();
 
             if (configuration.provider() == Provider.UPGRADE)
             {
-                delegateRepairHistoryProvider = new RepairHistoryProviderImpl(nodeResolver, session, statementDecorator,
+                delegateRepairHistoryProvider = createCassandraHistoryProvider(configuration, session,
                         lookbackTimeInMillis);
             }
             else
@@ -117,6 +131,42 @@ public class RepairHistoryService implements RepairHistory, RepairHistoryProvide
         }
     }
 
+    private RepairHistoryProvider createCassandraHistoryProvider(Configuration configuration, Session session,
+            long lookbackTimeInMillis)
+    {
+        RepairHistoryProvider repairHistoryProvider = new RepairHistoryProviderImpl(nodeResolver, session,
+                statementDecorator, lookbackTimeInMillis);
+
+        if (configuration.cacheMaxTables() <= 0)
+        {
+            return repairHistoryProvider;
+        }
+
+        return CachingRepairHistoryProvider.newBuilder()
+                .withRepairHistoryProvider(repairHistoryProvider)
+                .withLookbackTime(lookbackTimeInMillis, TimeUnit.MILLISECONDS)
+                .withTimeToLive(configuration.cacheTtlSeconds(), TimeUnit.SECONDS)
+                .withMaxTables(configuration.cacheMaxTables())
+                .withMaxSizeInBytes(configuration.cacheMaxSizeInBytes())
+                .build();
+    }
+
+    @Deactivate
+    public synchronized void deactivate()
+    {
+        if (delegateRepairHistory instanceof Closeable)
+        {
+            try
+            {
+                ((Closeable) delegateRepairHistory).close();
+            }
+            catch (IOException e)
+            {
+                LOG.warn("Unable to close repair history", e);
+            }
+        }
+    }
+
     @Override
     public RepairSession newSession(TableReference tableReference, UUID jobId, LongTokenRange range,
             Set<Node> participants)
@@ -138,6 +188,12 @@ public class RepairHistoryService implements RepairHistory, RepairHistoryProvide
         return delegateRepairHistoryProvider.iterate(tableReference, to, from, predicate);
     }
 
+    @Override
+    public void prefetch(Collection<TableReference> tableReferences)
+    {
+        delegateRepairHistoryProvider.prefetch(tableReferences);
+    }
+
     @ObjectClassDefinition
     public @interface Configuration
     {
@@ -149,5 +205,20 @@ public class RepairHistoryService implements RepairHistory, RepairHistoryProvide
 
         @AttributeDefinition(name = "Repair history lookback time", description = "The lookback time in seconds for when the repair_history table is queried to get initial repair state at startup")
         long lookbackTimeSeconds() default DEFAULT_REPAIR_HISTORY_LOOKBACK_SECONDS;
+
+        @AttributeDefinition(name = "Repair history fetch size", description = "The number of rows to fetch per page when the ecc history is queried")
+        int fetchSize() default DEFAULT_FETCH_SIZE;
+
+        @AttributeDefinition(name = "Repair history prefetch concurrency", description = "The maximum number of concurrent queries when the ecc history is prefetched at startup")
+        int prefetchConcurrency() default DEFAULT_PREFETCH_CONCURRENCY;
+
+        @AttributeDefinition(name = "Repair history cache max tables", description = "The maximum number of tables to cache the cassandra history for, 0 disables the cache")
+        int cacheMaxTables() default DEFAULT_CACHE_MAX_TABLES;
+
+        @AttributeDefinition(name = "Repair history cache max size", description = "The maximum estimated size in bytes of the cached cassandra history")
+        long cacheMaxSizeInBytes() default DEFAULT_CACHE_MAX_SIZE_IN_BYTES;
+
+        @AttributeDefinition(name = "Repair history cache ttl", description = "The time in seconds after which the full cassandra history of a table is read again")
+        long cacheTtlSeconds() default DEFAULT_CACHE_TTL_SECONDS;
     }
 }
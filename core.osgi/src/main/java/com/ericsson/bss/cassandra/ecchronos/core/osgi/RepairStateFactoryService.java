@@ -14,7 +14,12 @@
  */
 package com.ericsson.bss.cassandra.ecchronos.core.osgi;
 
+import java.io.File;
+
 import org.osgi.service.component.annotations.*;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
 import com.ericsson.bss.cassandra.ecchronos.core.HostStates;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
@@ -23,8 +28,11 @@ import com.ericsson.bss.cassandra.ecchronos.core.repair.state.*;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 
 @Component(service = RepairStateFactory.class)
+@Designate(ocd = RepairStateFactoryService.Configuration.class)
 public class RepairStateFactoryService implements RepairStateFactory
 {
+    private static final String DEFAULT_STATE_DIRECTORY = "";
+
     @Reference(service = HostStates.class, cardinality = ReferenceCardinality.MANDATORY, policy = ReferencePolicy.STATIC)
     private volatile HostStates myHostStates;
 
@@ -40,13 +48,18 @@ public class RepairStateFactoryService implements RepairStateFactory
     private volatile RepairStateFactoryImpl myDelegateRepairStateFactory;
 
     @Activate
-    public void activate()
+    public void activate(Configuration configuration)
     {
+        RepairStateStore repairStateStore = configuration.stateDirectory().isEmpty()
+                ? RepairStateStore.NO_OP
+                : new FileBasedRepairStateStore(new File(configuration.stateDirectory()));
+
         myDelegateRepairStateFactory = RepairStateFactoryImpl.builder()
                 .withReplicationState(myReplicationState)
                 .withHostStates(myHostStates)
                 .withRepairHistoryProvider(myRepairHistoryProvider)
                 .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairStateStore(repairStateStore)
                 .build();
     }
 
@@ -56,4 +69,11 @@ public class RepairStateFactoryService implements RepairStateFactory
     {
         return myDelegateRepairStateFactory.create(tableReference, repairConfiguration, postUpdateHook);
     }
+
+    @ObjectClassDefinition
+    public @interface Configuration
+    {
+        @AttributeDefinition(name = "Repair state directory", description = "The directory where the repair state of each table is stored locally, empty to disable")
+        String stateDirectory() default DEFAULT_STATE_DIRECTORY;
+    }
 }
@@ -18,8 +18,8 @@ import java.util.Map;
 
 import org.osgi.service.component.annotations.*;
 
+import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.Host;
-import com.datastax.driver.core.Metadata;
 import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicationState;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicationStateImpl;
@@ -38,15 +38,21 @@ public class ReplicationStateService implements ReplicationState
     @Reference(service = NodeResolver.class, cardinality = ReferenceCardinality.MANDATORY, policy = ReferencePolicy.STATIC)
     private volatile NodeResolver nodeResolver;
 
-    private volatile ReplicationState delegateReplicationState;
+    private volatile ReplicationStateImpl delegateReplicationState;
 
     @Activate
     public void activate()
     {
-        Metadata metadata = nativeConnectionProvider.getSession().getCluster().getMetadata();
+        Cluster cluster = nativeConnectionProvider.getSession().getCluster();
         Host localHost = nativeConnectionProvider.getLocalHost();
 
-        delegateReplicationState = new ReplicationStateImpl(nodeResolver, metadata, localHost);
+        delegateReplicationState = new ReplicationStateImpl(nodeResolver, cluster, localHost);
+    }
+
+    @Deactivate
+    public void deactivate()
+    {
+        delegateReplicationState.close();
     }
 
     @Override
@@ -43,6 +43,7 @@ public class ScheduleManagerService implements ScheduleManager
     private static final Logger LOG = LoggerFactory.getLogger(ScheduleManagerService.class);
 
     private static final long DEFAULT_SCHEDULE_INTERVAL_IN_SECONDS = 60L;
+    private static final int DEFAULT_WORKERS = 1;
 
     @Reference(service = RunPolicy.class, cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC, bind = "bindRunPolicy", unbind = "unbindRunPolicy")
     private final Set<RunPolicy> myRunPolicies = Sets.newConcurrentHashSet();
@@ -60,6 +61,7 @@ public class ScheduleManagerService implements ScheduleManager
         myDelegateSchedulerManager = ScheduleManagerImpl.builder()
                 .withLockFactory(myLockFactory)
                 .withRunInterval(scheduleIntervalInSeconds, TimeUnit.SECONDS)
+                .withWorkers(configuration.workers())
                 .build();
 
         for (RunPolicy runPolicy : myRunPolicies)
@@ -121,7 +123,10 @@ public class ScheduleManagerService implements ScheduleManager
     @ObjectClassDefinition
     public @interface Configuration
     {
-        @AttributeDefinition(name = "Schedule interval in seconds", description = "The interval in which jobs will be scheduled to run")
+        @AttributeDefinition(name = "Schedule interval in seconds", description = "The maximum interval in which the scheduler checks for jobs to run")
         long scheduleIntervalInSeconds() default DEFAULT_SCHEDULE_INTERVAL_IN_SECONDS;
+
+        @AttributeDefinition(name = "Workers", description = "The number of workers running jobs concurrently")
+        int workers() default DEFAULT_WORKERS;
     }
 }
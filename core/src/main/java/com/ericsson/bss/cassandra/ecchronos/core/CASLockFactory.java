@@ -16,25 +16,22 @@ package com.ericsson.bss.cassandra.ecchronos.core;
 
 import com.datastax.driver.core.*;
 import com.datastax.driver.core.querybuilder.*;
-import com.ericsson.bss.cassandra.ecchronos.connection.DataCenterAwareStatement;
+import com.codahale.metrics.MetricRegistry;
 import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
 import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
-import java.io.UnsupportedEncodingException;
-import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
 
@@ -59,18 +56,25 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
  * PRIMARY KEY(resource, node))
  * WITH default_time_to_live = 600 AND gc_grace_seconds = 0;
  * </pre>
+ *
+ * Held locks are renewed by a {@link LockRenewer} which coalesces the renewals that are due into a single tick
+ * and performs them asynchronously with a bounded number of in-flight CAS operations.
+ *
+ * Resources that are already locked or being locked by this instance are tracked in a {@link LocalLockTable}
+ * and lock requests for them are rejected without any CAS operations.
  */
 public class CASLockFactory implements LockFactory, Closeable
 {
     private static final Logger LOG = LoggerFactory.getLogger(CASLockFactory.class);
 
     private static final String COLUMN_RESOURCE = "resource";
-    private static final String COLUMN_NODE = "node";
-    private static final String COLUMN_METADATA = "metadata";
-    private static final String COLUMN_PRIORITY = "priority";
+    private static final String COLUMN_NODE = LockFactorySupport.COLUMN_NODE;
+    private static final String COLUMN_METADATA = LockFactorySupport.COLUMN_METADATA;
+    private static final String COLUMN_PRIORITY = LockFactorySupport.COLUMN_PRIORITY;
 
     private static final int LOCK_TIME_IN_SECONDS = 600;
     private static final long LOCK_UPDATE_TIME_IN_SECONDS = 60;
+    private static final long LOCK_RENEWAL_TICK_IN_SECONDS = 1;
     private static final int FAILED_LOCK_RETRY_ATTEMPTS = (int) (LOCK_TIME_IN_SECONDS / LOCK_UPDATE_TIME_IN_SECONDS) - 1;
 
     private static final String TABLE_LOCK = "lock";
@@ -78,11 +82,9 @@ public class CASLockFactory implements LockFactory, Closeable
 
     private final UUID myUuid;
 
-    private final ScheduledExecutorService myExecutor;
-
-    private final StatementDecorator myStatementDecorator;
-    private final HostStates myHostStates;
-    private final boolean myRemoteRouting;
+    private final LockFactorySupport myLockFactorySupport;
+    private final LockRenewer myLockRenewer;
+    private final LocalLockTable myLocalLockTable;
 
     private final Session mySession;
     private final String myKeyspaceName;
@@ -93,20 +95,20 @@ public class CASLockFactory implements LockFactory, Closeable
     private final PreparedStatement myRemoveLockStatement;
     private final PreparedStatement myUpdateLockStatement;
     private final PreparedStatement myRemoveLockPriorityStatement;
-    private final LockCache myLockCache;
 
     private CASLockFactory(Builder builder)
     {
-        myStatementDecorator = builder.myStatementDecorator;
-        myHostStates = builder.myHostStates;
         myKeyspaceName = builder.myKeyspaceName;
 
-        myExecutor = Executors.newSingleThreadScheduledExecutor();
+        myLockFactorySupport = new LockFactorySupport(builder.myNativeConnectionProvider, builder.myHostStates,
+                builder.myStatementDecorator, myKeyspaceName, Arrays.asList(TABLE_LOCK, TABLE_LOCK_PRIORITY),
+                this::doTryLock, LOCK_UPDATE_TIME_IN_SECONDS, LOCK_RENEWAL_TICK_IN_SECONDS, TimeUnit.SECONDS,
+                builder.myMaxInFlightLockRenewals, builder.myMetricRegistry);
 
-        mySession = builder.myNativeConnectionProvider.getSession();
-        myRemoteRouting = builder.myNativeConnectionProvider.getRemoteRouting();
-
-        verifySchemasExists();
+        myUuid = myLockFactorySupport.getHostId();
+        myLockRenewer = myLockFactorySupport.getLockRenewer();
+        myLocalLockTable = myLockFactorySupport.getLocalLockTable();
+        mySession = myLockFactorySupport.getSession();
 
         Insert insertLockStatement = QueryBuilder.insertInto(myKeyspaceName, TABLE_LOCK)
                 .value(COLUMN_RESOURCE, bindMarker())
@@ -143,7 +145,7 @@ public class CASLockFactory implements LockFactory, Closeable
                 .where(eq(COLUMN_RESOURCE, bindMarker()))
                 .and(eq(COLUMN_NODE, bindMarker()));
 
-        ConsistencyLevel serialConsistencyLevel = myRemoteRouting ? ConsistencyLevel.LOCAL_SERIAL : ConsistencyLevel.SERIAL;
+        ConsistencyLevel serialConsistencyLevel = myLockFactorySupport.getRemoteRouting() ? ConsistencyLevel.LOCAL_SERIAL : ConsistencyLevel.SERIAL;
 
         myLockStatement = mySession.prepare(insertLockStatement)
                 .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
@@ -168,91 +170,77 @@ public class CASLockFactory implements LockFactory, Closeable
 
         myRemoveLockPriorityStatement = mySession.prepare(removeLockPriorityStatement)
                 .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
-
-        UUID hostId = builder.myNativeConnectionProvider.getLocalHost().getHostId();
-
-        if (hostId == null)
-        {
-            hostId = UUID.randomUUID();
-            LOG.warn("Unable to determine local nodes host id, using {} instead", hostId);
-        }
-
-        myUuid = hostId;
-
-        myLockCache = new LockCache(this::doTryLock);
     }
 
     @Override
     public DistributedLock tryLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException
     {
-        return myLockCache.getLock(dataCenter, resource, priority, metadata);
+        return myLockFactorySupport.tryLock(dataCenter, resource, priority, metadata);
     }
 
+    /**
+     * Try to lock multiple resources.
+     * <p>
+     * The priorities of all resources are read and announced concurrently and the CAS operations are performed
+     * concurrently once this node has the highest priority for all resources.
+     * If any of the resources could not be locked the acquired locks are released concurrently.
+     */
     @Override
-    public Map<String, String> getLockMetadata(String dataCenter, String resource)
+    public DistributedLock tryLock(Collection<Resource> resources, int priority, Map<String, String> metadata) throws LockException
     {
-        try
+        for (Resource resource : resources)
         {
-            ResultSet resultSet = execute(dataCenter, myGetLockMetadataStatement.bind(resource));
-
-            Row row = resultSet.one();
-
-            if (row != null)
+            Optional<LockException> cachedFailure = getCachedFailure(resource.getDataCenter(), resource.getResourceName());
+            if (cachedFailure.isPresent())
             {
-                return row.getMap("metadata", String.class, String.class);
+                LOG.debug("Encountered cached locking failure for {}, throwing exception", resource);
+                throw cachedFailure.get();
             }
         }
-        catch (Exception e)
-        {
-            LOG.warn("Unable to retrieve metadata for resource {}", resource, e);
-        }
 
-        return null;
-    }
+        myLocalLockTable.reserve(resources);
 
-    @Override
-    public boolean sufficientNodesForLocking(String dataCenter, String resource)
-    {
         try
         {
-            Set<Host> hosts = getHostsForResource(dataCenter, resource);
-
-            int quorum = hosts.size() / 2 + 1;
-            int liveNodes = liveNodes(hosts);
-
-            LOG.trace("Live nodes {}, quorum: {}", liveNodes, quorum);
-
-            return liveNodes >= quorum;
+            DistributedLock lock = doTryLock(resources, priority, metadata);
+            myLocalLockTable.held(resources);
+            return lock;
         }
-        catch (UnsupportedEncodingException e)
+        catch (LockException | RuntimeException e)
         {
-            LOG.warn("Unable to encode resource bytes", e);
+            myLocalLockTable.release(resources);
+            throw e;
         }
+    }
+
+    @Override
+    public Map<String, String> getLockMetadata(String dataCenter, String resource)
+    {
+        return myLockFactorySupport.getLockMetadata(dataCenter, resource, myGetLockMetadataStatement.bind(resource));
+    }
 
-        return false;
+    @Override
+    public boolean sufficientNodesForLocking(String dataCenter, String resource)
+    {
+        return myLockFactorySupport.sufficientNodesForLocking(dataCenter, resource);
     }
 
+    /**
+     * Get a known locking failure for the resource.
+     * <p>
+     * Resources that are locked or being locked by this instance are reported as failures until released locally,
+     * other failures are cached for a limited time.
+     */
     @Override
     public Optional<LockException> getCachedFailure(String dataCenter, String resource)
     {
-        return myLockCache.getCachedFailure(dataCenter, resource);
+        return myLockFactorySupport.getCachedFailure(dataCenter, resource);
     }
 
     @Override
     public void close()
     {
-        myExecutor.shutdown();
-        try
-        {
-            if (!myExecutor.awaitTermination(1, TimeUnit.SECONDS))
-            {
-                LOG.warn("Executing tasks did not finish within one second");
-            }
-        }
-        catch (InterruptedException e)
-        {
-            LOG.warn("Interrupted while waiting for executor to shut down", e);
-        }
+        myLockFactorySupport.close();
     }
 
     @VisibleForTesting
@@ -269,11 +257,14 @@ public class CASLockFactory implements LockFactory, Closeable
     public static class Builder
     {
         private static final String DEFAULT_KEYSPACE_NAME = "ecchronos";
+        private static final int DEFAULT_MAX_IN_FLIGHT_LOCK_RENEWALS = 16;
 
         private NativeConnectionProvider myNativeConnectionProvider;
         private HostStates myHostStates;
         private StatementDecorator myStatementDecorator;
         private String myKeyspaceName = DEFAULT_KEYSPACE_NAME;
+        private MetricRegistry myMetricRegistry = new MetricRegistry();
+        private int myMaxInFlightLockRenewals = DEFAULT_MAX_IN_FLIGHT_LOCK_RENEWALS;
 
         public Builder withNativeConnectionProvider(NativeConnectionProvider nativeConnectionProvider)
         {
@@ -299,6 +290,30 @@ public class CASLockFactory implements LockFactory, Closeable
             return this;
         }
 
+        /**
+         * Set the metric registry used to expose the lock renewal metrics.
+         *
+         * @param metricRegistry The metric registry.
+         * @return This builder.
+         */
+        public Builder withMetricRegistry(MetricRegistry metricRegistry)
+        {
+            myMetricRegistry = metricRegistry;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of lock renewals that can be in flight at the same time.
+         *
+         * @param maxInFlightLockRenewals The maximum number of concurrent lock renewals.
+         * @return This builder.
+         */
+        public Builder withMaxInFlightLockRenewals(int maxInFlightLockRenewals)
+        {
+            myMaxInFlightLockRenewals = maxInFlightLockRenewals;
+            return this;
+        }
+
         public CASLockFactory build()
         {
             if (myNativeConnectionProvider == null)
@@ -316,6 +331,16 @@ public class CASLockFactory implements LockFactory, Closeable
                 throw new IllegalArgumentException("Statement decorator cannot be null");
             }
 
+            if (myMetricRegistry == null)
+            {
+                throw new IllegalArgumentException("Metric registry cannot be null");
+            }
+
+            if (myMaxInFlightLockRenewals < 1)
+            {
+                throw new IllegalArgumentException("Max in-flight lock renewals must be positive");
+            }
+
             return new CASLockFactory(this);
         }
     }
@@ -347,106 +372,257 @@ public class CASLockFactory implements LockFactory, Closeable
         throw new LockException(String.format("Unable to lock resource %s in datacenter %s", resource, dataCenter));
     }
 
-    private Set<Host> getHostsForResource(String dataCenter, String resource) throws UnsupportedEncodingException
+    private DistributedLock doTryLock(Collection<Resource> resources, int priority, Map<String, String> metadata) throws LockException
     {
-        Set<Host> dataCenterHosts = new HashSet<>();
+        LOG.trace("Trying locks for {}", resources);
+
+        for (Resource resource : resources)
+        {
+            if (!sufficientNodesForLocking(resource.getDataCenter(), resource.getResourceName()))
+            {
+                LOG.warn("Not sufficient nodes to lock resource {} in datacenter {}", resource.getResourceName(), resource.getDataCenter());
+                throw cacheFailure(resource, new LockException("Not sufficient nodes to lock"));
+            }
+        }
 
-        Set<Host> hosts = mySession.getCluster().getMetadata().getReplicas(myKeyspaceName, ByteBuffer.wrap(resource.getBytes("UTF-8")));
+        List<CASLock> casLocks = createLocks(resources, priority, metadata);
 
-        if (dataCenter != null)
+        List<CASLock> lostLocks = compete(casLocks);
+        if (!lostLocks.isEmpty())
         {
-            Iterator<Host> iterator = hosts.iterator();
+            throw cacheFailures(lostLocks);
+        }
 
-            while (iterator.hasNext())
-            {
-                Host host = iterator.next();
+        List<CASLock> acquiredLocks = new ArrayList<>();
+        List<CASLock> failedLocks = new ArrayList<>();
+        List<CASLock> uncertainLocks = new ArrayList<>();
+        Exception lastError = tryLocks(casLocks, acquiredLocks, failedLocks, uncertainLocks);
 
-                if (dataCenter.equals(host.getDatacenter()))
-                {
-                    dataCenterHosts.add(host);
-                }
+        if (failedLocks.isEmpty())
+        {
+            for (CASLock casLock : acquiredLocks)
+            {
+                casLock.scheduleUpdates();
             }
 
-            return dataCenterHosts;
+            LOG.trace("Locks for {} acquired", resources);
+            return new LockCollection(acquiredLocks);
         }
 
-        return hosts;
+        release(acquiredLocks, uncertainLocks);
+
+        LockException lockException = cacheFailures(failedLocks);
+        if (lastError != null)
+        {
+            lockException.addSuppressed(lastError);
+        }
+        throw lockException;
     }
 
-    private int liveNodes(Collection<Host> hosts)
+    private List<CASLock> createLocks(Collection<Resource> resources, int priority, Map<String, String> metadata) throws LockException
     {
-        int live = 0;
-        for (Host host : hosts)
+        Map<Resource, ResultSetFuture> priorityFutures = new LinkedHashMap<>();
+        for (Resource resource : resources)
+        {
+            priorityFutures.put(resource, executeAsync(resource.getDataCenter(), myGetPriorityStatement.bind(resource.getResourceName())));
+        }
+
+        List<CASLock> casLocks = new ArrayList<>(resources.size());
+        for (Map.Entry<Resource, ResultSetFuture> entry : priorityFutures.entrySet())
         {
-            if (myHostStates.isUp(host))
+            Resource resource = entry.getKey();
+            try
+            {
+                List<NodePriority> nodePriorities = toNodePriorities(entry.getValue().getUninterruptibly());
+                casLocks.add(new CASLock(resource.getDataCenter(), resource.getResourceName(), priority, metadata, nodePriorities)); // NOSONAR
+            }
+            catch (Exception e)
             {
-                live++;
+                LOG.warn("Unable to lock resource {} in datacenter {} - {}", resource.getResourceName(), resource.getDataCenter(), e.getMessage());
+                throw cacheFailure(resource, new LockException(e));
             }
         }
-        return live;
+
+        return casLocks;
     }
 
-    private ResultSet execute(String dataCenter, Statement statement)
+    /**
+     * Announce the priority for all locks concurrently.
+     *
+     * @return The locks for which another node has a higher priority.
+     */
+    private List<CASLock> compete(List<CASLock> casLocks) throws LockException
     {
-        Statement executeStatement;
+        Map<CASLock, ResultSetFuture> competeFutures = new LinkedHashMap<>();
+        for (CASLock casLock : casLocks)
+        {
+            ResultSetFuture future = casLock.competeAsync();
+            if (future != null)
+            {
+                competeFutures.put(casLock, future);
+            }
+        }
 
-        if (dataCenter != null && myRemoteRouting)
+        for (Map.Entry<CASLock, ResultSetFuture> entry : competeFutures.entrySet())
         {
-            executeStatement = new DataCenterAwareStatement(statement, dataCenter);
+            try
+            {
+                entry.getValue().getUninterruptibly();
+            }
+            catch (Exception e)
+            {
+                CASLock casLock = entry.getKey();
+                LOG.warn("Unable to lock resource {} in datacenter {} - {}", casLock.myResource, casLock.myDataCenter, e.getMessage());
+                throw cacheFailure(casLock.getResource(), new LockException(e));
+            }
         }
-        else
+
+        List<CASLock> lostLocks = new ArrayList<>();
+        for (CASLock casLock : casLocks)
         {
-            executeStatement = statement;
+            if (!casLock.hasHighestPriority())
+            {
+                lostLocks.add(casLock);
+            }
         }
+        return lostLocks;
+    }
 
-        return mySession.execute(myStatementDecorator.apply(executeStatement));
+    /**
+     * Perform the CAS operations for all locks concurrently.
+     * Locks for which the CAS operation failed with an error are added both as failed and uncertain
+     * since the operation might have been applied.
+     *
+     * @return The last unexpected error or null if no unexpected errors occurred.
+     */
+    private Exception tryLocks(List<CASLock> casLocks, List<CASLock> acquiredLocks, List<CASLock> failedLocks, List<CASLock> uncertainLocks)
+    {
+        Map<CASLock, ResultSetFuture> lockFutures = new LinkedHashMap<>();
+        for (CASLock casLock : casLocks)
+        {
+            LOG.trace("Trying to acquire lock for resource {}", casLock.myResource);
+            lockFutures.put(casLock, casLock.tryLockAsync());
+        }
+
+        Exception lastError = null;
+
+        for (Map.Entry<CASLock, ResultSetFuture> entry : lockFutures.entrySet())
+        {
+            CASLock casLock = entry.getKey();
+            try
+            {
+                if (entry.getValue().getUninterruptibly().wasApplied())
+                {
+                    acquiredLocks.add(casLock);
+                    continue;
+                }
+            }
+            catch (Exception e)
+            {
+                LOG.warn("Unable to lock resource {} in datacenter {} - {}", casLock.myResource, casLock.myDataCenter, e.getMessage());
+                uncertainLocks.add(casLock);
+                lastError = e;
+            }
+
+            failedLocks.add(casLock);
+        }
+
+        return lastError;
     }
 
-    private void verifySchemasExists()
+    /**
+     * Release partially acquired locks concurrently.
+     * For locks with an uncertain outcome only the lock itself is released, the priority is kept.
+     */
+    private void release(List<CASLock> acquiredLocks, List<CASLock> uncertainLocks)
     {
-        KeyspaceMetadata keyspaceMetadata = mySession.getCluster().getMetadata().getKeyspace(myKeyspaceName);
-        if (keyspaceMetadata == null)
+        Map<CASLock, List<ResultSetFuture>> releaseFutures = new LinkedHashMap<>();
+        for (CASLock casLock : acquiredLocks)
+        {
+            releaseFutures.put(casLock, casLock.releaseAsync());
+        }
+        for (CASLock casLock : uncertainLocks)
         {
-            LOG.error("Keyspace {} does not exist, it needs to be created", myKeyspaceName);
-            throw new IllegalStateException(String.format("Keyspace %s does not exist, it needs to be created", myKeyspaceName));
+            releaseFutures.put(casLock, Collections.singletonList(casLock.removeLockAsync()));
+        }
+
+        for (Map.Entry<CASLock, List<ResultSetFuture>> entry : releaseFutures.entrySet())
+        {
+            for (ResultSetFuture future : entry.getValue())
+            {
+                try
+                {
+                    future.getUninterruptibly();
+                }
+                catch (Exception e)
+                {
+                    LOG.warn("Unable to release temporary lock for resource {} in datacenter {}", entry.getKey().myResource, entry.getKey().myDataCenter, e);
+                }
+            }
         }
+    }
 
-        if (keyspaceMetadata.getTable(TABLE_LOCK) == null)
+    private LockException cacheFailures(List<CASLock> failedLocks)
+    {
+        List<String> failedResources = new ArrayList<>();
+        for (CASLock casLock : failedLocks)
         {
-            LOG.error("Table {}.{} does not exist, it needs to be created", myKeyspaceName, TABLE_LOCK);
-            throw new IllegalStateException(String.format("Table %s.%s does not exist, it needs to be created", myKeyspaceName, TABLE_LOCK));
+            failedResources.add(casLock.getResource().toString());
         }
 
-        if (keyspaceMetadata.getTable(TABLE_LOCK_PRIORITY) == null)
+        LockException lockException = new LockException(String.format("Unable to lock resources %s", failedResources));
+        for (CASLock casLock : failedLocks)
         {
-            LOG.error("Table {}.{} does not exist, it needs to be created", myKeyspaceName, TABLE_LOCK_PRIORITY);
-            throw new IllegalStateException(String.format("Table %s.%s does not exist, it needs to be created", myKeyspaceName, TABLE_LOCK_PRIORITY));
+            cacheFailure(casLock.getResource(), lockException);
         }
+        return lockException;
     }
 
-    class CASLock implements DistributedLock, Runnable
+    private LockException cacheFailure(Resource resource, LockException lockException)
+    {
+        return myLockFactorySupport.cacheFailure(resource, lockException);
+    }
+
+    private ResultSet execute(String dataCenter, Statement statement)
+    {
+        return myLockFactorySupport.execute(dataCenter, statement);
+    }
+
+    private ResultSetFuture executeAsync(String dataCenter, Statement statement)
+    {
+        return myLockFactorySupport.executeAsync(dataCenter, statement);
+    }
+
+    private List<NodePriority> toNodePriorities(ResultSet resultSet)
+    {
+        return myLockFactorySupport.toNodePriorities(resultSet);
+    }
+
+    class CASLock implements DistributedLock, Runnable, LockRenewer.RenewableLock
     {
         private final String myDataCenter;
         private final String myResource;
         private final int myPriority;
         private final Map<String, String> myMetadata;
 
-        private final AtomicReference<ScheduledFuture<?>> myUpdateFuture = new AtomicReference<>();
-
         private final AtomicInteger myFailedUpdateAttempts = new AtomicInteger();
 
         private final int myLocallyHighestPriority;
         private final int globalHighPriority;
 
         CASLock(String dataCenter, String resource, int priority, Map<String, String> metadata)
+        {
+            this(dataCenter, resource, priority, metadata,
+                    toNodePriorities(execute(dataCenter, myGetPriorityStatement.bind(resource))));
+        }
+
+        CASLock(String dataCenter, String resource, int priority, Map<String, String> metadata, List<NodePriority> nodePriorities)
         {
             myDataCenter = dataCenter;
             myResource = resource;
             myPriority = priority;
             myMetadata = metadata;
 
-            List<NodePriority> nodePriorities = computePriorities();
-
             myLocallyHighestPriority = nodePriorities.stream().filter(n -> n.getUuid().equals(myUuid)).map(NodePriority::getPriority).findFirst().orElse(myPriority);
             globalHighPriority = nodePriorities.stream().filter(n -> !n.getUuid().equals(myUuid)).map(NodePriority::getPriority).max(Integer::compare).orElse(myPriority);
         }
@@ -459,8 +635,7 @@ public class CASLockFactory implements LockFactory, Closeable
                 if (tryLock())
                 {
                     LOG.trace("Lock for resource {} acquired", myResource);
-                    ScheduledFuture<?> future = myExecutor.scheduleAtFixedRate(this, LOCK_UPDATE_TIME_IN_SECONDS, LOCK_UPDATE_TIME_IN_SECONDS, TimeUnit.SECONDS);
-                    myUpdateFuture.set(future);
+                    scheduleUpdates();
 
                     return true;
                 }
@@ -469,45 +644,74 @@ public class CASLockFactory implements LockFactory, Closeable
             return false;
         }
 
+        private void scheduleUpdates()
+        {
+            myLockRenewer.register(this);
+        }
+
         @Override
         public void run()
         {
             try
             {
                 updateLock();
-                myFailedUpdateAttempts.set(0);
+                renewalSucceeded();
             }
             catch (Exception e)
             {
-                int failedAttempts = myFailedUpdateAttempts.incrementAndGet();
+                renewalFailed(e);
+            }
+        }
 
-                if (failedAttempts >= FAILED_LOCK_RETRY_ATTEMPTS)
-                {
-                    LOG.error("Unable to re-lock resource '{}' after {} failed attempts", myResource, failedAttempts);
-                }
-                else
-                {
-                    LOG.warn("Unable to re-lock resource '{}', {} failed attempts", myResource, failedAttempts, e);
-                }
+        @Override
+        public ListenableFuture<Boolean> renewAsync()
+        {
+            return Futures.transform(executeAsync(myDataCenter, myUpdateLockStatement.bind(myUuid, myMetadata, myResource, myUuid)),
+                    ResultSet::wasApplied, MoreExecutors.directExecutor());
+        }
+
+        @Override
+        public void renewalSucceeded()
+        {
+            myFailedUpdateAttempts.set(0);
+        }
+
+        @Override
+        public void renewalFailed(Throwable error)
+        {
+            int failedAttempts = myFailedUpdateAttempts.incrementAndGet();
+
+            if (failedAttempts >= FAILED_LOCK_RETRY_ATTEMPTS)
+            {
+                LOG.error("Unable to re-lock resource '{}' after {} failed attempts", myResource, failedAttempts);
+            }
+            else
+            {
+                LOG.warn("Unable to re-lock resource '{}', {} failed attempts", myResource, failedAttempts, error);
             }
         }
 
         @Override
         public void close()
         {
-            ScheduledFuture<?> future = myUpdateFuture.get();
-            if (future != null)
+            if (myLockRenewer.unregister(this))
             {
-                future.cancel(true);
-                execute(myDataCenter, myRemoveLockStatement.bind(myResource, myUuid));
-
-                if (myLocallyHighestPriority <= myPriority)
+                try
                 {
-                    execute(myDataCenter, myRemoveLockPriorityStatement.bind(myResource, myUuid));
+                    execute(myDataCenter, myRemoveLockStatement.bind(myResource, myUuid));
+
+                    if (myLocallyHighestPriority <= myPriority)
+                    {
+                        execute(myDataCenter, myRemoveLockPriorityStatement.bind(myResource, myUuid));
+                    }
+                    else
+                    {
+                        LOG.debug("Locally highest priority ({}) is higher than current ({}), will not remove", myLocallyHighestPriority, myPriority);
+                    }
                 }
-                else
+                finally
                 {
-                    LOG.debug("Locally highest priority ({}) is higher than current ({}), will not remove", myLocallyHighestPriority, myPriority);
+                    myLocalLockTable.release(getResource());
                 }
             }
         }
@@ -529,6 +733,21 @@ public class CASLockFactory implements LockFactory, Closeable
                 insertPriority();
             }
 
+            return hasHighestPriority();
+        }
+
+        private ResultSetFuture competeAsync()
+        {
+            if (myLocallyHighestPriority <= myPriority)
+            {
+                return executeAsync(myDataCenter, myCompeteStatement.bind(myResource, myUuid, myPriority));
+            }
+
+            return null;
+        }
+
+        private boolean hasHighestPriority()
+        {
             LOG.trace("Highest priority for resource {}: {}", myResource, globalHighPriority);
             return myPriority >= globalHighPriority;
         }
@@ -543,21 +762,35 @@ public class CASLockFactory implements LockFactory, Closeable
             return execute(myDataCenter, myLockStatement.bind(myResource, myUuid, myMetadata)).wasApplied();
         }
 
-        private List<NodePriority> computePriorities()
+        private ResultSetFuture tryLockAsync()
         {
-            List<NodePriority> nodePriorities = new ArrayList<>();
+            return executeAsync(myDataCenter, myLockStatement.bind(myResource, myUuid, myMetadata));
+        }
 
-            ResultSet resultSet = execute(myDataCenter, myGetPriorityStatement.bind(myResource));
+        /**
+         * Release a lock that has been acquired but not yet handed out.
+         */
+        private List<ResultSetFuture> releaseAsync()
+        {
+            List<ResultSetFuture> futures = new ArrayList<>();
+            futures.add(removeLockAsync());
 
-            for (Row row : resultSet)
+            if (myLocallyHighestPriority <= myPriority)
             {
-                int priority = row.getInt(COLUMN_PRIORITY);
-                UUID hostId = row.getUUID(COLUMN_NODE);
-
-                nodePriorities.add(new NodePriority(hostId, priority));
+                futures.add(executeAsync(myDataCenter, myRemoveLockPriorityStatement.bind(myResource, myUuid)));
             }
 
-            return nodePriorities;
+            return futures;
+        }
+
+        private ResultSetFuture removeLockAsync()
+        {
+            return executeAsync(myDataCenter, myRemoveLockStatement.bind(myResource, myUuid));
+        }
+
+        private Resource getResource()
+        {
+            return new Resource(myDataCenter, myResource);
         }
 
         int getFailedAttempts()
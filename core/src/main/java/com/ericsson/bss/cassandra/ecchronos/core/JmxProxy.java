@@ -15,6 +15,8 @@
 package com.ericsson.bss.cassandra.ecchronos.core;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -91,4 +93,25 @@ public interface JmxProxy extends Closeable
      * @return The live disk space used by the provided table.
      */
     long liveDiskSpaceUsed(TableReference tableReference);
+
+    /**
+     * Get the live disk space used for multiple tables.
+     * <p>
+     * Tables that does not have any live disk space metric are not included in the result.
+     *
+     * @param tableReferences
+     *            The tables to get the live disk space for.
+     * @return The live disk space used by each of the provided tables.
+     */
+    default Map<TableReference, Long> liveDiskSpaceUsed(Collection<TableReference> tableReferences)
+    {
+        Map<TableReference, Long> diskSpaceUsed = new HashMap<>();
+
+        for (TableReference tableReference : tableReferences)
+        {
+            diskSpaceUsed.put(tableReference, liveDiskSpaceUsed(tableReference));
+        }
+
+        return diskSpaceUsed;
+    }
 }
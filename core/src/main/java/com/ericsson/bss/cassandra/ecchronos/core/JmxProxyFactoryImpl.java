@@ -15,13 +15,17 @@
 package com.ericsson.bss.cassandra.ecchronos.core;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+import javax.management.Attribute;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
-import javax.management.ListenerNotFoundException;
 import javax.management.MBeanException;
 import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
@@ -38,6 +42,10 @@ import com.ericsson.bss.cassandra.ecchronos.connection.JmxConnectionProvider;
 
 /**
  * A factory creating JMX proxies to Cassandra.
+ * <p>
+ * All proxies share one {@link JmxSession} which is only replaced when the JMX connection is found to be broken.
+ * Reconnection attempts are done with an exponential backoff so that a Cassandra node with a broken JMX endpoint
+ * is not connected to once per created proxy.
  */
 public class JmxProxyFactoryImpl implements JmxProxyFactory
 {
@@ -49,41 +57,104 @@ public class JmxProxyFactoryImpl implements JmxProxyFactory
     private static final String FORCE_TERMINATE_ALL_REPAIR_SESSIONS_METHOD = "forceTerminateAllRepairSessions";
     private static final String LIVE_NODES_ATTRIBUTE = "LiveNodes";
     private static final String UNREACHABLE_NODES_ATTRIBUTE = "UnreachableNodes";
+    private static final String LIVE_DISK_SPACE_USED_PATTERN = "org.apache.cassandra.metrics:type=Table,keyspace=*,scope=*,name=LiveDiskSpaceUsed";
+    private static final String[] COUNT_ATTRIBUTES = { "Count" };
+
+    private static final long DEFAULT_HEALTH_CHECK_INTERVAL_IN_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long DEFAULT_MIN_RECONNECT_BACKOFF_IN_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long DEFAULT_MAX_RECONNECT_BACKOFF_IN_MS = TimeUnit.MINUTES.toMillis(1);
 
     private final JmxConnectionProvider myJmxConnectionProvider;
+    private final long myHealthCheckIntervalInNanos;
+    private final long myMinReconnectBackoffInNanos;
+    private final long myMaxReconnectBackoffInNanos;
+
+    private volatile JmxSession mySession;
+    private long myReconnectBackoffInNanos = 0;
+    private long myNextReconnectAttempt;
 
     private JmxProxyFactoryImpl(Builder builder)
     {
         myJmxConnectionProvider = builder.myJmxConnectionProvider;
+        myHealthCheckIntervalInNanos = TimeUnit.MILLISECONDS.toNanos(builder.myHealthCheckIntervalInMs);
+        myMinReconnectBackoffInNanos = TimeUnit.MILLISECONDS.toNanos(builder.myMinReconnectBackoffInMs);
+        myMaxReconnectBackoffInNanos = TimeUnit.MILLISECONDS.toNanos(builder.myMaxReconnectBackoffInMs);
     }
 
     @Override
     public JmxProxy connect() throws IOException
     {
+        return new InternalJmxProxy(getSession());
+    }
+
+    private JmxSession getSession() throws IOException
+    {
+        JmxSession session = mySession;
+        long now = System.nanoTime();
+
+        if (session != null && session.isValid(now, myHealthCheckIntervalInNanos))
+        {
+            return session;
+        }
+
+        return reconnect(now);
+    }
+
+    private synchronized JmxSession reconnect(long now) throws IOException
+    {
+        JmxSession session = mySession;
+        if (session != null && session.isValid(now, myHealthCheckIntervalInNanos))
+        {
+            return session;
+        }
+
+        if (myReconnectBackoffInNanos > 0 && now - myNextReconnectAttempt < 0)
+        {
+            throw new IOException(String.format("Unable to connect to JMX, next attempt in %d ms",
+                    TimeUnit.NANOSECONDS.toMillis(myNextReconnectAttempt - now)));
+        }
+
         try
         {
             JMXConnector jmxConnector = myJmxConnectionProvider.getJmxConnector();
-
-            return new InternalJmxProxy(jmxConnector, jmxConnector.getMBeanServerConnection(), new ObjectName(SS_OBJ_NAME));
+            session = new JmxSession(jmxConnector, new ObjectName(SS_OBJ_NAME), now);
         }
         catch (MalformedObjectNameException e)
         {
             throw new IOException("Unable to get StorageService object", e);
         }
+        catch (IOException e)
+        {
+            myReconnectBackoffInNanos = myReconnectBackoffInNanos == 0
+                    ? myMinReconnectBackoffInNanos
+                    : Math.min(myReconnectBackoffInNanos * 2, myMaxReconnectBackoffInNanos);
+            myNextReconnectAttempt = now + myReconnectBackoffInNanos;
+            LOG.warn("Unable to connect to JMX, next attempt in {} ms", TimeUnit.NANOSECONDS.toMillis(myReconnectBackoffInNanos));
+            throw e;
+        }
+
+        myReconnectBackoffInNanos = 0;
+        mySession = session;
+        return session;
+    }
+
+    private static String tableKey(String keyspace, String table)
+    {
+        return keyspace + "." + table;
     }
 
     private class InternalJmxProxy implements JmxProxy
     {
-        private final JMXConnector myJmxConnector;
+        private final JmxSession myJmxSession;
         private final MBeanServerConnection myMbeanServerConnection;
 
         private final ObjectName myStorageServiceObject;
 
-        private InternalJmxProxy(JMXConnector jmxConnector, MBeanServerConnection mbeanServerConnection, ObjectName storageServiceObject)
+        private InternalJmxProxy(JmxSession session)
         {
-            myJmxConnector = jmxConnector;
-            myMbeanServerConnection = mbeanServerConnection;
-            myStorageServiceObject = storageServiceObject;
+            myJmxSession = session;
+            myMbeanServerConnection = session.getMBeanServerConnection();
+            myStorageServiceObject = session.getStorageServiceObject();
         }
 
         @Override
@@ -97,8 +168,7 @@ public class JmxProxyFactoryImpl implements JmxProxyFactory
         {
             try
             {
-                myJmxConnector.addConnectionNotificationListener(listener, null, null);
-                myMbeanServerConnection.addNotificationListener(myStorageServiceObject, listener, null, null);
+                myJmxSession.addListener(listener);
             }
             catch (InstanceNotFoundException | IOException e)
             {
@@ -174,15 +244,7 @@ public class JmxProxyFactoryImpl implements JmxProxyFactory
         @Override
         public void removeStorageServiceListener(NotificationListener listener)
         {
-            try
-            {
-                myJmxConnector.removeConnectionNotificationListener(listener);
-                myMbeanServerConnection.removeNotificationListener(myStorageServiceObject, listener);
-            }
-            catch (InstanceNotFoundException | ListenerNotFoundException | IOException e)
-            {
-                LOG.error("Unable to remove StorageService listener", e);
-            }
+            myJmxSession.removeListener(listener);
         }
 
         @Override
@@ -201,6 +263,59 @@ public class JmxProxyFactoryImpl implements JmxProxyFactory
 
             return 0;
         }
+
+        /**
+         * Find the live disk space metrics of all tables with one query and read the metric of each requested table.
+         * <p>
+         * JMX has no call that reads attributes from multiple MBeans, so one attribute read per table is still needed.
+         */
+        @Override
+        public Map<TableReference, Long> liveDiskSpaceUsed(Collection<TableReference> tableReferences)
+        {
+            Map<TableReference, Long> diskSpaceUsed = new HashMap<>();
+
+            try
+            {
+                Map<String, ObjectName> metrics = new HashMap<>();
+                for (ObjectName objectName : myMbeanServerConnection.queryNames(new ObjectName(LIVE_DISK_SPACE_USED_PATTERN), null))
+                {
+                    metrics.put(tableKey(objectName.getKeyProperty("keyspace"), objectName.getKeyProperty("scope")), objectName);
+                }
+
+                for (TableReference tableReference : tableReferences)
+                {
+                    ObjectName objectName = metrics.get(tableKey(tableReference.getKeyspace(), tableReference.getTable()));
+                    if (objectName != null)
+                    {
+                        getCount(objectName).ifPresent(count -> diskSpaceUsed.put(tableReference, count));
+                    }
+                }
+            }
+            catch (IOException | MalformedObjectNameException e)
+            {
+                LOG.error("Unable to retrieve disk space usage for tables", e);
+            }
+
+            return diskSpaceUsed;
+        }
+
+        private Optional<Long> getCount(ObjectName objectName) throws IOException
+        {
+            try
+            {
+                List<Attribute> attributes = myMbeanServerConnection.getAttributes(objectName, COUNT_ATTRIBUTES).asList();
+                if (!attributes.isEmpty())
+                {
+                    return Optional.of((Long) attributes.get(0).getValue());
+                }
+            }
+            catch (InstanceNotFoundException | ReflectionException e)
+            {
+                LOG.debug("Unable to retrieve disk space usage from {}", objectName, e);
+            }
+
+            return Optional.empty();
+        }
     }
 
     public static Builder builder()
@@ -211,6 +326,9 @@ public class JmxProxyFactoryImpl implements JmxProxyFactory
     public static class Builder
     {
         private JmxConnectionProvider myJmxConnectionProvider;
+        private long myHealthCheckIntervalInMs = DEFAULT_HEALTH_CHECK_INTERVAL_IN_MS;
+        private long myMinReconnectBackoffInMs = DEFAULT_MIN_RECONNECT_BACKOFF_IN_MS;
+        private long myMaxReconnectBackoffInMs = DEFAULT_MAX_RECONNECT_BACKOFF_IN_MS;
 
         public Builder withJmxConnectionProvider(JmxConnectionProvider jmxConnectionProvider)
         {
@@ -218,6 +336,35 @@ public class JmxProxyFactoryImpl implements JmxProxyFactory
             return this;
         }
 
+        /**
+         * Set the interval between health checks of the shared JMX connection.
+         *
+         * @param healthCheckInterval The interval.
+         * @param timeUnit The time unit of the interval.
+         * @return The builder.
+         */
+        public Builder withHealthCheckInterval(long healthCheckInterval, TimeUnit timeUnit)
+        {
+            myHealthCheckIntervalInMs = timeUnit.toMillis(healthCheckInterval);
+            return this;
+        }
+
+        /**
+         * Set the backoff used between failed attempts to connect to JMX.
+         * The backoff starts at the minimum and is doubled for each failed attempt up to the maximum.
+         *
+         * @param minBackoff The backoff after the first failed attempt.
+         * @param maxBackoff The maximum backoff.
+         * @param timeUnit The time unit of the backoffs.
+         * @return The builder.
+         */
+        public Builder withReconnectBackoff(long minBackoff, long maxBackoff, TimeUnit timeUnit)
+        {
+            myMinReconnectBackoffInMs = timeUnit.toMillis(minBackoff);
+            myMaxReconnectBackoffInMs = timeUnit.toMillis(maxBackoff);
+            return this;
+        }
+
         public JmxProxyFactoryImpl build()
         {
             if (myJmxConnectionProvider == null)
@@ -225,6 +372,16 @@ public class JmxProxyFactoryImpl implements JmxProxyFactory
                 throw new IllegalArgumentException("JMX Connection provider cannot be null");
             }
 
+            if (myHealthCheckIntervalInMs < 0)
+            {
+                throw new IllegalArgumentException("Health check interval cannot be negative");
+            }
+
+            if (myMinReconnectBackoffInMs <= 0 || myMaxReconnectBackoffInMs < myMinReconnectBackoffInMs)
+            {
+                throw new IllegalArgumentException("Reconnect backoff must be positive and the maximum cannot be lower than the minimum");
+            }
+
             return new JmxProxyFactoryImpl(this);
         }
     }
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JMX session shared by all proxies created by a {@link JmxProxyFactoryImpl}.
+ * <p>
+ * Only one connection listener and one StorageService listener are registered in the JMX connection,
+ * the notifications are dispatched locally to all listeners added to the session.
+ * Adding and removing listeners therefore does not require any JMX round trips after the first listener.
+ * <p>
+ * The session becomes invalid when the JMX connection fails or is closed,
+ * or when a health check of the connection fails.
+ * The listeners of the session receive a {@link JMXConnectionNotification#FAILED} notification in both cases,
+ * so that they are not left waiting for notifications that will never arrive.
+ */
+class JmxSession implements NotificationListener
+{
+    private static final Logger LOG = LoggerFactory.getLogger(JmxSession.class);
+
+    private final Set<NotificationListener> myListeners = new CopyOnWriteArraySet<>();
+    private final AtomicBoolean myValid = new AtomicBoolean(true);
+    private final AtomicLong myLastHealthCheck;
+    private final AtomicLong mySequenceNumber = new AtomicLong();
+
+    private final JMXConnector myJmxConnector;
+    private final MBeanServerConnection myMbeanServerConnection;
+    private final ObjectName myStorageServiceObject;
+
+    private volatile String myConnectionId = "";
+
+    private boolean myStorageServiceListenerRegistered = false;
+
+    JmxSession(JMXConnector jmxConnector, ObjectName storageServiceObject, long now) throws IOException
+    {
+        myJmxConnector = jmxConnector;
+        myMbeanServerConnection = jmxConnector.getMBeanServerConnection();
+        myStorageServiceObject = storageServiceObject;
+        myLastHealthCheck = new AtomicLong(now);
+
+        myJmxConnector.addConnectionNotificationListener(this, null, null);
+    }
+
+    MBeanServerConnection getMBeanServerConnection()
+    {
+        return myMbeanServerConnection;
+    }
+
+    ObjectName getStorageServiceObject()
+    {
+        return myStorageServiceObject;
+    }
+
+    /**
+     * Add a listener for connection and StorageService notifications.
+     *
+     * @param listener The listener to add.
+     * @throws InstanceNotFoundException Thrown if the StorageService could not be found.
+     * @throws IOException Thrown if the StorageService listener could not be registered.
+     */
+    synchronized void addListener(NotificationListener listener) throws InstanceNotFoundException, IOException
+    {
+        if (!myStorageServiceListenerRegistered)
+        {
+            myMbeanServerConnection.addNotificationListener(myStorageServiceObject, this, null, null);
+            myStorageServiceListenerRegistered = true;
+        }
+
+        myListeners.add(listener);
+    }
+
+    void removeListener(NotificationListener listener)
+    {
+        myListeners.remove(listener);
+    }
+
+    int listeners()
+    {
+        return myListeners.size();
+    }
+
+    /**
+     * Check if the session can still be used.
+     * <p>
+     * The connection is only checked if the last successful check is older than the health check interval.
+     *
+     * @param now The current time in nanoseconds.
+     * @param healthCheckIntervalInNanos The interval between connection checks.
+     * @return True if the session can be used.
+     */
+    boolean isValid(long now, long healthCheckIntervalInNanos)
+    {
+        if (!myValid.get())
+        {
+            return false;
+        }
+
+        long lastHealthCheck = myLastHealthCheck.get();
+        if (now - lastHealthCheck < healthCheckIntervalInNanos)
+        {
+            return true;
+        }
+
+        try
+        {
+            String connectionId = myJmxConnector.getConnectionId();
+            if (connectionId != null)
+            {
+                myConnectionId = connectionId;
+            }
+            myLastHealthCheck.compareAndSet(lastHealthCheck, now);
+            return true;
+        }
+        catch (IOException e)
+        {
+            LOG.warn("JMX connection health check failed", e);
+            invalidate();
+            return false;
+        }
+    }
+
+    /**
+     * Invalidate the session and notify all listeners that the connection has failed.
+     * <p>
+     * The notification carries the connection id of the last successful health check.
+     */
+    void invalidate()
+    {
+        if (myValid.compareAndSet(true, false))
+        {
+            try
+            {
+                dispatch(new JMXConnectionNotification(JMXConnectionNotification.FAILED, this, myConnectionId,
+                        mySequenceNumber.getAndIncrement(), "JMX session invalidated", null));
+            }
+            finally
+            {
+                close();
+            }
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback)
+    {
+        String type = notification.getType();
+
+        if (JMXConnectionNotification.FAILED.equals(type) || JMXConnectionNotification.CLOSED.equals(type))
+        {
+            if (myValid.compareAndSet(true, false))
+            {
+                try
+                {
+                    dispatch(notification);
+                }
+                finally
+                {
+                    close();
+                }
+            }
+            return;
+        }
+
+        dispatch(notification);
+    }
+
+    private void dispatch(Notification notification)
+    {
+        for (NotificationListener listener : myListeners)
+        {
+            try
+            {
+                listener.handleNotification(notification, null);
+            }
+            catch (RuntimeException e)
+            {
+                LOG.error("Listener {} failed to handle notification {}", listener, notification.getType(), e);
+            }
+        }
+    }
+
+    private synchronized void close()
+    {
+        myListeners.clear();
+
+        try
+        {
+            myJmxConnector.removeConnectionNotificationListener(this);
+            if (myStorageServiceListenerRegistered)
+            {
+                myStorageServiceListenerRegistered = false;
+                myMbeanServerConnection.removeNotificationListener(myStorageServiceObject, this);
+            }
+        }
+        catch (InstanceNotFoundException | ListenerNotFoundException | IOException e)
+        {
+            LOG.debug("Unable to remove listeners of invalidated JMX session", e);
+        }
+    }
+}
@@ -0,0 +1,588 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.AtomicMonotonicTimestampGenerator;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TimestampGenerator;
+import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
+import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
+import com.ericsson.bss.cassandra.ecchronos.core.CASLockFactory.NodePriority;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Lock factory using timestamp ordered lease rows in Cassandra without any LWT operations.
+ * <p>
+ * A lease is acquired by checking that no other node holds the lease, writing the lease with an explicit
+ * timestamp and reading it back to verify that the write was not overwritten by another node.
+ * All operations are performed using LOCAL_QUORUM.
+ * Leases are renewed with increasing timestamps and removed using the timestamp of the last write,
+ * which makes sure that a late renewal or release never affects a lease written later by another node.
+ * <p>
+ * Before leasing a resource the node announces its priority in the lease_priority table in the same way as
+ * the {@link CASLockFactory}, a lease is only acquired if no other node has announced a higher priority.
+ * The announced priority is removed when the lease is released unless this node has a pending higher priority.
+ * <p>
+ * Without the serial consistency provided by LWT two nodes racing for the same lease could both acquire it.
+ * This lock factory should therefore only be used when there is a single ecChronos instance per data center,
+ * so that data center local resources are only contended within the same instance.
+ * <p>
+ * Expected keyspace/tables:
+ * <pre>
+ * CREATE KEYSPACE IF NOT EXISTS ecchronos WITH replication = {'class': 'NetworkTopologyStrategy', 'datacenter1': 1};
+ *
+ * CREATE TABLE IF NOT EXISTS ecchronos.lease (
+ * resource text,
+ * node uuid,
+ * priority int,
+ * metadata map&lt;text,text&gt;,
+ * PRIMARY KEY(resource))
+ * WITH default_time_to_live = 600 AND gc_grace_seconds = 0;
+ *
+ * CREATE TABLE IF NOT EXISTS ecchronos.lease_priority (
+ * resource text,
+ * node uuid,
+ * priority int,
+ * PRIMARY KEY(resource, node))
+ * WITH default_time_to_live = 600 AND gc_grace_seconds = 0;
+ * </pre>
+ */
+public class LeaseLockFactory implements LockFactory, Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LeaseLockFactory.class);
+
+    private static final String COLUMN_NODE = LockFactorySupport.COLUMN_NODE;
+    private static final String COLUMN_LEASED_AT = "leased_at";
+
+    private static final int LEASE_TIME_IN_SECONDS = 600;
+    private static final long LEASE_UPDATE_TIME_IN_SECONDS = 60;
+    private static final long LEASE_RENEWAL_TICK_IN_SECONDS = 1;
+    private static final int FAILED_LEASE_RETRY_ATTEMPTS = (int) (LEASE_TIME_IN_SECONDS / LEASE_UPDATE_TIME_IN_SECONDS) - 1;
+
+    static final String TABLE_LEASE = "lease";
+    static final String TABLE_LEASE_PRIORITY = "lease_priority";
+
+    private final UUID myUuid;
+
+    private final LockFactorySupport myLockFactorySupport;
+    private final LockRenewer myLockRenewer;
+    private final TimestampGenerator myTimestampGenerator = new AtomicMonotonicTimestampGenerator();
+
+    private final PreparedStatement myGetLeaseStatement;
+    private final PreparedStatement myLeaseStatement;
+    private final PreparedStatement myRemoveLeaseStatement;
+    private final PreparedStatement myCompeteStatement;
+    private final PreparedStatement myGetPriorityStatement;
+    private final PreparedStatement myRemovePriorityStatement;
+
+    private LeaseLockFactory(Builder builder)
+    {
+        String keyspaceName = builder.myKeyspaceName;
+
+        myLockFactorySupport = new LockFactorySupport(builder.myNativeConnectionProvider, builder.myHostStates,
+                builder.myStatementDecorator, keyspaceName, Arrays.asList(TABLE_LEASE, TABLE_LEASE_PRIORITY),
+                this::doTryLock, LEASE_UPDATE_TIME_IN_SECONDS, LEASE_RENEWAL_TICK_IN_SECONDS, TimeUnit.SECONDS,
+                builder.myMaxInFlightLockRenewals, builder.myMetricRegistry);
+
+        myUuid = myLockFactorySupport.getHostId();
+        myLockRenewer = myLockFactorySupport.getLockRenewer();
+        Session session = myLockFactorySupport.getSession();
+
+        myGetLeaseStatement = session.prepare(String.format(
+                "SELECT node, metadata, WRITETIME(node) AS leased_at FROM %s.%s WHERE resource = ?",
+                keyspaceName, TABLE_LEASE))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        myLeaseStatement = session.prepare(String.format(
+                "INSERT INTO %s.%s (resource, node, priority, metadata) VALUES (?, ?, ?, ?) USING TIMESTAMP ? AND TTL %d",
+                keyspaceName, TABLE_LEASE, LEASE_TIME_IN_SECONDS))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        myRemoveLeaseStatement = session.prepare(String.format(
+                "DELETE FROM %s.%s USING TIMESTAMP ? WHERE resource = ?",
+                keyspaceName, TABLE_LEASE))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        myCompeteStatement = session.prepare(String.format(
+                "INSERT INTO %s.%s (resource, node, priority) VALUES (?, ?, ?)",
+                keyspaceName, TABLE_LEASE_PRIORITY))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        myGetPriorityStatement = session.prepare(String.format(
+                "SELECT priority, node FROM %s.%s WHERE resource = ?",
+                keyspaceName, TABLE_LEASE_PRIORITY))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
+        myRemovePriorityStatement = session.prepare(String.format(
+                "DELETE FROM %s.%s WHERE resource = ? AND node = ?",
+                keyspaceName, TABLE_LEASE_PRIORITY))
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+    }
+
+    @Override
+    public DistributedLock tryLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException
+    {
+        return myLockFactorySupport.tryLock(dataCenter, resource, priority, metadata);
+    }
+
+    @Override
+    public Map<String, String> getLockMetadata(String dataCenter, String resource)
+    {
+        return myLockFactorySupport.getLockMetadata(dataCenter, resource, myGetLeaseStatement.bind(resource));
+    }
+
+    @Override
+    public boolean sufficientNodesForLocking(String dataCenter, String resource)
+    {
+        return myLockFactorySupport.sufficientNodesForLocking(dataCenter, resource);
+    }
+
+    /**
+     * Get a known locking failure for the resource.
+     * <p>
+     * Resources that are locked or being locked by this instance are reported as failures until released locally,
+     * other failures are cached for a limited time.
+     */
+    @Override
+    public Optional<LockException> getCachedFailure(String dataCenter, String resource)
+    {
+        return myLockFactorySupport.getCachedFailure(dataCenter, resource);
+    }
+
+    @Override
+    public void close()
+    {
+        myLockFactorySupport.close();
+    }
+
+    @VisibleForTesting
+    UUID getHostId()
+    {
+        return myUuid;
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    public static class Builder
+    {
+        private static final String DEFAULT_KEYSPACE_NAME = "ecchronos";
+        private static final int DEFAULT_MAX_IN_FLIGHT_LOCK_RENEWALS = 16;
+
+        private NativeConnectionProvider myNativeConnectionProvider;
+        private HostStates myHostStates;
+        private StatementDecorator myStatementDecorator;
+        private String myKeyspaceName = DEFAULT_KEYSPACE_NAME;
+        private MetricRegistry myMetricRegistry = new MetricRegistry();
+        private int myMaxInFlightLockRenewals = DEFAULT_MAX_IN_FLIGHT_LOCK_RENEWALS;
+
+        public Builder withNativeConnectionProvider(NativeConnectionProvider nativeConnectionProvider)
+        {
+            myNativeConnectionProvider = nativeConnectionProvider;
+            return this;
+        }
+
+        public Builder withHostStates(HostStates hostStates)
+        {
+            myHostStates = hostStates;
+            return this;
+        }
+
+        public Builder withStatementDecorator(StatementDecorator statementDecorator)
+        {
+            myStatementDecorator = statementDecorator;
+            return this;
+        }
+
+        public Builder withKeyspaceName(String keyspaceName)
+        {
+            myKeyspaceName = keyspaceName;
+            return this;
+        }
+
+        /**
+         * Set the metric registry used to expose the lease renewal metrics.
+         *
+         * @param metricRegistry The metric registry.
+         * @return This builder.
+         */
+        public Builder withMetricRegistry(MetricRegistry metricRegistry)
+        {
+            myMetricRegistry = metricRegistry;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of lease renewals that can be in flight at the same time.
+         *
+         * @param maxInFlightLockRenewals The maximum number of concurrent lease renewals.
+         * @return This builder.
+         */
+        public Builder withMaxInFlightLockRenewals(int maxInFlightLockRenewals)
+        {
+            myMaxInFlightLockRenewals = maxInFlightLockRenewals;
+            return this;
+        }
+
+        public LeaseLockFactory build()
+        {
+            if (myNativeConnectionProvider == null)
+            {
+                throw new IllegalArgumentException("Native connection provider cannot be null");
+            }
+
+            if (myHostStates == null)
+            {
+                throw new IllegalArgumentException("Host states cannot be null");
+            }
+
+            if (myStatementDecorator == null)
+            {
+                throw new IllegalArgumentException("Statement decorator cannot be null");
+            }
+
+            if (myMetricRegistry == null)
+            {
+                throw new IllegalArgumentException("Metric registry cannot be null");
+            }
+
+            if (myMaxInFlightLockRenewals < 1)
+            {
+                throw new IllegalArgumentException("Max in-flight lock renewals must be positive");
+            }
+
+            return new LeaseLockFactory(this);
+        }
+    }
+
+    private DistributedLock doTryLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException
+    {
+        LOG.trace("Trying lease for {} - {}", dataCenter, resource);
+
+        if (!sufficientNodesForLocking(dataCenter, resource))
+        {
+            LOG.warn("Not sufficient nodes to lease resource {} in datacenter {}", resource, dataCenter);
+            throw new LockException("Not sufficient nodes to lock");
+        }
+
+        LeaseLock leaseLock = new LeaseLock(dataCenter, resource, priority, metadata);
+
+        try
+        {
+            if (leaseLock.lease())
+            {
+                return leaseLock;
+            }
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Unable to lease resource {} in datacenter {} - {}", resource, dataCenter, e.getMessage());
+            leaseLock.releaseQuietly();
+            throw new LockException(e);
+        }
+
+        throw new LockException(String.format("Unable to lease resource %s in datacenter %s", resource, dataCenter));
+    }
+
+    private ResultSet execute(String dataCenter, Statement statement)
+    {
+        return myLockFactorySupport.execute(dataCenter, statement);
+    }
+
+    private ResultSetFuture executeAsync(String dataCenter, Statement statement)
+    {
+        return myLockFactorySupport.executeAsync(dataCenter, statement);
+    }
+
+    class LeaseLock implements DistributedLock, LockRenewer.RenewableLock
+    {
+        private final String myDataCenter;
+        private final String myResource;
+        private final int myPriority;
+        private final Map<String, String> myMetadata;
+
+        private long myLeaseTimestamp = Long.MIN_VALUE;
+        private boolean myClosed;
+
+        private volatile boolean myPriorityAnnounced;
+
+        private int myFailedRenewalAttempts;
+
+        LeaseLock(String dataCenter, String resource, int priority, Map<String, String> metadata)
+        {
+            myDataCenter = dataCenter;
+            myResource = resource;
+            myPriority = priority;
+            myMetadata = metadata;
+        }
+
+        /**
+         * Acquire the lease if it is not held by another node and no other node has announced a higher priority.
+         * <p>
+         * The lease is verified by reading it back after the write,
+         * if the lease was overwritten by another node the write is removed again.
+         */
+        boolean lease()
+        {
+            if (!compete())
+            {
+                LOG.debug("Resource {} in datacenter {} is requested with a higher priority by another node", myResource, myDataCenter);
+                return false;
+            }
+
+            Row current = execute(myDataCenter, myGetLeaseStatement.bind(myResource)).one();
+            if (current != null && !myUuid.equals(current.getUUID(COLUMN_NODE)))
+            {
+                LOG.debug("Resource {} in datacenter {} is leased by {}", myResource, myDataCenter, current.getUUID(COLUMN_NODE));
+                return false;
+            }
+
+            long timestamp = nextTimestamp();
+            if (timestamp == Long.MIN_VALUE)
+            {
+                return false;
+            }
+
+            execute(myDataCenter, myLeaseStatement.bind(myResource, myUuid, myPriority, myMetadata, timestamp));
+
+            Row written = execute(myDataCenter, myGetLeaseStatement.bind(myResource)).one();
+            if (written == null || !myUuid.equals(written.getUUID(COLUMN_NODE)) || written.getLong(COLUMN_LEASED_AT) != timestamp)
+            {
+                LOG.debug("Lease for resource {} in datacenter {} was taken by another node", myResource, myDataCenter);
+                releaseQuietly();
+                return false;
+            }
+
+            LOG.trace("Lease for resource {} acquired", myResource);
+            myLockRenewer.register(this);
+            return true;
+        }
+
+        /**
+         * Renew the lease if it is still held by this node.
+         *
+         * @return A future completed with false if the lease is held by another node.
+         */
+        @Override
+        public ListenableFuture<Boolean> renewAsync()
+        {
+            SettableFuture<Boolean> result = SettableFuture.create();
+
+            Futures.addCallback(executeAsync(myDataCenter, myGetLeaseStatement.bind(myResource)), new FutureCallback<ResultSet>()
+            {
+                @Override
+                public void onSuccess(ResultSet resultSet)
+                {
+                    Row current = resultSet.one();
+                    if (current != null && !myUuid.equals(current.getUUID(COLUMN_NODE)))
+                    {
+                        result.set(false);
+                        return;
+                    }
+
+                    long timestamp = nextTimestamp();
+                    if (timestamp == Long.MIN_VALUE)
+                    {
+                        result.set(false);
+                        return;
+                    }
+
+                    Futures.addCallback(executeAsync(myDataCenter, myLeaseStatement.bind(myResource, myUuid, myPriority, myMetadata, timestamp)),
+                            new FutureCallback<ResultSet>()
+                            {
+                                @Override
+                                public void onSuccess(ResultSet ignored)
+                                {
+                                    result.set(true);
+                                }
+
+                                @Override
+                                public void onFailure(Throwable t)
+                                {
+                                    result.setException(t);
+                                }
+                            }, MoreExecutors.directExecutor());
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    result.setException(t);
+                }
+            }, MoreExecutors.directExecutor());
+
+            return result;
+        }
+
+        @Override
+        public synchronized void renewalSucceeded()
+        {
+            myFailedRenewalAttempts = 0;
+        }
+
+        @Override
+        public void renewalFailed(Throwable error)
+        {
+            int failedAttempts;
+            synchronized (this)
+            {
+                failedAttempts = ++myFailedRenewalAttempts;
+            }
+
+            if (failedAttempts >= FAILED_LEASE_RETRY_ATTEMPTS)
+            {
+                LOG.error("Unable to renew lease for resource '{}' after {} failed attempts", myResource, failedAttempts);
+            }
+            else
+            {
+                LOG.warn("Unable to renew lease for resource '{}', {} failed attempts", myResource, failedAttempts, error);
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            if (myLockRenewer.unregister(this))
+            {
+                try
+                {
+                    release();
+
+                    if (myPriorityAnnounced)
+                    {
+                        execute(myDataCenter, myRemovePriorityStatement.bind(myResource, myUuid));
+                    }
+                }
+                finally
+                {
+                    myLockFactorySupport.getLocalLockTable().release(new Resource(myDataCenter, myResource));
+                }
+            }
+        }
+
+        /**
+         * Announce the priority of this node unless it already has a higher priority announced for the resource.
+         *
+         * @return True if no other node has announced a higher priority for the resource.
+         */
+        private boolean compete()
+        {
+            List<NodePriority> nodePriorities = myLockFactorySupport.toNodePriorities(
+                    execute(myDataCenter, myGetPriorityStatement.bind(myResource)));
+
+            int locallyHighestPriority = myPriority;
+            int globalHighPriority = myPriority;
+
+            for (NodePriority nodePriority : nodePriorities)
+            {
+                if (myUuid.equals(nodePriority.getUuid()))
+                {
+                    locallyHighestPriority = nodePriority.getPriority();
+                }
+                else
+                {
+                    globalHighPriority = Math.max(globalHighPriority, nodePriority.getPriority());
+                }
+            }
+
+            if (locallyHighestPriority <= myPriority)
+            {
+                execute(myDataCenter, myCompeteStatement.bind(myResource, myUuid, myPriority));
+                myPriorityAnnounced = true;
+            }
+            else
+            {
+                LOG.debug("Locally highest priority ({}) is higher than current ({}), will not announce", locallyHighestPriority, myPriority);
+            }
+
+            LOG.trace("Highest priority for resource {}: {}", myResource, globalHighPriority);
+            return myPriority >= globalHighPriority;
+        }
+
+        /**
+         * Generate the timestamp for the next lease write.
+         *
+         * @return The timestamp or {@link Long#MIN_VALUE} if the lease is closed.
+         */
+        private synchronized long nextTimestamp()
+        {
+            if (myClosed)
+            {
+                return Long.MIN_VALUE;
+            }
+
+            myLeaseTimestamp = myTimestampGenerator.next();
+            return myLeaseTimestamp;
+        }
+
+        /**
+         * Remove the lease using the timestamp of the last write.
+         * No writes are issued after this so any lease written later belongs to another node.
+         */
+        private void release()
+        {
+            long leaseTimestamp;
+            synchronized (this)
+            {
+                myClosed = true;
+                leaseTimestamp = myLeaseTimestamp;
+            }
+
+            if (leaseTimestamp != Long.MIN_VALUE)
+            {
+                execute(myDataCenter, myRemoveLeaseStatement.bind(leaseTimestamp, myResource));
+            }
+        }
+
+        private void releaseQuietly()
+        {
+            try
+            {
+                release();
+            }
+            catch (Exception e)
+            {
+                LOG.warn("Unable to release lease for resource {} in datacenter {}", myResource, myDataCenter, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory.Resource;
+
+/**
+ * Keeps track of the resources that are locked or being locked by this instance.
+ * <p>
+ * A lock request for a resource that is already pending or held locally would fail when competing in Cassandra,
+ * since this instance either has the lock already or is racing against itself.
+ * Such requests are rejected directly without any round trips to Cassandra.
+ * <p>
+ * Unlike the failures in the {@link LockCache} the local conflicts are not time based,
+ * a resource can be locked again as soon as the local lock is released.
+ */
+class LocalLockTable
+{
+    private final Map<Resource, State> myResources = new HashMap<>();
+
+    /**
+     * Reserve all provided resources as pending.
+     * Either all resources are reserved or none of them.
+     *
+     * @param resources The resources to reserve.
+     * @throws LockException Thrown if any of the resources is already pending or held locally.
+     */
+    synchronized void reserve(Collection<Resource> resources) throws LockException
+    {
+        for (Resource resource : resources)
+        {
+            State state = myResources.get(resource);
+            if (state != null)
+            {
+                throw conflict(resource, state);
+            }
+        }
+
+        for (Resource resource : resources)
+        {
+            myResources.put(resource, State.PENDING);
+        }
+    }
+
+    /**
+     * Mark reserved resources as held.
+     *
+     * @param resources The resources that was locked.
+     */
+    synchronized void held(Collection<Resource> resources)
+    {
+        for (Resource resource : resources)
+        {
+            myResources.replace(resource, State.PENDING, State.HELD);
+        }
+    }
+
+    synchronized void release(Collection<Resource> resources)
+    {
+        for (Resource resource : resources)
+        {
+            release(resource);
+        }
+    }
+
+    synchronized void release(Resource resource)
+    {
+        myResources.remove(resource);
+    }
+
+    /**
+     * Get the reason a lock for the resource would currently be rejected locally.
+     *
+     * @param resource The resource.
+     * @return The local conflict or empty if the resource is neither pending nor held locally.
+     */
+    synchronized Optional<LockException> getConflict(Resource resource)
+    {
+        State state = myResources.get(resource);
+        if (state == null)
+        {
+            return Optional.empty();
+        }
+
+        return Optional.of(conflict(resource, state));
+    }
+
+    private static LockException conflict(Resource resource, State state)
+    {
+        if (state == State.HELD)
+        {
+            return new LockException(String.format("Resource %s is already locked by this instance", resource));
+        }
+
+        return new LockException(String.format("Resource %s is already being locked by this instance", resource));
+    }
+
+    private enum State
+    {
+        PENDING,
+        HELD
+    }
+}
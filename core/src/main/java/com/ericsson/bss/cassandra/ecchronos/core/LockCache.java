@@ -78,6 +78,18 @@ public class LockCache
         }
     }
 
+    /**
+     * Cache a locking failure that occurred outside of {@link #getLock(String, String, int, Map)}.
+     *
+     * @param dataCenter The data center the lock is for or null if it's a global lock.
+     * @param resource The resource the lock is for.
+     * @param e The locking failure.
+     */
+    public void cacheFailure(String dataCenter, String resource, LockException e)
+    {
+        myFailureCache.put(new LockKey(dataCenter, resource), e);
+    }
+
     private void throwCachedLockException(LockException e) throws LockException
     {
         LOG.debug("Encountered cached locking failure, throwing exception", e);
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import java.io.Closeable;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.ericsson.bss.cassandra.ecchronos.connection.DataCenterAwareStatement;
+import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
+import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory.DistributedLock;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory.Resource;
+
+/**
+ * The parts shared by the Cassandra based lock factories.
+ * <p>
+ * Keeps the session and statement routing, the quorum check, the failure cache, the table of locally held
+ * resources and the renewal of held locks.
+ */
+final class LockFactorySupport implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LockFactorySupport.class);
+
+    static final String COLUMN_NODE = "node";
+    static final String COLUMN_METADATA = "metadata";
+    static final String COLUMN_PRIORITY = "priority";
+
+    private final UUID myUuid;
+
+    private final StatementDecorator myStatementDecorator;
+    private final HostStates myHostStates;
+    private final boolean myRemoteRouting;
+
+    private final Session mySession;
+    private final String myKeyspaceName;
+
+    private final ScheduledExecutorService myExecutor;
+    private final LockRenewer myLockRenewer;
+    private final LockCache myLockCache;
+    private final LocalLockTable myLocalLockTable = new LocalLockTable();
+
+    /**
+     * Create the shared lock factory parts.
+     *
+     * @param nativeConnectionProvider The connection to use.
+     * @param hostStates The host states used to check if there are enough live replicas.
+     * @param statementDecorator The decorator applied to all statements.
+     * @param keyspaceName The keyspace of the lock tables.
+     * @param tables The lock tables that must exist in the keyspace.
+     * @param lockSupplier The supplier of locks for single resources.
+     * @param renewalInterval The interval between renewals of a held lock.
+     * @param renewalTick The interval at which due renewals are performed.
+     * @param timeUnit The time unit of the intervals.
+     * @param maxInFlightLockRenewals The maximum number of concurrent renewals.
+     * @param metricRegistry The metric registry for the renewal metrics.
+     * @throws IllegalStateException If the keyspace or any of the tables does not exist.
+     */
+    LockFactorySupport(NativeConnectionProvider nativeConnectionProvider, HostStates hostStates, // NOSONAR
+            StatementDecorator statementDecorator, String keyspaceName, List<String> tables,
+            LockCache.LockSupplier lockSupplier, long renewalInterval, long renewalTick, TimeUnit timeUnit,
+            int maxInFlightLockRenewals, MetricRegistry metricRegistry)
+    {
+        myStatementDecorator = statementDecorator;
+        myHostStates = hostStates;
+        myKeyspaceName = keyspaceName;
+
+        mySession = nativeConnectionProvider.getSession();
+        myRemoteRouting = nativeConnectionProvider.getRemoteRouting();
+
+        verifySchemasExists(tables);
+
+        UUID hostId = nativeConnectionProvider.getLocalHost().getHostId();
+
+        if (hostId == null)
+        {
+            hostId = UUID.randomUUID();
+            LOG.warn("Unable to determine local nodes host id, using {} instead", hostId);
+        }
+
+        myUuid = hostId;
+
+        myExecutor = Executors.newSingleThreadScheduledExecutor();
+        myLockRenewer = new LockRenewer(myExecutor, renewalInterval, renewalTick, timeUnit, maxInFlightLockRenewals,
+                metricRegistry);
+
+        myLockCache = new LockCache(lockSupplier);
+    }
+
+    UUID getHostId()
+    {
+        return myUuid;
+    }
+
+    Session getSession()
+    {
+        return mySession;
+    }
+
+    boolean getRemoteRouting()
+    {
+        return myRemoteRouting;
+    }
+
+    LockRenewer getLockRenewer()
+    {
+        return myLockRenewer;
+    }
+
+    LocalLockTable getLocalLockTable()
+    {
+        return myLocalLockTable;
+    }
+
+    /**
+     * Try to lock a single resource through the failure cache.
+     * <p>
+     * The resource is reserved in the local lock table while locking and kept there until the lock is released.
+     */
+    DistributedLock tryLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException
+    {
+        List<Resource> resources = Collections.singletonList(new Resource(dataCenter, resource));
+        myLocalLockTable.reserve(resources);
+
+        try
+        {
+            DistributedLock lock = myLockCache.getLock(dataCenter, resource, priority, metadata);
+            myLocalLockTable.held(resources);
+            return lock;
+        }
+        catch (LockException | RuntimeException e)
+        {
+            myLocalLockTable.release(resources);
+            throw e;
+        }
+    }
+
+    /**
+     * Get a known locking failure for the resource.
+     * <p>
+     * Resources that are locked or being locked by this instance are reported as failures until released locally,
+     * other failures are cached for a limited time.
+     */
+    Optional<LockException> getCachedFailure(String dataCenter, String resource)
+    {
+        Optional<LockException> localConflict = myLocalLockTable.getConflict(new Resource(dataCenter, resource));
+        if (localConflict.isPresent())
+        {
+            return localConflict;
+        }
+
+        return myLockCache.getCachedFailure(dataCenter, resource);
+    }
+
+    LockException cacheFailure(Resource resource, LockException lockException)
+    {
+        myLockCache.cacheFailure(resource.getDataCenter(), resource.getResourceName(), lockException);
+        return lockException;
+    }
+
+    /**
+     * Read the metadata column of a lock.
+     *
+     * @param dataCenter The data center of the lock.
+     * @param resource The resource of the lock.
+     * @param statement The statement reading the lock.
+     * @return The metadata or null if the lock does not exist or could not be read.
+     */
+    Map<String, String> getLockMetadata(String dataCenter, String resource, Statement statement)
+    {
+        try
+        {
+            Row row = execute(dataCenter, statement).one();
+
+            if (row != null)
+            {
+                return row.getMap(COLUMN_METADATA, String.class, String.class);
+            }
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Unable to retrieve metadata for resource {}", resource, e);
+        }
+
+        return null;
+    }
+
+    boolean sufficientNodesForLocking(String dataCenter, String resource)
+    {
+        try
+        {
+            Set<Host> hosts = getHostsForResource(dataCenter, resource);
+
+            int quorum = hosts.size() / 2 + 1;
+            int liveNodes = liveNodes(hosts);
+
+            LOG.trace("Live nodes {}, quorum: {}", liveNodes, quorum);
+
+            return liveNodes >= quorum;
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            LOG.warn("Unable to encode resource bytes", e);
+        }
+
+        return false;
+    }
+
+    ResultSet execute(String dataCenter, Statement statement)
+    {
+        return mySession.execute(decorate(dataCenter, statement));
+    }
+
+    ResultSetFuture executeAsync(String dataCenter, Statement statement)
+    {
+        return mySession.executeAsync(decorate(dataCenter, statement));
+    }
+
+    /**
+     * Convert the rows of a priority table to the announced node priorities.
+     *
+     * @param resultSet The rows containing the node and priority columns.
+     * @return The announced node priorities.
+     */
+    List<CASLockFactory.NodePriority> toNodePriorities(ResultSet resultSet)
+    {
+        List<CASLockFactory.NodePriority> nodePriorities = new ArrayList<>();
+
+        for (Row row : resultSet)
+        {
+            int priority = row.getInt(COLUMN_PRIORITY);
+            UUID hostId = row.getUUID(COLUMN_NODE);
+
+            nodePriorities.add(new CASLockFactory.NodePriority(hostId, priority));
+        }
+
+        return nodePriorities;
+    }
+
+    @Override
+    public void close()
+    {
+        myLockRenewer.close();
+        myExecutor.shutdown();
+        try
+        {
+            if (!myExecutor.awaitTermination(1, TimeUnit.SECONDS))
+            {
+                LOG.warn("Executing tasks did not finish within one second");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            LOG.warn("Interrupted while waiting for executor to shut down", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Set<Host> getHostsForResource(String dataCenter, String resource) throws UnsupportedEncodingException
+    {
+        Set<Host> hosts = mySession.getCluster().getMetadata().getReplicas(myKeyspaceName, ByteBuffer.wrap(resource.getBytes("UTF-8")));
+
+        if (dataCenter == null)
+        {
+            return hosts;
+        }
+
+        Set<Host> dataCenterHosts = new HashSet<>();
+        for (Host host : hosts)
+        {
+            if (dataCenter.equals(host.getDatacenter()))
+            {
+                dataCenterHosts.add(host);
+            }
+        }
+
+        return dataCenterHosts;
+    }
+
+    private int liveNodes(Set<Host> hosts)
+    {
+        int live = 0;
+        for (Host host : hosts)
+        {
+            if (myHostStates.isUp(host))
+            {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    private Statement decorate(String dataCenter, Statement statement)
+    {
+        Statement executeStatement;
+
+        if (dataCenter != null && myRemoteRouting)
+        {
+            executeStatement = new DataCenterAwareStatement(statement, dataCenter);
+        }
+        else
+        {
+            executeStatement = statement;
+        }
+
+        return myStatementDecorator.apply(executeStatement);
+    }
+
+    private void verifySchemasExists(List<String> tables)
+    {
+        KeyspaceMetadata keyspaceMetadata = mySession.getCluster().getMetadata().getKeyspace(myKeyspaceName);
+        if (keyspaceMetadata == null)
+        {
+            LOG.error("Keyspace {} does not exist, it needs to be created", myKeyspaceName);
+            throw new IllegalStateException(String.format("Keyspace %s does not exist, it needs to be created", myKeyspaceName));
+        }
+
+        for (String table : tables)
+        {
+            if (keyspaceMetadata.getTable(table) == null)
+            {
+                LOG.error("Table {}.{} does not exist, it needs to be created", myKeyspaceName, table);
+                throw new IllegalStateException(String.format("Table %s.%s does not exist, it needs to be created", myKeyspaceName, table));
+            }
+        }
+    }
+}
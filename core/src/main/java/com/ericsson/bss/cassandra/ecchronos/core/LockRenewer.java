@@ -0,0 +1,265 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Renews held locks from a single periodic tick.
+ * <p>
+ * All locks that are due for renewal when the tick runs are renewed asynchronously,
+ * with at most a fixed number of renewals in flight at the same time.
+ * Locks that could not be renewed due to the in-flight limit are renewed on the following ticks,
+ * in the order they became due.
+ * A slow renewal therefore only occupies one in-flight slot instead of delaying the renewal of other locks.
+ * <p>
+ * The following metrics are exposed:
+ * <ul>
+ * <li>{@value #RENEWAL_LATENCY} - Time taken by each renewal</li>
+ * <li>{@value #RENEWAL_LAG} - Time in milliseconds between a renewal becoming due and being issued</li>
+ * <li>{@value #RENEWAL_FAILURES} - Number of failed renewals</li>
+ * <li>{@value #HELD_LOCKS} - Number of locks currently being renewed</li>
+ * </ul>
+ */
+class LockRenewer implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LockRenewer.class);
+
+    static final String RENEWAL_LATENCY = "LockRenewalLatency";
+    static final String RENEWAL_LAG = "LockRenewalLag";
+    static final String RENEWAL_FAILURES = "LockRenewalFailures";
+    static final String HELD_LOCKS = "HeldLocks";
+
+    private static final long IN_FLIGHT = Long.MAX_VALUE;
+
+    private final Map<RenewableLock, Long> myNextRenewal = new ConcurrentHashMap<>();
+    private final Semaphore myInFlightRenewals;
+    private final long myRenewalIntervalInMs;
+    private final MetricRegistry myMetricRegistry;
+    private final ScheduledFuture<?> myTickFuture;
+
+    private final Timer myRenewalLatency;
+    private final Histogram myRenewalLag;
+    private final Counter myRenewalFailures;
+
+    LockRenewer(ScheduledExecutorService executor, long renewalInterval, long tickInterval, TimeUnit timeUnit,
+            int maxInFlightRenewals, MetricRegistry metricRegistry)
+    {
+        myRenewalIntervalInMs = timeUnit.toMillis(renewalInterval);
+        myInFlightRenewals = new Semaphore(maxInFlightRenewals);
+        myMetricRegistry = metricRegistry;
+
+        myRenewalLatency = myMetricRegistry.timer(RENEWAL_LATENCY);
+        myRenewalLag = myMetricRegistry.histogram(RENEWAL_LAG);
+        myRenewalFailures = myMetricRegistry.counter(RENEWAL_FAILURES);
+        myMetricRegistry.gauge(HELD_LOCKS, () -> (Gauge<Integer>) myNextRenewal::size);
+
+        myTickFuture = executor.scheduleWithFixedDelay(this::tick, tickInterval, tickInterval, timeUnit);
+    }
+
+    /**
+     * Start renewing the provided lock, the first renewal is performed one renewal interval from now.
+     *
+     * @param lock The lock to renew.
+     */
+    void register(RenewableLock lock)
+    {
+        myNextRenewal.put(lock, System.currentTimeMillis() + myRenewalIntervalInMs);
+    }
+
+    /**
+     * Stop renewing the provided lock.
+     * A renewal that is already in flight is allowed to complete but the lock is not renewed again.
+     *
+     * @param lock The lock to stop renewing.
+     * @return True if the lock was registered.
+     */
+    boolean unregister(RenewableLock lock)
+    {
+        return myNextRenewal.remove(lock) != null;
+    }
+
+    /**
+     * Issue renewals for the locks that are due at the provided time.
+     *
+     * @param now The current time in milliseconds.
+     * @return The number of issued renewals.
+     */
+    int renewDueLocks(long now)
+    {
+        List<Map.Entry<RenewableLock, Long>> dueLocks = new ArrayList<>();
+        for (Map.Entry<RenewableLock, Long> entry : myNextRenewal.entrySet())
+        {
+            if (entry.getValue() <= now)
+            {
+                dueLocks.add(entry);
+            }
+        }
+
+        dueLocks.sort(Map.Entry.comparingByValue());
+
+        int issued = 0;
+
+        for (Map.Entry<RenewableLock, Long> entry : dueLocks)
+        {
+            if (!myInFlightRenewals.tryAcquire())
+            {
+                LOG.debug("{} in-flight lock renewals, postponing {} renewals", issued, dueLocks.size() - issued);
+                break;
+            }
+
+            RenewableLock lock = entry.getKey();
+            long due = entry.getValue();
+
+            if (myNextRenewal.replace(lock, due, IN_FLIGHT))
+            {
+                myRenewalLag.update(now - due);
+                renew(lock, now);
+                issued++;
+            }
+            else
+            {
+                myInFlightRenewals.release();
+            }
+        }
+
+        return issued;
+    }
+
+    int inFlightRenewals()
+    {
+        return myNextRenewal.values().stream().mapToInt(v -> v == IN_FLIGHT ? 1 : 0).sum();
+    }
+
+    @Override
+    public void close()
+    {
+        myTickFuture.cancel(false);
+        myNextRenewal.clear();
+
+        myMetricRegistry.remove(RENEWAL_LATENCY);
+        myMetricRegistry.remove(RENEWAL_LAG);
+        myMetricRegistry.remove(RENEWAL_FAILURES);
+        myMetricRegistry.remove(HELD_LOCKS);
+    }
+
+    private void tick()
+    {
+        try
+        {
+            renewDueLocks(System.currentTimeMillis());
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Unable to renew locks", e);
+        }
+    }
+
+    private void renew(RenewableLock lock, long issuedAt)
+    {
+        Timer.Context timerContext = myRenewalLatency.time();
+
+        ListenableFuture<Boolean> future;
+        try
+        {
+            future = lock.renewAsync();
+        }
+        catch (Exception e)
+        {
+            future = Futures.immediateFailedFuture(e);
+        }
+
+        Futures.addCallback(future, new FutureCallback<Boolean>()
+        {
+            @Override
+            public void onSuccess(Boolean applied)
+            {
+                timerContext.stop();
+
+                if (Boolean.TRUE.equals(applied))
+                {
+                    lock.renewalSucceeded();
+                    renewalDone(lock, issuedAt);
+                }
+                else
+                {
+                    failed(new LockException("CAS query failed"));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                timerContext.stop();
+                failed(t);
+            }
+
+            private void failed(Throwable t)
+            {
+                myRenewalFailures.inc();
+
+                lock.renewalFailed(t);
+                renewalDone(lock, issuedAt);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void renewalDone(RenewableLock lock, long issuedAt)
+    {
+        myNextRenewal.replace(lock, IN_FLIGHT, issuedAt + myRenewalIntervalInMs);
+        myInFlightRenewals.release();
+    }
+
+    /**
+     * A lock that is renewed by the {@link LockRenewer}.
+     * <p>
+     * The callbacks are invoked on the thread completing the renewal and should not block.
+     */
+    interface RenewableLock
+    {
+        /**
+         * Renew the lock asynchronously.
+         *
+         * @return A future that is completed with true if the lock was renewed or false if it is no longer held.
+         */
+        ListenableFuture<Boolean> renewAsync();
+
+        void renewalSucceeded();
+
+        void renewalFailed(Throwable error);
+    }
+}
@@ -18,6 +18,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -155,21 +156,39 @@ public class TableStorageStatesImpl implements TableStorageStates, Closeable
         }
     }
 
+    /**
+     * Get the sizes of all replicated tables.
+     * <p>
+     * The size metrics of all tables are found with one JMX query and the size of each table is then read from its
+     * metric, so all sizes are refreshed on every update.
+     */
     private ImmutableMap<TableReference, Long> getTableSizes(JmxProxy jmxProxy)
     {
+        ImmutableMap<TableReference, Long> previousDataSizes = myTableSizes.get();
         Map<TableReference, Long> dataSizes = new HashMap<>();
 
         if (myReplicatedTableProvider != null)
         {
-            for (TableReference tableReference : myReplicatedTableProvider.getAll())
+            Set<TableReference> tableReferences = myReplicatedTableProvider.getAll();
+            Map<TableReference, Long> diskSpaceUsed = jmxProxy.liveDiskSpaceUsed(tableReferences);
+
+            for (TableReference tableReference : tableReferences)
             {
-                long diskSpaceUsed = jmxProxy.liveDiskSpaceUsed(tableReference);
+                long tableDiskSpaceUsed = diskSpaceUsed.getOrDefault(tableReference, 0L);
 
-                LOG.debug("{} -> {}", tableReference, diskSpaceUsed);
-                dataSizes.put(tableReference, diskSpaceUsed);
+                if (previousDataSizes == null || !Long.valueOf(tableDiskSpaceUsed).equals(previousDataSizes.get(tableReference)))
+                {
+                    LOG.debug("{} -> {}", tableReference, tableDiskSpaceUsed);
+                }
+                dataSizes.put(tableReference, tableDiskSpaceUsed);
             }
         }
 
+        if (previousDataSizes != null && previousDataSizes.equals(dataSizes))
+        {
+            return previousDataSizes;
+        }
+
         return ImmutableMap.copyOf(dataSizes);
     }
 }
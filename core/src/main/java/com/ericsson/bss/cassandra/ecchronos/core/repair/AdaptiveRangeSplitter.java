@@ -0,0 +1,123 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+
+/**
+ * Decides the size of the sub ranges to repair for each virtual node based on how long earlier repair sessions took.
+ * <p>
+ * The repair cost of a virtual node is estimated in milliseconds per token from the repair sessions of the virtual node
+ * or any of its sub ranges.
+ * Successful sessions update the estimate using an exponentially weighted moving average.
+ * Failed sessions, such as sessions terminated by the hang prevention, only tell that the repair took at least as long
+ * as the session and can only increase the estimate.
+ * <p>
+ * Virtual nodes without an estimate, or that are estimated to be repaired within the target time,
+ * are repaired using the size based tokens per repair.
+ * Other virtual nodes are split so that each session is estimated to take the target time,
+ * limited to at most {@value #MAX_SUB_RANGES_PER_RANGE} sub ranges per virtual node.
+ */
+class AdaptiveRangeSplitter
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveRangeSplitter.class);
+
+    static final int MAX_SUB_RANGES_PER_RANGE = 64;
+
+    private static final double SMOOTHING_FACTOR = 0.5d;
+
+    private final Map<LongTokenRange, Double> myCostPerToken = new ConcurrentHashMap<>();
+    private final long myTargetRepairTimeInMs;
+
+    AdaptiveRangeSplitter(long targetRepairTimeInMs)
+    {
+        myTargetRepairTimeInMs = targetRepairTimeInMs;
+    }
+
+    /**
+     * Record a finished repair session.
+     *
+     * @param vnode The virtual node containing the repaired range.
+     * @param repairedRange The repaired range.
+     * @param durationInMs The time taken by the repair session.
+     * @param successful If the repair session was successful.
+     */
+    void record(LongTokenRange vnode, LongTokenRange repairedRange, long durationInMs, boolean successful)
+    {
+        double costPerToken = durationInMs / repairedRange.rangeSize().doubleValue();
+
+        Double estimate = myCostPerToken.merge(vnode, costPerToken, (previous, sample) -> successful
+                ? previous * (1 - SMOOTHING_FACTOR) + sample * SMOOTHING_FACTOR
+                : Math.max(previous, sample));
+
+        LOG.debug("Repair cost of {} estimated to {} ms after session of {} taking {} ms", vnode,
+                estimate * vnode.rangeSize().doubleValue(), repairedRange, durationInMs);
+    }
+
+    /**
+     * Get the estimated repair cost of a virtual node.
+     *
+     * @param vnode The virtual node.
+     * @return The estimated time in milliseconds to repair the full virtual node or empty if there is no estimate.
+     */
+    OptionalDouble getEstimatedRepairTimeInMs(LongTokenRange vnode)
+    {
+        Double costPerToken = myCostPerToken.get(vnode);
+        if (costPerToken == null)
+        {
+            return OptionalDouble.empty();
+        }
+
+        return OptionalDouble.of(costPerToken * vnode.rangeSize().doubleValue());
+    }
+
+    /**
+     * Get the number of tokens to repair per session for a virtual node.
+     *
+     * @param vnode The virtual node.
+     * @param sizeBasedTokensPerRepair The tokens per repair calculated from the target repair size.
+     * @return The tokens per repair, never more than the size based tokens per repair.
+     */
+    BigInteger getTokensPerRepair(LongTokenRange vnode, BigInteger sizeBasedTokensPerRepair)
+    {
+        Double costPerToken = myCostPerToken.get(vnode);
+        if (costPerToken == null || costPerToken <= 0.0d)
+        {
+            return sizeBasedTokensPerRepair;
+        }
+
+        BigInteger vnodeSize = vnode.rangeSize();
+        double tokensWithinTargetTime = myTargetRepairTimeInMs / costPerToken;
+        if (tokensWithinTargetTime >= vnodeSize.doubleValue())
+        {
+            return sizeBasedTokensPerRepair;
+        }
+
+        BigInteger minTokensPerRepair = vnodeSize.divide(BigInteger.valueOf(MAX_SUB_RANGES_PER_RANGE)).max(BigInteger.ONE);
+        BigInteger timeBasedTokensPerRepair = BigDecimal.valueOf(tokensWithinTargetTime).toBigInteger()
+                .max(minTokensPerRepair);
+
+        return timeBasedTokensPerRepair.min(sizeBasedTokensPerRepair);
+    }
+}
@@ -15,10 +15,13 @@
 package com.ericsson.bss.cassandra.ecchronos.core.repair;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import com.datastax.driver.core.*;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistoryProvider;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.ReplicatedTableProvider;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReferenceFactory;
@@ -45,14 +48,23 @@ public class DefaultRepairConfigurationProvider implements SchemaChangeListener,
         myTableReferenceFactory = Preconditions.checkNotNull(builder.myTableReferenceFactory,
                 "Table reference factory must be set");
 
+        List<TableReference> tableReferences = new ArrayList<>();
+
         for (KeyspaceMetadata keyspaceMetadata : myCluster.getMetadata().getKeyspaces())
         {
             String keyspaceName = keyspaceMetadata.getName();
             if (myReplicatedTableProvider.accept(keyspaceName))
             {
-                allTableOperation(keyspaceName, this::updateConfiguration);
+                allTableOperation(keyspaceName, tableReferences::add);
             }
         }
+
+        if (builder.myRepairHistoryProvider != null)
+        {
+            builder.myRepairHistoryProvider.prefetch(tableReferences);
+        }
+
+        tableReferences.forEach(this::updateConfiguration);
     }
 
     @Override
@@ -138,6 +150,7 @@ public class DefaultRepairConfigurationProvider implements SchemaChangeListener,
         private RepairScheduler myRepairScheduler;
         private Function<TableReference, RepairConfiguration> myRepairConfigurationFunction;
         private TableReferenceFactory myTableReferenceFactory;
+        private RepairHistoryProvider myRepairHistoryProvider;
 
         public Builder withCluster(Cluster cluster)
         {
@@ -175,6 +188,18 @@ public class DefaultRepairConfigurationProvider implements SchemaChangeListener,
             return this;
         }
 
+        /**
+         * Set the repair history provider used to prefetch the repair history of all tables at startup.
+         *
+         * @param repairHistoryProvider The repair history provider.
+         * @return The builder
+         */
+        public Builder withRepairHistoryProvider(RepairHistoryProvider repairHistoryProvider)
+        {
+            myRepairHistoryProvider = repairHistoryProvider;
+            return this;
+        }
+
         public DefaultRepairConfigurationProvider build()
         {
             DefaultRepairConfigurationProvider configurationProvider = new DefaultRepairConfigurationProvider(this);
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timer shared by all repair tasks to detect repairs that have stopped making progress.
+ * <p>
+ * A watched repair only records the time of its last activity,
+ * so progress notifications does not schedule or cancel any timer tasks.
+ * All watches are checked from a single periodic tick and the ones that have been inactive
+ * for longer than the timeout are expired.
+ * The precision of the timeout is therefore one tick.
+ */
+class HangPreventionTimer implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HangPreventionTimer.class);
+
+    private final Set<Watch> myWatches = ConcurrentHashMap.newKeySet();
+    private final long myTimeoutInNanos;
+    private final ScheduledFuture<?> myTickFuture;
+
+    HangPreventionTimer(ScheduledExecutorService executor, long timeout, long tickInterval, TimeUnit timeUnit)
+    {
+        myTimeoutInNanos = timeUnit.toNanos(timeout);
+        myTickFuture = executor.scheduleWithFixedDelay(() -> expire(System.nanoTime()), tickInterval, tickInterval, timeUnit);
+    }
+
+    /**
+     * Start watching an activity.
+     *
+     * @param onHang Invoked from the timer if the activity has been inactive for longer than the timeout.
+     * @return The watch used to report activity and to stop watching.
+     */
+    Watch watch(Runnable onHang)
+    {
+        Watch watch = new Watch(onHang);
+        myWatches.add(watch);
+        return watch;
+    }
+
+    /**
+     * Expire all watches that have been inactive for longer than the timeout.
+     *
+     * @param now The current time in nanoseconds.
+     * @return The number of expired watches.
+     */
+    int expire(long now)
+    {
+        int expired = 0;
+
+        for (Watch watch : myWatches)
+        {
+            if (now - watch.myLastActivity >= myTimeoutInNanos && myWatches.remove(watch))
+            {
+                expired++;
+                try
+                {
+                    watch.myOnHang.run();
+                }
+                catch (RuntimeException e)
+                {
+                    LOG.error("Unable to handle hanging activity", e);
+                }
+            }
+        }
+
+        return expired;
+    }
+
+    int watched()
+    {
+        return myWatches.size();
+    }
+
+    @Override
+    public void close()
+    {
+        myTickFuture.cancel(false);
+        myWatches.clear();
+    }
+
+    final class Watch
+    {
+        private final Runnable myOnHang;
+
+        private volatile long myLastActivity = System.nanoTime();
+
+        private Watch(Runnable onHang)
+        {
+            myOnHang = onHang;
+        }
+
+        void touch()
+        {
+            myLastActivity = System.nanoTime();
+        }
+
+        void cancel()
+        {
+            myWatches.remove(this);
+        }
+    }
+}
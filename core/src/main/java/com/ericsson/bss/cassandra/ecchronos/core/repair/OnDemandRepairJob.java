@@ -50,6 +50,7 @@ public class OnDemandRepairJob extends ScheduledJob
     private final RepairLockType myRepairLockType;
     private final Consumer<UUID> myOnFinishedHook;
     private final RepairHistory myRepairHistory;
+    private final RepairTaskExecutor myRepairTaskExecutor;
 
     private final TableRepairMetrics myTableRepairMetrics;
 
@@ -72,6 +73,7 @@ public class OnDemandRepairJob extends ScheduledJob
         myRepairLockType = Preconditions.checkNotNull(builder.repairLockType, "Repair lock type must be set");
         myOnFinishedHook = Preconditions.checkNotNull(builder.onFinishedHook, "On finished hook must be set");
         myRepairHistory = Preconditions.checkNotNull(builder.repairHistory, "Repair history must be set");
+        myRepairTaskExecutor = Preconditions.checkNotNull(builder.repairTaskExecutor, "Repair task executor must be set");
 
         myTasks = createRepairTasks(myOngoingJob.getTokens(), myOngoingJob.getRepairedTokens());
         myTotalTasks = myTasks.size();
@@ -118,6 +120,7 @@ public class OnDemandRepairJob extends ScheduledJob
                     .withRepairLockFactory(repairLockFactory)
                     .withRepairHistory(myRepairHistory)
                     .withJobId(getId())
+                    .withRepairTaskExecutor(myRepairTaskExecutor)
                     .build(Priority.HIGHEST.getValue()), groupTokenRange);
         }
         return taskMap;
@@ -212,6 +215,12 @@ public class OnDemandRepairJob extends ScheduledJob
         return getState().equals(State.RUNNABLE);
     }
 
+    @Override
+    public long getRunnableTime()
+    {
+        return -1;
+    }
+
     @Override
     public State getState()
     {
@@ -255,6 +264,7 @@ public class OnDemandRepairJob extends ScheduledJob
         };
         private RepairHistory repairHistory;
         private OngoingJob ongoingJob;
+        private RepairTaskExecutor repairTaskExecutor;
 
         public Builder withJmxProxyFactory(JmxProxyFactory jmxProxyFactory)
         {
@@ -298,6 +308,12 @@ public class OnDemandRepairJob extends ScheduledJob
             return this;
         }
 
+        Builder withRepairTaskExecutor(RepairTaskExecutor repairTaskExecutor)
+        {
+            this.repairTaskExecutor = repairTaskExecutor;
+            return this;
+        }
+
         public OnDemandRepairJob build()
         {
             return new OnDemandRepairJob(this);
@@ -56,6 +56,7 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
     private final RepairConfiguration myRepairConfiguration;
     private final RepairHistory myRepairHistory;
     private final OnDemandStatus myOnDemandStatus;
+    private final RepairTaskExecutor myRepairTaskExecutor = new RepairTaskExecutor();
 
     private OnDemandRepairSchedulerImpl(Builder builder)
     {
@@ -110,6 +111,8 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
 
             myScheduledJobs.clear();
         }
+
+        myRepairTaskExecutor.close();
     }
 
     @Override
@@ -195,6 +198,7 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
                 .withRepairConfiguration(myRepairConfiguration)
                 .withRepairHistory(myRepairHistory)
                 .withOngoingJob(ongoingJob)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .build();
         return job;
     }
@@ -209,6 +213,7 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
                 .withRepairConfiguration(myRepairConfiguration)
                 .withRepairHistory(myRepairHistory)
                 .withOngoingJob(ongoingJob)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .build();
         return job;
     }
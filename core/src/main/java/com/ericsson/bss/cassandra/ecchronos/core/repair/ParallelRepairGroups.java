@@ -0,0 +1,217 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.ScheduledJobException;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledTask;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * A scheduled task that repairs multiple {@link RepairGroup RepairGroups} of a table in parallel.
+ * <p>
+ * The locks of all repair groups are taken together before any of them are run,
+ * so the repair groups are running under the same locks as if they were run one at a time.
+ * All repair groups are started together and each of them runs its repair tasks sequentially,
+ * the task is completed when all repair groups have completed.
+ * <p>
+ * Use {@link #partition(List, int, int)} to create sets of repair groups that can be repaired in parallel.
+ */
+class ParallelRepairGroups extends ScheduledTask
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelRepairGroups.class);
+
+    private final List<RepairGroup> myRepairGroups;
+    private final RepairLockFactory myRepairLockFactory;
+
+    ParallelRepairGroups(int priority, List<RepairGroup> repairGroups, RepairLockFactory repairLockFactory)
+    {
+        super(priority);
+        Preconditions.checkArgument(!repairGroups.isEmpty(), "Repair groups must not be empty");
+        myRepairGroups = Collections.unmodifiableList(new ArrayList<>(repairGroups));
+        myRepairLockFactory = Preconditions.checkNotNull(repairLockFactory, "Repair lock factory must be set");
+    }
+
+    @Override
+    public boolean execute() throws ScheduledJobException
+    {
+        try
+        {
+            return executeAsync().get();
+        }
+        catch (InterruptedException e)
+        {
+            LOG.info("{} thread was interrupted", this);
+            Thread.currentThread().interrupt();
+            throw new ScheduledJobException(e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new ScheduledJobException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync()
+    {
+        if (myRepairGroups.size() == 1)
+        {
+            return myRepairGroups.get(0).executeAsync();
+        }
+
+        LOG.debug("Running {} repair groups in parallel", myRepairGroups.size());
+
+        CompletableFuture<Boolean> result = CompletableFuture.completedFuture(true);
+        for (RepairGroup repairGroup : myRepairGroups)
+        {
+            result = result.thenCombine(executeAsync(repairGroup), Boolean::logicalAnd);
+        }
+
+        return result;
+    }
+
+    private CompletableFuture<Boolean> executeAsync(RepairGroup repairGroup)
+    {
+        CompletableFuture<Boolean> run;
+        try
+        {
+            run = repairGroup.executeAsync();
+        }
+        catch (RuntimeException e)
+        {
+            run = new CompletableFuture<>();
+            run.completeExceptionally(e);
+        }
+
+        return run.handle((successful, error) ->
+        {
+            if (error != null)
+            {
+                LOG.warn("Encountered issue when running repair group",
+                        error instanceof CompletionException ? error.getCause() : error);
+                return false;
+            }
+
+            return Boolean.TRUE.equals(successful);
+        });
+    }
+
+    @Override
+    public LockFactory.DistributedLock getLock(LockFactory lockFactory) throws LockException
+    {
+        Set<RepairResource> repairResources = new HashSet<>();
+        for (RepairGroup repairGroup : myRepairGroups)
+        {
+            repairResources.addAll(repairGroup.getRepairResources());
+        }
+
+        return myRepairLockFactory.getLock(lockFactory, repairResources, myRepairGroups.get(0).getLockMetadata(),
+                myPriority);
+    }
+
+    @VisibleForTesting
+    List<RepairGroup> getRepairGroups()
+    {
+        return myRepairGroups;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Parallel %s", myRepairGroups.get(0));
+    }
+
+    /**
+     * Partition the repair groups into sets of repair groups that can be repaired in parallel.
+     * <p>
+     * The repair groups are added in order to the first set that has room for it,
+     * so that the repair groups that would have been repaired first are still repaired first.
+     *
+     * @param repairGroups The repair groups ordered by the order they should be repaired in.
+     * @param parallelRepairGroups The maximum number of repair groups in each set.
+     * @param sessionsPerNode The maximum number of repair groups in each set that a single node, identified by its host id,
+     * can be part of.
+     * @return The sets of repair groups.
+     */
+    static List<List<RepairGroup>> partition(List<RepairGroup> repairGroups, int parallelRepairGroups,
+            int sessionsPerNode)
+    {
+        List<List<RepairGroup>> partitions = new ArrayList<>();
+        List<Map<UUID, Integer>> sessions = new ArrayList<>();
+
+        for (RepairGroup repairGroup : repairGroups)
+        {
+            Set<Node> replicas = repairGroup.getReplicaRepairGroup().getReplicas();
+
+            int index = 0;
+            while (index < partitions.size()
+                    && !fits(partitions.get(index), sessions.get(index), replicas, parallelRepairGroups, sessionsPerNode))
+            {
+                index++;
+            }
+
+            if (index == partitions.size())
+            {
+                partitions.add(new ArrayList<>());
+                sessions.add(new HashMap<>());
+            }
+
+            partitions.get(index).add(repairGroup);
+            for (Node replica : replicas)
+            {
+                sessions.get(index).merge(replica.getId(), 1, Integer::sum);
+            }
+        }
+
+        return partitions;
+    }
+
+    private static boolean fits(List<RepairGroup> partition, Map<UUID, Integer> sessions, Set<Node> replicas,
+            int parallelRepairGroups, int sessionsPerNode)
+    {
+        if (partition.size() >= parallelRepairGroups)
+        {
+            return false;
+        }
+
+        for (Node replica : replicas)
+        {
+            if (sessions.getOrDefault(replica.getId(), 0) >= sessionsPerNode)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
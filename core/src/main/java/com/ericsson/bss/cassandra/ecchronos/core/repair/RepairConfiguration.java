@@ -24,6 +24,8 @@ public class RepairConfiguration
 {
     public static final double NO_UNWIND = 0.0d;
     public static final long FULL_REPAIR_SIZE = Long.MAX_VALUE;
+    public static final long NO_TARGET_REPAIR_TIME = Long.MAX_VALUE;
+    public static final long NO_COALESCING = 0L;
 
     private static final long DEFAULT_REPAIR_INTERVAL_IN_MS = TimeUnit.DAYS.toMillis(7);
     private static final long DEFAULT_REPAIR_WARNING_TIME_IN_MS = TimeUnit.DAYS.toMillis(8);
@@ -31,6 +33,10 @@ public class RepairConfiguration
     private static final RepairOptions.RepairParallelism DEFAULT_REPAIR_PARALLELISM = RepairOptions.RepairParallelism.PARALLEL;
     private static final double DEFAULT_UNWIND_RATIO = NO_UNWIND;
     private static final long DEFAULT_TARGET_REPAIR_SIZE_IN_BYTES = FULL_REPAIR_SIZE;
+    private static final long DEFAULT_TARGET_REPAIR_TIME_IN_MS = NO_TARGET_REPAIR_TIME;
+    private static final int DEFAULT_PARALLEL_REPAIR_GROUPS = 1;
+    private static final int DEFAULT_SESSIONS_PER_NODE = 1;
+    private static final long DEFAULT_COALESCE_SIZE_IN_BYTES = NO_COALESCING;
 
     public static final RepairConfiguration DEFAULT = newBuilder().build();
     public static final RepairConfiguration DISABLED = newBuilder().withRepairInterval(0, TimeUnit.MILLISECONDS).build();
@@ -41,6 +47,10 @@ public class RepairConfiguration
     private final long myRepairErrorTimeInMs;
     private final double myRepairUnwindRatio;
     private final long myTargetRepairSizeInBytes;
+    private final long myTargetRepairTimeInMs;
+    private final int myParallelRepairGroups;
+    private final int mySessionsPerNode;
+    private final long myCoalesceSizeInBytes;
 
     private RepairConfiguration(Builder builder)
     {
@@ -50,6 +60,10 @@ public class RepairConfiguration
         myRepairErrorTimeInMs = builder.myRepairErrorTimeInMs;
         myRepairUnwindRatio = builder.myRepairUnwindRatio;
         myTargetRepairSizeInBytes = builder.myTargetRepairSizeInBytes;
+        myTargetRepairTimeInMs = builder.myTargetRepairTimeInMs;
+        myParallelRepairGroups = builder.myParallelRepairGroups;
+        mySessionsPerNode = builder.mySessionsPerNode;
+        myCoalesceSizeInBytes = builder.myCoalesceSizeInBytes;
     }
 
     public RepairOptions.RepairParallelism getRepairParallelism()
@@ -82,6 +96,26 @@ public class RepairConfiguration
         return myTargetRepairSizeInBytes;
     }
 
+    public long getTargetRepairTimeInMs()
+    {
+        return myTargetRepairTimeInMs;
+    }
+
+    public int getParallelRepairGroups()
+    {
+        return myParallelRepairGroups;
+    }
+
+    public int getSessionsPerNode()
+    {
+        return mySessionsPerNode;
+    }
+
+    public long getCoalesceSizeInBytes()
+    {
+        return myCoalesceSizeInBytes;
+    }
+
     public static Builder newBuilder(RepairConfiguration from)
     {
         return new Builder(from);
@@ -114,13 +148,17 @@ public class RepairConfiguration
                 myRepairErrorTimeInMs == that.myRepairErrorTimeInMs &&
                 Double.compare(that.myRepairUnwindRatio, myRepairUnwindRatio) == 0 &&
                 myTargetRepairSizeInBytes == that.myTargetRepairSizeInBytes &&
+                myTargetRepairTimeInMs == that.myTargetRepairTimeInMs &&
+                myParallelRepairGroups == that.myParallelRepairGroups &&
+                mySessionsPerNode == that.mySessionsPerNode &&
+                myCoalesceSizeInBytes == that.myCoalesceSizeInBytes &&
                 myRepairParallelism == that.myRepairParallelism;
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(myRepairParallelism, myRepairIntervalInMs, myRepairWarningTimeInMs, myRepairErrorTimeInMs, myRepairUnwindRatio, myTargetRepairSizeInBytes);
+        return Objects.hash(myRepairParallelism, myRepairIntervalInMs, myRepairWarningTimeInMs, myRepairErrorTimeInMs, myRepairUnwindRatio, myTargetRepairSizeInBytes, myTargetRepairTimeInMs, myParallelRepairGroups, mySessionsPerNode, myCoalesceSizeInBytes);
     }
 
     public static class Builder
@@ -131,6 +169,10 @@ public class RepairConfiguration
         private long myRepairErrorTimeInMs = DEFAULT_REPAIR_ERROR_TIME_IN_MS;
         private double myRepairUnwindRatio = DEFAULT_UNWIND_RATIO;
         private long myTargetRepairSizeInBytes = DEFAULT_TARGET_REPAIR_SIZE_IN_BYTES;
+        private long myTargetRepairTimeInMs = DEFAULT_TARGET_REPAIR_TIME_IN_MS;
+        private int myParallelRepairGroups = DEFAULT_PARALLEL_REPAIR_GROUPS;
+        private int mySessionsPerNode = DEFAULT_SESSIONS_PER_NODE;
+        private long myCoalesceSizeInBytes = DEFAULT_COALESCE_SIZE_IN_BYTES;
 
         public Builder()
         {
@@ -144,6 +186,11 @@ public class RepairConfiguration
             myRepairWarningTimeInMs = from.getRepairWarningTimeInMs();
             myRepairErrorTimeInMs = from.getRepairErrorTimeInMs();
             myRepairUnwindRatio = from.getRepairUnwindRatio();
+            myTargetRepairSizeInBytes = from.getTargetRepairSizeInBytes();
+            myTargetRepairTimeInMs = from.getTargetRepairTimeInMs();
+            myParallelRepairGroups = from.getParallelRepairGroups();
+            mySessionsPerNode = from.getSessionsPerNode();
+            myCoalesceSizeInBytes = from.getCoalesceSizeInBytes();
         }
 
         /**
@@ -235,6 +282,89 @@ public class RepairConfiguration
             return this;
         }
 
+        /**
+         * Set the target time for each repair session.
+         *
+         * The time taken by earlier repair sessions is used to estimate the repair cost of each virtual node.
+         * Virtual nodes that are estimated to take longer than the target time are repaired in smaller sub ranges.
+         * Use {@link #NO_TARGET_REPAIR_TIME} to only use the target repair size, this is the default.
+         *
+         * @param targetRepairTime The target time per repair session
+         * @param timeUnit The time unit of the target time
+         * @return The builder
+         * @see #withTargetRepairSizeInBytes(long)
+         */
+        public Builder withTargetRepairTime(long targetRepairTime, TimeUnit timeUnit)
+        {
+            myTargetRepairTimeInMs = targetRepairTime == NO_TARGET_REPAIR_TIME
+                    ? NO_TARGET_REPAIR_TIME
+                    : timeUnit.toMillis(targetRepairTime);
+            return this;
+        }
+
+        /**
+         * Set the maximum number of replica repair groups of a table to repair in parallel.
+         *
+         * Replica repair groups are only repaired in parallel if the nodes involved are not part of more than
+         * the allowed sessions per node.
+         * The locks of all replica repair groups repaired in parallel are taken together.
+         * A value of 1 repairs the replica repair groups one at a time.
+         *
+         * @param parallelRepairGroups The maximum number of replica repair groups to repair in parallel
+         * @return The builder
+         * @see #withSessionsPerNode(int)
+         */
+        public Builder withParallelRepairGroups(int parallelRepairGroups)
+        {
+            if (parallelRepairGroups < 1)
+            {
+                throw new IllegalArgumentException("Parallel repair groups must be at least 1");
+            }
+
+            myParallelRepairGroups = parallelRepairGroups;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of parallel repair sessions a single node can be part of.
+         *
+         * This only has an effect when replica repair groups are repaired in parallel.
+         * A value of 1 only repairs replica repair groups in parallel if they do not share any nodes.
+         *
+         * @param sessionsPerNode The maximum number of parallel repair sessions per node
+         * @return The builder
+         * @see #withParallelRepairGroups(int)
+         */
+        public Builder withSessionsPerNode(int sessionsPerNode)
+        {
+            if (sessionsPerNode < 1)
+            {
+                throw new IllegalArgumentException("Sessions per node must be at least 1");
+            }
+
+            mySessionsPerNode = sessionsPerNode;
+            return this;
+        }
+
+        /**
+         * Set the target size in bytes for coalescing sub ranges into a single repair command.
+         *
+         * Sub ranges of the same replicas are repaired using a single repair command until the estimated
+         * amount of data in the command reaches the target size.
+         * Cassandra repairs all sub ranges of a command in the same repair session, so a failed session fails
+         * all sub ranges of the command. Each sub range is still tracked individually in the repair history.
+         * Use {@link #NO_COALESCING} to repair each sub range using a separate repair command.
+         *
+         * @param coalesceSizeInBytes The target data per repair command
+         * @return The builder
+         * @see #withTargetRepairSizeInBytes(long)
+         */
+        public Builder withCoalesceSizeInBytes(long coalesceSizeInBytes)
+        {
+            myCoalesceSizeInBytes = coalesceSizeInBytes;
+            return this;
+        }
+
         public RepairConfiguration build()
         {
             return new RepairConfiguration(this);
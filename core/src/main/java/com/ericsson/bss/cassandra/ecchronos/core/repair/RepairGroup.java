@@ -32,7 +32,17 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
 import java.util.*;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scheduled task that repairs the ranges of a {@link ReplicaRepairGroup} using one repair task at a time.
+ * <p>
+ * The repair tasks are chained through their futures, the next repair task is started by the completion of the
+ * previous one after the unwind delay, so no thread waits for the repairs while the lock of the group is held.
+ */
 public class RepairGroup extends ScheduledTask
 {
     private static final Logger LOG = LoggerFactory.getLogger(RepairGroup.class);
@@ -40,6 +50,8 @@ public class RepairGroup extends ScheduledTask
     private static final String LOCK_METADATA_KEYSPACE = "keyspace";
     private static final String LOCK_METADATA_TABLE = "table";
 
+    static final int MAX_RANGES_PER_REPAIR = 64;
+
     private final TableReference myTableReference;
     private final RepairConfiguration myRepairConfiguration;
     private final ReplicaRepairGroup myReplicaRepairGroup;
@@ -48,9 +60,12 @@ public class RepairGroup extends ScheduledTask
     private final RepairResourceFactory myRepairResourceFactory;
     private final RepairLockFactory myRepairLockFactory;
     private final BigInteger myTokensPerRepair;
+    private final BigInteger myTokensPerCommand;
     private final List<TableRepairPolicy> myRepairPolicies;
     private final RepairHistory myRepairHistory;
     private final UUID myJobId;
+    private final AdaptiveRangeSplitter myRangeSplitter;
+    private final RepairTaskExecutor myRepairTaskExecutor;
 
     public RepairGroup(int priority, Builder builder)
     {
@@ -63,48 +78,136 @@ public class RepairGroup extends ScheduledTask
         myRepairResourceFactory = Preconditions.checkNotNull(builder.repairResourceFactory, "Repair resource factory must be set");
         myRepairLockFactory = Preconditions.checkNotNull(builder.repairLockFactory, "Repair lock factory must be set");
         myTokensPerRepair = Preconditions.checkNotNull(builder.tokensPerRepair, "Tokens per repair must be set");
+        myTokensPerCommand = Preconditions.checkNotNull(builder.tokensPerCommand, "Tokens per command must be set");
         myRepairPolicies = new ArrayList<>(Preconditions.checkNotNull(builder.repairPolicies, "Repair policies must be set"));
         myRepairHistory = Preconditions.checkNotNull(builder.repairHistory, "Repair history must be set");
         myJobId = Preconditions.checkNotNull(builder.jobId, "Job id must be set");
+        myRangeSplitter = builder.rangeSplitter;
+        myRepairTaskExecutor = Preconditions.checkNotNull(builder.repairTaskExecutor, "Repair task executor must be set");
     }
 
+    /**
+     * Run the repair tasks of the group and wait for them to finish.
+     *
+     * @return True if all repair tasks were successful.
+     * @throws ScheduledJobException Thrown if the thread was interrupted while waiting.
+     */
     @Override
-    public boolean execute()
+    public boolean execute() throws ScheduledJobException
+    {
+        try
+        {
+            return executeAsync().get();
+        }
+        catch (InterruptedException e)
+        {
+            LOG.info("{} thread was interrupted", this);
+            Thread.currentThread().interrupt();
+            throw new ScheduledJobException(e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new ScheduledJobException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync()
     {
         LOG.debug("Table {} running repair job {}", myTableReference, myReplicaRepairGroup);
-        boolean successful = true;
+        return executeAsync(getRepairTasks().iterator(), true);
+    }
 
-        for (RepairTask repairTask : getRepairTasks())
+    /**
+     * Run the remaining repair tasks one at a time.
+     * <p>
+     * Repair tasks that complete directly are run in a loop, the next repair task after a repair task that completes
+     * in the background is started when it has completed.
+     */
+    private CompletableFuture<Boolean> executeAsync(Iterator<RepairTask> repairTasks, boolean successfulBefore)
+    {
+        boolean successful = successfulBefore;
+
+        while (repairTasks.hasNext())
         {
             if (!shouldContinue())
             {
                 LOG.info("Repair of {} was stopped by policy, will continue later", this);
-                successful = false;
-                break;
+                return CompletableFuture.completedFuture(false);
             }
 
-            try
+            CompletableFuture<Boolean> repair = repair(repairTasks.next());
+            if (!repair.isDone())
             {
-                repairTask.execute();
+                boolean successfulSoFar = successful;
+                return repair.thenCompose(repaired -> executeAsync(repairTasks, successfulSoFar && repaired));
             }
-            catch (ScheduledJobException e)
+
+            successful &= repair.join();
+        }
+
+        return CompletableFuture.completedFuture(successful);
+    }
+
+    /**
+     * Run the repair task and wait for the unwind delay after it has finished.
+     *
+     * @return A future completed with true if the repair was successful.
+     */
+    private CompletableFuture<Boolean> repair(RepairTask repairTask)
+    {
+        long start = System.nanoTime();
+
+        return repairTask.executeAsync().handle((v, error) ->
+        {
+            recordRepairTime(repairTask, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), error == null);
+
+            if (error != null)
             {
-                LOG.warn("Encountered issue when running repair task {}", repairTask, e);
-                successful = false;
+                LOG.warn("Encountered issue when running repair task {}", repairTask,
+                        error instanceof CompletionException ? error.getCause() : error);
+                return false;
+            }
+
+            return true;
+        }).thenCompose(repaired -> myRepairTaskExecutor
+                .delay(repairTask.getUnwindDelayInMs(System.nanoTime() - start))
+                .thenApply(v -> repaired));
+    }
+
+    /**
+     * Record the repair time of the ranges of the repair task for the range splitter.
+     * <p>
+     * All ranges of a repair task are repaired by the same repair command,
+     * so the time is divided between the ranges based on their size.
+     */
+    private void recordRepairTime(RepairTask repairTask, long durationInMs, boolean successful)
+    {
+        if (myRangeSplitter == null)
+        {
+            return;
+        }
+
+        Set<LongTokenRange> repairedRanges = repairTask.getTokenRanges();
+        double totalTokens = 0.0d;
+        for (LongTokenRange repairedRange : repairedRanges)
+        {
+            totalTokens += repairedRange.rangeSize().doubleValue();
+        }
+
+        for (LongTokenRange repairedRange : repairedRanges)
+        {
+            long rangeDurationInMs = (long) (durationInMs * repairedRange.rangeSize().doubleValue() / totalTokens);
 
-                if (e.getCause() instanceof InterruptedException)
+            for (LongTokenRange vnode : myReplicaRepairGroup)
+            {
+                if (vnode.isCovering(repairedRange))
                 {
-                    LOG.info("{} thread was interrupted", this);
+                    myRangeSplitter.record(vnode, repairedRange, rangeDurationInMs, successful);
                     break;
                 }
             }
-            finally
-            {
-                repairTask.cleanup();
-            }
         }
-
-        return successful;
     }
 
     private boolean shouldContinue()
@@ -114,13 +217,26 @@ public class RepairGroup extends ScheduledTask
 
     @Override
     public LockFactory.DistributedLock getLock(LockFactory lockFactory) throws LockException
+    {
+        return myRepairLockFactory.getLock(lockFactory, getRepairResources(), getLockMetadata(), myPriority);
+    }
+
+    Set<RepairResource> getRepairResources()
+    {
+        return myRepairResourceFactory.getRepairResources(myReplicaRepairGroup);
+    }
+
+    Map<String, String> getLockMetadata()
     {
         Map<String, String> metadata = new HashMap<>();
         metadata.put(LOCK_METADATA_KEYSPACE, myTableReference.getKeyspace());
         metadata.put(LOCK_METADATA_TABLE, myTableReference.getTable());
+        return metadata;
+    }
 
-        Set<RepairResource> repairResources = myRepairResourceFactory.getRepairResources(myReplicaRepairGroup);
-        return myRepairLockFactory.getLock(lockFactory, repairResources, metadata, myPriority);
+    ReplicaRepairGroup getReplicaRepairGroup()
+    {
+        return myReplicaRepairGroup;
     }
 
     @Override
@@ -129,6 +245,14 @@ public class RepairGroup extends ScheduledTask
         return String.format("Repair job of %s", myTableReference);
     }
 
+    /**
+     * Get the repair tasks for the replica repair group.
+     * <p>
+     * The sub ranges of the virtual nodes are coalesced in order into repair tasks of at most the tokens per command,
+     * with at least one sub range and at most {@value #MAX_RANGES_PER_REPAIR} sub ranges per repair task.
+     *
+     * @return The repair tasks.
+     */
     @VisibleForTesting
     Collection<RepairTask> getRepairTasks()
     {
@@ -141,20 +265,49 @@ public class RepairGroup extends ScheduledTask
                 .withRepairConfiguration(myRepairConfiguration)
                 .withReplicas(myReplicaRepairGroup.getReplicas())
                 .withRepairHistory(myRepairHistory)
-                .withJobId(myJobId);
+                .withJobId(myJobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor);
+
+        List<LongTokenRange> coalescedRanges = new ArrayList<>();
+        BigInteger coalescedTokens = BigInteger.ZERO;
 
         for (LongTokenRange range : myReplicaRepairGroup)
         {
-            for (LongTokenRange subRange : new TokenSubRangeUtil(range).generateSubRanges(myTokensPerRepair))
+            BigInteger tokensPerRepair = myRangeSplitter == null
+                    ? myTokensPerRepair
+                    : myRangeSplitter.getTokensPerRepair(range, myTokensPerRepair);
+
+            for (LongTokenRange subRange : new TokenSubRangeUtil(range).generateSubRanges(tokensPerRepair))
             {
-                builder.withTokenRanges(Collections.singletonList(subRange));
-                tasks.add(builder.build());
+                BigInteger subRangeTokens = subRange.rangeSize();
+
+                if (!coalescedRanges.isEmpty() && !fitsInCommand(coalescedRanges, coalescedTokens.add(subRangeTokens)))
+                {
+                    builder.withTokenRanges(coalescedRanges);
+                    tasks.add(builder.build());
+                    coalescedRanges.clear();
+                    coalescedTokens = BigInteger.ZERO;
+                }
+
+                coalescedRanges.add(subRange);
+                coalescedTokens = coalescedTokens.add(subRangeTokens);
             }
         }
 
+        if (!coalescedRanges.isEmpty())
+        {
+            builder.withTokenRanges(coalescedRanges);
+            tasks.add(builder.build());
+        }
+
         return tasks;
     }
 
+    private boolean fitsInCommand(List<LongTokenRange> coalescedRanges, BigInteger tokens)
+    {
+        return coalescedRanges.size() < MAX_RANGES_PER_REPAIR && tokens.compareTo(myTokensPerCommand) <= 0;
+    }
+
     public static Builder newBuilder()
     {
         return new Builder();
@@ -164,6 +317,7 @@ public class RepairGroup extends ScheduledTask
     {
         private List<TableRepairPolicy> repairPolicies = new ArrayList<>();
         private BigInteger tokensPerRepair = LongTokenRange.FULL_RANGE;
+        private BigInteger tokensPerCommand = BigInteger.ZERO;
 
         private TableReference tableReference;
         private RepairConfiguration repairConfiguration;
@@ -174,6 +328,8 @@ public class RepairGroup extends ScheduledTask
         private RepairLockFactory repairLockFactory;
         private RepairHistory repairHistory;
         private UUID jobId;
+        private AdaptiveRangeSplitter rangeSplitter;
+        private RepairTaskExecutor repairTaskExecutor;
 
         public Builder withTableReference(TableReference tableReference)
         {
@@ -229,6 +385,21 @@ public class RepairGroup extends ScheduledTask
             return this;
         }
 
+        /**
+         * Set the maximum number of tokens to repair in a single repair command.
+         * <p>
+         * Sub ranges are coalesced into the same repair command as long as the total number of tokens
+         * does not exceed this value. The default of zero repairs each sub range using a separate repair command.
+         *
+         * @param tokensPerCommand The maximum number of tokens per repair command.
+         * @return The builder
+         */
+        public Builder withTokensPerCommand(BigInteger tokensPerCommand)
+        {
+            this.tokensPerCommand = tokensPerCommand;
+            return this;
+        }
+
         public Builder withRepairHistory(RepairHistory repairHistory)
         {
             this.repairHistory = repairHistory;
@@ -241,6 +412,18 @@ public class RepairGroup extends ScheduledTask
             return this;
         }
 
+        Builder withRangeSplitter(AdaptiveRangeSplitter rangeSplitter)
+        {
+            this.rangeSplitter = rangeSplitter;
+            return this;
+        }
+
+        Builder withRepairTaskExecutor(RepairTaskExecutor repairTaskExecutor)
+        {
+            this.repairTaskExecutor = repairTaskExecutor;
+            return this;
+        }
+
         public RepairGroup build(int priority)
         {
             return new RepairGroup(priority, this);
@@ -15,7 +15,6 @@
 package com.ericsson.bss.cassandra.ecchronos.core.repair;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -24,7 +23,6 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.ericsson.bss.cassandra.ecchronos.core.LockCollection;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
 
@@ -54,102 +52,41 @@ public class RepairLockFactoryImpl implements RepairLockFactory
 
         validateNoCachedFailures(lockFactory, repairResources);
 
-        Collection<LockFactory.DistributedLock> locks = getRepairResourceLocks(lockFactory, repairResources, metadata, priority);
-
-        return new LockCollection(locks);
-    }
-
-    private void validateNoCachedFailures(LockFactory lockFactory, Set<RepairResource> repairResources) throws LockException
-    {
+        List<LockFactory.Resource> resources = new ArrayList<>(repairResources.size());
         for (RepairResource repairResource : repairResources)
         {
-            Optional<LockException> cachedException = lockFactory.getCachedFailure(repairResource.getDataCenter(), repairResource.getResourceName(LOCKS_PER_RESOURCE));
-            if (cachedException.isPresent())
-            {
-                LockException e = cachedException.get();
-                LOG.debug("Found cached locking failure for {}, rethrowing", repairResource, e);
-                throw cachedException.get();
-            }
-        }
-    }
-
-    private Collection<LockFactory.DistributedLock> getRepairResourceLocks(LockFactory lockFactory, Collection<RepairResource> repairResources, Map<String, String> metadata, int priority) throws LockException
-    {
-        try (TemporaryLockHolder lockHolder = new TemporaryLockHolder())
-        {
-            for (RepairResource repairResource : repairResources)
-            {
-                try
-                {
-                    lockHolder.add(getLockForRepairResource(lockFactory, repairResource, metadata, priority));
-                }
-                catch (LockException e)
-                {
-                    LOG.debug("{} - Unable to get lock for repair resource '{}', releasing previously acquired locks - {}", this, repairResource, e.getMessage());
-                    throw e;
-                }
-            }
-
-            return lockHolder.getAndClear();
+            resources.add(new LockFactory.Resource(repairResource.getDataCenter(), repairResource.getResourceName(LOCKS_PER_RESOURCE)));
         }
-    }
 
-    private LockFactory.DistributedLock getLockForRepairResource(LockFactory lockFactory, RepairResource repairResource, Map<String, String> metadata, int priority) throws LockException
-    {
-        LockFactory.DistributedLock myLock;
-
-        String dataCenter = repairResource.getDataCenter();
-
-        String resource = repairResource.getResourceName(LOCKS_PER_RESOURCE);
         try
         {
-            myLock = lockFactory.tryLock(dataCenter, resource, priority, metadata);
-
-            if (myLock != null)
+            LockFactory.DistributedLock lock = lockFactory.tryLock(resources, priority, metadata);
+            if (lock == null)
             {
-                return myLock;
+                String msg = String.format("Lock resources exhausted for %s", repairResources);
+                LOG.warn(msg);
+                throw new LockException(msg);
             }
 
-            String msg = String.format("Lock resources exhausted for %s", repairResource);
-            LOG.warn(msg);
-            throw new LockException(msg);
+            return lock;
         }
         catch (LockException e)
         {
-            LOG.debug("Lock ({} in datacenter {}) got error {}", resource, dataCenter, e.getMessage());
+            LOG.debug("{} - Unable to get locks for repair resources {} - {}", this, repairResources, e.getMessage());
             throw e;
         }
     }
 
-    static class TemporaryLockHolder implements AutoCloseable
+    private void validateNoCachedFailures(LockFactory lockFactory, Set<RepairResource> repairResources) throws LockException
     {
-        private final List<LockFactory.DistributedLock> temporaryLocks = new ArrayList<>();
-
-        void add(LockFactory.DistributedLock lock)
-        {
-            temporaryLocks.add(lock);
-        }
-
-        Collection<LockFactory.DistributedLock> getAndClear()
-        {
-            Collection<LockFactory.DistributedLock> allLocks = new ArrayList<>(temporaryLocks);
-            temporaryLocks.clear();
-            return allLocks;
-        }
-
-        @Override
-        public void close()
+        for (RepairResource repairResource : repairResources)
         {
-            for (LockFactory.DistributedLock lock : temporaryLocks)
+            Optional<LockException> cachedException = lockFactory.getCachedFailure(repairResource.getDataCenter(), repairResource.getResourceName(LOCKS_PER_RESOURCE));
+            if (cachedException.isPresent())
             {
-                try
-                {
-                    lock.close();
-                }
-                catch (Exception e)
-                {
-                    LOG.warn("Unable to release temporary lock {} for {} ", lock, this, e);
-                }
+                LockException e = cachedException.get();
+                LOG.debug("Found cached locking failure for {}, rethrowing", repairResource, e);
+                throw cachedException.get();
             }
         }
     }
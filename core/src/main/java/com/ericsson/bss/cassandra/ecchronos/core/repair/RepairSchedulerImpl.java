@@ -47,6 +47,7 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
     private final Object myLock = new Object();
 
     private final ExecutorService myExecutor;
+    private final RepairTaskExecutor myRepairTaskExecutor;
 
     private final RepairFaultReporter myFaultReporter;
     private final JmxProxyFactory myJmxProxyFactory;
@@ -61,6 +62,7 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
     private RepairSchedulerImpl(Builder builder)
     {
         myExecutor = Executors.newSingleThreadScheduledExecutor();
+        myRepairTaskExecutor = new RepairTaskExecutor();
         myFaultReporter = builder.myFaultReporter;
         myJmxProxyFactory = builder.myJmxProxyFactory;
         myTableRepairMetrics = builder.myTableRepairMetrics;
@@ -99,6 +101,8 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
 
             myScheduledJobs.clear();
         }
+
+        myRepairTaskExecutor.close();
     }
 
     @Override
@@ -204,6 +208,7 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
                 .withTableStorageStates(myTableStorageStates)
                 .withRepairPolices(myRepairPolicies)
                 .withRepairHistory(myRepairHistory)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .build();
 
         job.runnable();
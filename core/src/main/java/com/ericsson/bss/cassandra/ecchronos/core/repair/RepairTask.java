@@ -43,19 +43,24 @@ import java.util.stream.Collectors;
  * A task that is run to repair a specific keyspace and table using the options from {@link RepairOptions}.
  * <p>
  * If the repair failed the {@link #getUnknownRanges()} can be used to retrieve the ranges that have an unknown status during the repair.
+ * <p>
+ * The repair is completed by the progress notifications from Cassandra.
+ * Repairs that stop making progress are terminated by the hang prevention timer of the {@link RepairTaskExecutor}
+ * and the result of the repair is verified and recorded by its completion executor.
  */
 public class RepairTask implements NotificationListener //NOPMD Possible god class, needs refactoring
 {
     private static final Logger LOG = LoggerFactory.getLogger(RepairTask.class);
 
-    private static final Pattern REPAIR_PATTERN = Pattern.compile("Repair session [0-9a-zA-Z-]+ for range \\[\\(([-]?[0-9]+),([-]?[0-9]+)(\\]){2} finished");
-
-    private static final long HANG_PREVENT_TIME_IN_MINUTES = 30;
-
-    private final ScheduledExecutorService myExecutor = Executors.newScheduledThreadPool(1);
+    /**
+     * A repair session of Cassandra repairs all ranges of a repair command with the same replicas,
+     * the finished message lists the ranges of the session, e.g. "[(1,2], (3,4]]".
+     */
+    private static final Pattern REPAIR_PATTERN = Pattern.compile("Repair session [0-9a-zA-Z-]+ for range \\[(.*)\\] finished");
+    private static final Pattern RANGE_PATTERN = Pattern.compile("\\(([-]?[0-9]+),([-]?[0-9]+)\\]");
 
     private final Set<LongTokenRange> completedRanges = Collections.synchronizedSet(new HashSet<>());
-    private final CountDownLatch myLatch = new CountDownLatch(1);
+    private final CompletableFuture<Void> myRepairDone = new CompletableFuture<>();
 
     private final Set<LongTokenRange> myTokenRanges;
     private final Set<Node> myReplicas;
@@ -63,12 +68,14 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
     private final TableReference myTableReference;
     private final TableRepairMetrics myTableRepairMetrics;
     private final RepairConfiguration myRepairConfiguration;
+    private final HangPreventionTimer myHangPreventionTimer;
+    private final Executor myCompletionExecutor;
 
     private volatile boolean hasLostNotification = false;
     private volatile ScheduledJobException myLastError;
     private volatile Collection<LongTokenRange> myUnknownRanges;
 
-    private volatile ScheduledFuture<?> myHangPreventFuture;
+    private volatile HangPreventionTimer.Watch myHangPreventionWatch;
     private volatile int myCommand;
 
     private final ConcurrentMap<LongTokenRange, RepairHistory.RepairSession> myRepairSessions = new ConcurrentHashMap<>();
@@ -84,6 +91,8 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
         myReplicas = Preconditions.checkNotNull(builder.replicas, "Replicas must be set");
         myTableRepairMetrics = builder.tableRepairMetrics;
         myRepairConfiguration = builder.repairConfiguration;
+        myHangPreventionTimer = Preconditions.checkNotNull(builder.hangPreventionTimer, "Hang prevention timer must be set");
+        myCompletionExecutor = Preconditions.checkNotNull(builder.completionExecutor, "Completion executor must be set");
 
         for (LongTokenRange range : myTokenRanges)
         {
@@ -91,42 +100,142 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
         }
     }
 
+    /**
+     * Run the repair and wait for it to finish.
+     *
+     * @throws ScheduledJobException Thrown if the repair failed or the thread was interrupted.
+     */
     public void execute() throws ScheduledJobException
     {
         long start = System.nanoTime();
-        long end;
-        long executionNanos;
-        boolean successful = true;
+
+        try
+        {
+            executeAsync().get();
+        }
+        catch (InterruptedException e)
+        {
+            LOG.warn("{} was interrupted", this, e);
+            myRepairDone.completeExceptionally(e);
+            Thread.currentThread().interrupt();
+            throw new ScheduledJobException(e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof ScheduledJobException)
+            {
+                throw (ScheduledJobException) e.getCause();
+            }
+            throw new ScheduledJobException(e.getCause());
+        }
+
+        lazySleep(System.nanoTime() - start);
+    }
+
+    /**
+     * Start the repair without waiting for it to finish.
+     * <p>
+     * The repair is driven by the progress notifications from Cassandra so no thread is occupied while it is running.
+     * The result is verified and recorded by the completion executor, not by the notification thread.
+     * The returned future is completed once the repair has finished and the result has been recorded,
+     * or completed exceptionally with a {@link ScheduledJobException} if the repair failed.
+     * <p>
+     * The unwind delay of the repair configuration is not applied, see {@link #getUnwindDelayInMs(long)}.
+     *
+     * @return The future completed when the repair has finished.
+     */
+    public CompletableFuture<Void> executeAsync()
+    {
+        long start = System.nanoTime();
+        CompletableFuture<Void> result = new CompletableFuture<>();
 
         myRepairSessions.values().forEach(RepairHistory.RepairSession::start);
 
-        try (JmxProxy proxy = myJmxProxyFactory.connect())
+        JmxProxy proxy = null;
+        try
         {
-            rescheduleHangPrevention();
+            proxy = myJmxProxyFactory.connect();
             repair(proxy);
-            finish(RepairStatus.SUCCESS);
         }
         catch (Exception e)
         {
-            finish(RepairStatus.FAILED);
-            successful = false;
-            String msg = "Unable to repair " + this;
-            LOG.warn(msg);
-            throw new ScheduledJobException(msg, e);
+            myRepairDone.completeExceptionally(e);
         }
-        finally
+
+        JmxProxy connectedProxy = proxy;
+        myRepairDone.whenCompleteAsync((v, error) -> repairDone(connectedProxy, start, error, result), myCompletionExecutor);
+
+        return result;
+    }
+
+    private void repairDone(JmxProxy proxy, long start, Throwable error, CompletableFuture<Void> result)
+    {
+        ScheduledJobException failure = null;
+
+        if (myHangPreventionWatch != null)
+        {
+            myHangPreventionWatch.cancel();
+        }
+
+        try
         {
-            if (myHangPreventFuture != null)
+            if (error != null)
             {
-                myHangPreventFuture.cancel(false);
+                failure = failed(error);
             }
-            end = System.nanoTime();
-            executionNanos = end - start;
+            else
+            {
+                verifyRepair(proxy);
 
-            myTableRepairMetrics.repairTiming(myTableReference, executionNanos, TimeUnit.NANOSECONDS, successful);
+                LOG.debug("{} - {} completed successfully", this, completedRanges);
+                finish(RepairStatus.SUCCESS);
+            }
+        }
+        catch (ScheduledJobException | RuntimeException e)
+        {
+            failure = failed(e);
+        }
+        finally
+        {
+            close(proxy);
+            long executionNanos = System.nanoTime() - start;
+            myTableRepairMetrics.repairTiming(myTableReference, executionNanos, TimeUnit.NANOSECONDS, failure == null);
         }
 
-        lazySleep(executionNanos);
+        if (failure != null)
+        {
+            result.completeExceptionally(failure);
+        }
+        else
+        {
+            result.complete(null);
+        }
+    }
+
+    private ScheduledJobException failed(Throwable error)
+    {
+        finish(RepairStatus.FAILED);
+        String msg = "Unable to repair " + this;
+        LOG.warn(msg);
+        return new ScheduledJobException(msg, error);
+    }
+
+    private void close(JmxProxy proxy)
+    {
+        if (proxy == null)
+        {
+            return;
+        }
+
+        try
+        {
+            proxy.removeStorageServiceListener(this);
+            proxy.close();
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Unable to close JMX proxy for {}", this, e);
+        }
     }
 
     private void finish(RepairStatus repairStatus)
@@ -151,13 +260,10 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
 
     private void lazySleep(long executionNanos) throws ScheduledJobException
     {
-        if (myRepairConfiguration.getRepairUnwindRatio() != RepairConfiguration.NO_UNWIND)
-        {
-            double sleepDurationNanos = executionNanos * myRepairConfiguration.getRepairUnwindRatio();
-            long sleepDurationMs = TimeUnit.NANOSECONDS.toMillis((long) sleepDurationNanos);
-
-            sleepDurationMs = Math.max(sleepDurationMs, 1);
+        long sleepDurationMs = getUnwindDelayInMs(executionNanos);
 
+        if (sleepDurationMs > 0)
+        {
             try
             {
                 Thread.sleep(sleepDurationMs);
@@ -170,9 +276,22 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
         }
     }
 
-    public void cleanup()
+    /**
+     * Get the time to wait after the repair before running the next repair, based on the unwind ratio of the
+     * repair configuration.
+     *
+     * @param executionNanos The time the repair took in nanoseconds.
+     * @return The delay in milliseconds or zero if no unwind ratio is configured.
+     */
+    long getUnwindDelayInMs(long executionNanos)
     {
-        myExecutor.shutdown();
+        if (myRepairConfiguration.getRepairUnwindRatio() == RepairConfiguration.NO_UNWIND)
+        {
+            return 0;
+        }
+
+        double sleepDurationNanos = executionNanos * myRepairConfiguration.getRepairUnwindRatio();
+        return Math.max(TimeUnit.NANOSECONDS.toMillis((long) sleepDurationNanos), 1);
     }
 
     /**
@@ -254,29 +373,15 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
         return options;
     }
 
-    private void repair(JmxProxy proxy) throws ScheduledJobException
+    private void repair(JmxProxy proxy)
     {
+        myHangPreventionWatch = myHangPreventionTimer.watch(this::preventHang);
         proxy.addStorageServiceListener(this);
         myCommand = proxy.repairAsync(myTableReference.getKeyspace(), getOptions());
 
-        if (myCommand > 0)
+        if (myCommand <= 0)
         {
-            try
-            {
-                myLatch.await();
-
-                proxy.removeStorageServiceListener(this);
-
-                verifyRepair(proxy);
-
-                LOG.debug("{} - {} completed successfully", this, completedRanges);
-            }
-            catch (InterruptedException e)
-            {
-                LOG.warn("{} was interrupted", this, e);
-                Thread.currentThread().interrupt();
-                throw new ScheduledJobException(e);
-            }
+            myRepairDone.complete(null);
         }
     }
 
@@ -321,7 +426,7 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
     private void handleConnectionFailed()
     {
         myLastError = new ScheduledJobException(String.format("Unable to repair %s", myTableReference));
-        myLatch.countDown();
+        myRepairDone.complete(null);
     }
 
     @VisibleForTesting
@@ -333,12 +438,17 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
 
             if (matcher.matches())
             {
-                long start = Long.parseLong(matcher.group(1));
-                long end = Long.parseLong(matcher.group(2));
+                Matcher rangeMatcher = RANGE_PATTERN.matcher(matcher.group(1));
+
+                while (rangeMatcher.find())
+                {
+                    long start = Long.parseLong(rangeMatcher.group(1));
+                    long end = Long.parseLong(rangeMatcher.group(2));
 
-                LongTokenRange completedRange = new LongTokenRange(start, end);
-                finish(completedRange, RepairStatus.SUCCESS);
-                completedRanges.add(completedRange);
+                    LongTokenRange completedRange = new LongTokenRange(start, end);
+                    finish(completedRange, RepairStatus.SUCCESS);
+                    completedRanges.add(completedRange);
+                }
             }
             else
             {
@@ -355,7 +465,7 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
 
         if (type == ProgressEventType.COMPLETE)
         {
-            myLatch.countDown();
+            myRepairDone.complete(null);
         }
     }
 
@@ -371,11 +481,31 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
 
     private void rescheduleHangPrevention()
     {
-        if (myHangPreventFuture != null)
+        HangPreventionTimer.Watch watch = myHangPreventionWatch;
+        if (watch != null)
         {
-            myHangPreventFuture.cancel(false);
+            watch.touch();
         }
-        myHangPreventFuture = myExecutor.schedule(new HangPreventingTask(), HANG_PREVENT_TIME_IN_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private void preventHang()
+    {
+        if (myRepairDone.isDone())
+        {
+            return;
+        }
+
+        LOG.warn("{} has not made any progress in {} minutes, terminating repair sessions", this, RepairTaskExecutor.HANG_PREVENT_TIME_IN_MINUTES);
+
+        try (JmxProxy proxy = myJmxProxyFactory.connect())
+        {
+            proxy.forceTerminateAllRepairSessions();
+        }
+        catch (IOException e)
+        {
+            LOG.error("Unable to prevent hanging repair task: {}", this, e);
+        }
+        myRepairDone.complete(null);
     }
 
     /**
@@ -391,6 +521,8 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
         private Set<Node> replicas;
         private TableRepairMetrics tableRepairMetrics;
         private RepairConfiguration repairConfiguration = RepairConfiguration.DEFAULT;
+        private HangPreventionTimer hangPreventionTimer;
+        private Executor completionExecutor;
 
         public Builder withRepairHistory(RepairHistory repairHistory)
         {
@@ -440,6 +572,19 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
             return this;
         }
 
+        Builder withRepairTaskExecutor(RepairTaskExecutor repairTaskExecutor)
+        {
+            this.hangPreventionTimer = repairTaskExecutor.getHangPreventionTimer();
+            this.completionExecutor = repairTaskExecutor.getCompletionExecutor();
+            return this;
+        }
+
+        Builder withHangPreventionTimer(HangPreventionTimer hangPreventionTimer)
+        {
+            this.hangPreventionTimer = hangPreventionTimer;
+            return this;
+        }
+
         public RepairTask build()
         {
             if (tableRepairMetrics == null)
@@ -490,26 +635,6 @@ public class RepairTask implements NotificationListener //NOPMD Possible god cla
         NOTIFICATION
     }
 
-    private class HangPreventingTask implements Runnable
-    {
-
-        @Override
-        public void run()
-        {
-            try (JmxProxy proxy = myJmxProxyFactory.connect())
-            {
-                proxy.forceTerminateAllRepairSessions();
-            }
-            catch (IOException e)
-            {
-                LOG.error("Unable to prevent hanging repair task: {}", this, e);
-            }
-            myLatch.countDown();
-        }
-
-    }
-
-    @VisibleForTesting
     Set<LongTokenRange> getTokenRanges()
     {
         return Sets.newHashSet(myTokenRanges);
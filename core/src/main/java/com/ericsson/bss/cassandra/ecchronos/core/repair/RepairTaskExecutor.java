@@ -0,0 +1,157 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The threads used by {@link RepairTask RepairTasks} in the background of a repair scheduler.
+ * <p>
+ * Repairs that stop making progress are detected by a {@link HangPreventionTimer} and the result of a finished
+ * repair is verified and recorded on a completion thread, so that no work is done on the JMX notification thread.
+ * The completion thread also starts the next repair task of a {@link RepairGroup}, after the unwind delay has been
+ * waited for by the timer.
+ * <p>
+ * The repair scheduler creating the repair tasks owns the executor and closes it when it is closed.
+ */
+class RepairTaskExecutor implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RepairTaskExecutor.class);
+
+    static final long HANG_PREVENT_TIME_IN_MINUTES = 30;
+    private static final long HANG_PREVENT_TICK_IN_MINUTES = 1;
+
+    private static final long SHUTDOWN_TIMEOUT_IN_SECONDS = 10;
+
+    private final ScheduledExecutorService myTimerExecutor;
+    private final HangPreventionTimer myHangPreventionTimer;
+    private final ExecutorService myCompletionExecutor;
+    private final Set<CompletableFuture<Void>> myDelays = ConcurrentHashMap.newKeySet();
+
+    RepairTaskExecutor()
+    {
+        myTimerExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("RepairHangPrevention-%d")
+                .setDaemon(true)
+                .build());
+        myHangPreventionTimer = new HangPreventionTimer(myTimerExecutor, HANG_PREVENT_TIME_IN_MINUTES,
+                HANG_PREVENT_TICK_IN_MINUTES, TimeUnit.MINUTES);
+        myCompletionExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("RepairCompletion-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    HangPreventionTimer getHangPreventionTimer()
+    {
+        return myHangPreventionTimer;
+    }
+
+    /**
+     * Get the executor for the completion of repairs.
+     * <p>
+     * Completions that are submitted after the executor is closed are run by the calling thread.
+     *
+     * @return The completion executor.
+     */
+    Executor getCompletionExecutor()
+    {
+        return this::complete;
+    }
+
+    /**
+     * Get a future that is completed by the completion executor after the provided delay.
+     * <p>
+     * Delays that are pending when the executor is closed are completed directly.
+     *
+     * @param delayInMs The delay in milliseconds.
+     * @return The delayed future.
+     */
+    CompletableFuture<Void> delay(long delayInMs)
+    {
+        CompletableFuture<Void> delayed = new CompletableFuture<>();
+        if (delayInMs <= 0)
+        {
+            delayed.complete(null);
+            return delayed;
+        }
+
+        myDelays.add(delayed);
+        delayed.whenComplete((v, t) -> myDelays.remove(delayed));
+
+        try
+        {
+            myTimerExecutor.schedule(() -> complete(() -> delayed.complete(null)), delayInMs, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            delayed.complete(null);
+        }
+
+        return delayed;
+    }
+
+    private void complete(Runnable completion)
+    {
+        try
+        {
+            myCompletionExecutor.execute(completion);
+        }
+        catch (RejectedExecutionException e)
+        {
+            LOG.debug("Completion executor is shut down, completing repair in the calling thread");
+            completion.run();
+        }
+    }
+
+    /**
+     * Stop the hang prevention, end pending delays and wait for the completion of finished repairs to be recorded.
+     */
+    @Override
+    public void close()
+    {
+        myHangPreventionTimer.close();
+        myTimerExecutor.shutdownNow();
+        myDelays.forEach(delayed -> complete(() -> delayed.complete(null)));
+        myCompletionExecutor.shutdown();
+
+        try
+        {
+            if (!myCompletionExecutor.awaitTermination(SHUTDOWN_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS))
+            {
+                LOG.warn("Waited {} seconds for repair completions to finish, still not finished", SHUTDOWN_TIMEOUT_IN_SECONDS);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            LOG.warn("Interrupted while waiting for repair completions to finish", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
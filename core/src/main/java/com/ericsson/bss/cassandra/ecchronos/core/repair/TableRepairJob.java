@@ -17,15 +17,18 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair;
 import com.ericsson.bss.cassandra.ecchronos.core.JmxProxyFactory;
 import com.ericsson.bss.cassandra.ecchronos.core.TableStorageStates;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairEntry;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistory;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairState;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairStateSnapshot;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairStatus;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicaRepairGroup;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairStates;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledJob;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledTask;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.google.common.base.Preconditions;
 import org.slf4j.Logger;
@@ -37,6 +40,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
@@ -45,6 +50,9 @@ import java.util.function.Predicate;
  * is responsible for is repaired within the minimum run interval.
  * <p>
  * When run this job will create {@link RepairTask RepairTasks} that repairs the table.
+ * The sub ranges repaired by each task are adapted to the time earlier repair sessions of the same virtual node took.
+ * Sub ranges can be coalesced into fewer repair commands to reduce the overhead of each repair command.
+ * If enabled in the repair configuration, replica repair groups that do not share too many nodes are repaired in parallel.
  */
 public class TableRepairJob extends ScheduledJob
 {
@@ -62,6 +70,8 @@ public class TableRepairJob extends ScheduledJob
     private final TableRepairMetrics myTableRepairMetrics;
     private final TableStorageStates myTableStorageStates;
     private final RepairHistory myRepairHistory;
+    private final AdaptiveRangeSplitter myRangeSplitter;
+    private final RepairTaskExecutor myRepairTaskExecutor;
 
     TableRepairJob(Builder builder)
     {
@@ -78,7 +88,13 @@ public class TableRepairJob extends ScheduledJob
         myTableStorageStates = Preconditions
                 .checkNotNull(builder.tableStorageStates, "Table storage states must be set");
         myRepairPolicies = Preconditions.checkNotNull(builder.repairPolicies, "Repair policies cannot be null");
-        myRepairHistory = Preconditions.checkNotNull(builder.repairHistory, "Repair history must be set");
+        myRepairHistory = new RepairStateUpdatingRepairHistory(
+                Preconditions.checkNotNull(builder.repairHistory, "Repair history must be set"));
+        myRangeSplitter = myRepairConfiguration.getTargetRepairTimeInMs() == RepairConfiguration.NO_TARGET_REPAIR_TIME
+                ? null
+                : new AdaptiveRangeSplitter(myRepairConfiguration.getTargetRepairTimeInMs());
+        myRepairTaskExecutor = Preconditions
+                .checkNotNull(builder.repairTaskExecutor, "Repair task executor must be set");
     }
 
     public TableReference getTableReference()
@@ -153,9 +169,10 @@ public class TableRepairJob extends ScheduledJob
         RepairStateSnapshot repairStateSnapshot = myRepairState.getSnapshot();
         if (repairStateSnapshot.canRepair())
         {
-            List<ScheduledTask> taskList = new ArrayList<>();
+            List<RepairGroup> repairGroups = new ArrayList<>();
 
             BigInteger tokensPerRepair = getTokensPerRepair(repairStateSnapshot.getVnodeRepairStates());
+            BigInteger tokensPerCommand = getTokensPerCommand(repairStateSnapshot.getVnodeRepairStates());
 
             for (ReplicaRepairGroup replicaRepairGroup : repairStateSnapshot.getRepairGroups())
             {
@@ -168,14 +185,17 @@ public class TableRepairJob extends ScheduledJob
                         .withRepairResourceFactory(myRepairLockType.getLockFactory())
                         .withRepairLockFactory(repairLockFactory)
                         .withTokensPerRepair(tokensPerRepair)
+                        .withTokensPerCommand(tokensPerCommand)
                         .withRepairPolicies(myRepairPolicies)
                         .withRepairHistory(myRepairHistory)
+                        .withRangeSplitter(myRangeSplitter)
+                        .withRepairTaskExecutor(myRepairTaskExecutor)
                         .withJobId(getId());
 
-                taskList.add(builder.build(getRealPriority()));
+                repairGroups.add(builder.build(getRealPriority()));
             }
 
-            return taskList.iterator();
+            return getScheduledTasks(repairGroups).iterator();
         }
         else
         {
@@ -234,29 +254,136 @@ public class TableRepairJob extends ScheduledJob
         return String.format("Repair job of %s", myTableReference);
     }
 
+    private List<ScheduledTask> getScheduledTasks(List<RepairGroup> repairGroups)
+    {
+        if (myRepairConfiguration.getParallelRepairGroups() <= 1)
+        {
+            return new ArrayList<>(repairGroups);
+        }
+
+        List<ScheduledTask> taskList = new ArrayList<>();
+
+        for (List<RepairGroup> partition : ParallelRepairGroups.partition(repairGroups,
+                myRepairConfiguration.getParallelRepairGroups(), myRepairConfiguration.getSessionsPerNode()))
+        {
+            taskList.add(new ParallelRepairGroups(getRealPriority(), partition, repairLockFactory));
+        }
+
+        return taskList;
+    }
+
     private BigInteger getTokensPerRepair(VnodeRepairStates vnodeRepairStates)
     {
         BigInteger tokensPerRepair = LongTokenRange.FULL_RANGE;
 
         if (myRepairConfiguration.getTargetRepairSizeInBytes() != RepairConfiguration.FULL_REPAIR_SIZE)
         {
-            BigInteger tableSizeInBytes = BigInteger.valueOf(myTableStorageStates.getDataSize(myTableReference));
+            tokensPerRepair = getTokensForSize(vnodeRepairStates, myRepairConfiguration.getTargetRepairSizeInBytes());
+        }
 
-            if (!BigInteger.ZERO.equals(tableSizeInBytes))
-            {
-                BigInteger fullRangeSize = vnodeRepairStates.getVnodeRepairStates().stream()
-                        .map(VnodeRepairState::getTokenRange)
-                        .map(LongTokenRange::rangeSize)
-                        .reduce(BigInteger.ZERO, BigInteger::add);
+        return tokensPerRepair;
+    }
 
-                BigInteger targetSizeInBytes = BigInteger.valueOf(myRepairConfiguration.getTargetRepairSizeInBytes());
+    private BigInteger getTokensPerCommand(VnodeRepairStates vnodeRepairStates)
+    {
+        BigInteger tokensPerCommand = BigInteger.ZERO;
 
-                BigInteger targetRepairs = tableSizeInBytes.divide(targetSizeInBytes);
-                tokensPerRepair = fullRangeSize.divide(targetRepairs);
+        if (myRepairConfiguration.getCoalesceSizeInBytes() != RepairConfiguration.NO_COALESCING)
+        {
+            tokensPerCommand = getTokensForSize(vnodeRepairStates, myRepairConfiguration.getCoalesceSizeInBytes());
+        }
+
+        return tokensPerCommand;
+    }
+
+    private BigInteger getTokensForSize(VnodeRepairStates vnodeRepairStates, long targetSizeInBytes)
+    {
+        BigInteger tokens = LongTokenRange.FULL_RANGE;
+
+        long tableSizeInBytes = myTableStorageStates.getDataSize(myTableReference);
+
+        if (tableSizeInBytes != 0)
+        {
+            // The vnodes are not overlapping so the sum fits in an unsigned long where 0 represents the full range
+            long fullRangeSize = 0L;
+            for (VnodeRepairState vnodeRepairState : vnodeRepairStates.getVnodeRepairStates())
+            {
+                fullRangeSize += vnodeRepairState.getTokenRange().unsignedRangeSize();
             }
+
+            long targetRepairs = Math.max(tableSizeInBytes / targetSizeInBytes, 1L);
+            tokens = LongTokenRange.toBigInteger(fullRangeSize).divide(BigInteger.valueOf(targetRepairs));
         }
 
-        return tokensPerRepair;
+        return tokens;
+    }
+
+    /**
+     * Repair history that also adds successful repair sessions to the repair state of the table.
+     */
+    private class RepairStateUpdatingRepairHistory implements RepairHistory
+    {
+        private final RepairHistory myDelegateRepairHistory;
+
+        RepairStateUpdatingRepairHistory(RepairHistory delegateRepairHistory)
+        {
+            myDelegateRepairHistory = delegateRepairHistory;
+        }
+
+        @Override
+        public RepairSession newSession(TableReference tableReference, UUID jobId, LongTokenRange range,
+                Set<Node> participants)
+        {
+            RepairSession repairSession = myDelegateRepairHistory.newSession(tableReference, jobId, range, participants);
+            return new RepairStateUpdatingRepairSession(repairSession, range, participants);
+        }
+    }
+
+    private class RepairStateUpdatingRepairSession implements RepairHistory.RepairSession
+    {
+        private final RepairHistory.RepairSession myDelegateRepairSession;
+        private final LongTokenRange myRange;
+        private final Set<Node> myParticipants;
+
+        private volatile long myStartedAt = -1L;
+
+        RepairStateUpdatingRepairSession(RepairHistory.RepairSession delegateRepairSession, LongTokenRange range,
+                Set<Node> participants)
+        {
+            myDelegateRepairSession = delegateRepairSession;
+            myRange = range;
+            myParticipants = participants;
+        }
+
+        @Override
+        public void start()
+        {
+            myStartedAt = System.currentTimeMillis();
+            myDelegateRepairSession.start();
+        }
+
+        @Override
+        public void finish(RepairStatus repairStatus)
+        {
+            myDelegateRepairSession.finish(repairStatus);
+
+            long finishedAt = System.currentTimeMillis();
+
+            if (repairStatus == RepairStatus.SUCCESS && myStartedAt != -1L)
+            {
+                RepairEntry repairEntry = new RepairEntry(myRange, myStartedAt, finishedAt,
+                        myParticipants, repairStatus.name());
+                try
+                {
+                    myRepairState.addRepairEntry(repairEntry);
+                    notifyChanged();
+                }
+                catch (Exception e)
+                {
+                    LOG.warn("Unable to update repair state of {} with {}", myTableReference, myRange, e);
+                }
+            }
+        }
     }
 
     public static class Builder
@@ -274,6 +401,7 @@ public class TableRepairJob extends ScheduledJob
         private TableStorageStates tableStorageStates;
         private final List<TableRepairPolicy> repairPolicies = new ArrayList<>();
         private RepairHistory repairHistory;
+        private RepairTaskExecutor repairTaskExecutor;
 
         public Builder withConfiguration(Configuration configuration)
         {
@@ -335,6 +463,12 @@ public class TableRepairJob extends ScheduledJob
             return this;
         }
 
+        Builder withRepairTaskExecutor(RepairTaskExecutor repairTaskExecutor)
+        {
+            this.repairTaskExecutor = repairTaskExecutor;
+            return this;
+        }
+
         public TableRepairJob build()
         {
             Preconditions.checkNotNull(tableReference, "Table reference must be set");
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.ReplicaSetRegistry;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterators;
+
+/**
+ * A repair history provider caching the repair history of another provider.
+ * <p>
+ * The repair history of each table is kept sorted by the start time of the repair sessions.
+ * After the history of a table has been read once, only the repair sessions newer than the latest read,
+ * and the sessions that were still running at that time, are read from the other provider.
+ * The history of a table is read in full again when it is older than the time to live,
+ * so that any sessions missed by the partial reads are eventually picked up.
+ * <p>
+ * The least recently used tables are evicted when there are more tables than the maximum number of tables,
+ * or when the estimated size of the cached history is larger than the maximum size.
+ */
+public class CachingRepairHistoryProvider implements RepairHistoryProvider
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CachingRepairHistoryProvider.class);
+
+    static final long OVERLAP_IN_MS = TimeUnit.MINUTES.toMillis(1);
+    static final long MAX_RUNNING_TIME_IN_MS = TimeUnit.DAYS.toMillis(1);
+
+    static final long ESTIMATED_ENTRY_SIZE_IN_BYTES = 128L;
+    static final long ESTIMATED_NODE_SIZE_IN_BYTES = 48L;
+
+    private static final Comparator<RepairEntry> STARTED_AT_COMPARATOR = Comparator.comparingLong(
+            RepairEntry::getStartedAt);
+
+    private final Map<TableReference, TableHistory> myTableHistories = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final RepairHistoryProvider myDelegateRepairHistoryProvider;
+    private final long myLookbackTimeInMs;
+    private final long myTimeToLiveInMs;
+    private final int myMaxTables;
+    private final long myMaxSizeInBytes;
+    private final Clock myClock;
+
+    private CachingRepairHistoryProvider(Builder builder)
+    {
+        Preconditions.checkArgument(builder.myLookbackTimeInMs > 0, "Lookback time must be a positive number");
+        Preconditions.checkArgument(builder.myMaxTables > 0, "Max tables must be a positive number");
+        Preconditions.checkArgument(builder.myMaxSizeInBytes > 0, "Max size must be a positive number");
+
+        myDelegateRepairHistoryProvider = Preconditions.checkNotNull(builder.myRepairHistoryProvider,
+                "Repair history provider must be set");
+        myLookbackTimeInMs = builder.myLookbackTimeInMs;
+        myTimeToLiveInMs = builder.myTimeToLiveInMs;
+        myMaxTables = builder.myMaxTables;
+        myMaxSizeInBytes = builder.myMaxSizeInBytes;
+        myClock = builder.myClock;
+    }
+
+    @Override
+    public Iterator<RepairEntry> iterate(TableReference tableReference, long to, Predicate<RepairEntry> predicate)
+    {
+        long from = myClock.millis() - myLookbackTimeInMs;
+        return iterate(tableReference, to, from, predicate);
+    }
+
+    @Override
+    public Iterator<RepairEntry> iterate(TableReference tableReference, long to, long from,
+            Predicate<RepairEntry> predicate)
+    {
+        if (from >= to)
+        {
+            throw new IllegalArgumentException(
+                    "Invalid range when iterating " + tableReference + ", from (" + new Date(from) + ") to ("
+                            + new Date(to) + ")");
+        }
+
+        long now = myClock.millis();
+        if (from >= now)
+        {
+            return myDelegateRepairHistoryProvider.iterate(tableReference, to, from, predicate);
+        }
+
+        TableHistory tableHistory;
+        synchronized (myTableHistories)
+        {
+            tableHistory = myTableHistories.computeIfAbsent(tableReference, TableHistory::new);
+        }
+
+        List<RepairEntry> entries;
+        try
+        {
+            entries = tableHistory.getEntries(from, now);
+        }
+        catch (RuntimeException e)
+        {
+            invalidate(tableReference);
+            throw e;
+        }
+        finally
+        {
+            evict();
+        }
+
+        return Iterators.filter(entries.iterator(),
+                repairEntry -> repairEntry.getStartedAt() >= from && repairEntry.getStartedAt() <= to
+                        && predicate.apply(repairEntry));
+    }
+
+    @Override
+    public void prefetch(Collection<TableReference> tableReferences)
+    {
+        myDelegateRepairHistoryProvider.prefetch(tableReferences);
+    }
+
+    /**
+     * Remove the cached repair history of a table.
+     *
+     * @param tableReference The table to remove the cached repair history for.
+     */
+    public void invalidate(TableReference tableReference)
+    {
+        synchronized (myTableHistories)
+        {
+            myTableHistories.remove(tableReference);
+        }
+    }
+
+    @VisibleForTesting
+    int cachedTables()
+    {
+        synchronized (myTableHistories)
+        {
+            return myTableHistories.size();
+        }
+    }
+
+    private void evict()
+    {
+        synchronized (myTableHistories)
+        {
+            long sizeInBytes = 0L;
+            for (TableHistory tableHistory : myTableHistories.values())
+            {
+                sizeInBytes += tableHistory.mySizeInBytes;
+            }
+
+            Iterator<TableHistory> iterator = myTableHistories.values().iterator();
+            while (iterator.hasNext() && (myTableHistories.size() > myMaxTables || sizeInBytes > myMaxSizeInBytes))
+            {
+                TableHistory tableHistory = iterator.next();
+                LOG.debug("Evicting cached repair history for {}", tableHistory.myTableReference);
+                sizeInBytes -= tableHistory.mySizeInBytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The cached repair history of a single table.
+     */
+    class TableHistory
+    {
+        private final TableReference myTableReference;
+        private final Map<Set<Node>, Set<Node>> myParticipants = new HashMap<>();
+
+        private List<RepairEntry> myEntries = null;
+        private long myCoveredFrom;
+        private long myFetchedTo;
+        private long myLoadedAt;
+
+        private volatile long mySizeInBytes = 0L;
+
+        TableHistory(TableReference tableReference)
+        {
+            myTableReference = tableReference;
+        }
+
+        synchronized List<RepairEntry> getEntries(long from, long now)
+        {
+            if (myEntries == null || from < myCoveredFrom || now - myLoadedAt >= myTimeToLiveInMs)
+            {
+                load(from, now);
+            }
+            else if (now > myFetchedTo)
+            {
+                refresh(now);
+            }
+
+            return myEntries;
+        }
+
+        private void load(long from, long now)
+        {
+            LOG.debug("Reading repair history for {} from {}", myTableReference, from);
+
+            myParticipants.clear();
+            List<RepairEntry> entries = fetch(from, now);
+            entries.sort(STARTED_AT_COMPARATOR);
+
+            myEntries = Collections.unmodifiableList(entries);
+            myCoveredFrom = from;
+            myFetchedTo = now;
+            myLoadedAt = now;
+            updateSize();
+        }
+
+        /**
+         * Read the repair sessions that are newer than the latest read or that were still running at that time.
+         * <p>
+         * The repair history is queried by session id while the entries are sorted by start time,
+         * so the cached entries in the refreshed interval are only replaced when they are read again.
+         */
+        private void refresh(long now)
+        {
+            long refreshFrom = Math.max(myCoveredFrom, Math.min(myFetchedTo - OVERLAP_IN_MS, oldestRunning(now)));
+
+            Map<EntryKey, RepairEntry> refreshedEntries = new LinkedHashMap<>();
+            int index = myEntries.size();
+            while (index > 0 && myEntries.get(index - 1).getStartedAt() >= refreshFrom)
+            {
+                index--;
+            }
+            for (RepairEntry repairEntry : myEntries.subList(index, myEntries.size()))
+            {
+                refreshedEntries.put(new EntryKey(repairEntry), repairEntry);
+            }
+            for (RepairEntry repairEntry : fetch(refreshFrom, now))
+            {
+                refreshedEntries.put(new EntryKey(repairEntry), repairEntry);
+            }
+
+            List<RepairEntry> tail = new ArrayList<>(refreshedEntries.values());
+            tail.sort(STARTED_AT_COMPARATOR);
+
+            long lookbackFrom = now - myLookbackTimeInMs;
+            int head = 0;
+            if (myCoveredFrom < lookbackFrom)
+            {
+                while (head < index && myEntries.get(head).getStartedAt() < lookbackFrom)
+                {
+                    head++;
+                }
+                myCoveredFrom = lookbackFrom;
+            }
+
+            List<RepairEntry> entries = new ArrayList<>(index - head + tail.size());
+            entries.addAll(myEntries.subList(head, index));
+            entries.addAll(tail);
+
+            myEntries = Collections.unmodifiableList(entries);
+            myFetchedTo = now;
+            updateSize();
+        }
+
+        private long oldestRunning(long now)
+        {
+            long oldestRunning = Long.MAX_VALUE;
+            for (int i = myEntries.size() - 1; i >= 0; i--)
+            {
+                RepairEntry repairEntry = myEntries.get(i);
+                if (repairEntry.getStartedAt() < now - MAX_RUNNING_TIME_IN_MS)
+                {
+                    break;
+                }
+                if (repairEntry.getStatus() == RepairStatus.STARTED)
+                {
+                    oldestRunning = repairEntry.getStartedAt();
+                }
+            }
+            return oldestRunning;
+        }
+
+        private List<RepairEntry> fetch(long from, long now)
+        {
+            List<RepairEntry> entries = new ArrayList<>();
+            Iterator<RepairEntry> iterator = myDelegateRepairHistoryProvider.iterate(myTableReference, now, from,
+                    Predicates.alwaysTrue());
+            while (iterator.hasNext())
+            {
+                entries.add(intern(iterator.next()));
+            }
+            return entries;
+        }
+
+        private RepairEntry intern(RepairEntry repairEntry)
+        {
+            Set<Node> participants = myParticipants.computeIfAbsent(repairEntry.getParticipants(),
+                    ReplicaSetRegistry.INSTANCE::intern);
+            return new RepairEntry(repairEntry.getRange(), repairEntry.getStartedAt(), repairEntry.getFinishedAt(),
+                    participants, repairEntry.getStatus().name());
+        }
+
+        private void updateSize()
+        {
+            long sizeInBytes = myEntries.size() * ESTIMATED_ENTRY_SIZE_IN_BYTES;
+            for (Set<Node> participants : myParticipants.values())
+            {
+                sizeInBytes += participants.size() * ESTIMATED_NODE_SIZE_IN_BYTES;
+            }
+            mySizeInBytes = sizeInBytes;
+        }
+    }
+
+    private static final class EntryKey
+    {
+        private final LongTokenRange myRange;
+        private final long myStartedAt;
+
+        private EntryKey(RepairEntry repairEntry)
+        {
+            myRange = repairEntry.getRange();
+            myStartedAt = repairEntry.getStartedAt();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            EntryKey entryKey = (EntryKey) o;
+            return myStartedAt == entryKey.myStartedAt && myRange.equals(entryKey.myRange);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(myRange, myStartedAt);
+        }
+    }
+
+    public static Builder newBuilder()
+    {
+        return new Builder();
+    }
+
+    public static class Builder
+    {
+        private static final long DEFAULT_TIME_TO_LIVE_IN_MS = TimeUnit.DAYS.toMillis(1);
+        private static final int DEFAULT_MAX_TABLES = 1000;
+        private static final long DEFAULT_MAX_SIZE_IN_BYTES = 100L * 1024L * 1024L;
+
+        private RepairHistoryProvider myRepairHistoryProvider;
+        private long myLookbackTimeInMs;
+        private long myTimeToLiveInMs = DEFAULT_TIME_TO_LIVE_IN_MS;
+        private int myMaxTables = DEFAULT_MAX_TABLES;
+        private long myMaxSizeInBytes = DEFAULT_MAX_SIZE_IN_BYTES;
+        private Clock myClock = Clock.systemDefaultZone();
+
+        public Builder withRepairHistoryProvider(RepairHistoryProvider repairHistoryProvider)
+        {
+            myRepairHistoryProvider = repairHistoryProvider;
+            return this;
+        }
+
+        public Builder withLookbackTime(long lookbackTime, TimeUnit unit)
+        {
+            myLookbackTimeInMs = unit.toMillis(lookbackTime);
+            return this;
+        }
+
+        public Builder withTimeToLive(long timeToLive, TimeUnit unit)
+        {
+            myTimeToLiveInMs = unit.toMillis(timeToLive);
+            return this;
+        }
+
+        public Builder withMaxTables(int maxTables)
+        {
+            myMaxTables = maxTables;
+            return this;
+        }
+
+        public Builder withMaxSizeInBytes(long maxSizeInBytes)
+        {
+            myMaxSizeInBytes = maxSizeInBytes;
+            return this;
+        }
+
+        @VisibleForTesting
+        Builder withClock(Clock clock)
+        {
+            myClock = clock;
+            return this;
+        }
+
+        public CachingRepairHistoryProvider build()
+        {
+            return new CachingRepairHistoryProvider(this);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.ReplicaSetRegistry;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A {@link VnodeRepairStates} that keeps the vnode repair states in parallel arrays instead of one object per vnode.
+ * <p>
+ * The token ranges and timestamps are kept in primitive arrays and the replicas as the shared replica set from
+ * the {@link ReplicaSetRegistry}.
+ * The {@link VnodeRepairState VnodeRepairStates} are created on access by {@link #getVnodeRepairStates()},
+ * the index based accessors like {@link #lastRepairedAt(int)} can be used to read the state of a vnode without
+ * creating it.
+ * <p>
+ * Instances are immutable and arrays that are not changed are shared between instances,
+ * e.g. {@link #combineWithRepairedAt(long)} only copies the timestamps.
+ */
+public class CompactVnodeRepairStates implements VnodeRepairStates
+{
+    private final long[] myStarts;
+    private final long[] myEnds;
+    private final long[] myStartedAts;
+    private final long[] myFinishedAts;
+    private final ImmutableSet<Node>[] myReplicas;
+
+    private final List<VnodeRepairState> myVnodeRepairStates = new VnodeRepairStateList();
+
+    private CompactVnodeRepairStates(long[] starts, long[] ends, long[] startedAts, long[] finishedAts,
+            ImmutableSet<Node>[] replicas)
+    {
+        myStarts = starts;
+        myEnds = ends;
+        myStartedAts = startedAts;
+        myFinishedAts = finishedAts;
+        myReplicas = replicas;
+    }
+
+    @Override
+    public Collection<VnodeRepairState> getVnodeRepairStates()
+    {
+        return myVnodeRepairStates;
+    }
+
+    @Override
+    public CompactVnodeRepairStates combineWithRepairedAt(long repairedAt)
+    {
+        long[] startedAts = null;
+        long[] finishedAts = null;
+
+        for (int i = 0; i < myStartedAts.length; i++)
+        {
+            if (myStartedAts[i] < repairedAt || myFinishedAts[i] < VnodeRepairState.UNREPAIRED)
+            {
+                if (startedAts == null)
+                {
+                    startedAts = myStartedAts.clone();
+                    finishedAts = myFinishedAts.clone();
+                }
+
+                startedAts[i] = repairedAt;
+                finishedAts[i] = VnodeRepairState.UNREPAIRED;
+            }
+        }
+
+        if (startedAts == null)
+        {
+            return this;
+        }
+
+        return new CompactVnodeRepairStates(myStarts, myEnds, startedAts, finishedAts, myReplicas);
+    }
+
+    /**
+     * Get the number of vnode repair states.
+     *
+     * @return The number of vnode repair states.
+     */
+    public int size()
+    {
+        return myStarts.length;
+    }
+
+    /**
+     * Get the vnode repair state at the provided index.
+     *
+     * @param index The index of the vnode.
+     * @return The created vnode repair state.
+     */
+    public VnodeRepairState get(int index)
+    {
+        return new VnodeRepairState(tokenRange(index), replicas(index), myStartedAts[index], myFinishedAts[index]);
+    }
+
+    /**
+     * Get the token range of the vnode at the provided index.
+     *
+     * @param index The index of the vnode.
+     * @return The token range.
+     */
+    public LongTokenRange tokenRange(int index)
+    {
+        return new LongTokenRange(myStarts[index], myEnds[index]);
+    }
+
+    /**
+     * Get the replicas of the vnode at the provided index.
+     *
+     * @param index The index of the vnode.
+     * @return The replicas.
+     */
+    public ImmutableSet<Node> replicas(int index)
+    {
+        return myReplicas[index];
+    }
+
+    /**
+     * Get the started at of the vnode at the provided index.
+     *
+     * @param index The index of the vnode.
+     * @return The time the last repair of the vnode was started.
+     * @see VnodeRepairState#getStartedAt()
+     */
+    public long startedAt(int index)
+    {
+        return myStartedAts[index];
+    }
+
+    /**
+     * Get the finished at of the vnode at the provided index.
+     *
+     * @param index The index of the vnode.
+     * @return The time the last repair of the vnode was finished.
+     * @see VnodeRepairState#getFinishedAt()
+     */
+    public long finishedAt(int index)
+    {
+        return myFinishedAts[index];
+    }
+
+    /**
+     * Get the last repaired at of the vnode at the provided index.
+     *
+     * @param index The index of the vnode.
+     * @return The time the vnode was last repaired.
+     * @see VnodeRepairState#lastRepairedAt()
+     */
+    public long lastRepairedAt(int index)
+    {
+        return myStartedAts[index];
+    }
+
+    @Override
+    public String toString()
+    {
+        return myVnodeRepairStates.toString();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CompactVnodeRepairStates that = (CompactVnodeRepairStates) o;
+
+        return Arrays.equals(myStarts, that.myStarts)
+                && Arrays.equals(myEnds, that.myEnds)
+                && Arrays.equals(myStartedAts, that.myStartedAts)
+                && Arrays.equals(myFinishedAts, that.myFinishedAts)
+                && Arrays.equals(myReplicas, that.myReplicas);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = Arrays.hashCode(myStarts);
+        result = 31 * result + Arrays.hashCode(myEnds);
+        result = 31 * result + Arrays.hashCode(myStartedAts);
+        result = 31 * result + Arrays.hashCode(myFinishedAts);
+        result = 31 * result + Arrays.hashCode(myReplicas);
+        return result;
+    }
+
+    public static Builder newBuilder(Collection<VnodeRepairState> vnodeRepairStates)
+    {
+        return new Builder(vnodeRepairStates);
+    }
+
+    private class VnodeRepairStateList extends AbstractList<VnodeRepairState> implements RandomAccess
+    {
+        @Override
+        public VnodeRepairState get(int index)
+        {
+            return CompactVnodeRepairStates.this.get(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return myStarts.length;
+        }
+    }
+
+    public static class Builder implements VnodeRepairStates.Builder
+    {
+        private final Map<LongTokenRange, Integer> myIndexes = new HashMap<>();
+
+        private final long[] myStarts;
+        private final long[] myEnds;
+        private final long[] myStartedAts;
+        private final long[] myFinishedAts;
+        private final ImmutableSet<Node>[] myReplicas;
+        private int mySize = 0;
+
+        @SuppressWarnings("unchecked")
+        public Builder(Collection<VnodeRepairState> vnodeRepairStates)
+        {
+            int capacity = vnodeRepairStates.size();
+            myStarts = new long[capacity];
+            myEnds = new long[capacity];
+            myStartedAts = new long[capacity];
+            myFinishedAts = new long[capacity];
+            myReplicas = new ImmutableSet[capacity];
+
+            for (VnodeRepairState vnodeRepairState : vnodeRepairStates)
+            {
+                Integer index = myIndexes.get(vnodeRepairState.getTokenRange());
+                if (index == null)
+                {
+                    index = mySize++;
+                    myIndexes.put(vnodeRepairState.getTokenRange(), index);
+                }
+
+                set(index, vnodeRepairState);
+            }
+        }
+
+        @Override
+        public Builder updateVnodeRepairStates(Collection<VnodeRepairState> vnodeRepairStates)
+        {
+            for (VnodeRepairState vnodeRepairState : vnodeRepairStates)
+            {
+                updateVnodeRepairState(vnodeRepairState);
+            }
+            return this;
+        }
+
+        @Override
+        public Builder updateVnodeRepairState(VnodeRepairState vnodeRepairState)
+        {
+            Integer index = myIndexes.get(vnodeRepairState.getTokenRange());
+            if (index != null && shouldReplace(index, vnodeRepairState))
+            {
+                myStartedAts[index] = vnodeRepairState.getStartedAt();
+                myFinishedAts[index] = vnodeRepairState.getFinishedAt();
+            }
+            return this;
+        }
+
+        @Override
+        public CompactVnodeRepairStates build()
+        {
+            return new CompactVnodeRepairStates(Arrays.copyOf(myStarts, mySize), Arrays.copyOf(myEnds, mySize),
+                    Arrays.copyOf(myStartedAts, mySize), Arrays.copyOf(myFinishedAts, mySize),
+                    Arrays.copyOf(myReplicas, mySize));
+        }
+
+        private void set(int index, VnodeRepairState vnodeRepairState)
+        {
+            myStarts[index] = vnodeRepairState.getTokenRange().start;
+            myEnds[index] = vnodeRepairState.getTokenRange().end;
+            myStartedAts[index] = vnodeRepairState.getStartedAt();
+            myFinishedAts[index] = vnodeRepairState.getFinishedAt();
+            myReplicas[index] = ReplicaSetRegistry.INSTANCE.intern(vnodeRepairState.getReplicas());
+        }
+
+        private boolean shouldReplace(int index, VnodeRepairState newVnode)
+        {
+            if (!myReplicas[index].equals(newVnode.getReplicas()))
+            {
+                return false;
+            }
+
+            return myStartedAts[index] < newVnode.lastRepairedAt() || myFinishedAts[index] < newVnode.getFinishedAt();
+        }
+    }
+}
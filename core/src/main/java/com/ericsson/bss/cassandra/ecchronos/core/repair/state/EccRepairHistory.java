@@ -16,17 +16,25 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
 
+import java.io.Closeable;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.*;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.utils.UUIDs;
@@ -39,8 +47,20 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableSet;
-
-public class EccRepairHistory implements RepairHistory, RepairHistoryProvider
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Repair history stored in the ecchronos repair_history table.
+ * <p>
+ * Repair sessions are written to the table in the background by a {@link RepairHistoryWriter},
+ * so starting and finishing a repair session never waits for the repair history to be persisted.
+ */
+public class EccRepairHistory implements RepairHistory, RepairHistoryProvider, Closeable
 {
     private static final Logger LOG = LoggerFactory.getLogger(EccRepairHistory.class);
 
@@ -55,7 +75,22 @@ public class EccRepairHistory implements RepairHistory, RepairHistoryProvider
     private static final String COLUMN_STARTED_AT = "started_at";
     private static final String COLUMN_FINISHED_AT = "finished_at";
 
+    private static final int DEFAULT_FETCH_SIZE = 5000;
+    private static final int DEFAULT_PREFETCH_CONCURRENCY = 16;
+    private static final long PREFETCH_VALIDITY_IN_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final long PREFETCH_WAIT_TIMEOUT_IN_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int WRITE_QUEUE_CAPACITY = 10000;
+    private static final int WRITE_MAX_BATCH_SIZE = 50;
+    private static final long WRITE_TICK_INTERVAL_IN_MS = 100L;
+    private static final long WRITE_BACKPRESSURE_TIMEOUT_IN_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long WRITE_MIN_BACKOFF_IN_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long WRITE_MAX_BACKOFF_IN_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long WRITE_CLOSE_TIMEOUT_IN_MS = TimeUnit.SECONDS.toMillis(30);
+
     private final long lookbackTimeInMs;
+    private final int fetchSize;
+    private final int prefetchConcurrency;
 
     private final Session session;
     private final Node localNode;
@@ -67,16 +102,28 @@ public class EccRepairHistory implements RepairHistory, RepairHistoryProvider
     private final PreparedStatement initiateStatement;
     private final PreparedStatement finishStatement;
 
+    private final ConcurrentMap<TableReference, PrefetchedHistory> prefetchedHistories = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService writeExecutor;
+    private final RepairHistoryWriter writer;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
     private EccRepairHistory(Builder builder)
     {
         Preconditions.checkArgument(builder.lookbackTimeInMs > 0,
                 "Lookback time must be a positive number");
+        Preconditions.checkArgument(builder.fetchSize > 0,
+                "Fetch size must be a positive number");
+        Preconditions.checkArgument(builder.prefetchConcurrency > 0,
+                "Prefetch concurrency must be a positive number");
 
         session = Preconditions.checkNotNull(builder.session, "Session cannot be null");
         localNode = Preconditions.checkNotNull(builder.localNode, "Local node must be set");
         statementDecorator = Preconditions.checkNotNull(builder.statementDecorator, "Statement decorator must be set");
         replicationState = Preconditions.checkNotNull(builder.replicationState, "Replication state must be set");
         lookbackTimeInMs = builder.lookbackTimeInMs;
+        fetchSize = builder.fetchSize;
+        prefetchConcurrency = builder.prefetchConcurrency;
 
         initiateStatement = session.prepare(QueryBuilder.insertInto(builder.keyspaceName, "repair_history")
                 .value(COLUMN_TABLE_ID, bindMarker())
@@ -99,13 +146,70 @@ public class EccRepairHistory implements RepairHistory, RepairHistoryProvider
                 .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
 
         iterateStatement = session.prepare(
-                QueryBuilder.select(COLUMN_STARTED_AT, COLUMN_FINISHED_AT, COLUMN_STATUS, COLUMN_RANGE_BEGIN, COLUMN_RANGE_END)
+                QueryBuilder.select(COLUMN_REPAIR_ID, COLUMN_STARTED_AT, COLUMN_FINISHED_AT, COLUMN_STATUS, COLUMN_RANGE_BEGIN, COLUMN_RANGE_END)
                         .from(builder.keyspaceName, "repair_history")
                         .where(eq(COLUMN_TABLE_ID, bindMarker()))
                         .and(eq(COLUMN_NODE_ID, bindMarker()))
                         .and(gte(COLUMN_REPAIR_ID, bindMarker()))
                         .and(lte(COLUMN_REPAIR_ID, bindMarker())))
                 .setConsistencyLevel(ConsistencyLevel.LOCAL_ONE);
+
+        writeExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("RepairHistoryWriter-%d").setDaemon(true).build());
+        writer = new RepairHistoryWriter(session, statementDecorator, writeExecutor,
+                new RepairHistoryWriter.Configuration(WRITE_QUEUE_CAPACITY, WRITE_MAX_BATCH_SIZE,
+                        WRITE_TICK_INTERVAL_IN_MS, WRITE_BACKPRESSURE_TIMEOUT_IN_MS, WRITE_MIN_BACKOFF_IN_MS,
+                        WRITE_MAX_BACKOFF_IN_MS),
+                Preconditions.checkNotNull(builder.metricRegistry, "Metric registry must be set"));
+    }
+
+    /**
+     * Write all queued repair history rows that can be written right away and wait for them to complete.
+     */
+    @VisibleForTesting
+    void flush()
+    {
+        try
+        {
+            writeExecutor.submit(writer::flushAll).get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            LOG.warn("Unable to flush repair history", e.getCause());
+        }
+    }
+
+    /**
+     * Write the queued repair history rows and stop the background writer.
+     */
+    @Override
+    public void close()
+    {
+        if (!closed.compareAndSet(false, true))
+        {
+            return;
+        }
+
+        writeExecutor.execute(writer::flushAll);
+        writeExecutor.shutdown();
+        try
+        {
+            if (!writeExecutor.awaitTermination(WRITE_CLOSE_TIMEOUT_IN_MS, TimeUnit.MILLISECONDS))
+            {
+                LOG.warn("Unable to write {} repair history rows before closing", writer.queuedWrites());
+                writeExecutor.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            writeExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
     }
 
     @Override
@@ -133,14 +237,110 @@ public class EccRepairHistory implements RepairHistory, RepairHistoryProvider
     @Override
     public Iterator<RepairEntry> iterate(TableReference tableReference, long to, long from,
             Predicate<RepairEntry> predicate)
+    {
+        Iterator<Row> prefetchedRows = getPrefetchedRows(tableReference, to, from);
+        if (prefetchedRows != null)
+        {
+            return new RepairEntryIterator(tableReference, prefetchedRows, predicate);
+        }
+
+        ResultSet resultSet = execute(iterateStatement(tableReference, to, from));
+
+        return new RepairEntryIterator(tableReference, resultSet.iterator(), predicate);
+    }
+
+    /**
+     * Fetch the repair history within the lookback time for the provided tables in the background.
+     * <p>
+     * At most the configured prefetch concurrency of queries are running at the same time.
+     * The first call to iterate the history of a prefetched table waits for the prefetch of that table to complete and
+     * uses the fetched rows instead of querying the repair history again.
+     * Only the repair history newer than the prefetch is queried if the iteration goes beyond the prefetched history.
+     * The fetched rows are only used once and discarded if they are not used within a few minutes.
+     *
+     * @param tableReferences The tables to prefetch the repair history for.
+     */
+    @Override
+    public void prefetch(Collection<TableReference> tableReferences)
+    {
+        long to = System.currentTimeMillis();
+        long from = to - lookbackTimeInMs;
+
+        Queue<PrefetchedHistory> pendingHistories = new ConcurrentLinkedQueue<>();
+
+        for (TableReference tableReference : tableReferences)
+        {
+            PrefetchedHistory prefetchedHistory = new PrefetchedHistory(tableReference, to, from);
+            prefetchedHistories.put(tableReference, prefetchedHistory);
+            pendingHistories.add(prefetchedHistory);
+        }
+
+        LOG.debug("Prefetching repair history for {} tables", pendingHistories.size());
+
+        for (int i = 0; i < prefetchConcurrency; i++)
+        {
+            prefetchNext(pendingHistories);
+        }
+    }
+
+    private void prefetchNext(Queue<PrefetchedHistory> pendingHistories)
+    {
+        PrefetchedHistory prefetchedHistory = pendingHistories.poll();
+        if (prefetchedHistory != null)
+        {
+            prefetchedHistory.fetch().whenComplete((rows, throwable) -> prefetchNext(pendingHistories));
+        }
+    }
+
+    private Iterator<Row> getPrefetchedRows(TableReference tableReference, long to, long from)
+    {
+        PrefetchedHistory prefetchedHistory = prefetchedHistories.remove(tableReference);
+        if (prefetchedHistory == null)
+        {
+            if (!prefetchedHistories.isEmpty())
+            {
+                prefetchedHistories.values().removeIf(PrefetchedHistory::isExpired);
+            }
+            return null;
+        }
+
+        if (!prefetchedHistory.covers(from))
+        {
+            LOG.debug("Prefetched repair history for {} does not cover {}", tableReference, from);
+            return null;
+        }
+
+        try
+        {
+            Iterator<Row> prefetchedRows = prefetchedHistory.rowsBetween(to, from);
+            if (to <= prefetchedHistory.to)
+            {
+                return prefetchedRows;
+            }
+
+            // The history is sorted in descending order so the newer rows are returned first
+            ResultSet newerRows = execute(iterateStatement(tableReference, to, prefetchedHistory.to + 1));
+            return Iterators.concat(newerRows.iterator(), prefetchedRows);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while waiting for prefetched repair history for {}", tableReference, e);
+        }
+        catch (ExecutionException | TimeoutException e)
+        {
+            LOG.warn("Unable to prefetch repair history for {}", tableReference, e);
+        }
+        return null;
+    }
+
+    private Statement iterateStatement(TableReference tableReference, long to, long from)
     {
         UUID start = UUIDs.startOf(from);
         UUID finish = UUIDs.endOf(to);
 
-        Statement statement = iterateStatement.bind(tableReference.getId(), localNode.getId(), start, finish);
-        ResultSet resultSet = execute(statement);
-
-        return new RepairEntryIterator(tableReference, resultSet, predicate);
+        return iterateStatement.bind(tableReference.getId(), localNode.getId(), start, finish)
+                .setFetchSize(fetchSize);
     }
 
     private ResultSet execute(Statement statement)
@@ -153,16 +353,109 @@ public class EccRepairHistory implements RepairHistory, RepairHistoryProvider
         return session.executeAsync(statementDecorator.apply(statement));
     }
 
+    /**
+     * The repair history of a single table fetched asynchronously, following all pages of the result.
+     */
+    class PrefetchedHistory
+    {
+        private final TableReference tableReference;
+        private final long to;
+        private final long from;
+        private final CompletableFuture<List<Row>> rowsFuture = new CompletableFuture<>();
+        private final List<Row> rows = new ArrayList<>();
+
+        PrefetchedHistory(TableReference tableReference, long to, long from)
+        {
+            this.tableReference = tableReference;
+            this.to = to;
+            this.from = from;
+        }
+
+        CompletableFuture<List<Row>> fetch()
+        {
+            try
+            {
+                addPage(executeAsync(iterateStatement(tableReference, to, from)));
+            }
+            catch (Exception e)
+            {
+                rowsFuture.completeExceptionally(e);
+            }
+            return rowsFuture;
+        }
+
+        boolean covers(long requestedFrom)
+        {
+            return from <= requestedFrom && !isExpired();
+        }
+
+        boolean isExpired()
+        {
+            return System.currentTimeMillis() - to > PREFETCH_VALIDITY_IN_MS;
+        }
+
+        Iterator<Row> rowsBetween(long requestedTo, long requestedFrom)
+                throws InterruptedException, ExecutionException, TimeoutException
+        {
+            return rowsFuture.get(PREFETCH_WAIT_TIMEOUT_IN_MS, TimeUnit.MILLISECONDS).stream()
+                    .filter(row -> isBetween(row, requestedTo, requestedFrom))
+                    .iterator();
+        }
+
+        private boolean isBetween(Row row, long requestedTo, long requestedFrom)
+        {
+            long repairedAt = UUIDs.unixTimestamp(row.getUUID(COLUMN_REPAIR_ID));
+            return repairedAt >= requestedFrom && repairedAt <= requestedTo;
+        }
+
+        private void addPage(ListenableFuture<ResultSet> resultSetFuture)
+        {
+            Futures.addCallback(resultSetFuture, new FutureCallback<ResultSet>()
+            {
+                @Override
+                public void onSuccess(ResultSet resultSet)
+                {
+                    try
+                    {
+                        for (int i = resultSet.getAvailableWithoutFetching(); i > 0; i--)
+                        {
+                            rows.add(resultSet.one());
+                        }
+
+                        if (resultSet.isFullyFetched())
+                        {
+                            rowsFuture.complete(rows);
+                        }
+                        else
+                        {
+                            addPage(resultSet.fetchMoreResults());
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        rowsFuture.completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    rowsFuture.completeExceptionally(t);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+    }
+
     class RepairEntryIterator extends AbstractIterator<RepairEntry>
     {
         private final TableReference tableReference;
         private final Iterator<Row> rowIterator;
         private final Predicate<RepairEntry> predicate;
 
-        RepairEntryIterator(TableReference tableReference, ResultSet resultSet, Predicate<RepairEntry> predicate)
+        RepairEntryIterator(TableReference tableReference, Iterator<Row> rowIterator, Predicate<RepairEntry> predicate)
         {
             this.tableReference = tableReference;
-            this.rowIterator = resultSet.iterator();
+            this.rowIterator = rowIterator;
             this.predicate = predicate;
         }
 
@@ -272,7 +565,12 @@ public class EccRepairHistory implements RepairHistory, RepairHistoryProvider
             String range_end = Long.toString(range.end);
             Date started_at = new Date(UUIDs.unixTimestamp(repairId.get()));
 
-            insertWithRetry(participant -> insertStart(range_begin, range_end, started_at, participant));
+            for (UUID participant : participants)
+            {
+                writer.write(tableId, participant, repairId.get(), initiateStatement.bind(tableId, participant,
+                        repairId.get(), jobId, nodeId, range_begin, range_end, RepairStatus.STARTED.toString(),
+                        started_at));
+            }
         }
 
         @Override
@@ -283,64 +581,13 @@ public class EccRepairHistory implements RepairHistory, RepairHistoryProvider
             transitionTo(SessionState.DONE);
             Date finished_at = new Date(System.currentTimeMillis());
 
-            insertWithRetry(participant -> insertFinish(repairStatus, finished_at, participant));
-        }
-
-        private void insertWithRetry(Function<UUID, ResultSetFuture> insertFunction)
-        {
-            Map<UUID, ResultSetFuture> futures = new HashMap<>();
-
             for (UUID participant : participants)
             {
-                ResultSetFuture future = insertFunction.apply(participant);
-                futures.put(participant, future);
-            }
-
-            boolean loggedException = false;
-
-            for (Map.Entry<UUID, ResultSetFuture> entry : futures.entrySet())
-            {
-                ResultSetFuture future = entry.getValue();
-
-                try
-                {
-                    future.get(2, TimeUnit.SECONDS);
-                }
-                catch (InterruptedException e)
-                {
-                    Thread.currentThread().interrupt();
-                }
-                catch (ExecutionException | TimeoutException e)
-                {
-                    UUID participant = entry.getKey();
-                    if (!loggedException)
-                    {
-                        LOG.warn("Unable to update repair history for {} - {}, retrying", participant, this, e);
-                        loggedException = true;
-                    }
-                    else
-                    {
-                        LOG.warn("Unable to update repair history for {} - {}, retrying", participant, this);
-                    }
-                    insertFunction.apply(participant);
-                }
+                writer.write(tableId, participant, repairId.get(), finishStatement.bind(repairStatus.toString(),
+                        finished_at, tableId, participant, repairId.get()));
             }
         }
 
-        private ResultSetFuture insertStart(String range_begin, String range_end, Date started_at, UUID participant)
-        {
-            Statement statement = initiateStatement.bind(tableId, participant, repairId.get(), jobId, nodeId, range_begin,
-                    range_end, RepairStatus.STARTED.toString(), started_at);
-            return executeAsync(statement);
-        }
-
-        private ResultSetFuture insertFinish(RepairStatus repairStatus, Date finished_at, UUID participant)
-        {
-            Statement statement = finishStatement.bind(repairStatus.toString(), finished_at, tableId, participant,
-                    repairId.get());
-            return executeAsync(statement);
-        }
-
         @Override
         public String toString()
         {
@@ -374,6 +621,9 @@ public class EccRepairHistory implements RepairHistory, RepairHistoryProvider
         private ReplicationState replicationState;
         private long lookbackTimeInMs;
         private String keyspaceName = "ecchronos";
+        private int fetchSize = DEFAULT_FETCH_SIZE;
+        private int prefetchConcurrency = DEFAULT_PREFETCH_CONCURRENCY;
+        private MetricRegistry metricRegistry = new MetricRegistry();
 
         public Builder withSession(Session session)
         {
@@ -411,6 +661,24 @@ public class EccRepairHistory implements RepairHistory, RepairHistoryProvider
             return this;
         }
 
+        public Builder withFetchSize(int fetchSize)
+        {
+            this.fetchSize = fetchSize;
+            return this;
+        }
+
+        public Builder withPrefetchConcurrency(int prefetchConcurrency)
+        {
+            this.prefetchConcurrency = prefetchConcurrency;
+            return this;
+        }
+
+        public Builder withMetricRegistry(MetricRegistry metricRegistry)
+        {
+            this.metricRegistry = metricRegistry;
+            return this;
+        }
+
         public EccRepairHistory build()
         {
             return new EccRepairHistory(this);
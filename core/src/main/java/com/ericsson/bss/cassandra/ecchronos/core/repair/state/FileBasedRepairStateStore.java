@@ -0,0 +1,221 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A repair state store that keeps one file per table in a local directory.
+ * <p>
+ * The files use a compact binary format:
+ * <pre>
+ * magic (int), version (int), table id (2 x long), reconciled at (long), entry count (int)
+ * for each entry: range start (long), range end (long), started at (long), finished at (long),
+ *                 replica count (int), replica host ids (2 x long each)
+ * </pre>
+ * Files with an unknown magic, version or table id are ignored, as well as files with an entry count that does not
+ * fit in the file.
+ */
+public class FileBasedRepairStateStore implements RepairStateStore
+{
+    private static final Logger LOG = LoggerFactory.getLogger(FileBasedRepairStateStore.class);
+
+    static final int MAGIC = 0x45434352; // ECCR
+    static final int VERSION = 1;
+
+    private static final String FILE_SUFFIX = ".state";
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    private static final int HEADER_SIZE_IN_BYTES = 4 + 4 + 16 + 8 + 4;
+    private static final int MIN_ENTRY_SIZE_IN_BYTES = 8 + 8 + 8 + 8 + 4;
+
+    private final File myDirectory;
+
+    public FileBasedRepairStateStore(File directory)
+    {
+        myDirectory = Preconditions.checkNotNull(directory, "Directory must be set");
+    }
+
+    @Override
+    public void store(TableReference tableReference, long reconciledAt, Collection<VnodeRepairState> vnodeRepairStates)
+    {
+        Path file = getFile(tableReference);
+        Path temporaryFile = file.resolveSibling(file.getFileName() + TEMPORARY_FILE_SUFFIX);
+
+        try
+        {
+            Files.createDirectories(myDirectory.toPath());
+
+            try (OutputStream outputStream = Files.newOutputStream(temporaryFile);
+                    DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream)))
+            {
+                write(dataOutputStream, tableReference, reconciledAt, vnodeRepairStates);
+            }
+
+            move(temporaryFile, file);
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Unable to store repair state of {} in {}", tableReference, file, e);
+        }
+    }
+
+    @Override
+    public StoredRepairState load(TableReference tableReference)
+    {
+        Path file = getFile(tableReference);
+
+        try (InputStream inputStream = Files.newInputStream(file);
+                DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream)))
+        {
+            return read(dataInputStream, tableReference, Files.size(file));
+        }
+        catch (NoSuchFileException e)
+        {
+            LOG.debug("No stored repair state found for {}", tableReference);
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Unable to load stored repair state of {} from {}", tableReference, file, e);
+        }
+
+        return null;
+    }
+
+    private Path getFile(TableReference tableReference)
+    {
+        return myDirectory.toPath().resolve(tableReference.getId() + FILE_SUFFIX);
+    }
+
+    private static void move(Path source, Path target) throws IOException
+    {
+        try
+        {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void write(DataOutputStream out, TableReference tableReference, long reconciledAt,
+            Collection<VnodeRepairState> vnodeRepairStates) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeUUID(out, tableReference.getId());
+        out.writeLong(reconciledAt);
+        out.writeInt(vnodeRepairStates.size());
+
+        for (VnodeRepairState vnodeRepairState : vnodeRepairStates)
+        {
+            LongTokenRange tokenRange = vnodeRepairState.getTokenRange();
+            out.writeLong(tokenRange.start);
+            out.writeLong(tokenRange.end);
+            out.writeLong(vnodeRepairState.getStartedAt());
+            out.writeLong(vnodeRepairState.getFinishedAt());
+
+            Set<Node> replicas = vnodeRepairState.getReplicas();
+            out.writeInt(replicas.size());
+            for (Node replica : replicas)
+            {
+                writeUUID(out, replica.getId());
+            }
+        }
+    }
+
+    private static StoredRepairState read(DataInputStream in, TableReference tableReference, long fileSize)
+            throws IOException
+    {
+        int magic = in.readInt();
+        int version = in.readInt();
+        if (magic != MAGIC || version != VERSION)
+        {
+            LOG.info("Ignoring stored repair state of {} with unknown format {}/{}", tableReference, magic, version);
+            return null;
+        }
+
+        UUID tableId = readUUID(in);
+        if (!tableId.equals(tableReference.getId()))
+        {
+            LOG.info("Ignoring stored repair state of {} with table id {}", tableReference, tableId);
+            return null;
+        }
+
+        long reconciledAt = in.readLong();
+        int entryCount = in.readInt();
+        if (entryCount < 0 || entryCount > (fileSize - HEADER_SIZE_IN_BYTES) / MIN_ENTRY_SIZE_IN_BYTES)
+        {
+            throw new IOException("Invalid entry count " + entryCount);
+        }
+
+        List<StoredRepairState.Entry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++)
+        {
+            LongTokenRange tokenRange = new LongTokenRange(in.readLong(), in.readLong());
+            long startedAt = in.readLong();
+            long finishedAt = in.readLong();
+
+            int replicaCount = in.readInt();
+            ImmutableSet.Builder<UUID> replicaIds = ImmutableSet.builder();
+            for (int j = 0; j < replicaCount; j++)
+            {
+                replicaIds.add(readUUID(in));
+            }
+
+            entries.add(new StoredRepairState.Entry(tokenRange, replicaIds.build(), startedAt, finishedAt));
+        }
+
+        return new StoredRepairState(reconciledAt, entries);
+    }
+
+    private static void writeUUID(DataOutputStream out, UUID uuid) throws IOException
+    {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUUID(DataInputStream in) throws IOException
+    {
+        return new UUID(in.readLong(), in.readLong());
+    }
+}
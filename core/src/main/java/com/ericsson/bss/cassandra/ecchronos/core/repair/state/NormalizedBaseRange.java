@@ -30,18 +30,20 @@ import java.util.Objects;
  * smaller than the end.
  * This is useful to avoid dealing with token ranges wrapping around
  * the end of the token range.
+ *
+ * The offsets are calculated as unsigned longs where an end of 0 represents 2^64.
  */
 public class NormalizedBaseRange
 {
     private static final BigInteger NORMALIZED_RANGE_START = BigInteger.ZERO;
 
     private final VnodeRepairState baseVnode;
-    final BigInteger end;
+    final long end;
 
     public NormalizedBaseRange(VnodeRepairState baseVnode)
     {
         this.baseVnode = baseVnode;
-        this.end = baseVnode.getTokenRange().rangeSize();
+        this.end = baseVnode.getTokenRange().unsignedRangeSize();
     }
 
     /**
@@ -52,7 +54,7 @@ public class NormalizedBaseRange
      */
     public boolean inRange(BigInteger normalizedToken)
     {
-        return normalizedToken.compareTo(NORMALIZED_RANGE_START) >= 0 && normalizedToken.compareTo(end) <= 0;
+        return normalizedToken.compareTo(NORMALIZED_RANGE_START) >= 0 && normalizedToken.compareTo(LongTokenRange.toBigInteger(end)) <= 0;
     }
 
     /**
@@ -70,15 +72,11 @@ public class NormalizedBaseRange
             throw new IllegalArgumentException(baseVnode + " is not covering " + subRange);
         }
 
-        BigInteger baseStart = BigInteger.valueOf(baseVnode.getTokenRange().start);
+        long baseStart = baseVnode.getTokenRange().start;
 
-        BigInteger normalizedStart = BigInteger.valueOf(subRange.getTokenRange().start).subtract(baseStart);
-        if (normalizedStart.compareTo(BigInteger.ZERO) < 0)
-        {
-            normalizedStart = normalizedStart.add(LongTokenRange.FULL_RANGE);
-        }
-
-        BigInteger normalizedEnd = normalizedStart.add(subRange.getTokenRange().rangeSize());
+        // The offsets wrap around in the same way as the tokens which makes them unsigned
+        long normalizedStart = subRange.getTokenRange().start - baseStart;
+        long normalizedEnd = subRange.getTokenRange().end - baseStart;
 
         return new NormalizedRange(this, normalizedStart, normalizedEnd, subRange.getStartedAt(), subRange.getFinishedAt());
     }
@@ -94,24 +92,12 @@ public class NormalizedBaseRange
      */
     public VnodeRepairState transform(NormalizedRange range)
     {
-        BigInteger baseStart = BigInteger.valueOf(baseVnode.getTokenRange().start);
-
-        BigInteger startOffset = range.start();
-        BigInteger endOffset = range.end();
+        long baseStart = baseVnode.getTokenRange().start;
 
-        BigInteger realStart = baseStart.add(startOffset);
-        BigInteger realEnd = baseStart.add(endOffset);
-
-        if (realStart.compareTo(LongTokenRange.RANGE_END) > 0)
-        {
-            realStart = realStart.subtract(LongTokenRange.FULL_RANGE);
-        }
-        if (realEnd.compareTo(LongTokenRange.RANGE_END) > 0)
-        {
-            realEnd = realEnd.subtract(LongTokenRange.FULL_RANGE);
-        }
+        long realStart = baseStart + range.unsignedStart();
+        long realEnd = baseStart + range.unsignedEnd();
 
-        return new VnodeRepairState(new LongTokenRange(realStart.longValueExact(), realEnd.longValueExact()), baseVnode.getReplicas(), range.getStartedAt(), range.getFinishedAt());
+        return new VnodeRepairState(new LongTokenRange(realStart, realEnd), baseVnode.getReplicas(), range.getStartedAt(), range.getFinishedAt());
     }
 
     @Override
@@ -121,7 +107,7 @@ public class NormalizedBaseRange
         if (o == null || getClass() != o.getClass()) return false;
         NormalizedBaseRange that = (NormalizedBaseRange) o;
         return baseVnode.equals(that.baseVnode) &&
-                end.equals(that.end);
+                end == that.end;
     }
 
     @Override
@@ -133,6 +119,6 @@ public class NormalizedBaseRange
     @Override
     public String toString()
     {
-        return String.format("(%d, %d]", NORMALIZED_RANGE_START, end);
+        return String.format("(%d, %d]", NORMALIZED_RANGE_START, LongTokenRange.toBigInteger(end));
     }
 }
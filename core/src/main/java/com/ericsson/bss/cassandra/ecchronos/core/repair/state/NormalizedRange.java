@@ -17,6 +17,9 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
 import java.math.BigInteger;
 import java.util.Objects;
 
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.google.common.primitives.UnsignedLong;
+
 /**
  * A normalized range based on a "base vnode".
  * The range is normalized so that the token range in the base vnode
@@ -25,17 +28,25 @@ import java.util.Objects;
  * When comparing normalized ranges the ones with lowest start comes first.
  * If two normalized ranges have the same start the one including more is sorted first.
  * E.g (5, 10], (5, 15] is ordered as (5, 15], (5, 10]
+ *
+ * The normalized tokens are kept as unsigned longs.
+ * Since a base vnode covering the full token range ends at 2^64 an end of 0 represents 2^64.
  */
 public class NormalizedRange implements Comparable<NormalizedRange>
 {
     private final NormalizedBaseRange base;
-    private final BigInteger start;
-    private final BigInteger end;
+    private final long start;
+    private final long end;
 
     private final long startedAt;
     private final long finishedAt;
 
     NormalizedRange(NormalizedBaseRange base, BigInteger start, BigInteger end, long startedAt, long finishedAt)
+    {
+        this(base, start.longValue(), end.longValue(), startedAt, finishedAt);
+    }
+
+    NormalizedRange(NormalizedBaseRange base, long start, long end, long startedAt, long finishedAt)
     {
         this.base = base;
         this.start = start;
@@ -51,7 +62,7 @@ public class NormalizedRange implements Comparable<NormalizedRange>
      */
     public BigInteger start()
     {
-        return start;
+        return UnsignedLong.fromLongBits(start).bigIntegerValue();
     }
 
     /**
@@ -60,6 +71,26 @@ public class NormalizedRange implements Comparable<NormalizedRange>
      * @return The normalized end token
      */
     public BigInteger end()
+    {
+        return LongTokenRange.toBigInteger(end);
+    }
+
+    /**
+     * Get the normalized start token of this sub range as an unsigned long.
+     *
+     * @return The unsigned normalized start token
+     */
+    public long unsignedStart()
+    {
+        return start;
+    }
+
+    /**
+     * Get the normalized end token of this sub range as an unsigned long.
+     *
+     * @return The unsigned normalized end token where 0 represents 2^64
+     */
+    public long unsignedEnd()
     {
         return end;
     }
@@ -98,7 +129,7 @@ public class NormalizedRange implements Comparable<NormalizedRange>
             throw new IllegalArgumentException("Token " + newStart + " not in range " + base);
         }
 
-        return new NormalizedRange(base, newStart, end, startedAt, finishedAt);
+        return new NormalizedRange(base, newStart.longValue(), end, startedAt, finishedAt);
     }
 
     /**
@@ -115,7 +146,7 @@ public class NormalizedRange implements Comparable<NormalizedRange>
             throw new IllegalArgumentException("Token " + newEnd + " not in range " + base);
         }
 
-        return new NormalizedRange(base, start, newEnd, startedAt, finishedAt);
+        return new NormalizedRange(base, start, newEnd.longValue(), startedAt, finishedAt);
     }
 
     /**
@@ -134,7 +165,7 @@ public class NormalizedRange implements Comparable<NormalizedRange>
     {
         verifySameBaseRange(other.base);
 
-        if (end.compareTo(other.start) >= 0)
+        if (compareStartToEnd(other.start, end) <= 0)
         {
             throw new IllegalArgumentException("Cannot create range between " + this + " -> " + other);
         }
@@ -154,7 +185,7 @@ public class NormalizedRange implements Comparable<NormalizedRange>
     {
         verifySameBaseRange(other.base);
 
-        if (start.compareTo(other.start) > 0 || other.start.compareTo(end) >= 0)
+        if (Long.compareUnsigned(start, other.start) > 0 || compareStartToEnd(other.start, end) >= 0)
         {
             throw new IllegalArgumentException("Cannot split end of " + this + " with " + other);
         }
@@ -177,7 +208,7 @@ public class NormalizedRange implements Comparable<NormalizedRange>
     {
         verifySameBaseRange(other.base);
 
-        if (other.start.compareTo(end) != 0)
+        if (compareStartToEnd(other.start, end) != 0)
         {
             throw new IllegalArgumentException("Range " + other + " is not adjacent to " + this);
         }
@@ -197,7 +228,7 @@ public class NormalizedRange implements Comparable<NormalizedRange>
     {
         verifySameBaseRange(other.base);
 
-        return start.compareTo(other.start) <= 0 && end.compareTo(other.end) >= 0;
+        return Long.compareUnsigned(start, other.start) <= 0 && LongTokenRange.compareRangeSize(end, other.end) >= 0;
     }
 
     private void verifySameBaseRange(NormalizedBaseRange other)
@@ -208,18 +239,31 @@ public class NormalizedRange implements Comparable<NormalizedRange>
         }
     }
 
+    /**
+     * Compare an unsigned start token with an unsigned end token where an end of 0 represents 2^64.
+     */
+    private static int compareStartToEnd(long start, long end)
+    {
+        if (end == 0)
+        {
+            return -1;
+        }
+
+        return Long.compareUnsigned(start, end);
+    }
+
     @Override
     public int compareTo(NormalizedRange o)
     {
         verifySameBaseRange(o.base);
 
-        int cmp = start.compareTo(o.start);
+        int cmp = Long.compareUnsigned(start, o.start);
         if (cmp != 0)
         {
             return cmp;
         }
 
-        return o.end.compareTo(end);
+        return LongTokenRange.compareRangeSize(o.end, end);
     }
 
     @Override
@@ -231,8 +275,8 @@ public class NormalizedRange implements Comparable<NormalizedRange>
         return startedAt == that.startedAt &&
                 finishedAt == that.finishedAt &&
                 base.equals(that.base) &&
-                start.equals(that.start) &&
-                end.equals(that.end);
+                start == that.start &&
+                end == that.end;
     }
 
     @Override
@@ -244,7 +288,7 @@ public class NormalizedRange implements Comparable<NormalizedRange>
     @Override
     public String toString()
     {
-        return String.format("(%d, %d], %d-%d", start, end, startedAt, finishedAt);
+        return String.format("(%d, %d], %d-%d", start(), end(), startedAt, finishedAt);
     }
 
 }
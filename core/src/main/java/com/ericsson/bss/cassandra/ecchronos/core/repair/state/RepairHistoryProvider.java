@@ -14,6 +14,7 @@
  */
 package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
 
+import java.util.Collection;
 import java.util.Iterator;
 
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
@@ -47,4 +48,15 @@ public interface RepairHistoryProvider
      * @return A filtered iterator for the repair history of the table.
      */
     Iterator<RepairEntry> iterate(TableReference tableReference, long to, long from, Predicate<RepairEntry> predicate);
+
+    /**
+     * Hint that the repair history for the provided tables will be iterated shortly, e.g. during startup.
+     * Implementations may use this to fetch the history for several tables concurrently.
+     *
+     * @param tableReferences The tables for which the history will be iterated.
+     */
+    default void prefetch(Collection<TableReference> tableReferences)
+    {
+        // Do nothing by default
+    }
 }
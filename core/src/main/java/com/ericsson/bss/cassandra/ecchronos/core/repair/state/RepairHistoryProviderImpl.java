@@ -23,6 +23,7 @@ import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.NodeResolver;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.ReplicaSetRegistry;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
@@ -173,7 +174,8 @@ public class RepairHistoryProviderImpl implements RepairHistoryProvider
                         finishedAt = finished.getTime();
                     }
 
-                    RepairEntry repairEntry = new RepairEntry(tokenRange, startedAt, finishedAt, nodes, status);
+                    RepairEntry repairEntry = new RepairEntry(tokenRange, startedAt, finishedAt,
+                            ReplicaSetRegistry.INSTANCE.intern(nodes), status);
 
                     if(myPredicate.apply(repairEntry))
                     {
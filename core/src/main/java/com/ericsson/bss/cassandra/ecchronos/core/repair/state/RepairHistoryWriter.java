@@ -0,0 +1,418 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
+
+/**
+ * Writes repair history rows in the background.
+ * <p>
+ * Writes are added to a bounded queue and written from a single periodic tick.
+ * Each tick groups the queued writes per partition, i.e. per table and node, into unlogged batches.
+ * Only one write per row is sent in each tick so that the writes of a row are applied in the order they were added.
+ * Failed writes are retried with an exponential backoff until they are written.
+ * <p>
+ * Adding a write never waits for it to be persisted.
+ * If the queue is full the caller waits for the queue to be drained by the next tick.
+ * Writes are only dropped if the writer is closed or the caller is interrupted while waiting.
+ * <p>
+ * The following metrics are exposed:
+ * <ul>
+ * <li>{@value #QUEUED_WRITES} - Number of writes waiting to be written or retried</li>
+ * <li>{@value #BATCH_LATENCY} - Time taken by each batch</li>
+ * <li>{@value #WRITE_FAILURES} - Number of failed write attempts</li>
+ * <li>{@value #BLOCKED_WRITES} - Number of writes that had to wait for a full queue</li>
+ * <li>{@value #DROPPED_WRITES} - Number of writes that were dropped</li>
+ * </ul>
+ */
+class RepairHistoryWriter implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RepairHistoryWriter.class);
+
+    static final String QUEUED_WRITES = "RepairHistoryQueuedWrites";
+    static final String BATCH_LATENCY = "RepairHistoryBatchLatency";
+    static final String WRITE_FAILURES = "RepairHistoryWriteFailures";
+    static final String BLOCKED_WRITES = "RepairHistoryBlockedWrites";
+    static final String DROPPED_WRITES = "RepairHistoryDroppedWrites";
+
+    /**
+     * The number of failed attempts after which a write is reported as failing, it is still retried.
+     */
+    static final int MAX_ATTEMPTS = 5;
+
+    private static final long BATCH_TIMEOUT_IN_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private final BlockingQueue<PendingWrite> myQueue;
+    private final List<PendingWrite> myRetries = new ArrayList<>(); // Only accessed by the tick
+    private final Session mySession;
+    private final StatementDecorator myStatementDecorator;
+    private final int myMaxBatchSize;
+    private final long myBackpressureTimeoutInMs;
+    private final long myMinBackoffInMs;
+    private final long myMaxBackoffInMs;
+    private final MetricRegistry myMetricRegistry;
+    private final ScheduledFuture<?> myTickFuture;
+
+    private final Timer myBatchLatency;
+    private final Counter myWriteFailures;
+    private final Counter myBlockedWrites;
+    private final Counter myDroppedWrites;
+
+    private volatile int myRetrySize = 0;
+    private volatile boolean myClosed = false;
+
+    RepairHistoryWriter(Session session, StatementDecorator statementDecorator, ScheduledExecutorService executor,
+            Configuration configuration, MetricRegistry metricRegistry)
+    {
+        mySession = session;
+        myStatementDecorator = statementDecorator;
+        myQueue = new ArrayBlockingQueue<>(configuration.queueCapacity);
+        myMaxBatchSize = configuration.maxBatchSize;
+        myBackpressureTimeoutInMs = configuration.backpressureTimeoutInMs;
+        myMinBackoffInMs = configuration.minBackoffInMs;
+        myMaxBackoffInMs = configuration.maxBackoffInMs;
+        myMetricRegistry = metricRegistry;
+
+        myBatchLatency = myMetricRegistry.timer(BATCH_LATENCY);
+        myWriteFailures = myMetricRegistry.counter(WRITE_FAILURES);
+        myBlockedWrites = myMetricRegistry.counter(BLOCKED_WRITES);
+        myDroppedWrites = myMetricRegistry.counter(DROPPED_WRITES);
+        myMetricRegistry.gauge(QUEUED_WRITES, () -> (Gauge<Integer>) this::queuedWrites);
+
+        myTickFuture = executor.scheduleWithFixedDelay(this::tick, configuration.tickIntervalInMs,
+                configuration.tickIntervalInMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a write of a repair history row.
+     * <p>
+     * If the queue is full this blocks until there is room in the queue.
+     *
+     * @param tableId The table id of the row.
+     * @param nodeId The node id of the row.
+     * @param repairId The repair id of the row.
+     * @param statement The statement writing the row.
+     * @return True if the write was added, false if it was dropped.
+     */
+    boolean write(UUID tableId, UUID nodeId, UUID repairId, Statement statement)
+    {
+        PendingWrite pendingWrite = new PendingWrite(new RowKey(tableId, nodeId, repairId), statement);
+
+        if (myQueue.offer(pendingWrite))
+        {
+            return true;
+        }
+
+        myBlockedWrites.inc();
+
+        try
+        {
+            while (!myClosed)
+            {
+                if (myQueue.offer(pendingWrite, myBackpressureTimeoutInMs, TimeUnit.MILLISECONDS))
+                {
+                    return true;
+                }
+
+                LOG.warn("Repair history write queue is full, waiting to add write of {}", pendingWrite.myRowKey);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        LOG.warn("Unable to add repair history write of {}, dropping", pendingWrite.myRowKey);
+        myDroppedWrites.inc();
+        return false;
+    }
+
+    int queuedWrites()
+    {
+        return myQueue.size() + myRetrySize;
+    }
+
+    /**
+     * Write the queued writes and the retries that are due at the provided time.
+     * <p>
+     * Must only be called from a single thread at a time.
+     *
+     * @param now The current time in milliseconds.
+     * @return The number of writes that were sent.
+     */
+    int flush(long now)
+    {
+        List<PendingWrite> candidates = new ArrayList<>(myRetries);
+        myQueue.drainTo(candidates);
+        myRetries.clear();
+
+        Set<RowKey> rows = new HashSet<>();
+        Map<PartitionKey, List<PendingWrite>> partitions = new LinkedHashMap<>();
+
+        for (PendingWrite candidate : candidates)
+        {
+            if (rows.add(candidate.myRowKey) && candidate.myNextAttemptAt <= now)
+            {
+                partitions.computeIfAbsent(candidate.myRowKey.myPartitionKey, k -> new ArrayList<>()).add(candidate);
+                candidate.mySent = true;
+            }
+        }
+
+        int sent = 0;
+        for (List<PendingWrite> partition : partitions.values())
+        {
+            for (int i = 0; i < partition.size(); i += myMaxBatchSize)
+            {
+                List<PendingWrite> batch = partition.subList(i, Math.min(i + myMaxBatchSize, partition.size()));
+                send(batch, now);
+                sent += batch.size();
+            }
+        }
+
+        for (PendingWrite candidate : candidates)
+        {
+            if (!candidate.mySent || !candidate.mySucceeded)
+            {
+                candidate.mySent = false;
+                myRetries.add(candidate);
+            }
+        }
+        myRetrySize = myRetries.size();
+
+        return sent;
+    }
+
+    /**
+     * Write all queued writes that can be written right away.
+     * <p>
+     * Must only be called from a single thread at a time.
+     */
+    void flushAll()
+    {
+        while (flush(System.currentTimeMillis()) > 0)
+        {
+            LOG.trace("Flushed repair history writes");
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        myClosed = true;
+        myTickFuture.cancel(false);
+
+        myMetricRegistry.remove(QUEUED_WRITES);
+        myMetricRegistry.remove(BATCH_LATENCY);
+        myMetricRegistry.remove(WRITE_FAILURES);
+        myMetricRegistry.remove(BLOCKED_WRITES);
+        myMetricRegistry.remove(DROPPED_WRITES);
+    }
+
+    private void tick()
+    {
+        try
+        {
+            flush(System.currentTimeMillis());
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Unable to write repair history", e);
+        }
+    }
+
+    private void send(List<PendingWrite> batch, long now)
+    {
+        Statement statement = batch.get(0).myStatement;
+        if (batch.size() > 1)
+        {
+            BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            batchStatement.setConsistencyLevel(statement.getConsistencyLevel());
+            batch.forEach(pendingWrite -> batchStatement.add(pendingWrite.myStatement));
+            statement = batchStatement;
+        }
+
+        try (Timer.Context ignored = myBatchLatency.time())
+        {
+            ResultSetFuture future = mySession.executeAsync(myStatementDecorator.apply(statement));
+            future.get(BATCH_TIMEOUT_IN_MS, TimeUnit.MILLISECONDS);
+            batch.forEach(pendingWrite -> pendingWrite.mySucceeded = true);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            failed(batch, now, e);
+        }
+        catch (ExecutionException | TimeoutException | RuntimeException e)
+        {
+            failed(batch, now, e);
+        }
+    }
+
+    private void failed(List<PendingWrite> batch, long now, Exception e)
+    {
+        myWriteFailures.inc(batch.size());
+
+        for (PendingWrite pendingWrite : batch)
+        {
+            pendingWrite.myAttempts++;
+            if (pendingWrite.myAttempts == MAX_ATTEMPTS)
+            {
+                LOG.warn("Unable to write repair history of {} after {} attempts, still retrying",
+                        pendingWrite.myRowKey, pendingWrite.myAttempts, e);
+            }
+
+            pendingWrite.myNextAttemptAt = now + backoff(pendingWrite.myAttempts);
+        }
+
+        LOG.debug("Unable to write {} repair history rows, retrying", batch.size(), e);
+    }
+
+    private long backoff(int attempts)
+    {
+        long backoff = myMinBackoffInMs;
+        for (int i = 1; i < attempts && backoff < myMaxBackoffInMs; i++)
+        {
+            backoff *= 2;
+        }
+        return Math.min(backoff, myMaxBackoffInMs);
+    }
+
+    static final class Configuration
+    {
+        private final int queueCapacity;
+        private final int maxBatchSize;
+        private final long tickIntervalInMs;
+        private final long backpressureTimeoutInMs;
+        private final long minBackoffInMs;
+        private final long maxBackoffInMs;
+
+        Configuration(int queueCapacity, int maxBatchSize, long tickIntervalInMs, long backpressureTimeoutInMs,
+                long minBackoffInMs, long maxBackoffInMs)
+        {
+            this.queueCapacity = queueCapacity;
+            this.maxBatchSize = maxBatchSize;
+            this.tickIntervalInMs = tickIntervalInMs;
+            this.backpressureTimeoutInMs = backpressureTimeoutInMs;
+            this.minBackoffInMs = minBackoffInMs;
+            this.maxBackoffInMs = maxBackoffInMs;
+        }
+    }
+
+    private static final class PendingWrite
+    {
+        private final RowKey myRowKey;
+        private final Statement myStatement;
+
+        private int myAttempts = 0;
+        private long myNextAttemptAt = 0L;
+        private boolean mySent = false;
+        private boolean mySucceeded = false;
+
+        private PendingWrite(RowKey rowKey, Statement statement)
+        {
+            myRowKey = rowKey;
+            myStatement = statement;
+        }
+    }
+
+    private static final class PartitionKey
+    {
+        private final UUID myTableId;
+        private final UUID myNodeId;
+
+        private PartitionKey(UUID tableId, UUID nodeId)
+        {
+            myTableId = tableId;
+            myNodeId = nodeId;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PartitionKey that = (PartitionKey) o;
+            return myTableId.equals(that.myTableId) && myNodeId.equals(that.myNodeId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(myTableId, myNodeId);
+        }
+    }
+
+    private static final class RowKey
+    {
+        private final PartitionKey myPartitionKey;
+        private final UUID myRepairId;
+
+        private RowKey(UUID tableId, UUID nodeId, UUID repairId)
+        {
+            myPartitionKey = new PartitionKey(tableId, nodeId);
+            myRepairId = repairId;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RowKey that = (RowKey) o;
+            return myPartitionKey.equals(that.myPartitionKey) && myRepairId.equals(that.myRepairId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(myPartitionKey, myRepairId);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("table_id=%s,node_id=%s,repair_id=%s", myPartitionKey.myTableId,
+                    myPartitionKey.myNodeId, myRepairId);
+        }
+    }
+}
@@ -26,6 +26,13 @@ public interface RepairState
      */
     void update();
 
+    /**
+     * Apply a finished repair session directly to the repair state without reading the repair history.
+     *
+     * @param repairEntry The repair entry of the finished session.
+     */
+    void addRepairEntry(RepairEntry repairEntry);
+
     /**
      * Get an immutable copy of the current repair state.
      *
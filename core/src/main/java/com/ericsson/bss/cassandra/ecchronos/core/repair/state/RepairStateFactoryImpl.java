@@ -19,10 +19,15 @@ import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairConfiguration;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 
+import java.util.concurrent.TimeUnit;
+
 public class RepairStateFactoryImpl implements RepairStateFactory
 {
+    private static final long DEFAULT_RECONCILIATION_INTERVAL_IN_MS = TimeUnit.HOURS.toMillis(1);
+
     private final HostStates myHostStates;
     private final TableRepairMetrics myTableRepairMetrics;
+    private final long myReconciliationIntervalInMs;
 
     private final VnodeRepairStateFactoryImpl myVnodeRepairStateFactory;
     private final VnodeRepairStateFactoryImpl mySubRangeRepairStateFactory;
@@ -31,11 +36,12 @@ public class RepairStateFactoryImpl implements RepairStateFactory
     {
         myHostStates = builder.myHostStates;
         myTableRepairMetrics = builder.myTableRepairMetrics;
+        myReconciliationIntervalInMs = builder.myReconciliationIntervalInMs;
 
         myVnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(builder.myReplicationState,
-                builder.myRepairHistoryProvider, false);
+                builder.myRepairHistoryProvider, false, builder.myRepairStateStore);
         mySubRangeRepairStateFactory = new VnodeRepairStateFactoryImpl(builder.myReplicationState,
-                builder.myRepairHistoryProvider, true);
+                builder.myRepairHistoryProvider, true, builder.myRepairStateStore);
     }
 
     @Override
@@ -45,13 +51,23 @@ public class RepairStateFactoryImpl implements RepairStateFactory
         ReplicaRepairGroupFactory replicaRepairGroupFactory = VnodeRepairGroupFactory.INSTANCE;
 
         VnodeRepairStateFactory vnodeRepairStateFactory = myVnodeRepairStateFactory;
-        if (repairConfiguration.getTargetRepairSizeInBytes() != RepairConfiguration.FULL_REPAIR_SIZE)
+        if (isSplittingRanges(repairConfiguration))
         {
             vnodeRepairStateFactory = mySubRangeRepairStateFactory;
         }
 
         return new RepairStateImpl(tableReference, repairConfiguration, vnodeRepairStateFactory, myHostStates,
-                myTableRepairMetrics, replicaRepairGroupFactory, postUpdateHook);
+                myTableRepairMetrics, replicaRepairGroupFactory, postUpdateHook, myReconciliationIntervalInMs);
+    }
+
+    /**
+     * Check if virtual nodes can be repaired in sub ranges, either based on the target repair size or
+     * by adapting to the target repair time.
+     */
+    private static boolean isSplittingRanges(RepairConfiguration repairConfiguration)
+    {
+        return repairConfiguration.getTargetRepairSizeInBytes() != RepairConfiguration.FULL_REPAIR_SIZE
+                || repairConfiguration.getTargetRepairTimeInMs() != RepairConfiguration.NO_TARGET_REPAIR_TIME;
     }
 
     public static Builder builder()
@@ -65,6 +81,8 @@ public class RepairStateFactoryImpl implements RepairStateFactory
         private HostStates myHostStates;
         private RepairHistoryProvider myRepairHistoryProvider;
         private TableRepairMetrics myTableRepairMetrics;
+        private long myReconciliationIntervalInMs = DEFAULT_RECONCILIATION_INTERVAL_IN_MS;
+        private RepairStateStore myRepairStateStore = RepairStateStore.NO_OP;
 
         public Builder withReplicationState(ReplicationState replicationState)
         {
@@ -90,6 +108,34 @@ public class RepairStateFactoryImpl implements RepairStateFactory
             return this;
         }
 
+        /**
+         * Set the interval between full reads of the repair history for each table.
+         * In between, the repair state is updated with the repair sessions performed locally,
+         * repairs performed by other instances are only seen at the next full read.
+         *
+         * @param reconciliationInterval The interval, zero reads the full repair history on every update.
+         * @param timeUnit The time unit of the interval.
+         * @return The builder
+         */
+        public Builder withReconciliationInterval(long reconciliationInterval, TimeUnit timeUnit)
+        {
+            myReconciliationIntervalInMs = timeUnit.toMillis(reconciliationInterval);
+            return this;
+        }
+
+        /**
+         * Set the store used to persist the repair state of each table locally.
+         * The stored state is used on startup so that only the repair history newer than the stored state is read.
+         *
+         * @param repairStateStore The repair state store.
+         * @return The builder
+         */
+        public Builder withRepairStateStore(RepairStateStore repairStateStore)
+        {
+            myRepairStateStore = repairStateStore;
+            return this;
+        }
+
         public RepairStateFactoryImpl build()
         {
             return new RepairStateFactoryImpl(this);
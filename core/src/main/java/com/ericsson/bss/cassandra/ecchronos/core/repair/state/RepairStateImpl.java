@@ -24,6 +24,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -31,6 +34,15 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+/**
+ * Repair state of a single table.
+ * <p>
+ * The full repair history is only read when the state is first created, when the token ranges of the table change and
+ * when the reconciliation interval has passed since the last full read. In between, finished repair sessions are added
+ * through {@link #addRepairEntry(RepairEntry)} and applied on top of the current state.
+ * Repair sessions run by other ecChronos instances or outside of ecChronos are only seen at the next full read,
+ * until then the ranges they repaired can be repaired again by the local instance.
+ */
 public class RepairStateImpl implements RepairState
 {
     private static final Logger LOG = LoggerFactory.getLogger(RepairStateImpl.class);
@@ -46,11 +58,29 @@ public class RepairStateImpl implements RepairState
     private final TableRepairMetrics myTableRepairMetrics;
     private final ReplicaRepairGroupFactory myReplicaRepairGroupFactory;
     private final PostUpdateHook myPostUpdateHook;
+    private final long myReconciliationIntervalInMs;
+
+    private long myLastReconciliation = -1L;
 
     public RepairStateImpl(TableReference tableReference, RepairConfiguration repairConfiguration,
                            VnodeRepairStateFactory vnodeRepairStateFactory, HostStates hostStates,
                            TableRepairMetrics tableRepairMetrics, ReplicaRepairGroupFactory replicaRepairGroupFactory,
                            PostUpdateHook postUpdateHook)
+    {
+        this(tableReference, repairConfiguration, vnodeRepairStateFactory, hostStates, tableRepairMetrics,
+                replicaRepairGroupFactory, postUpdateHook, 0L);
+    }
+
+    /**
+     * Create a repair state which reads the full repair history at most once per reconciliation interval.
+     *
+     * @param reconciliationIntervalInMs The interval between full reads of the repair history,
+     * zero or less reads the full repair history on every update.
+     */
+    public RepairStateImpl(TableReference tableReference, RepairConfiguration repairConfiguration,
+                           VnodeRepairStateFactory vnodeRepairStateFactory, HostStates hostStates,
+                           TableRepairMetrics tableRepairMetrics, ReplicaRepairGroupFactory replicaRepairGroupFactory,
+                           PostUpdateHook postUpdateHook, long reconciliationIntervalInMs)
     {
         myTableReference = tableReference;
         myRepairConfiguration = repairConfiguration;
@@ -59,32 +89,30 @@ public class RepairStateImpl implements RepairState
         myTableRepairMetrics = tableRepairMetrics;
         myReplicaRepairGroupFactory = replicaRepairGroupFactory;
         myPostUpdateHook = postUpdateHook;
+        myReconciliationIntervalInMs = reconciliationIntervalInMs;
 
         update();
     }
 
     @Override
-    public final void update()
+    public final synchronized void update()
     {
         RepairStateSnapshot oldRepairStateSnapshot = myRepairStateSnapshot.get();
+        long now = System.currentTimeMillis();
         if (oldRepairStateSnapshot == null
-                || isRepairNeeded(oldRepairStateSnapshot.lastCompletedAt(), oldRepairStateSnapshot.getEstimatedRepairTime(), System.currentTimeMillis()))
+                || isRepairNeeded(oldRepairStateSnapshot.lastCompletedAt(), oldRepairStateSnapshot.getEstimatedRepairTime(), now))
         {
-            RepairStateSnapshot newRepairStateSnapshot = generateNewRepairState(oldRepairStateSnapshot);
-            if (myRepairStateSnapshot.compareAndSet(oldRepairStateSnapshot, newRepairStateSnapshot))
+            RepairStateSnapshot newRepairStateSnapshot;
+            if (oldRepairStateSnapshot == null || isReconciliationNeeded(now))
             {
-                myTableRepairMetrics.lastRepairedAt(myTableReference, newRepairStateSnapshot.lastCompletedAt());
-
-                int nonRepairedRanges = (int)newRepairStateSnapshot.getVnodeRepairStates().getVnodeRepairStates().stream()
-                        .filter(v -> vnodeIsRepairable(v, newRepairStateSnapshot, System.currentTimeMillis()))
-                        .count();
-
-                int repairedRanges = newRepairStateSnapshot.getVnodeRepairStates().getVnodeRepairStates().size() - nonRepairedRanges;
-                myTableRepairMetrics.repairState(myTableReference, repairedRanges, nonRepairedRanges);
-                myTableRepairMetrics.remainingRepairTime(myTableReference, newRepairStateSnapshot.getRemainingRepairTime(System.currentTimeMillis(),
-                        myRepairConfiguration.getRepairIntervalInMs()));
-                LOG.trace("Table {} switched to repair state {}", myTableReference, newRepairStateSnapshot);
+                newRepairStateSnapshot = generateNewRepairState(oldRepairStateSnapshot);
+                myLastReconciliation = now;
             }
+            else
+            {
+                newRepairStateSnapshot = generateUpdatedRepairState(oldRepairStateSnapshot, Collections.emptyList());
+            }
+            switchRepairState(newRepairStateSnapshot);
         }
         else
         {
@@ -93,6 +121,31 @@ public class RepairStateImpl implements RepairState
         myPostUpdateHook.postUpdate(myRepairStateSnapshot.get());
     }
 
+    @Override
+    public synchronized void addRepairEntry(RepairEntry repairEntry)
+    {
+        RepairStateSnapshot oldRepairStateSnapshot = myRepairStateSnapshot.get();
+
+        LOG.trace("Table {} adding repair entry {}", myTableReference, repairEntry);
+        switchRepairState(generateUpdatedRepairState(oldRepairStateSnapshot, Collections.singletonList(repairEntry)));
+        myPostUpdateHook.postUpdate(myRepairStateSnapshot.get());
+    }
+
+    private void switchRepairState(RepairStateSnapshot newRepairStateSnapshot)
+    {
+        myRepairStateSnapshot.set(newRepairStateSnapshot);
+        myTableRepairMetrics.lastRepairedAt(myTableReference, newRepairStateSnapshot.lastCompletedAt());
+
+        int nonRepairedRanges = countRepairableVnodes(newRepairStateSnapshot.getVnodeRepairStates(),
+                newRepairStateSnapshot, System.currentTimeMillis());
+
+        int repairedRanges = newRepairStateSnapshot.getVnodeRepairStates().getVnodeRepairStates().size() - nonRepairedRanges;
+        myTableRepairMetrics.repairState(myTableReference, repairedRanges, nonRepairedRanges);
+        myTableRepairMetrics.remainingRepairTime(myTableReference, newRepairStateSnapshot.getRemainingRepairTime(System.currentTimeMillis(),
+                myRepairConfiguration.getRepairIntervalInMs()));
+        LOG.trace("Table {} switched to repair state {}", myTableReference, newRepairStateSnapshot);
+    }
+
     @Override
     public RepairStateSnapshot getSnapshot()
     {
@@ -106,16 +159,26 @@ public class RepairStateImpl implements RepairState
         return generateSnapshotForVnode(vnodeRepairStates, old);
     }
 
+    private RepairStateSnapshot generateUpdatedRepairState(RepairStateSnapshot old, Collection<RepairEntry> repairEntries)
+    {
+        VnodeRepairStates vnodeRepairStates = myVnodeRepairStateFactory.updateState(myTableReference, old, repairEntries);
+
+        return generateSnapshotForVnode(vnodeRepairStates, old);
+    }
+
+    private boolean isReconciliationNeeded(long now)
+    {
+        return myLastReconciliation + myReconciliationIntervalInMs <= now;
+    }
+
     private RepairStateSnapshot generateSnapshotForVnode(VnodeRepairStates vnodeRepairStates, RepairStateSnapshot old)
     {
         long repairedAt = calculateRepairedAt(vnodeRepairStates, old);
 
         VnodeRepairStates updatedVnodeRepairStates = vnodeRepairStates.combineWithRepairedAt(repairedAt);
 
-        List<VnodeRepairState> repairableVnodes = updatedVnodeRepairStates.getVnodeRepairStates().stream()
-                .filter(this::replicasAreRepairable)
-                .filter(v -> vnodeIsRepairable(v, old, System.currentTimeMillis()))
-                .collect(Collectors.toList());
+        List<VnodeRepairState> repairableVnodes = getRepairableVnodes(updatedVnodeRepairStates, old,
+                System.currentTimeMillis());
 
         List<ReplicaRepairGroup> replicaRepairGroups = myReplicaRepairGroupFactory.generateReplicaRepairGroups(repairableVnodes);
 
@@ -126,6 +189,55 @@ public class RepairStateImpl implements RepairState
                 .build();
     }
 
+    private int countRepairableVnodes(VnodeRepairStates vnodeRepairStates, RepairStateSnapshot snapshot, long now)
+    {
+        if (vnodeRepairStates instanceof CompactVnodeRepairStates)
+        {
+            CompactVnodeRepairStates compactVnodeRepairStates = (CompactVnodeRepairStates) vnodeRepairStates;
+            int count = 0;
+            for (int i = 0; i < compactVnodeRepairStates.size(); i++)
+            {
+                if (vnodeIsRepairable(compactVnodeRepairStates.lastRepairedAt(i), snapshot, now))
+                {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        return (int) vnodeRepairStates.getVnodeRepairStates().stream()
+                .filter(v -> vnodeIsRepairable(v.lastRepairedAt(), snapshot, now))
+                .count();
+    }
+
+    private List<VnodeRepairState> getRepairableVnodes(VnodeRepairStates vnodeRepairStates, RepairStateSnapshot old,
+            long now)
+    {
+        if (vnodeRepairStates instanceof CompactVnodeRepairStates)
+        {
+            // Only create the vnode repair states that are repairable
+            CompactVnodeRepairStates compactVnodeRepairStates = (CompactVnodeRepairStates) vnodeRepairStates;
+            List<VnodeRepairState> repairableVnodes = new ArrayList<>();
+            for (int i = 0; i < compactVnodeRepairStates.size(); i++)
+            {
+                if (vnodeIsRepairable(compactVnodeRepairStates.lastRepairedAt(i), old, now))
+                {
+                    VnodeRepairState vnodeRepairState = compactVnodeRepairStates.get(i);
+                    if (replicasAreRepairable(vnodeRepairState))
+                    {
+                        repairableVnodes.add(vnodeRepairState);
+                    }
+                }
+            }
+            return repairableVnodes;
+        }
+
+        return vnodeRepairStates.getVnodeRepairStates().stream()
+                .filter(this::replicasAreRepairable)
+                .filter(v -> vnodeIsRepairable(v.lastRepairedAt(), old, now))
+                .collect(Collectors.toList());
+    }
+
     private long calculateRepairedAt(VnodeRepairStates vnodeRepairStates, RepairStateSnapshot old)
     {
         RepairedAt repairedAt = RepairedAt.generate(vnodeRepairStates);
@@ -216,13 +328,13 @@ public class RepairStateImpl implements RepairState
                 estimatedRepairTime) <= now;
     }
 
-    private boolean vnodeIsRepairable(VnodeRepairState vnodeRepairState, RepairStateSnapshot snapshot, long now)
+    private boolean vnodeIsRepairable(long lastRepairedAt, RepairStateSnapshot snapshot, long now)
     {
         long estimatedRepairTime = 0L;
         if (snapshot != null)
         {
             estimatedRepairTime = snapshot.getEstimatedRepairTime();
         }
-        return isRepairNeeded(vnodeRepairState.lastRepairedAt(), estimatedRepairTime, now);
+        return isRepairNeeded(lastRepairedAt, estimatedRepairTime, now);
     }
 }
@@ -49,9 +49,19 @@ public class RepairStateSnapshot
     private long calculateRepairTime()
     {
         long sum = 0;
+        if (myVnodeRepairStates instanceof CompactVnodeRepairStates)
+        {
+            CompactVnodeRepairStates compactVnodeRepairStates = (CompactVnodeRepairStates) myVnodeRepairStates;
+            for (int i = 0; i < compactVnodeRepairStates.size(); i++)
+            {
+                sum += getRepairTime(compactVnodeRepairStates.startedAt(i), compactVnodeRepairStates.finishedAt(i));
+            }
+            return sum;
+        }
+
         for (VnodeRepairState vnodeRepairState : myVnodeRepairStates.getVnodeRepairStates())
         {
-            sum += getRepairTimeForVnode(vnodeRepairState);
+            sum += getRepairTime(vnodeRepairState.getStartedAt(), vnodeRepairState.getFinishedAt());
         }
         return sum;
     }
@@ -59,22 +69,34 @@ public class RepairStateSnapshot
     public long getRemainingRepairTime(long now, long repairIntervalMs)
     {
         long sum = 0;
+        if (myVnodeRepairStates instanceof CompactVnodeRepairStates)
+        {
+            CompactVnodeRepairStates compactVnodeRepairStates = (CompactVnodeRepairStates) myVnodeRepairStates;
+            for (int i = 0; i < compactVnodeRepairStates.size(); i++)
+            {
+                if (compactVnodeRepairStates.lastRepairedAt(i) + (repairIntervalMs - myEstimatedRepairTime) <= now)
+                {
+                    sum += getRepairTime(compactVnodeRepairStates.startedAt(i), compactVnodeRepairStates.finishedAt(i));
+                }
+            }
+            return sum;
+        }
+
         for (VnodeRepairState vnodeRepairState : myVnodeRepairStates.getVnodeRepairStates())
         {
             if(vnodeRepairState.lastRepairedAt() + (repairIntervalMs - myEstimatedRepairTime) <= now)
             {
-                sum += getRepairTimeForVnode(vnodeRepairState);
+                sum += getRepairTime(vnodeRepairState.getStartedAt(), vnodeRepairState.getFinishedAt());
             }
         }
         return sum;
     }
 
-    private long getRepairTimeForVnode(VnodeRepairState vnodeRepairState)
+    private static long getRepairTime(long startedAt, long finishedAt)
     {
-        long finishedAt = vnodeRepairState.getFinishedAt();
         if (finishedAt != VnodeRepairState.UNREPAIRED)
         {
-            return finishedAt - vnodeRepairState.getStartedAt();
+            return finishedAt - startedAt;
         }
         return 0L;
     }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
+
+import java.util.Collection;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+
+/**
+ * Interface used to persist the calculated vnode repair states of tables locally.
+ * <p>
+ * A stored state is used on startup to avoid reading the full repair history of each table,
+ * only the repair history newer than the time the state was stored needs to be read.
+ */
+public interface RepairStateStore
+{
+    /**
+     * A store that doesn't persist anything.
+     */
+    RepairStateStore NO_OP = new RepairStateStore()
+    {
+        @Override
+        public void store(TableReference tableReference, long reconciledAt,
+                Collection<VnodeRepairState> vnodeRepairStates)
+        {
+            // Nothing to store
+        }
+
+        @Override
+        public StoredRepairState load(TableReference tableReference)
+        {
+            return null;
+        }
+    };
+
+    /**
+     * Store the vnode repair states of a table.
+     *
+     * @param tableReference The table.
+     * @param reconciledAt The time up until which the repair history is reflected in the states,
+     * repair sessions started after this time are read from the repair history when the states are loaded.
+     * @param vnodeRepairStates The vnode repair states.
+     */
+    void store(TableReference tableReference, long reconciledAt, Collection<VnodeRepairState> vnodeRepairStates);
+
+    /**
+     * Load the previously stored vnode repair states of a table.
+     *
+     * @param tableReference The table.
+     * @return The stored state or null if no usable state was stored for the table.
+     */
+    StoredRepairState load(TableReference tableReference);
+}
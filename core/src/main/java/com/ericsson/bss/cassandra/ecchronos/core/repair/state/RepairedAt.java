@@ -82,6 +82,19 @@ public final class RepairedAt
         long minRepairedAt = Long.MAX_VALUE;
         long maxRepairedAt = Long.MIN_VALUE;
 
+        if (vnodeRepairStates instanceof CompactVnodeRepairStates)
+        {
+            CompactVnodeRepairStates compactVnodeRepairStates = (CompactVnodeRepairStates) vnodeRepairStates;
+            for (int i = 0; i < compactVnodeRepairStates.size(); i++)
+            {
+                long repairedAt = compactVnodeRepairStates.lastRepairedAt(i);
+                maxRepairedAt = Math.max(maxRepairedAt, repairedAt);
+                minRepairedAt = Math.min(minRepairedAt, repairedAt);
+            }
+
+            return new RepairedAt(minRepairedAt, maxRepairedAt);
+        }
+
         for (VnodeRepairState vnodeRepairState : vnodeRepairStates.getVnodeRepairStates())
         {
             long repairedAt = vnodeRepairState.lastRepairedAt();
@@ -14,82 +14,166 @@
  */
 package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
 
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.Host;
+import com.datastax.driver.core.KeyspaceMetadata;
 import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.SchemaChangeListenerBase;
 import com.datastax.driver.core.TokenRange;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.NodeResolver;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.ReplicaSetRegistry;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 /**
  * Utility class to generate a token -&gt; replicas map for a specific table.
+ * <p>
+ * The replication of each keyspace is kept in an immutable snapshot together with an index of the token ranges sorted
+ * by their start token, so that the replicas of a token range or sub range can be looked up without rebuilding
+ * the replication.
+ * <p>
+ * When created with a cluster the snapshot of a keyspace is marked as stale when the keyspace is changed or
+ * when nodes are added or removed.
+ * Since token movements are not notified by the driver every snapshot is also validated periodically.
+ * A new snapshot with a new version is only created if the replication has changed.
+ * <p>
+ * The replicas are interned in the {@link ReplicaSetRegistry} so that the same set of nodes is represented by the same
+ * instance in all keyspaces and snapshots.
  */
-public class ReplicationStateImpl implements ReplicationState
+public class ReplicationStateImpl implements ReplicationState, Closeable
 {
     private static final Logger LOG = LoggerFactory.getLogger(ReplicationStateImpl.class);
 
-    private static final Map<String, ImmutableMap<LongTokenRange, ImmutableSet<Node>>> keyspaceReplicationCache = new ConcurrentHashMap<>();
+    static final long VALIDATION_INTERVAL_IN_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<String, ReplicationSnapshot> myKeyspaceReplication = new ConcurrentHashMap<>();
+    private final AtomicLong myVersion = new AtomicLong();
 
     private final NodeResolver myNodeResolver;
     private final Metadata myMetadata;
     private final Host myLocalHost;
+    private final Cluster myCluster;
+    private final KeyspaceListener myKeyspaceListener = new KeyspaceListener();
+    private final HostListener myHostListener = new HostListener();
 
     public ReplicationStateImpl(NodeResolver nodeResolver, Metadata metadata, Host localhost)
     {
         myNodeResolver = nodeResolver;
         myMetadata = metadata;
         myLocalHost = localhost;
+        myCluster = null;
+    }
+
+    public ReplicationStateImpl(NodeResolver nodeResolver, Cluster cluster, Host localhost)
+    {
+        myNodeResolver = nodeResolver;
+        myMetadata = cluster.getMetadata();
+        myLocalHost = localhost;
+        myCluster = cluster;
+
+        myCluster.register(myKeyspaceListener);
+        myCluster.register(myHostListener);
     }
 
     @Override
     public ImmutableSet<Node> getNodes(TableReference tableReference, LongTokenRange tokenRange)
     {
-        String keyspace = tableReference.getKeyspace();
+        return getSnapshot(tableReference.getKeyspace()).getNodes(tokenRange);
+    }
+
+    @Override
+    public Map<LongTokenRange, ImmutableSet<Node>> getTokenRangeToReplicas(TableReference tableReference)
+    {
+        return getSnapshot(tableReference.getKeyspace()).myReplication;
+    }
 
-        ImmutableMap<LongTokenRange, ImmutableSet<Node>> replication = maybeRenew(keyspace);
+    @Override
+    public void close()
+    {
+        if (myCluster != null)
+        {
+            myCluster.unregister(myKeyspaceListener);
+            myCluster.unregister(myHostListener);
+        }
+    }
 
-        ImmutableSet<Node> nodes = replication.get(tokenRange);
+    @VisibleForTesting
+    long getVersion(String keyspace)
+    {
+        return getSnapshot(keyspace).myVersion;
+    }
 
-        if (nodes == null)
+    /**
+     * Mark the replication of a keyspace as stale so that it is validated on the next access.
+     *
+     * @param keyspace The keyspace.
+     */
+    void invalidate(String keyspace)
+    {
+        ReplicationSnapshot snapshot = myKeyspaceReplication.get(keyspace);
+        if (snapshot != null)
         {
-            for (Map.Entry<LongTokenRange, ImmutableSet<Node>> entry : replication.entrySet())
-            {
-                if (entry.getKey().isCovering(tokenRange))
-                {
-                    nodes = entry.getValue();
-                    break;
-                }
-            }
+            snapshot.myStale = true;
         }
+    }
 
-        return nodes;
+    /**
+     * Mark the replication of all keyspaces as stale so that they are validated on the next access.
+     */
+    void invalidateAll()
+    {
+        for (ReplicationSnapshot snapshot : myKeyspaceReplication.values())
+        {
+            snapshot.myStale = true;
+        }
     }
 
-    @Override
-    public Map<LongTokenRange, ImmutableSet<Node>> getTokenRangeToReplicas(TableReference tableReference)
+    private ReplicationSnapshot getSnapshot(String keyspace)
     {
-        String keyspace = tableReference.getKeyspace();
+        long now = System.nanoTime();
+
+        ReplicationSnapshot snapshot = myKeyspaceReplication.get(keyspace);
+        if (snapshot != null && !snapshot.needsValidation(now))
+        {
+            return snapshot;
+        }
 
-        return maybeRenew(keyspace);
+        return myKeyspaceReplication.compute(keyspace, (k, previous) -> previous != null && !previous.needsValidation(now)
+                ? previous
+                : renew(keyspace, previous, now));
     }
 
-    private ImmutableMap<LongTokenRange, ImmutableSet<Node>> maybeRenew(String keyspace)
+    private ReplicationSnapshot renew(String keyspace, ReplicationSnapshot previous, long now)
     {
         ImmutableMap<LongTokenRange, ImmutableSet<Node>> replication = buildTokenMap(keyspace);
 
-        return keyspaceReplicationCache.compute(keyspace, (k, v) -> !replication.equals(v) ? replication : v);
+        if (previous != null && replication.equals(previous.myReplication))
+        {
+            return new ReplicationSnapshot(previous, now);
+        }
+
+        ReplicationSnapshot snapshot = new ReplicationSnapshot(myVersion.incrementAndGet(), replication, now);
+        LOG.debug("Replication of {} updated to version {}", keyspace, snapshot.myVersion);
+        return snapshot;
     }
 
     private ImmutableMap<LongTokenRange, ImmutableSet<Node>> buildTokenMap(String keyspace)
@@ -102,7 +186,7 @@ public class ReplicationStateImpl implements ReplicationState
         {
             LongTokenRange longTokenRange = convert(tokenRange);
             ImmutableSet<Node> replicas = replicaCache.computeIfAbsent(myMetadata.getReplicas(keyspace, tokenRange),
-                    this::convert);
+                    hosts -> ReplicaSetRegistry.INSTANCE.intern(convert(hosts)));
 
             replicationBuilder.put(longTokenRange, replicas);
         }
@@ -135,4 +219,144 @@ public class ReplicationStateImpl implements ReplicationState
         long end = (long) range.getEnd().getValue();
         return new LongTokenRange(start, end);
     }
+
+    /**
+     * An immutable snapshot of the replication of a keyspace.
+     * <p>
+     * The token ranges are indexed by their start token so that the token range covering a sub range can be found
+     * with a binary search.
+     * Since token ranges are not overlapping a sub range can only be covered by the token range with the closest
+     * start token before it or by the token range wrapping around the ring.
+     */
+    static final class ReplicationSnapshot
+    {
+        private final long myVersion;
+        private final ImmutableMap<LongTokenRange, ImmutableSet<Node>> myReplication;
+        private final long[] myStarts;
+        private final LongTokenRange[] myRanges;
+        private final ImmutableSet<Node>[] myReplicas;
+        private final int myWrapAroundIndex;
+        private final long myValidatedAt;
+
+        private volatile boolean myStale = false;
+
+        @SuppressWarnings("unchecked")
+        ReplicationSnapshot(long version, ImmutableMap<LongTokenRange, ImmutableSet<Node>> replication,
+                long validatedAt)
+        {
+            myVersion = version;
+            myReplication = replication;
+            myValidatedAt = validatedAt;
+
+            List<LongTokenRange> ranges = replication.keySet().asList();
+            myRanges = ranges.toArray(new LongTokenRange[0]);
+            Arrays.sort(myRanges, Comparator.comparingLong(range -> range.start));
+
+            myStarts = new long[myRanges.length];
+            myReplicas = new ImmutableSet[myRanges.length];
+            int wrapAroundIndex = -1;
+            for (int i = 0; i < myRanges.length; i++)
+            {
+                myStarts[i] = myRanges[i].start;
+                myReplicas[i] = replication.get(myRanges[i]);
+                if (myRanges[i].isWrapAround())
+                {
+                    wrapAroundIndex = i;
+                }
+            }
+            myWrapAroundIndex = wrapAroundIndex;
+        }
+
+        ReplicationSnapshot(ReplicationSnapshot previous, long validatedAt)
+        {
+            myVersion = previous.myVersion;
+            myReplication = previous.myReplication;
+            myStarts = previous.myStarts;
+            myRanges = previous.myRanges;
+            myReplicas = previous.myReplicas;
+            myWrapAroundIndex = previous.myWrapAroundIndex;
+            myValidatedAt = validatedAt;
+        }
+
+        boolean needsValidation(long now)
+        {
+            return myStale || now - myValidatedAt >= VALIDATION_INTERVAL_IN_NANOS;
+        }
+
+        ImmutableSet<Node> getNodes(LongTokenRange tokenRange)
+        {
+            int index = Arrays.binarySearch(myStarts, tokenRange.start);
+            if (index < 0)
+            {
+                index = -index - 2;
+            }
+
+            if (index >= 0 && myRanges[index].isCovering(tokenRange))
+            {
+                return myReplicas[index];
+            }
+
+            if (myWrapAroundIndex >= 0 && myWrapAroundIndex != index
+                    && myRanges[myWrapAroundIndex].isCovering(tokenRange))
+            {
+                return myReplicas[myWrapAroundIndex];
+            }
+
+            return null;
+        }
+    }
+
+    private class KeyspaceListener extends SchemaChangeListenerBase
+    {
+        @Override
+        public void onKeyspaceChanged(KeyspaceMetadata current, KeyspaceMetadata previous)
+        {
+            invalidate(current.getName());
+        }
+
+        @Override
+        public void onKeyspaceRemoved(KeyspaceMetadata keyspace)
+        {
+            myKeyspaceReplication.remove(keyspace.getName());
+        }
+    }
+
+    private class HostListener implements Host.StateListener
+    {
+        @Override
+        public void onAdd(Host host)
+        {
+            invalidateAll();
+        }
+
+        @Override
+        public void onUp(Host host)
+        {
+            // Replication is not affected by node state
+        }
+
+        @Override
+        public void onDown(Host host)
+        {
+            // Replication is not affected by node state
+        }
+
+        @Override
+        public void onRemove(Host host)
+        {
+            invalidateAll();
+        }
+
+        @Override
+        public void onRegister(Cluster cluster)
+        {
+            // NOOP
+        }
+
+        @Override
+        public void onUnregister(Cluster cluster)
+        {
+            // NOOP
+        }
+    }
 }
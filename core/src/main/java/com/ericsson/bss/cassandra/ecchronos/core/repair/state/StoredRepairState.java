@@ -0,0 +1,138 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * The vnode repair states of a table as read from a {@link RepairStateStore}.
+ * <p>
+ * The replicas are kept as host ids since the nodes need to be resolved against the current topology.
+ */
+public class StoredRepairState
+{
+    private final long myReconciledAt;
+    private final ImmutableList<Entry> myEntries;
+
+    public StoredRepairState(long reconciledAt, List<Entry> entries)
+    {
+        myReconciledAt = reconciledAt;
+        myEntries = ImmutableList.copyOf(entries);
+    }
+
+    /**
+     * @return The time up until which the repair history is reflected in the stored states.
+     */
+    public long getReconciledAt()
+    {
+        return myReconciledAt;
+    }
+
+    public List<Entry> getEntries()
+    {
+        return myEntries;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        StoredRepairState that = (StoredRepairState) o;
+        return myReconciledAt == that.myReconciledAt &&
+                myEntries.equals(that.myEntries);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(myReconciledAt, myEntries);
+    }
+
+    /**
+     * The stored repair state of a single token range.
+     */
+    public static class Entry
+    {
+        private final LongTokenRange myTokenRange;
+        private final ImmutableSet<UUID> myReplicaIds;
+        private final long myStartedAt;
+        private final long myFinishedAt;
+
+        public Entry(LongTokenRange tokenRange, Set<UUID> replicaIds, long startedAt, long finishedAt)
+        {
+            myTokenRange = tokenRange;
+            myReplicaIds = ImmutableSet.copyOf(replicaIds);
+            myStartedAt = startedAt;
+            myFinishedAt = finishedAt;
+        }
+
+        public LongTokenRange getTokenRange()
+        {
+            return myTokenRange;
+        }
+
+        public Set<UUID> getReplicaIds()
+        {
+            return myReplicaIds;
+        }
+
+        public long getStartedAt()
+        {
+            return myStartedAt;
+        }
+
+        public long getFinishedAt()
+        {
+            return myFinishedAt;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Entry entry = (Entry) o;
+            return myStartedAt == entry.myStartedAt &&
+                    myFinishedAt == entry.myFinishedAt &&
+                    myTokenRange.equals(entry.myTokenRange) &&
+                    myReplicaIds.equals(entry.myReplicaIds);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(myTokenRange, myReplicaIds, myStartedAt, myFinishedAt);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("(tokenRange=%s,replicas=%s,startedAt=%d,finishedAt=%d)", myTokenRange,
+                    myReplicaIds, myStartedAt, myFinishedAt);
+        }
+    }
+}
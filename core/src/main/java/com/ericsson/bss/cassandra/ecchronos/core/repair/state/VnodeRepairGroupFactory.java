@@ -21,10 +21,9 @@ import com.google.common.collect.ImmutableSet;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 /**
  * A factory for {@link ReplicaRepairGroup} that creates repair groups for all vnodes with common replicas.
@@ -41,31 +40,85 @@ public final class VnodeRepairGroupFactory implements ReplicaRepairGroupFactory
         // Nothing to do here
     }
 
+    /**
+     * Group the vnodes by their replicas in a single pass.
+     * <p>
+     * The vnodes keep the order of the provided list within each group while the groups are ordered by
+     * the oldest repaired vnode in the group.
+     * Groups with the same oldest repair time are ordered by the position of that vnode in the provided list.
+     *
+     * @param availableVnodeRepairStates The vnodes that should be repaired.
+     * @return The repair groups in the order they should be repaired.
+     */
     @Override
     public List<ReplicaRepairGroup> generateReplicaRepairGroups(List<VnodeRepairState> availableVnodeRepairStates)
     {
-        List<VnodeRepairState> sortedVnodeRepairStates = availableVnodeRepairStates.stream()
-                .sorted(Comparator.comparingLong(VnodeRepairState::lastRepairedAt))
-                .collect(Collectors.toList());
+        Map<ImmutableSet<Node>, ReplicaGroupBuilder> replicaGroups = new HashMap<>();
+        List<ReplicaGroupBuilder> replicaGroupsInOrder = new ArrayList<>();
 
-        List<ReplicaRepairGroup> sortedRepairGroups = new ArrayList<>();
-        Set<Set<Node>> countedReplicaGroups = new HashSet<>();
+        int position = 0;
+        for (VnodeRepairState vnodeRepairState : availableVnodeRepairStates)
+        {
+            ReplicaGroupBuilder replicaGroup = replicaGroups.get(vnodeRepairState.getReplicas());
+            if (replicaGroup == null)
+            {
+                replicaGroup = new ReplicaGroupBuilder(vnodeRepairState, position);
+                replicaGroups.put(vnodeRepairState.getReplicas(), replicaGroup);
+                replicaGroupsInOrder.add(replicaGroup);
+            }
+            else
+            {
+                replicaGroup.add(vnodeRepairState, position);
+            }
+            position++;
+        }
 
-        for (VnodeRepairState vnodeRepairState : sortedVnodeRepairStates)
+        replicaGroupsInOrder.sort(ReplicaGroupBuilder.OLDEST_FIRST);
+
+        List<ReplicaRepairGroup> sortedRepairGroups = new ArrayList<>(replicaGroupsInOrder.size());
+        for (ReplicaGroupBuilder replicaGroup : replicaGroupsInOrder)
         {
-            ImmutableSet<Node> replicas = vnodeRepairState.getReplicas();
+            sortedRepairGroups.add(replicaGroup.build());
+        }
 
-            if (countedReplicaGroups.add(replicas))
-            {
-                List<LongTokenRange> commonVnodes = availableVnodeRepairStates.stream()
-                        .filter(v -> v.getReplicas().equals(replicas))
-                        .map(VnodeRepairState::getTokenRange)
-                        .collect(Collectors.toList());
+        return sortedRepairGroups;
+    }
+
+    private static final class ReplicaGroupBuilder
+    {
+        static final Comparator<ReplicaGroupBuilder> OLDEST_FIRST = Comparator
+                .<ReplicaGroupBuilder> comparingLong(g -> g.myOldestRepairedAt)
+                .thenComparingInt(g -> g.myOldestPosition);
+
+        private final ImmutableList.Builder<LongTokenRange> myVnodes = ImmutableList.builder();
+
+        private ImmutableSet<Node> myReplicas;
+        private long myOldestRepairedAt;
+        private int myOldestPosition;
+
+        ReplicaGroupBuilder(VnodeRepairState vnodeRepairState, int position)
+        {
+            myReplicas = vnodeRepairState.getReplicas();
+            myVnodes.add(vnodeRepairState.getTokenRange());
+            myOldestRepairedAt = vnodeRepairState.lastRepairedAt();
+            myOldestPosition = position;
+        }
 
-                sortedRepairGroups.add(new ReplicaRepairGroup(replicas, ImmutableList.copyOf(commonVnodes)));
+        void add(VnodeRepairState vnodeRepairState, int position)
+        {
+            myVnodes.add(vnodeRepairState.getTokenRange());
+
+            if (vnodeRepairState.lastRepairedAt() < myOldestRepairedAt)
+            {
+                myReplicas = vnodeRepairState.getReplicas();
+                myOldestRepairedAt = vnodeRepairState.lastRepairedAt();
+                myOldestPosition = position;
             }
         }
 
-        return sortedRepairGroups;
+        ReplicaRepairGroup build()
+        {
+            return new ReplicaRepairGroup(myReplicas, myVnodes.build());
+        }
     }
 }
@@ -16,6 +16,8 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
 
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 
+import java.util.Collection;
+
 /**
  * A factory to create {@link VnodeRepairStates} for a specific table.
  */
@@ -31,4 +33,19 @@ public interface VnodeRepairStateFactory
      * @return The calculated repair state.
      */
     VnodeRepairStates calculateNewState(TableReference tableReference, RepairStateSnapshot previous);
+
+    /**
+     * Calculate the current repair state based on the previous and the provided repair entries.
+     *
+     * This does not read the repair history unless the previous repair state is unknown or the
+     * token ranges of the table have changed since the last calculation, in which case the
+     * state is calculated as in {@link #calculateNewState(TableReference, RepairStateSnapshot)}.
+     *
+     * @param tableReference The table to calculate the new repair state for vnodes.
+     * @param previous The previous repair state or null if non exists.
+     * @param repairEntries The repair entries to apply on top of the previous repair state.
+     * @return The calculated repair state.
+     */
+    VnodeRepairStates updateState(TableReference tableReference, RepairStateSnapshot previous,
+            Collection<RepairEntry> repairEntries);
 }
@@ -17,14 +17,25 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A repair state factory which uses a {@link RepairHistoryProvider} to determine repair state.
@@ -33,41 +44,186 @@ public class VnodeRepairStateFactoryImpl implements VnodeRepairStateFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger(VnodeRepairStateFactoryImpl.class);
 
+    /**
+     * Repair sessions started longer ago than this and not yet finished are assumed to never finish.
+     */
+    static final long MAX_SESSION_TIME_IN_MS = TimeUnit.DAYS.toMillis(1);
+
     private final ReplicationState myReplicationState;
     private final RepairHistoryProvider myRepairHistoryProvider;
     private final boolean useSubRanges;
+    private final RepairStateStore myRepairStateStore;
+
+    private final ConcurrentMap<TableReference, Map<LongTokenRange, ImmutableSet<Node>>> myCalculatedTokenRangeToReplicas = new ConcurrentHashMap<>();
 
     public VnodeRepairStateFactoryImpl(ReplicationState replicationState, RepairHistoryProvider repairHistoryProvider, boolean useSubRanges)
+    {
+        this(replicationState, repairHistoryProvider, useSubRanges, RepairStateStore.NO_OP);
+    }
+
+    public VnodeRepairStateFactoryImpl(ReplicationState replicationState, RepairHistoryProvider repairHistoryProvider,
+            boolean useSubRanges, RepairStateStore repairStateStore)
     {
         myReplicationState = replicationState;
         myRepairHistoryProvider = repairHistoryProvider;
         this.useSubRanges = useSubRanges;
+        myRepairStateStore = repairStateStore;
     }
 
     @Override
     public VnodeRepairStates calculateNewState(TableReference tableReference, RepairStateSnapshot previous)
     {
         Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicaMap = myReplicationState.getTokenRangeToReplicas(tableReference);
-        long lastRepairedAt = previousLastRepairedAt(previous, tokenRangeToReplicaMap);
         long now = System.currentTimeMillis();
 
+        myCalculatedTokenRangeToReplicas.put(tableReference, ImmutableMap.copyOf(tokenRangeToReplicaMap));
+
+        VnodeRepairStates vnodeRepairStates = null;
+        RepairHistoryPredicate repairHistoryPredicate = new RepairHistoryPredicate(now, tokenRangeToReplicaMap);
+
+        if (previous == null)
+        {
+            vnodeRepairStates = calculateFromStoredState(tableReference, now, repairHistoryPredicate,
+                    tokenRangeToReplicaMap);
+        }
+
+        if (vnodeRepairStates == null)
+        {
+            vnodeRepairStates = calculateFromHistory(tableReference, now, previous, repairHistoryPredicate,
+                    tokenRangeToReplicaMap);
+        }
+
+        myRepairStateStore.store(tableReference, repairHistoryPredicate.getReconciledAt(),
+                vnodeRepairStates.getVnodeRepairStates());
+
+        return vnodeRepairStates;
+    }
+
+    @Override
+    public VnodeRepairStates updateState(TableReference tableReference, RepairStateSnapshot previous,
+            Collection<RepairEntry> repairEntries)
+    {
+        Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicaMap = myReplicationState.getTokenRangeToReplicas(tableReference);
+
+        if (previous == null || !tokenRangeToReplicaMap.equals(myCalculatedTokenRangeToReplicas.get(tableReference)))
+        {
+            LOG.debug("Token ranges changed for {}, recalculating from repair history", tableReference);
+            return calculateNewState(tableReference, previous);
+        }
+
+        long lastRepairedAt = previousLastRepairedAt(previous, tokenRangeToReplicaMap);
+
+        Iterator<RepairEntry> repairEntryIterator = repairEntries.stream()
+                .filter(repairEntry -> acceptRepairEntries(repairEntry, tokenRangeToReplicaMap))
+                .iterator();
+
+        return generateVnodeRepairStates(lastRepairedAt, previous, repairEntryIterator, tokenRangeToReplicaMap);
+    }
+
+    private VnodeRepairStates calculateFromHistory(TableReference tableReference, long now, RepairStateSnapshot previous,
+            RepairHistoryPredicate repairHistoryPredicate, Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicaMap)
+    {
+        long lastRepairedAt = previousLastRepairedAt(previous, tokenRangeToReplicaMap);
+
         Iterator<RepairEntry> repairEntryIterator;
 
         if (lastRepairedAt == VnodeRepairState.UNREPAIRED)
         {
             LOG.debug("No last repaired at found for {}, iterating over all repair entries", tableReference);
-            repairEntryIterator = myRepairHistoryProvider.iterate(tableReference, now, (repairEntry) -> acceptRepairEntries(repairEntry, tokenRangeToReplicaMap));
+            repairEntryIterator = myRepairHistoryProvider.iterate(tableReference, now, repairHistoryPredicate);
         }
         else
         {
             LOG.debug("Table {} last repaired at {}, iterating repair entries until that time", tableReference, lastRepairedAt);
-            repairEntryIterator = myRepairHistoryProvider.iterate(tableReference, now, lastRepairedAt, (repairEntry) -> acceptRepairEntries(repairEntry, tokenRangeToReplicaMap));
+            repairEntryIterator = myRepairHistoryProvider.iterate(tableReference, now, lastRepairedAt, repairHistoryPredicate);
         }
 
         return generateVnodeRepairStates(lastRepairedAt, previous, repairEntryIterator, tokenRangeToReplicaMap);
     }
 
+    /**
+     * Calculate the state based on the locally stored state and the repair history newer than the stored state.
+     *
+     * @return The vnode repair states or null if no stored state matching the current topology exists.
+     */
+    private VnodeRepairStates calculateFromStoredState(TableReference tableReference, long now,
+            RepairHistoryPredicate repairHistoryPredicate, Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicaMap)
+    {
+        StoredRepairState storedRepairState = myRepairStateStore.load(tableReference);
+        if (storedRepairState == null)
+        {
+            return null;
+        }
+
+        List<VnodeRepairState> storedVnodeRepairStates = toVnodeRepairStates(storedRepairState, tokenRangeToReplicaMap);
+        if (storedVnodeRepairStates == null)
+        {
+            LOG.debug("Stored repair state of {} does not match the current token ranges, ignoring it", tableReference);
+            return null;
+        }
+
+        long lastRepairedAt = Long.MAX_VALUE;
+        for (VnodeRepairState vnodeRepairState : storedVnodeRepairStates)
+        {
+            lastRepairedAt = Math.min(lastRepairedAt, vnodeRepairState.lastRepairedAt());
+        }
+
+        long reconciledAt = storedRepairState.getReconciledAt();
+
+        LOG.debug("Using stored repair state of {}, iterating repair entries until {}", tableReference, reconciledAt);
+        Iterator<RepairEntry> repairEntryIterator = myRepairHistoryProvider.iterate(tableReference, now, reconciledAt,
+                repairHistoryPredicate);
+
+        return generateVnodeRepairStates(lastRepairedAt, storedVnodeRepairStates, repairEntryIterator, tokenRangeToReplicaMap);
+    }
+
+    private List<VnodeRepairState> toVnodeRepairStates(StoredRepairState storedRepairState,
+            Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicaMap)
+    {
+        List<VnodeRepairState> vnodeRepairStates = new ArrayList<>(storedRepairState.getEntries().size());
+        Set<LongTokenRange> coveredVnodes = new HashSet<>();
+
+        for (StoredRepairState.Entry entry : storedRepairState.getEntries())
+        {
+            Map.Entry<LongTokenRange, ImmutableSet<Node>> vnode = getVnodeForRange(entry.getTokenRange(), tokenRangeToReplicaMap);
+            if (vnode == null || !entry.getReplicaIds().equals(getReplicaIds(vnode.getValue())))
+            {
+                return null;
+            }
+
+            coveredVnodes.add(vnode.getKey());
+            vnodeRepairStates.add(new VnodeRepairState(entry.getTokenRange(), vnode.getValue(), entry.getStartedAt(),
+                    entry.getFinishedAt()));
+        }
+
+        if (vnodeRepairStates.isEmpty() || coveredVnodes.size() != tokenRangeToReplicaMap.size())
+        {
+            return null;
+        }
+
+        return vnodeRepairStates;
+    }
+
+    private static Set<UUID> getReplicaIds(Set<Node> replicas)
+    {
+        Set<UUID> replicaIds = new HashSet<>();
+        for (Node replica : replicas)
+        {
+            replicaIds.add(replica.getId());
+        }
+        return replicaIds;
+    }
+
     private VnodeRepairStates generateVnodeRepairStates(long lastRepairedAt, RepairStateSnapshot previous, Iterator<RepairEntry> repairEntryIterator, Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicaMap)
+    {
+        Collection<VnodeRepairState> previousVnodeRepairStates = previous == null
+                ? Collections.emptyList()
+                : previous.getVnodeRepairStates().getVnodeRepairStates();
+
+        return generateVnodeRepairStates(lastRepairedAt, previousVnodeRepairStates, repairEntryIterator, tokenRangeToReplicaMap);
+    }
+
+    private VnodeRepairStates generateVnodeRepairStates(long lastRepairedAt, Collection<VnodeRepairState> previousVnodeRepairStates, Iterator<RepairEntry> repairEntryIterator, Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicaMap)
     {
         List<VnodeRepairState> vnodeRepairStatesBase = new ArrayList<>();
 
@@ -85,13 +241,10 @@ public class VnodeRepairStateFactoryImpl implements VnodeRepairStateFactory
         }
         else
         {
-            vnodeRepairStatusesBuilder = VnodeRepairStatesImpl.newBuilder(vnodeRepairStatesBase);
+            vnodeRepairStatusesBuilder = CompactVnodeRepairStates.newBuilder(vnodeRepairStatesBase);
         }
 
-        if (previous != null)
-        {
-            vnodeRepairStatusesBuilder.updateVnodeRepairStates(previous.getVnodeRepairStates().getVnodeRepairStates());
-        }
+        vnodeRepairStatusesBuilder.updateVnodeRepairStates(previousVnodeRepairStates);
 
         while(repairEntryIterator.hasNext())
         {
@@ -118,12 +271,28 @@ public class VnodeRepairStateFactoryImpl implements VnodeRepairStateFactory
 
         long lastRepairedAt = Long.MAX_VALUE;
 
-        for (VnodeRepairState vnodeRepairState : previous.getVnodeRepairStates().getVnodeRepairStates())
+        VnodeRepairStates previousVnodeRepairStates = previous.getVnodeRepairStates();
+        if (previousVnodeRepairStates instanceof CompactVnodeRepairStates)
         {
-            if (tokenToReplicaMap.containsKey(vnodeRepairState.getTokenRange())
-                    && lastRepairedAt > vnodeRepairState.lastRepairedAt())
+            CompactVnodeRepairStates compactVnodeRepairStates = (CompactVnodeRepairStates) previousVnodeRepairStates;
+            for (int i = 0; i < compactVnodeRepairStates.size(); i++)
             {
-                lastRepairedAt = vnodeRepairState.lastRepairedAt();
+                if (lastRepairedAt > compactVnodeRepairStates.lastRepairedAt(i)
+                        && tokenToReplicaMap.containsKey(compactVnodeRepairStates.tokenRange(i)))
+                {
+                    lastRepairedAt = compactVnodeRepairStates.lastRepairedAt(i);
+                }
+            }
+        }
+        else
+        {
+            for (VnodeRepairState vnodeRepairState : previousVnodeRepairStates.getVnodeRepairStates())
+            {
+                if (tokenToReplicaMap.containsKey(vnodeRepairState.getTokenRange())
+                        && lastRepairedAt > vnodeRepairState.lastRepairedAt())
+                {
+                    lastRepairedAt = vnodeRepairState.lastRepairedAt();
+                }
             }
         }
 
@@ -178,4 +347,60 @@ public class VnodeRepairStateFactoryImpl implements VnodeRepairStateFactory
 
         return nodes;
     }
+
+    private Map.Entry<LongTokenRange, ImmutableSet<Node>> getVnodeForRange(LongTokenRange range, Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicaMap)
+    {
+        if (!useSubRanges)
+        {
+            ImmutableSet<Node> nodes = tokenRangeToReplicaMap.get(range);
+            return nodes == null ? null : new AbstractMap.SimpleImmutableEntry<>(range, nodes);
+        }
+
+        for (Map.Entry<LongTokenRange, ImmutableSet<Node>> vnode : tokenRangeToReplicaMap.entrySet())
+        {
+            if (vnode.getKey().isCovering(range))
+            {
+                return vnode;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Accepts the successful repair entries of the table while keeping track of the repair sessions still running.
+     * <p>
+     * The repair history is filtered on the time repair sessions were started, so the state is stored as reconciled at
+     * the start of the oldest running session. This way sessions finishing after the state was calculated are
+     * read from the repair history when the stored state is used.
+     */
+    private class RepairHistoryPredicate implements Predicate<RepairEntry>
+    {
+        private final Map<LongTokenRange, ImmutableSet<Node>> myTokenRangeToReplicaMap;
+        private final long myOldestRunningSession;
+        private long myReconciledAt;
+
+        RepairHistoryPredicate(long now, Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicaMap)
+        {
+            myTokenRangeToReplicaMap = tokenRangeToReplicaMap;
+            myOldestRunningSession = now - MAX_SESSION_TIME_IN_MS;
+            myReconciledAt = now;
+        }
+
+        @Override
+        public boolean apply(RepairEntry repairEntry)
+        {
+            if (RepairStatus.STARTED == repairEntry.getStatus() && repairEntry.getStartedAt() >= myOldestRunningSession)
+            {
+                myReconciledAt = Math.min(myReconciledAt, repairEntry.getStartedAt());
+            }
+
+            return acceptRepairEntries(repairEntry, myTokenRangeToReplicaMap);
+        }
+
+        long getReconciledAt()
+        {
+            return myReconciledAt;
+        }
+    }
 }
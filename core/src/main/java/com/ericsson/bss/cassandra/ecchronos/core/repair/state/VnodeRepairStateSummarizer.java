@@ -15,35 +15,61 @@
 package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
 
 /**
  * Utility class to handle partially repaired ranges and converting them back
  * to full vnodes when possible in order to minimize memory usage.
+ * <p>
+ * The sub ranges are normalized against the start of the base vnode and kept as primitive offsets.
+ * The base vnode is then split at every sub range boundary in a single sweep where the most recently repaired
+ * sub range covering each part is kept in a priority queue.
  */
 public final class VnodeRepairStateSummarizer
 {
     private static final long ONE_HOUR_IN_MS = TimeUnit.HOURS.toMillis(1);
 
+    private static final Comparator<SubRange> BY_POSITION = Comparator.<SubRange>comparingLong(range -> range.first)
+            .thenComparing(Comparator.<SubRange>comparingLong(range -> range.last).reversed())
+            .thenComparingInt(range -> range.order);
+
+    private static final Comparator<SubRange> BY_LATEST_REPAIR = Comparator.<SubRange>comparingLong(range -> range.startedAt)
+            .reversed()
+            .thenComparingInt(range -> range.order);
+
     private final NormalizedBaseRange myBaseVnode;
-    private final List<NormalizedRange> mySummarizedRanges;
+    private final SubRange[] mySubRanges;
     private final MergeStrategy myMergeStrategy;
 
     private VnodeRepairStateSummarizer(VnodeRepairState baseVnode, Collection<VnodeRepairState> subStates, MergeStrategy mergeStrategy)
     {
         this.myBaseVnode = new NormalizedBaseRange(baseVnode);
-        this.mySummarizedRanges = subStates.stream()
-                .map(myBaseVnode::transform)
-                .sorted()
-                .collect(Collectors.toCollection(ArrayList::new));
         this.myMergeStrategy = mergeStrategy;
 
-        // Add the full range first so that we can split out any sub ranges that we are missing
-        mySummarizedRanges.add(0, myBaseVnode.transform(baseVnode));
+        long baseStart = baseVnode.getTokenRange().start;
+
+        // Add the full range first so that we can fill in any sub ranges that we are missing
+        mySubRanges = new SubRange[subStates.size() + 1];
+        mySubRanges[0] = new SubRange(baseVnode, baseStart, 0);
+
+        int order = 1;
+        for (VnodeRepairState subState : subStates)
+        {
+            if (!baseVnode.getTokenRange().isCovering(subState.getTokenRange()))
+            {
+                throw new IllegalArgumentException(baseVnode + " is not covering " + subState);
+            }
+
+            mySubRanges[order] = new SubRange(subState, baseStart, order);
+            order++;
+        }
     }
 
     /**
@@ -55,7 +81,8 @@ public final class VnodeRepairStateSummarizer
      * <br><br>
      * In case of overlapping ranges the ranges will be split in three parts like:<br>
      * (5, 15], (8, 30] will become (5, 8], (8, 15], (15, 30].<br>
-     * The middle section will retain the highest repaired at of the two.
+     * The middle section will retain the highest repaired at of the two,
+     * together with the finished at of the same repair.
      * <br><br>
      * Adjacent ranges repaired within one hour will be merged together.
      *
@@ -77,7 +104,8 @@ public final class VnodeRepairStateSummarizer
      * <br><br>
      * In case of overlapping ranges the ranges will be split in three parts like:<br>
      * (5, 15], (8, 30] will become (5, 8], (8, 15], (15, 30].<br>
-     * The middle section will retain the highest repaired at of the two.
+     * The middle section will retain the highest repaired at of the two,
+     * together with the finished at of the same repair.
      * <br><br>
      * Adjacent ranges will be merged based on the provided merge strategy.
      *
@@ -88,27 +116,44 @@ public final class VnodeRepairStateSummarizer
      */
     public static List<VnodeRepairState> summarizePartialVnodes(List<VnodeRepairState> baseVnodes, Collection<VnodeRepairState> partialVnodes, MergeStrategy mergeStrategy)
     {
-        List<VnodeRepairState> vnodeRepairStates = new ArrayList<>(partialVnodes);
+        BaseVnodeIndex baseVnodeIndex = new BaseVnodeIndex(baseVnodes);
+        List<List<VnodeRepairState>> coveringPerBaseVnode = new ArrayList<>(baseVnodes.size());
+        for (int i = 0; i < baseVnodes.size(); i++)
+        {
+            coveringPerBaseVnode.add(null);
+        }
+
+        List<VnodeRepairState> vnodeRepairStates = new ArrayList<>(partialVnodes.size() + baseVnodes.size());
 
-        for (VnodeRepairState baseState : baseVnodes)
+        for (VnodeRepairState actualState : partialVnodes)
         {
-            List<VnodeRepairState> covering = new ArrayList<>();
-            for (VnodeRepairState actualState : vnodeRepairStates)
+            int index = baseVnodeIndex.getCoveringIndex(actualState.getTokenRange());
+            if (index < 0)
             {
-                if (baseState.getTokenRange().isCovering(actualState.getTokenRange()))
-                {
-                    covering.add(actualState);
-                }
+                vnodeRepairStates.add(actualState);
+                continue;
+            }
+
+            List<VnodeRepairState> covering = coveringPerBaseVnode.get(index);
+            if (covering == null)
+            {
+                covering = new ArrayList<>();
+                coveringPerBaseVnode.set(index, covering);
             }
-            if (covering.isEmpty())
+            covering.add(actualState);
+        }
+
+        for (int i = 0; i < baseVnodes.size(); i++)
+        {
+            VnodeRepairState baseState = baseVnodes.get(i);
+            List<VnodeRepairState> covering = coveringPerBaseVnode.get(i);
+            if (covering == null)
             {
                 vnodeRepairStates.add(baseState);
             }
             else
             {
-                List<VnodeRepairState> replacement = new VnodeRepairStateSummarizer(baseState, covering, mergeStrategy).summarize();
-                vnodeRepairStates.removeAll(covering);
-                vnodeRepairStates.addAll(replacement);
+                vnodeRepairStates.addAll(new VnodeRepairStateSummarizer(baseState, covering, mergeStrategy).summarize());
             }
         }
 
@@ -117,98 +162,128 @@ public final class VnodeRepairStateSummarizer
 
     public List<VnodeRepairState> summarize()
     {
-        splitOverlapping();
+        List<VnodeRepairState> summarized = new ArrayList<>();
 
-        int i = 0;
-        for (; i < mySummarizedRanges.size() - 1; i++)
+        NormalizedRange current = null;
+        for (NormalizedRange next : splitOverlapping())
         {
-            NormalizedRange current = mySummarizedRanges.get(i);
-            NormalizedRange next = mySummarizedRanges.get(i + 1);
-
-            if (myMergeStrategy.shouldMerge(current, next))
+            if (current == null)
+            {
+                current = next;
+            }
+            else if (myMergeStrategy.shouldMerge(current, next))
             {
                 // If two vnodes are close in time we merge them together using
                 // the lowest timestamp of the two
-                mySummarizedRanges.add(i, current.combine(next));
-
-                mySummarizedRanges.remove(current);
-                mySummarizedRanges.remove(next);
-
-                // Check the newly generated vnode since it might be possible
-                // to merge it again
-                i--;
+                current = current.combine(next);
+            }
+            else
+            {
+                summarized.add(myBaseVnode.transform(current));
+                current = next;
             }
         }
 
-        return mySummarizedRanges.stream()
-                .map(myBaseVnode::transform)
-                .collect(Collectors.toList());
+        summarized.add(myBaseVnode.transform(current));
+        return summarized;
     }
 
-    private void splitOverlapping()
+    /**
+     * Split the base vnode into adjacent ranges where each range retains the highest repaired at
+     * of the sub ranges covering it.
+     * <br><br>
+     * Both the started at and the finished at of a range are taken from the latest started sub range covering it,
+     * so that the finished at of a range is never before its started at.
+     * <br><br>
+     * Sub ranges are sorted by their start and added to a priority queue ordered by the repaired at when
+     * the sweep reaches them.
+     * Sub ranges that have ended are removed lazily when they reach the head of the queue.
+     * In case two sub ranges have the same repaired at, the one starting first or covering more is kept.
+     *
+     * @return The adjacent normalized ranges covering the full base vnode.
+     */
+    private List<NormalizedRange> splitOverlapping()
     {
-        int i = 0;
-        for (; i < mySummarizedRanges.size() - 1; i++)
-        {
-            NormalizedRange current = mySummarizedRanges.get(i);
-            NormalizedRange next = mySummarizedRanges.get(i + 1);
+        Arrays.sort(mySubRanges, BY_POSITION);
+
+        long[] boundaries = getBoundaries();
+
+        PriorityQueue<SubRange> active = new PriorityQueue<>(mySubRanges.length, BY_LATEST_REPAIR);
+        List<NormalizedRange> ranges = new ArrayList<>();
 
-            if (current.isCovering(next))
+        SubRange baseRange = mySubRanges[0];
+        SubRange previous = null;
+        long previousFirst = baseRange.first;
+        int next = 0;
+
+        for (long first : boundaries)
+        {
+            while (next < mySubRanges.length && mySubRanges[next].first <= first)
             {
-                splitCoveringRange(current, next);
-                i--;
+                active.add(mySubRanges[next++]);
             }
-            else if (current.end().compareTo(next.start()) > 0)
+
+            while (active.peek().last < first)
             {
-                // Replace e.g. "(5, 15], (8, 30]" with "(5, 8], (8, 15], (15, 30]"
-                // The middle section (8, 15] gets the highest "repaired at" of the two overlapping ranges
-                mySummarizedRanges.remove(current);
-                mySummarizedRanges.remove(next);
+                active.poll();
+            }
 
-                insertSorted(current.mutateEnd(next.start()), mySummarizedRanges);
-                insertSorted(current.splitEnd(next), mySummarizedRanges);
-                insertSorted(next.mutateStart(current.end()), mySummarizedRanges);
-                i--;
+            SubRange latest = active.peek();
+            if (latest != previous)
+            {
+                if (previous != null)
+                {
+                    ranges.add(toNormalizedRange(previousFirst, first - 1, previous));
+                }
+                previous = latest;
+                previousFirst = first;
             }
         }
+
+        ranges.add(toNormalizedRange(previousFirst, baseRange.last, previous));
+        return ranges;
     }
 
-    private void splitCoveringRange(NormalizedRange covering, NormalizedRange covered)
+    /**
+     * Get the sorted and distinct positions where a sub range starts or where a new sub range
+     * starts after the end of another.
+     */
+    private long[] getBoundaries()
     {
-        if (covering.getStartedAt() >= covered.getStartedAt())
-        {
-            // We already cover the sub range with a later repaired at, remove it
-            mySummarizedRanges.remove(covered);
-        }
-        else
-        {
-            // Since the covering range is repaired earlier than the covered range
-            // we replace the covering range with smaller ranges around the covered
-            // range. The covered range is already in place in the list so there
-            // is no need to modify it.
-            mySummarizedRanges.remove(covering);
+        long baseLast = mySubRanges[0].last;
+        long[] boundaries = new long[mySubRanges.length * 2];
+        int count = 0;
 
-            if (covering.start().compareTo(covered.start()) != 0)
+        for (SubRange subRange : mySubRanges)
+        {
+            boundaries[count++] = subRange.first;
+            if (subRange.last < baseLast)
             {
-                insertSorted(covering.mutateEnd(covered.start()), mySummarizedRanges);
+                boundaries[count++] = subRange.last + 1;
             }
-            if (covering.end().compareTo(covered.end()) != 0)
+        }
+
+        Arrays.sort(boundaries, 0, count);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (distinct == 0 || boundaries[distinct - 1] != boundaries[i])
             {
-                insertSorted(covering.mutateStart(covered.end()), mySummarizedRanges);
+                boundaries[distinct++] = boundaries[i];
             }
         }
+
+        return Arrays.copyOf(boundaries, distinct);
     }
 
-    private static void insertSorted(NormalizedRange toInsert, List<NormalizedRange> collection)
+    private NormalizedRange toNormalizedRange(long first, long last, SubRange subRange)
     {
-        int index = Collections.binarySearch(collection, toInsert);
+        // The end wraps around to 0 for a base vnode covering the full token range
+        long start = first ^ Long.MIN_VALUE;
+        long end = (last ^ Long.MIN_VALUE) + 1;
 
-        if (index < 0)
-        {
-            index = (-index) - 1;
-        }
-
-        collection.add(index, toInsert);
+        return new NormalizedRange(myBaseVnode, start, end, subRange.startedAt, subRange.finishedAt);
     }
 
     private static boolean isCloseInTime(NormalizedRange v1, NormalizedRange v2)
@@ -223,4 +298,100 @@ public final class VnodeRepairStateSummarizer
     {
         boolean shouldMerge(NormalizedRange range1, NormalizedRange range2);
     }
+
+    /**
+     * A sub range of a base vnode.
+     * <br><br>
+     * The position of a token is its unsigned offset from the start of the base vnode shifted into the signed range
+     * so that the positions can be compared as regular longs.
+     * The sub range covers the positions from first to last inclusive.
+     */
+    private static final class SubRange
+    {
+        private final long first;
+        private final long last;
+        private final long startedAt;
+        private final long finishedAt;
+        private final int order;
+
+        SubRange(VnodeRepairState vnodeRepairState, long baseStart, int order)
+        {
+            LongTokenRange tokenRange = vnodeRepairState.getTokenRange();
+
+            this.first = (tokenRange.start - baseStart) ^ Long.MIN_VALUE;
+            this.last = (tokenRange.end - baseStart - 1) ^ Long.MIN_VALUE;
+            this.startedAt = vnodeRepairState.getStartedAt();
+            this.finishedAt = vnodeRepairState.getFinishedAt();
+            this.order = order;
+        }
+    }
+
+    /**
+     * An index of the base vnodes sorted by their start token.
+     * Since base vnodes are not overlapping a sub range can only be covered by the base vnode with the closest
+     * start token before it or by the base vnode wrapping around the token range.
+     */
+    private static final class BaseVnodeIndex
+    {
+        private final long[] myStarts;
+        private final int[] myIndexes;
+        private final LongTokenRange[] myTokenRanges;
+        private final int myWrapAroundIndex;
+
+        BaseVnodeIndex(List<VnodeRepairState> baseVnodes)
+        {
+            int size = baseVnodes.size();
+            myTokenRanges = new LongTokenRange[size];
+            Integer[] sorted = new Integer[size];
+            int wrapAroundIndex = -1;
+
+            for (int i = 0; i < size; i++)
+            {
+                myTokenRanges[i] = baseVnodes.get(i).getTokenRange();
+                sorted[i] = i;
+                if (myTokenRanges[i].isWrapAround())
+                {
+                    wrapAroundIndex = i;
+                }
+            }
+
+            Arrays.sort(sorted, Comparator.comparingLong(i -> myTokenRanges[i].start));
+
+            myStarts = new long[size];
+            myIndexes = new int[size];
+            for (int i = 0; i < size; i++)
+            {
+                myIndexes[i] = sorted[i];
+                myStarts[i] = myTokenRanges[sorted[i]].start;
+            }
+            myWrapAroundIndex = wrapAroundIndex;
+        }
+
+        /**
+         * Get the index of the base vnode covering the provided token range.
+         *
+         * @param tokenRange The token range.
+         * @return The index of the covering base vnode or -1 if none of the base vnodes are covering it.
+         */
+        int getCoveringIndex(LongTokenRange tokenRange)
+        {
+            int position = Arrays.binarySearch(myStarts, tokenRange.start);
+            if (position < 0)
+            {
+                position = -position - 2;
+            }
+
+            if (position >= 0 && myTokenRanges[myIndexes[position]].isCovering(tokenRange))
+            {
+                return myIndexes[position];
+            }
+
+            if (myWrapAroundIndex >= 0 && myTokenRanges[myWrapAroundIndex].isCovering(tokenRange))
+            {
+                return myWrapAroundIndex;
+            }
+
+            return -1;
+        }
+    }
 }
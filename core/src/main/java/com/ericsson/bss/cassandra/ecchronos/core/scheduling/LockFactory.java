@@ -15,7 +15,11 @@
 package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
@@ -43,6 +47,47 @@ public interface LockFactory
      */
     DistributedLock tryLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException;
 
+    /**
+     * Try to lock multiple distributed resources using the provided priority.
+     * <p>
+     * Either all resources are locked or none of them, locks acquired before a failure are released.
+     * The default implementation locks the resources one at a time using {@link #tryLock(String, String, int, Map)}.
+     *
+     * @param resources
+     *            The resources to lock.
+     * @param priority
+     *            The priority of the locks.
+     * @param metadata
+     *            The metadata of the locks.
+     * @return A lock covering all resources.
+     * @throws LockException
+     *             Thrown when unable to lock any of the resources
+     */
+    default DistributedLock tryLock(Collection<Resource> resources, int priority, Map<String, String> metadata) throws LockException
+    {
+        List<DistributedLock> locks = new ArrayList<>();
+
+        try
+        {
+            for (Resource resource : resources)
+            {
+                DistributedLock lock = tryLock(resource.getDataCenter(), resource.getResourceName(), priority, metadata);
+                if (lock == null)
+                {
+                    throw new LockException(String.format("Lock resources exhausted for %s", resource));
+                }
+                locks.add(lock);
+            }
+        }
+        catch (LockException | RuntimeException e)
+        {
+            new CompositeLock(locks).close();
+            throw e;
+        }
+
+        return new CompositeLock(locks);
+    }
+
     /**
      * Get the metadata of a resource lock.
      *
@@ -92,4 +137,59 @@ public interface LockFactory
         @Override
         void close();
     }
+
+    /**
+     * A resource to lock, optionally bound to a data center.
+     */
+    final class Resource
+    {
+        private final String myDataCenter;
+        private final String myResourceName;
+
+        /**
+         * Create a resource.
+         *
+         * @param dataCenter The data center the lock belongs to or null if it's a global lock.
+         * @param resourceName The name of the resource.
+         */
+        public Resource(String dataCenter, String resourceName)
+        {
+            myDataCenter = dataCenter;
+            myResourceName = Objects.requireNonNull(resourceName);
+        }
+
+        public String getDataCenter()
+        {
+            return myDataCenter;
+        }
+
+        public String getResourceName()
+        {
+            return myResourceName;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Resource resource = (Resource) o;
+            return Objects.equals(myDataCenter, resource.myDataCenter) &&
+                    myResourceName.equals(resource.myResourceName);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(myDataCenter, myResourceName);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s in %s", myResourceName, myDataCenter);
+        }
+    }
 }
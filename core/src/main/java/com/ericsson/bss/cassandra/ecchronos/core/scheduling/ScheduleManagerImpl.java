@@ -15,86 +15,264 @@
 package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
 
 import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Queue;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * ScheduleManager handles the run scheduler and update scheduler.
+ * <p>
+ * The jobs are run by a configurable number of workers. Each worker retrieves the next runnable job from the queue,
+ * skipping jobs that are already claimed by another worker. A job is claimed before its state is evaluated, so the state
+ * of a job is never evaluated or run by two workers at the same time. Locks are still acquired per task so workers
+ * running jobs on overlapping resources will not run at the same time.
+ * <p>
+ * Tasks are run through {@link ScheduledTask#executeAsync()}. The lock of a task and the claim of its job are kept until
+ * the task has completed, but a worker does not wait for a task that completes in the background, e.g. a repair that
+ * is driven by notifications from Cassandra. The completion of such a task, i.e. {@link ScheduledJob#postExecute} and
+ * running the next task of the job, is handed back to the workers. The number of workers still bounds the number of
+ * jobs that are run at the same time.
+ * <p>
+ * Instead of polling the queue with a fixed delay the workers sleep until the earliest time a job in the queue could
+ * change, i.e. become runnable or increase its priority. The workers are woken up immediately when jobs are scheduled or
+ * descheduled, when a job {@link ScheduledJob#notifyChanged() notifies a change}, when a lock is released or when the
+ * run policies change. The run interval is only used as an upper bound for the sleep, to pick up changes that are not
+ * visible to the scheduler, e.g. locks released by other nodes.
  */
 public class ScheduleManagerImpl implements ScheduleManager, Closeable
 {
     private static final Logger LOG = LoggerFactory.getLogger(ScheduleManagerImpl.class);
 
     static final long DEFAULT_RUN_DELAY_IN_MS = TimeUnit.SECONDS.toMillis(30);
+    static final int DEFAULT_WORKERS = 1;
 
     private final ScheduledJobQueue myQueue = new ScheduledJobQueue(new DefaultJobComparator());
     private final Set<RunPolicy> myRunPolicies = Sets.newConcurrentHashSet();
-    private final ScheduledFuture<?> myRunFuture;
+    private final Set<UUID> myRunningJobs = ConcurrentHashMap.newKeySet();
+    private final Queue<Runnable> myCompletedTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger myWorkerJobs = new AtomicInteger();
 
     private final JobRunTask myRunTask = new JobRunTask();
     private final LockFactory myLockFactory;
-    private final ScheduledExecutorService myExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final long myRunIntervalInMs;
+    private final int myWorkers;
+    private final ExecutorService myExecutor;
+
+    private final Object myWakeUpMonitor = new Object();
+    private long myWakeUpGeneration = 0; // Guarded by myWakeUpMonitor
+    private volatile boolean myIsClosed = false;
 
     private ScheduleManagerImpl(Builder builder)
     {
         myLockFactory = builder.myLockFactory;
-        myRunFuture = myExecutor.scheduleWithFixedDelay(myRunTask, builder.myRunIntervalInMs, builder.myRunIntervalInMs, TimeUnit.MILLISECONDS);
+        myRunIntervalInMs = builder.myRunIntervalInMs;
+        myWorkers = builder.myWorkers;
+        myExecutor = Executors.newFixedThreadPool(builder.myWorkers);
+
+        if (builder.myStartWorkers)
+        {
+            for (int i = 0; i < builder.myWorkers; i++)
+            {
+                myExecutor.execute(new Worker());
+            }
+        }
     }
 
     public boolean addRunPolicy(RunPolicy runPolicy)
     {
         LOG.debug("Run policy {} added", runPolicy);
-        return myRunPolicies.add(runPolicy);
+        boolean added = myRunPolicies.add(runPolicy);
+        wakeUp();
+        return added;
     }
 
     public boolean removeRunPolicy(RunPolicy runPolicy)
     {
         LOG.debug("Run policy {} removed", runPolicy);
-        return myRunPolicies.remove(runPolicy);
+        boolean removed = myRunPolicies.remove(runPolicy);
+        wakeUp();
+        return removed;
     }
 
     @Override
     public void schedule(ScheduledJob job)
     {
         myQueue.add(job);
+        job.setChangeListener(() -> onJobChanged(job));
+        wakeUp();
     }
 
     @Override
     public void deschedule(ScheduledJob job)
     {
+        job.setChangeListener(null);
         myQueue.remove(job);
+        wakeUp();
+    }
+
+    /**
+     * Re-index a job that has changed outside of a run so that the queue and the wake up time of the workers
+     * reflect the current state of the job.
+     */
+    private void onJobChanged(ScheduledJob job)
+    {
+        myQueue.update(job);
+        wakeUp();
     }
 
     @Override
     public void close()
     {
-        if (myRunFuture != null)
-        {
-            myRunFuture.cancel(false);
-        }
+        myIsClosed = true;
+        wakeUp();
 
         myExecutor.shutdown();
         myRunPolicies.clear();
+
+        runCompletedTasks();
     }
 
     @VisibleForTesting
     public void run()
     {
+        runCompletedTasks();
         myRunTask.run();
     }
 
     @VisibleForTesting
     public int getQueueSize() { return myQueue.size(); }
 
+    /**
+     * Wake up all workers that are waiting for the next job to become runnable.
+     */
+    private void wakeUp()
+    {
+        synchronized (myWakeUpMonitor)
+        {
+            myWakeUpGeneration++;
+            myWakeUpMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Hand the completion of a task that completed in the background over to the workers.
+     * <p>
+     * After the scheduler is closed the completion is run by the calling thread so that the locks are released.
+     */
+    private void completeInWorker(Runnable completion)
+    {
+        myCompletedTasks.add(completion);
+        wakeUp();
+
+        if (myIsClosed)
+        {
+            runCompletedTasks();
+        }
+    }
+
+    /**
+     * Run the completions of tasks that completed in the background.
+     *
+     * @return True if any completion was run.
+     */
+    private boolean runCompletedTasks()
+    {
+        boolean hasRun = false;
+
+        for (Runnable completion = myCompletedTasks.poll(); completion != null; completion = myCompletedTasks.poll())
+        {
+            try
+            {
+                completion.run();
+            }
+            catch (Exception e)
+            {
+                LOG.error("Unexpected exception while completing task", e);
+            }
+            hasRun = true;
+        }
+
+        return hasRun;
+    }
+
+    /**
+     * Reserve a slot for a job run by a worker, a slot is kept until the job has completed.
+     *
+     * @return True if fewer jobs than workers were running.
+     */
+    private boolean tryReserveJob()
+    {
+        int running = myWorkerJobs.get();
+        while (running < myWorkers)
+        {
+            if (myWorkerJobs.compareAndSet(running, running + 1))
+            {
+                return true;
+            }
+            running = myWorkerJobs.get();
+        }
+
+        return false;
+    }
+
+    private long getWakeUpGeneration()
+    {
+        synchronized (myWakeUpMonitor)
+        {
+            return myWakeUpGeneration;
+        }
+    }
+
+    /**
+     * Wait until the provided time unless a wake up has been triggered since the provided generation.
+     *
+     * @param generation The wake up generation seen before the last run.
+     * @param wakeUpAt The time to wake up at the latest.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void awaitWakeUp(long generation, long wakeUpAt) throws InterruptedException
+    {
+        synchronized (myWakeUpMonitor)
+        {
+            long waitTime = wakeUpAt - System.currentTimeMillis();
+            while (!myIsClosed && myWakeUpGeneration == generation && waitTime > 0)
+            {
+                myWakeUpMonitor.wait(waitTime);
+                waitTime = wakeUpAt - System.currentTimeMillis();
+            }
+        }
+    }
+
+    private long getNextWakeUp(long now)
+    {
+        long maxWakeUp = now + myRunIntervalInMs;
+        long nextChange = myQueue.getNextChangeTime(now);
+
+        if (nextChange == -1)
+        {
+            return maxWakeUp;
+        }
+
+        return Math.min(nextChange, maxWakeUp);
+    }
+
     private Long validateJob(ScheduledJob job)
     {
         for (RunPolicy runPolicy : myRunPolicies)
@@ -112,34 +290,168 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
 
 
     /**
-     * Internal run task that is scheduled by the {@link ScheduleManagerImpl}.
+     * A worker that runs jobs until the {@link ScheduleManagerImpl} is closed.
+     * <p>
+     * After each run the worker sleeps until the next job could become runnable or until it is woken up.
+     * If a job was run or a task was completed the worker tries again immediately as there might be more work to do.
+     * New jobs are only started while fewer jobs than workers are running.
+     */
+    private class Worker implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            while (!myIsClosed)
+            {
+                long generation = getWakeUpGeneration();
+
+                if (runCompletedTasks() || tryRunReserved())
+                {
+                    continue;
+                }
+
+                try
+                {
+                    awaitWakeUp(generation, getNextWakeUp(System.currentTimeMillis()));
+                }
+                catch (InterruptedException e)
+                {
+                    LOG.debug("Worker interrupted, stopping", e);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private boolean tryRunReserved()
+        {
+            if (!tryReserveJob())
+            {
+                return false;
+            }
+
+            CompletableFuture<Boolean> run = myRunTask.tryRunAsync();
+            run.whenComplete((hasRun, error) ->
+            {
+                myWorkerJobs.decrementAndGet();
+                if (Boolean.TRUE.equals(hasRun))
+                {
+                    wakeUp();
+                }
+            });
+
+            return !run.isDone() || run.join();
+        }
+    }
+
+    /**
+     * Internal run task that is run by each worker of the {@link ScheduleManagerImpl}.
      * <p>
      * Retrieves a job from the queue and tries to run it provided that it's possible to get the required locks.
+     * Jobs that are already claimed by another worker are skipped.
      */
-    private class JobRunTask implements Runnable
+    private class JobRunTask implements Runnable, ScheduledJobQueue.JobClaim
     {
         @Override
         public void run()
+        {
+            tryRun();
+        }
+
+        /**
+         * Try to run the next job in the queue.
+         *
+         * @return True if a job was run or started running in the background.
+         */
+        boolean tryRun()
+        {
+            CompletableFuture<Boolean> run = tryRunAsync();
+            return !run.isDone() || run.join();
+        }
+
+        /**
+         * Try to run the next job in the queue.
+         *
+         * @return A future completed with true when a job has run or false if no job was run.
+         */
+        CompletableFuture<Boolean> tryRunAsync()
         {
             try
             {
-                tryRunNext();
+                return tryRunNext().exceptionally(e ->
+                {
+                    LOG.error("Unexpected exception while running job", e);
+                    return false;
+                });
             }
             catch (Exception e)
             {
                 LOG.error("Unexpected exception while running job", e);
             }
+
+            return CompletableFuture.completedFuture(false);
+        }
+
+        @Override
+        public boolean tryClaim(ScheduledJob job)
+        {
+            return myRunningJobs.add(job.getId());
+        }
+
+        @Override
+        public void release(ScheduledJob job)
+        {
+            myRunningJobs.remove(job.getId());
         }
 
-        private void tryRunNext()
+        private CompletableFuture<Boolean> tryRunNext()
         {
-            for (ScheduledJob next : myQueue)
+            Iterator<ScheduledJob> iterator = myQueue.iterator(this);
+            while (iterator.hasNext())
             {
-                if (validate(next) && tryRunTasks(next))
+                CompletableFuture<Boolean> run = runClaimed(iterator.next());
+                if (!run.isDone() || run.join())
                 {
-                    break;
+                    return run;
                 }
             }
+
+            return CompletableFuture.completedFuture(false);
+        }
+
+        /**
+         * Run a job that has been claimed by this worker when it was retrieved from the queue.
+         * <p>
+         * The job is claimed before its state is evaluated so that two workers never evaluate or run the same job
+         * at the same time. The claim is kept until all tasks of the job have completed.
+         *
+         * @return A future completed with true when the job has run.
+         */
+        private CompletableFuture<Boolean> runClaimed(ScheduledJob job)
+        {
+            CompletableFuture<Boolean> run;
+            try
+            {
+                run = validate(job)
+                        ? tryRunTasks(job, job.iterator(), false)
+                        : CompletableFuture.completedFuture(false);
+            }
+            catch (RuntimeException e)
+            {
+                run = new CompletableFuture<>();
+                run.completeExceptionally(e);
+            }
+
+            return run.whenComplete((hasRun, error) ->
+            {
+                myQueue.update(job);
+                release(job);
+
+                if (!Boolean.FALSE.equals(hasRun))
+                {
+                    wakeUp();
+                }
+            });
         }
 
         private boolean validate(ScheduledJob job)
@@ -156,31 +468,52 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
             return true;
         }
 
-        private boolean tryRunTasks(ScheduledJob next)
+        /**
+         * Run the remaining tasks of the job one at a time.
+         * <p>
+         * Tasks that complete directly are run in a loop, the next task after a task that completes in the background
+         * is run when it has completed.
+         */
+        private CompletableFuture<Boolean> tryRunTasks(ScheduledJob job, Iterator<ScheduledTask> tasks,
+                boolean hasRunBefore)
         {
-            boolean hasRun = false;
+            boolean hasRun = hasRunBefore;
 
-            for (ScheduledTask task : next)
+            while (tasks.hasNext())
             {
-                if (!validate(next))
+                ScheduledTask task = tasks.next();
+                if (!validate(job))
                 {
-                    LOG.info("Job {} was stopped, will continue later", next);
+                    LOG.info("Job {} was stopped, will continue later", job);
                     break;
                 }
-                hasRun |= tryRunTask(next, task);
+
+                CompletableFuture<Boolean> taskRun = tryRunTask(job, task);
+                if (!taskRun.isDone())
+                {
+                    return taskRun.thenCompose(ranTask -> tryRunTasks(job, tasks, true));
+                }
+
+                hasRun |= taskRun.join();
             }
 
-            return hasRun;
+            return CompletableFuture.completedFuture(hasRun);
         }
 
-        private boolean tryRunTask(ScheduledJob job, ScheduledTask task)
+        /**
+         * Run the task if its lock can be acquired.
+         * <p>
+         * The lock is released after the task has completed and the job has been notified of the result.
+         *
+         * @return A future completed with true when the task has run or false if the lock could not be acquired.
+         */
+        private CompletableFuture<Boolean> tryRunTask(ScheduledJob job, ScheduledTask task)
         {
             LOG.debug("Trying to acquire lock for {}", task);
-            try (LockFactory.DistributedLock lock = task.getLock(myLockFactory))
+            LockFactory.DistributedLock lock;
+            try
             {
-                boolean successful = runTask(task);
-                job.postExecute(successful, task);
-                return true;
+                lock = task.getLock(myLockFactory);
             }
             catch (LockException e)
             {
@@ -188,23 +521,73 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
                 {
                     LOG.warn("Unable to get schedule lock on task {}", task, e);
                 }
-                return false;
+                return CompletableFuture.completedFuture(false);
+            }
+
+            CompletableFuture<Boolean> taskRun = new CompletableFuture<>();
+            whenCompleted(runTask(task), successful -> completeTask(job, task, lock, successful, taskRun));
+            return taskRun;
+        }
+
+        private void completeTask(ScheduledJob job, ScheduledTask task, LockFactory.DistributedLock lock,
+                boolean successful, CompletableFuture<Boolean> taskRun)
+        {
+            try (LockFactory.DistributedLock taskLock = lock)
+            {
+                job.postExecute(successful, task);
             }
+            catch (RuntimeException e)
+            {
+                LOG.warn("Unable to complete task: {}", task, e);
+                wakeUp();
+                taskRun.completeExceptionally(e);
+                return;
+            }
+
+            wakeUp();
+            taskRun.complete(true);
         }
 
-        private boolean runTask(ScheduledTask task)
+        /**
+         * Run the action directly if the task has already completed, otherwise let a worker run it on completion.
+         */
+        private void whenCompleted(CompletableFuture<Boolean> run, Consumer<Boolean> action)
         {
+            if (run.isDone())
+            {
+                action.accept(run.join());
+            }
+            else
+            {
+                run.thenAccept(successful -> completeInWorker(() -> action.accept(successful)));
+            }
+        }
+
+        private CompletableFuture<Boolean> runTask(ScheduledTask task)
+        {
+            CompletableFuture<Boolean> run;
             try
             {
                 LOG.info("Running task: {}", task);
-                return task.execute();
+                run = task.executeAsync();
             }
-            catch (Exception e)
+            catch (RuntimeException e)
             {
-                LOG.warn("Unable to run task: {}", task, e);
+                run = new CompletableFuture<>();
+                run.completeExceptionally(e);
             }
 
-            return false;
+            return run.handle((successful, error) ->
+            {
+                if (error != null)
+                {
+                    LOG.warn("Unable to run task: {}", task,
+                            error instanceof CompletionException ? error.getCause() : error);
+                    return false;
+                }
+
+                return Boolean.TRUE.equals(successful);
+            });
         }
     }
 
@@ -217,6 +600,8 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
     {
         private LockFactory myLockFactory;
         private long myRunIntervalInMs = DEFAULT_RUN_DELAY_IN_MS;
+        private int myWorkers = DEFAULT_WORKERS;
+        private boolean myStartWorkers = true;
 
         public Builder withLockFactory(LockFactory lockFactory)
         {
@@ -224,15 +609,41 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
             return this;
         }
 
+        /**
+         * Set the maximum time the workers sleep before checking the queue again.
+         *
+         * @param runInterval The interval.
+         * @param timeUnit The time unit of the interval.
+         * @return This builder
+         */
         public Builder withRunInterval(long runInterval, TimeUnit timeUnit)
         {
             myRunIntervalInMs = timeUnit.toMillis(runInterval);
             return this;
         }
 
+        /**
+         * Set the number of workers that concurrently run jobs.
+         *
+         * @param workers The number of workers, must be at least one.
+         * @return This builder
+         */
+        public Builder withWorkers(int workers)
+        {
+            myWorkers = workers;
+            return this;
+        }
+
+        @VisibleForTesting
+        Builder withStartWorkers(boolean startWorkers)
+        {
+            myStartWorkers = startWorkers;
+            return this;
+        }
 
         public ScheduleManagerImpl build()
         {
+            Preconditions.checkArgument(myWorkers > 0, "Number of workers must be positive, got %s", myWorkers);
             return new ScheduleManagerImpl(this);
         }
     }
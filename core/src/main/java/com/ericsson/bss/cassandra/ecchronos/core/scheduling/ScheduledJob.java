@@ -23,12 +23,14 @@ import java.util.concurrent.TimeUnit;
 public abstract class ScheduledJob implements Iterable<ScheduledTask>
 {
     public static final long DEFAULT_WAIT_BETWEEN_UNSUCCESSFUL_RUNS_IN_MILLISECONDS = TimeUnit.MINUTES.toMillis(30);
+    static final long PRIORITY_STEP_IN_MS = TimeUnit.HOURS.toMillis(1);
     private final Priority myPriority;
     protected final long myRunIntervalInMs;
 
     protected volatile long myLastSuccessfulRun = -1;
     private volatile long myNextRunTime = -1;
     private volatile long myRunOffset = 0;
+    private volatile Runnable myChangeListener = null;
     private final UUID myId;
 
     public ScheduledJob(Configuration configuration)
@@ -72,6 +74,30 @@ public abstract class ScheduledJob implements Iterable<ScheduledTask>
      */
     protected void finishJob() {}
 
+    /**
+     * Notify the scheduler that the {@link #getRunnableTime() runnable time} or the
+     * {@link #getPriorityStartTime() priority start time} of this job might have changed outside of a run,
+     * e.g. when the state of the job is updated asynchronously.
+     */
+    protected final void notifyChanged()
+    {
+        Runnable changeListener = myChangeListener;
+        if (changeListener != null)
+        {
+            changeListener.run();
+        }
+    }
+
+    /**
+     * Set the listener that is notified by {@link #notifyChanged()}.
+     *
+     * @param changeListener The listener or null to remove the current listener.
+     */
+    final void setChangeListener(Runnable changeListener)
+    {
+        myChangeListener = changeListener;
+    }
+
     /**
      * Set the job to be runnable again after the given delay has elapsed.
      *
@@ -140,18 +166,41 @@ public abstract class ScheduledJob implements Iterable<ScheduledTask>
     public final int getRealPriority()
     {
         long now = System.currentTimeMillis();
-        long diff = now - (getLastSuccessfulRun() + myRunIntervalInMs - getRunOffset());
+        long diff = now - getPriorityStartTime();
 
         if (diff < 0)
         {
             return -1;
         }
 
-        int hours = (int) (diff / 3600000) + 1;
+        int hours = (int) (diff / PRIORITY_STEP_IN_MS) + 1;
 
         return hours * myPriority.getValue();
     }
 
+    /**
+     * Get the point in time from which the {@link #getRealPriority() current priority} of this job starts increasing.
+     *
+     * @return The time in milliseconds.
+     */
+    final long getPriorityStartTime()
+    {
+        return getLastSuccessfulRun() + myRunIntervalInMs - getRunOffset();
+    }
+
+    /**
+     * Get the earliest point in time when this job could be runnable.
+     * <p>
+     * The {@link ScheduledJobQueue} does not return the job before this time. Jobs that can become runnable regardless of
+     * the time should override this and return -1.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getRunnableTime()
+    {
+        return Math.max(myNextRunTime, getPriorityStartTime());
+    }
+
     public long getRunOffset()
     {
         return myRunOffset;
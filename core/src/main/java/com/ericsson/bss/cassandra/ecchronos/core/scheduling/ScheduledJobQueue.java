@@ -14,35 +14,79 @@
  */
 package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.PriorityQueue;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
 
 import com.google.common.collect.AbstractIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.ericsson.bss.cassandra.ecchronos.core.utils.ManyToOneIterator;
 import com.google.common.annotations.VisibleForTesting;
 
 /**
  * Dynamic priority queue for scheduled jobs.
  * <p>
- * This queue is divided in several smaller queues, one for each {@link ScheduledJob.Priority priority type} and are then retrieved using a
- * {@link ManyToOneIterator}.
+ * The jobs are indexed by the {@link ScheduledJob#getRunnableTime() time they could become runnable}. Jobs that are not
+ * yet runnable are kept in a pending set ordered by that time and are moved to the ready sets once the time has passed.
+ * <p>
+ * The ready jobs are divided in several smaller sets, one for each {@link ScheduledJob.Priority priority type}, ordered by
+ * the time their {@link ScheduledJob#getRealPriority() current priority} started to increase. As jobs with the same
+ * priority type increase their priority at the same rate this order does not change over time, which means that the
+ * sets can be merged using the provided comparator without re-sorting them.
+ * <p>
+ * The index keys are captured when a job is added or {@link #update(ScheduledJob) updated} so the queue must be notified
+ * when a job has changed, e.g. after it has been run or when the job {@link ScheduledJob#notifyChanged() notifies}
+ * that its state has changed asynchronously.
  */
 public class ScheduledJobQueue implements Iterable<ScheduledJob>
 {
     private static final Logger LOG = LoggerFactory.getLogger(ScheduledJobQueue.class);
 
+    private static final Comparator<Entry> RUNNABLE_TIME_ORDER = Comparator.<Entry> comparingLong(e -> e.runnableTime)
+            .thenComparingLong(e -> e.sequence);
+    private static final Comparator<Entry> PRIORITY_START_ORDER = Comparator.<Entry> comparingLong(e -> e.priorityStartTime)
+            .thenComparingLong(e -> e.sequence);
+    private static final JobClaim NO_CLAIM = new JobClaim()
+    {
+        @Override
+        public boolean tryClaim(ScheduledJob job)
+        {
+            return true;
+        }
+
+        @Override
+        public void release(ScheduledJob job)
+        {
+            // NOOP
+        }
+    };
+
+    private static final Comparator<Entry> PRIORITY_STEP_ORDER = Comparator.<Entry> comparingLong(e -> e.priorityStepOffset)
+            .thenComparingLong(e -> e.sequence);
+
     private final Comparator<ScheduledJob> myComparator;
 
-    private final EnumMap<ScheduledJob.Priority, PriorityQueue<ScheduledJob>> myJobQueues = new EnumMap<>(ScheduledJob.Priority.class);
+    private final Map<UUID, Entry> myEntries = new HashMap<>();
+    private final NavigableSet<Entry> myPendingJobs = new TreeSet<>(RUNNABLE_TIME_ORDER);
+    private final EnumMap<ScheduledJob.Priority, NavigableSet<Entry>> myReadyJobs = new EnumMap<>(ScheduledJob.Priority.class);
+    private final NavigableSet<Entry> myReadyJobsByPriorityStep = new TreeSet<>(PRIORITY_STEP_ORDER);
+
+    private long mySequence = 0;
 
     /**
      * Construct a new job queue that prioritizes the jobs based on the provided comparator.
+     * <p>
+     * The comparator is used to merge the jobs of the different priority types and must order jobs of the same priority type
+     * by how long they have been waiting, like the {@link DefaultJobComparator}.
      *
      * @param comparator
      *            The comparator used to determine the job with the highest priority.
@@ -53,19 +97,21 @@ public class ScheduledJobQueue implements Iterable<ScheduledJob>
 
         for (ScheduledJob.Priority priority : ScheduledJob.Priority.values())
         {
-            myJobQueues.put(priority, new PriorityQueue<>(1, comparator));
+            myReadyJobs.put(priority, new TreeSet<>(PRIORITY_START_ORDER));
         }
     }
 
     /**
      * Add a job to the queue.
+     * <p>
+     * If a job with the same id is already in the queue it is replaced.
      *
      * @param job
      *            The job to add.
      */
     public synchronized void add(ScheduledJob job)
     {
-        addJobInternal(job);
+        addJobInternal(job, System.currentTimeMillis());
     }
 
     /**
@@ -76,9 +122,11 @@ public class ScheduledJobQueue implements Iterable<ScheduledJob>
      */
     public synchronized void addAll(Collection<? extends ScheduledJob> jobs)
     {
+        long now = System.currentTimeMillis();
+
         for (ScheduledJob job : jobs)
         {
-            addJobInternal(job);
+            addJobInternal(job, now);
         }
     }
 
@@ -91,43 +139,241 @@ public class ScheduledJobQueue implements Iterable<ScheduledJob>
     public synchronized void remove(ScheduledJob job)
     {
         LOG.debug("Removing job: {}", job);
-        myJobQueues.get(job.getPriority()).remove(job);
+        Entry entry = myEntries.get(job.getId());
+        if (entry != null && entry.job == job)
+        {
+            removeEntry(entry);
+        }
+    }
+
+    /**
+     * Update the position of the provided job in the queue.
+     * <p>
+     * This should be called when the job might have changed the time it becomes runnable or the time it started to
+     * increase its priority, e.g. after it has been run or rejected by a run policy.
+     *
+     * @param job
+     *            The job to update.
+     */
+    public synchronized void update(ScheduledJob job)
+    {
+        Entry entry = myEntries.get(job.getId());
+        if (entry != null && entry.job == job)
+        {
+            removeEntry(entry);
+            addJobInternal(job, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Get the earliest point in time after the provided time when any of the jobs in the queue could change, either by
+     * becoming runnable or by increasing its current priority.
+     *
+     * @param now
+     *            The current time in milliseconds.
+     * @return The time of the next change in milliseconds or -1 if the queue is empty.
+     */
+    public synchronized long getNextChangeTime(long now)
+    {
+        promotePendingJobs(now);
+
+        long nextChange = -1;
+
+        if (!myPendingJobs.isEmpty())
+        {
+            nextChange = myPendingJobs.first().runnableTime;
+        }
+
+        if (!myReadyJobsByPriorityStep.isEmpty())
+        {
+            long nextPriorityStep = getNextPriorityStep(now);
+            if (nextChange == -1 || nextPriorityStep < nextChange)
+            {
+                nextChange = nextPriorityStep;
+            }
+        }
+
+        return nextChange;
+    }
+
+    private long getNextPriorityStep(long now)
+    {
+        long currentOffset = Math.floorMod(now, ScheduledJob.PRIORITY_STEP_IN_MS);
+        long currentStepStart = now - currentOffset;
+
+        Entry next = myReadyJobsByPriorityStep.higher(Entry.priorityStepProbe(currentOffset));
+        if (next != null)
+        {
+            return currentStepStart + next.priorityStepOffset;
+        }
+
+        return currentStepStart + ScheduledJob.PRIORITY_STEP_IN_MS + myReadyJobsByPriorityStep.first().priorityStepOffset;
     }
 
-    private void addJobInternal(ScheduledJob job)
+    private void addJobInternal(ScheduledJob job, long now)
     {
         LOG.debug("Adding job: {}, Priority: {}", job, job.getPriority());
-        myJobQueues.get(job.getPriority()).add(job);
+
+        Entry existing = myEntries.get(job.getId());
+        if (existing != null)
+        {
+            removeEntry(existing);
+        }
+
+        Entry entry = new Entry(job, mySequence++);
+        myEntries.put(job.getId(), entry);
+
+        if (entry.runnableTime <= now)
+        {
+            addReady(entry);
+        }
+        else
+        {
+            myPendingJobs.add(entry);
+        }
     }
 
-    @VisibleForTesting
-    int size()
+    private void addReady(Entry entry)
     {
-        int size = 0;
+        myReadyJobs.get(entry.job.getPriority()).add(entry);
+        myReadyJobsByPriorityStep.add(entry);
+    }
+
+    private void removeEntry(Entry entry)
+    {
+        myEntries.remove(entry.job.getId());
+        if (!myPendingJobs.remove(entry))
+        {
+            myReadyJobs.get(entry.job.getPriority()).remove(entry);
+            myReadyJobsByPriorityStep.remove(entry);
+        }
+    }
 
-        for (PriorityQueue<ScheduledJob> queue : myJobQueues.values())
+    private void promotePendingJobs(long now)
+    {
+        while (!myPendingJobs.isEmpty() && myPendingJobs.first().runnableTime <= now)
         {
-            size += queue.size();
+            addReady(myPendingJobs.pollFirst());
         }
+    }
 
-        return size;
+    private synchronized boolean contains(ScheduledJob job)
+    {
+        Entry entry = myEntries.get(job.getId());
+        return entry != null && entry.job == job;
     }
 
+    @VisibleForTesting
+    synchronized int size()
+    {
+        return myEntries.size();
+    }
+
+    /**
+     * Get an iterator over the jobs that could be runnable, in priority order.
+     * <p>
+     * The iterator works on a snapshot of the ready jobs, so jobs added or removed after it was created are not reflected.
+     *
+     * @return The iterator.
+     */
     @Override
-    public synchronized Iterator<ScheduledJob> iterator()
+    public Iterator<ScheduledJob> iterator()
     {
-        Iterator<ScheduledJob> baseIterator = new ManyToOneIterator<>(myJobQueues.values(), myComparator);
+        return iterator(NO_CLAIM);
+    }
 
-        return new RunnableJobIterator(baseIterator);
+    /**
+     * Get an iterator over the jobs that could be runnable, in priority order, claiming each job before its state is
+     * evaluated.
+     * <p>
+     * Jobs that can't be claimed or that have been removed from the queue since the iterator was created are skipped
+     * without evaluating their state. Jobs that are claimed but not returned,
+     * e.g. because they are parked or finished, are released by the iterator. Returned jobs stay claimed and should be
+     * released by the caller when it is done with them.
+     * <p>
+     * This allows multiple consumers to iterate the queue without evaluating the state of the same job concurrently,
+     * since evaluating the state can have side effects like updating the repair state or finishing the job.
+     *
+     * @param jobClaim The claim used for the jobs.
+     * @return The iterator.
+     * @see #iterator()
+     */
+    public synchronized Iterator<ScheduledJob> iterator(JobClaim jobClaim)
+    {
+        promotePendingJobs(System.currentTimeMillis());
+
+        List<Iterator<ScheduledJob>> readyJobs = new ArrayList<>();
+
+        for (NavigableSet<Entry> entries : myReadyJobs.values())
+        {
+            if (!entries.isEmpty())
+            {
+                List<ScheduledJob> jobs = new ArrayList<>(entries.size());
+                for (Entry entry : entries)
+                {
+                    jobs.add(entry.job);
+                }
+                readyJobs.add(jobs.iterator());
+            }
+        }
+
+        return new RunnableJobIterator(new MergingIterator(readyJobs), jobClaim);
+    }
+
+    /**
+     * Merges the already ordered jobs of each priority type by comparing the head of each one of them.
+     */
+    private class MergingIterator extends AbstractIterator<ScheduledJob>
+    {
+        private final List<Iterator<ScheduledJob>> myIterators;
+        private final ScheduledJob[] myHeads;
+
+        MergingIterator(List<Iterator<ScheduledJob>> iterators)
+        {
+            myIterators = iterators;
+            myHeads = new ScheduledJob[iterators.size()];
+
+            for (int i = 0; i < myHeads.length; i++)
+            {
+                myHeads[i] = myIterators.get(i).next();
+            }
+        }
+
+        @Override
+        protected ScheduledJob computeNext()
+        {
+            int best = -1;
+
+            for (int i = 0; i < myHeads.length; i++)
+            {
+                if (myHeads[i] != null && (best == -1 || myComparator.compare(myHeads[i], myHeads[best]) < 0))
+                {
+                    best = i;
+                }
+            }
+
+            if (best == -1)
+            {
+                return endOfData();
+            }
+
+            ScheduledJob next = myHeads[best];
+            Iterator<ScheduledJob> iterator = myIterators.get(best);
+            myHeads[best] = iterator.hasNext() ? iterator.next() : null;
+
+            return next;
+        }
     }
 
     private class RunnableJobIterator extends AbstractIterator<ScheduledJob>
     {
         private final Iterator<ScheduledJob> myBaseIterator;
+        private final JobClaim myJobClaim;
 
-        public RunnableJobIterator(Iterator<ScheduledJob> baseIterator)
+        public RunnableJobIterator(Iterator<ScheduledJob> baseIterator, JobClaim jobClaim)
         {
             myBaseIterator = baseIterator;
+            myJobClaim = jobClaim;
         }
 
         @Override
@@ -137,14 +383,26 @@ public class ScheduledJobQueue implements Iterable<ScheduledJob>
             {
                 ScheduledJob job = myBaseIterator.next();
 
-                ScheduledJob.State state = job.getState();
-                if (state == ScheduledJob.State.FAILED || state == ScheduledJob.State.FINISHED)
+                if (!myJobClaim.tryClaim(job))
                 {
-                    LOG.info("{}: {}, descheduling", job, state);
-                    job.finishJob();
-                    ScheduledJobQueue.this.remove(job);
+                    LOG.trace("Job {} is already claimed", job);
+                    continue;
                 }
-                else if (state != ScheduledJob.State.PARKED)
+
+                boolean runnable = false;
+                try
+                {
+                    runnable = isClaimable(job) && isRunnable(job);
+                }
+                finally
+                {
+                    if (!runnable)
+                    {
+                        myJobClaim.release(job);
+                    }
+                }
+
+                if (runnable)
                 {
                     LOG.debug("Retrieving job: {}, Priority: {}", job, job.getPriority());
                     return job;
@@ -153,5 +411,85 @@ public class ScheduledJobQueue implements Iterable<ScheduledJob>
 
             return endOfData();
         }
+
+        /**
+         * A job that was removed while it was claimed by another consumer must not be evaluated again,
+         * it might already have been finished.
+         */
+        private boolean isClaimable(ScheduledJob job)
+        {
+            return myJobClaim == NO_CLAIM || contains(job);
+        }
+
+        private boolean isRunnable(ScheduledJob job)
+        {
+            ScheduledJob.State state = job.getState();
+            if (state == ScheduledJob.State.FAILED || state == ScheduledJob.State.FINISHED)
+            {
+                LOG.info("{}: {}, descheduling", job, state);
+                job.finishJob();
+                ScheduledJobQueue.this.remove(job);
+                return false;
+            }
+            else if (state == ScheduledJob.State.PARKED)
+            {
+                ScheduledJobQueue.this.update(job);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * A claim on jobs retrieved from the queue, used to make sure that a job is only handled by one consumer at a time.
+     */
+    interface JobClaim
+    {
+        /**
+         * Try to claim the provided job.
+         *
+         * @param job The job to claim.
+         * @return True if the job was claimed, false if it is already claimed.
+         */
+        boolean tryClaim(ScheduledJob job);
+
+        /**
+         * Release a claimed job.
+         *
+         * @param job The job to release.
+         */
+        void release(ScheduledJob job);
+    }
+
+    /**
+     * An indexed job with the keys captured at the time it was added to the queue.
+     */
+    private static final class Entry
+    {
+        private final ScheduledJob job;
+        private final long sequence;
+        private final long runnableTime;
+        private final long priorityStartTime;
+        private final long priorityStepOffset;
+
+        Entry(ScheduledJob job, long sequence)
+        {
+            this(job, sequence, job.getRunnableTime(), job.getPriorityStartTime());
+        }
+
+        private Entry(ScheduledJob job, long sequence, long runnableTime, long priorityStartTime)
+        {
+            this.job = job;
+            this.sequence = sequence;
+            this.runnableTime = runnableTime;
+            this.priorityStartTime = priorityStartTime;
+            this.priorityStepOffset = Math.floorMod(priorityStartTime, ScheduledJob.PRIORITY_STEP_IN_MS);
+        }
+
+        static Entry priorityStepProbe(long priorityStepOffset)
+        {
+            return new Entry(null, Long.MAX_VALUE, 0, priorityStepOffset);
+        }
     }
 }
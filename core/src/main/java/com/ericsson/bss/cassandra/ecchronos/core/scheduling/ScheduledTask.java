@@ -18,6 +18,7 @@ import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.ScheduledJobException;
 
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A scheduled task run by the scheduled job.
@@ -52,6 +53,32 @@ public abstract class ScheduledTask
      */
     public abstract boolean execute() throws ScheduledJobException;
 
+    /**
+     * Run the task without waiting for it to finish.
+     * <p>
+     * The scheduler keeps the lock of the task until the returned future is completed,
+     * so tasks that are driven by other threads or by notifications do not need to occupy a scheduler worker.
+     * The default implementation runs {@link #execute()} in the calling thread.
+     *
+     * @return A future completed with true if the task was executed successfully
+     * or completed exceptionally if anything went wrong during running.
+     */
+    public CompletableFuture<Boolean> executeAsync()
+    {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        try
+        {
+            result.complete(execute());
+        }
+        catch (ScheduledJobException | RuntimeException e)
+        {
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+
     /**
      * Cleanup of the task that should be run after the task has been executed.
      */
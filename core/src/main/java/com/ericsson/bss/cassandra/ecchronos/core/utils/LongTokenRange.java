@@ -16,6 +16,8 @@ package com.ericsson.bss.cassandra.ecchronos.core.utils;
 
 import java.math.BigInteger;
 
+import com.google.common.primitives.UnsignedLong;
+
 /**
  * A representation of a token range in Cassandra.
  */
@@ -50,17 +52,48 @@ public class LongTokenRange
      */
     public BigInteger rangeSize()
     {
-        BigInteger tokenStart = BigInteger.valueOf(start);
-        BigInteger tokenEnd = BigInteger.valueOf(end);
+        return toBigInteger(unsignedRangeSize());
+    }
 
-        BigInteger rangeSize = tokenEnd.subtract(tokenStart);
+    /**
+     * Calculate the size of the token range as an unsigned long.
+     * <br><br>
+     * The full token range contains 2^64 tokens which does not fit in an unsigned long, so it is represented as 0.
+     *
+     * @return The unsigned size of the token range.
+     * @see #toBigInteger(long)
+     */
+    public long unsignedRangeSize()
+    {
+        return end - start;
+    }
 
-        if (rangeSize.compareTo(BigInteger.ZERO) <= 0)
+    /**
+     * Convert an unsigned range size to a BigInteger.
+     *
+     * @param unsignedRangeSize The unsigned range size where 0 represents the full token range.
+     * @return The range size.
+     */
+    public static BigInteger toBigInteger(long unsignedRangeSize)
+    {
+        if (unsignedRangeSize == 0)
         {
-            rangeSize = rangeSize.add(FULL_RANGE);
+            return FULL_RANGE;
         }
 
-        return rangeSize;
+        return UnsignedLong.fromLongBits(unsignedRangeSize).bigIntegerValue();
+    }
+
+    /**
+     * Compare two unsigned range sizes.
+     *
+     * @param unsignedRangeSize1 The first unsigned range size where 0 represents the full token range.
+     * @param unsignedRangeSize2 The second unsigned range size where 0 represents the full token range.
+     * @return A negative value if the first range size is smaller, a positive value if it is larger or 0 if they are equal.
+     */
+    public static int compareRangeSize(long unsignedRangeSize1, long unsignedRangeSize2)
+    {
+        return Long.compareUnsigned(unsignedRangeSize1 - 1, unsignedRangeSize2 - 1);
     }
 
     /**
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.utils;
+
+import java.util.Set;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * A registry of canonical replica sets.
+ * <p>
+ * Every distinct set of nodes is represented by a shared {@link ImmutableSet} instance.
+ * Replica sets interned through the registry can be compared by identity,
+ * {@link ImmutableSet#equals(Object)} returns early for the same instance and the hash code of the set is cached.
+ * <p>
+ * The replica sets are weakly referenced by the registry and are removed when they are no longer used,
+ * e.g. after nodes have been replaced or a keyspace has been dropped.
+ */
+public final class ReplicaSetRegistry
+{
+    public static final ReplicaSetRegistry INSTANCE = new ReplicaSetRegistry();
+
+    private final Interner<ImmutableSet<Node>> myInterner = Interners.newWeakInterner();
+
+    @VisibleForTesting
+    ReplicaSetRegistry()
+    {
+        // Nothing to do here
+    }
+
+    /**
+     * Get the canonical instance of a set of nodes.
+     *
+     * @param nodes The nodes.
+     * @return The shared replica set containing the same nodes.
+     */
+    public ImmutableSet<Node> intern(Set<Node> nodes)
+    {
+        return myInterner.intern(ImmutableSet.copyOf(nodes));
+    }
+}
@@ -25,20 +25,20 @@ import java.util.List;
 
 /**
  * Utility class to split a token range into smaller sub-ranges.
+ * <br><br>
+ * Sub ranges are calculated using unsigned long arithmetic where token values wrap around at the end of the token range.
  */
 public class TokenSubRangeUtil
 {
     private static final Logger LOG = LoggerFactory.getLogger(TokenSubRangeUtil.class);
 
     private final LongTokenRange tokenRange;
-    private final BigInteger tokenStart;
-    private final BigInteger totalRangeSize;
+    private final long totalRangeSize;
 
     public TokenSubRangeUtil(LongTokenRange tokenRange)
     {
         this.tokenRange = tokenRange;
-        this.tokenStart = BigInteger.valueOf(tokenRange.start);
-        this.totalRangeSize = this.tokenRange.rangeSize();
+        this.totalRangeSize = this.tokenRange.unsignedRangeSize();
     }
 
     /**
@@ -51,16 +51,19 @@ public class TokenSubRangeUtil
      */
     public List<LongTokenRange> generateSubRanges(BigInteger tokenPerSubRange)
     {
-        if (totalRangeSize.compareTo(tokenPerSubRange) <= 0)
+        if (tokenPerSubRange.bitLength() >= Long.SIZE + 1
+                || LongTokenRange.compareRangeSize(totalRangeSize, tokenPerSubRange.longValue()) <= 0)
         {
             return Lists.newArrayList(tokenRange); // Full range is smaller than wanted tokens
         }
 
-        long actualSubRangeCount = totalRangeSize.divide(tokenPerSubRange).longValueExact();
-        if (totalRangeSize.remainder(tokenPerSubRange).compareTo(BigInteger.ZERO) > 0)
-        {
-            actualSubRangeCount++;
-        }
+        return generateSubRanges(tokenPerSubRange.longValue());
+    }
+
+    private List<LongTokenRange> generateSubRanges(long tokenPerSubRange)
+    {
+        // Rounded up division, the total range size minus one fits in an unsigned long even for the full range
+        long actualSubRangeCount = Long.divideUnsigned(totalRangeSize - 1, tokenPerSubRange) + 1;
 
         List<LongTokenRange> subRanges = new ArrayList<>();
         for (long l = 0; l < actualSubRangeCount - 1; l++)
@@ -79,42 +82,29 @@ public class TokenSubRangeUtil
 
     private void validateSubRangeSize(List<LongTokenRange> subRanges)
     {
-        BigInteger subRangeSize = BigInteger.ZERO;
+        long subRangeSize = 0L;
 
         for (LongTokenRange range : subRanges)
         {
-            subRangeSize = subRangeSize.add(range.rangeSize());
+            subRangeSize += range.unsignedRangeSize();
         }
 
-        if (subRangeSize.compareTo(totalRangeSize) != 0)
+        if (subRangeSize != totalRangeSize)
         {
-            BigInteger difference = totalRangeSize.subtract(subRangeSize).abs();
-            String message = String.format("Unexpected sub-range generation for %s. Difference of %s. Sub-ranges generated: %s", tokenRange, difference, subRanges);
+            String message = String.format("Unexpected sub-range generation for %s. Sub-range size %s. Sub-ranges generated: %s",
+                    tokenRange, LongTokenRange.toBigInteger(subRangeSize), subRanges);
 
             LOG.error(message);
             throw new InternalException(message);
         }
     }
 
-    private LongTokenRange newSubRange(BigInteger rangeSize, long rangeId)
+    private LongTokenRange newSubRange(long rangeSize, long rangeId)
     {
-        BigInteger rangeOffset = rangeSize.multiply(BigInteger.valueOf(rangeId));
-        BigInteger rangeStartTmp = tokenStart.add(rangeOffset);
-        BigInteger rangeEndTmp = rangeStartTmp.add(rangeSize);
-
-        long rangeStart = enforceValidBounds(rangeStartTmp);
-        long rangeEnd = enforceValidBounds(rangeEndTmp);
+        // The token values wrap around at the end of the token range
+        long rangeStart = tokenRange.start + rangeSize * rangeId;
+        long rangeEnd = rangeStart + rangeSize;
 
         return new LongTokenRange(rangeStart, rangeEnd);
     }
-
-    private long enforceValidBounds(BigInteger tokenValue)
-    {
-        if (tokenValue.compareTo(LongTokenRange.RANGE_END) > 0)
-        {
-            return tokenValue.subtract(LongTokenRange.FULL_RANGE).longValueExact();
-        }
-
-        return tokenValue.longValueExact();
-    }
 }
@@ -53,6 +53,7 @@ import com.datastax.driver.core.SimpleStatement;
 import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory.DistributedLock;
 
 import net.jcip.annotations.NotThreadSafe;
@@ -111,7 +112,9 @@ public class TestCASLockFactory extends AbstractCassandraTest
     public void testCleanup()
     {
         execute(new SimpleStatement(String.format("DELETE FROM %s.%s WHERE resource='%s'", myKeyspaceName, TABLE_LOCK_PRIORITY, "lock")));
+        execute(new SimpleStatement(String.format("DELETE FROM %s.%s WHERE resource='%s'", myKeyspaceName, TABLE_LOCK_PRIORITY, "lock2")));
         execute(myRemoveLockStatement.bind("lock"));
+        execute(myRemoveLockStatement.bind("lock2"));
         myLockFactory.close();
     }
 
@@ -240,6 +243,91 @@ public class TestCASLockFactory extends AbstractCassandraTest
         assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
     }
 
+    @Test
+    public void testGetMultipleLocks() throws LockException
+    {
+        Map<String, String> expectedMetadata = new HashMap<>();
+        expectedMetadata.put("data", "something");
+
+        List<LockFactory.Resource> resources = Arrays.asList(new LockFactory.Resource(DATA_CENTER, "lock"),
+                new LockFactory.Resource(DATA_CENTER, "lock2"));
+
+        try (DistributedLock lock = myLockFactory.tryLock(resources, 1, expectedMetadata))
+        {
+            assertThat(myLockFactory.getLockMetadata(DATA_CENTER, "lock")).isEqualTo(expectedMetadata);
+            assertThat(myLockFactory.getLockMetadata(DATA_CENTER, "lock2")).isEqualTo(expectedMetadata);
+        }
+
+        assertPriorityListEmpty("lock");
+        assertPriorityListEmpty("lock2");
+        assertThat(myLockFactory.getLockMetadata(DATA_CENTER, "lock")).isNull();
+        assertThat(myLockFactory.getLockMetadata(DATA_CENTER, "lock2")).isNull();
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock2")).isEmpty();
+    }
+
+    @Test
+    public void testGetMultipleLocksOneTakenReleasesOthers() throws LockException
+    {
+        execute(myLockStatement.bind("lock2", UUID.randomUUID(), new HashMap<>()));
+
+        List<LockFactory.Resource> resources = Arrays.asList(new LockFactory.Resource(DATA_CENTER, "lock"),
+                new LockFactory.Resource(DATA_CENTER, "lock2"));
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(resources, 1, new HashMap<>()));
+
+        assertPriorityListEmpty("lock");
+        assertPrioritiesInList("lock2", 1);
+        assertThat(myLockFactory.getLockMetadata(DATA_CENTER, "lock")).isNull();
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock2")).isNotEmpty();
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+        }
+    }
+
+    @Test
+    public void testGetMultipleLocksWithLowerPriority()
+    {
+        execute(myCompeteStatement.bind("lock2", UUID.randomUUID(), 2));
+
+        List<LockFactory.Resource> resources = Arrays.asList(new LockFactory.Resource(DATA_CENTER, "lock"),
+                new LockFactory.Resource(DATA_CENTER, "lock2"));
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(resources, 1, new HashMap<>()));
+
+        assertPrioritiesInList("lock", 1);
+        assertPrioritiesInList("lock2", 1, 2);
+        assertThat(myLockFactory.getLockMetadata(DATA_CENTER, "lock")).isNull();
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock2")).isNotEmpty();
+    }
+
+    @Test
+    public void testGetLockHeldLocally() throws LockException
+    {
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+            long expectedLockWriteCount = getWriteCount(TABLE_LOCK);
+            long expectedLockPriorityReadCount = getReadCount(TABLE_LOCK_PRIORITY);
+
+            assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isNotEmpty();
+            assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 2, new HashMap<>()));
+            assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(
+                    Arrays.asList(new LockFactory.Resource(DATA_CENTER, "lock2"), new LockFactory.Resource(DATA_CENTER, "lock")), 1, new HashMap<>()));
+
+            assertThat(getWriteCount(TABLE_LOCK)).isEqualTo(expectedLockWriteCount);
+            assertThat(getReadCount(TABLE_LOCK_PRIORITY)).isEqualTo(expectedLockPriorityReadCount);
+            assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock2")).isEmpty();
+        }
+
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+        }
+    }
+
     @Test
     public void testInterruptCasLockUpdate() throws InterruptedException
     {
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServerConnection;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.ericsson.bss.cassandra.ecchronos.connection.JmxConnectionProvider;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class TestJmxProxyFactoryImpl
+{
+    private static final String SS_OBJ_NAME = "org.apache.cassandra.db:type=StorageService";
+
+    @Mock
+    private JmxConnectionProvider myJmxConnectionProvider;
+
+    @Mock
+    private JMXConnector myJmxConnector;
+
+    @Mock
+    private MBeanServerConnection myMBeanServerConnection;
+
+    @Before
+    public void setup() throws IOException
+    {
+        when(myJmxConnectionProvider.getJmxConnector()).thenReturn(myJmxConnector);
+        when(myJmxConnector.getMBeanServerConnection()).thenReturn(myMBeanServerConnection);
+    }
+
+    @Test
+    public void testProxiesShareSession() throws Exception
+    {
+        JmxProxyFactoryImpl jmxProxyFactory = newJmxProxyFactory();
+
+        NotificationListener listener = mock(NotificationListener.class);
+        NotificationListener otherListener = mock(NotificationListener.class);
+
+        try (JmxProxy proxy = jmxProxyFactory.connect(); JmxProxy otherProxy = jmxProxyFactory.connect())
+        {
+            proxy.addStorageServiceListener(listener);
+            otherProxy.addStorageServiceListener(otherListener);
+        }
+
+        verify(myJmxConnectionProvider).getJmxConnector();
+        verify(myJmxConnector).addConnectionNotificationListener(any(NotificationListener.class), isNull(), isNull());
+        verify(myMBeanServerConnection).addNotificationListener(eq(new ObjectName(SS_OBJ_NAME)), any(NotificationListener.class), isNull(), isNull());
+    }
+
+    @Test
+    public void testNotificationsAreDispatchedToAllListeners() throws Exception
+    {
+        JmxProxyFactoryImpl jmxProxyFactory = newJmxProxyFactory();
+
+        NotificationListener listener = mock(NotificationListener.class);
+        NotificationListener otherListener = mock(NotificationListener.class);
+
+        JmxProxy proxy = jmxProxyFactory.connect();
+        proxy.addStorageServiceListener(listener);
+        proxy.addStorageServiceListener(otherListener);
+
+        NotificationListener sessionListener = getStorageServiceListener();
+
+        Notification notification = new Notification("progress", "repair:1", 0, "message");
+        sessionListener.handleNotification(notification, null);
+
+        proxy.removeStorageServiceListener(otherListener);
+
+        Notification otherNotification = new Notification("progress", "repair:1", 1, "message");
+        sessionListener.handleNotification(otherNotification, null);
+
+        verify(listener).handleNotification(eq(notification), isNull());
+        verify(listener).handleNotification(eq(otherNotification), isNull());
+        verify(otherListener).handleNotification(eq(notification), isNull());
+        verify(otherListener, never()).handleNotification(eq(otherNotification), any());
+    }
+
+    @Test
+    public void testConnectionFailureNotifiesListenersAndReconnects() throws Exception
+    {
+        JmxProxyFactoryImpl jmxProxyFactory = newJmxProxyFactory();
+
+        NotificationListener listener = mock(NotificationListener.class);
+        jmxProxyFactory.connect().addStorageServiceListener(listener);
+
+        ArgumentCaptor<NotificationListener> connectionListener = ArgumentCaptor.forClass(NotificationListener.class);
+        verify(myJmxConnector).addConnectionNotificationListener(connectionListener.capture(), isNull(), isNull());
+
+        Notification failed = new JMXConnectionNotification(JMXConnectionNotification.FAILED, this, "id", 0, "failed", null);
+        connectionListener.getValue().handleNotification(failed, null);
+
+        verify(listener).handleNotification(eq(failed), isNull());
+
+        jmxProxyFactory.connect();
+
+        verify(myJmxConnectionProvider, times(2)).getJmxConnector();
+    }
+
+    @Test
+    public void testFailedHealthCheckNotifiesListenersAndReconnects() throws Exception
+    {
+        JmxProxyFactoryImpl jmxProxyFactory = JmxProxyFactoryImpl.builder()
+                .withJmxConnectionProvider(myJmxConnectionProvider)
+                .withHealthCheckInterval(0, TimeUnit.MILLISECONDS)
+                .build();
+
+        NotificationListener listener = mock(NotificationListener.class);
+        jmxProxyFactory.connect().addStorageServiceListener(listener);
+
+        when(myJmxConnector.getConnectionId()).thenThrow(new IOException());
+
+        jmxProxyFactory.connect();
+
+        verify(listener).handleNotification(argThat(n -> JMXConnectionNotification.FAILED.equals(n.getType())), isNull());
+        verify(myJmxConnectionProvider, times(2)).getJmxConnector();
+    }
+
+    @Test
+    public void testFailedHealthCheckNotificationHasLastConnectionId() throws Exception
+    {
+        JmxProxyFactoryImpl jmxProxyFactory = JmxProxyFactoryImpl.builder()
+                .withJmxConnectionProvider(myJmxConnectionProvider)
+                .withHealthCheckInterval(0, TimeUnit.MILLISECONDS)
+                .build();
+
+        NotificationListener listener = mock(NotificationListener.class);
+        jmxProxyFactory.connect().addStorageServiceListener(listener);
+
+        when(myJmxConnector.getConnectionId()).thenReturn("connection-1").thenThrow(new IOException());
+
+        jmxProxyFactory.connect();
+        jmxProxyFactory.connect();
+
+        verify(listener).handleNotification(argThat(n -> JMXConnectionNotification.FAILED.equals(n.getType())
+                && "connection-1".equals(((JMXConnectionNotification) n).getConnectionId())), isNull());
+        verify(myJmxConnectionProvider, times(2)).getJmxConnector();
+    }
+
+    @Test
+    public void testReconnectIsBackedOff() throws Exception
+    {
+        when(myJmxConnectionProvider.getJmxConnector()).thenThrow(new IOException());
+
+        JmxProxyFactoryImpl jmxProxyFactory = newJmxProxyFactory();
+
+        assertThatExceptionOfType(IOException.class).isThrownBy(jmxProxyFactory::connect);
+        assertThatExceptionOfType(IOException.class).isThrownBy(jmxProxyFactory::connect);
+
+        verify(myJmxConnectionProvider).getJmxConnector();
+    }
+
+    @Test
+    public void testBulkLiveDiskSpaceUsed() throws Exception
+    {
+        TableReference tableReference = tableReference("keyspace", "table");
+        TableReference otherTableReference = tableReference("keyspace", "table2");
+        TableReference tableReferenceWithoutMetric = tableReference("keyspace", "table3");
+
+        ObjectName tableMetric = liveDiskSpaceUsedMetric("keyspace", "table");
+        ObjectName otherTableMetric = liveDiskSpaceUsedMetric("keyspace", "table2");
+
+        when(myMBeanServerConnection.queryNames(any(ObjectName.class), isNull()))
+                .thenReturn(new HashSet<>(Arrays.asList(tableMetric, otherTableMetric)));
+        when(myMBeanServerConnection.getAttributes(eq(tableMetric), any(String[].class)))
+                .thenReturn(new AttributeList(Collections.singletonList(new Attribute("Count", 1000L))));
+        when(myMBeanServerConnection.getAttributes(eq(otherTableMetric), any(String[].class)))
+                .thenReturn(new AttributeList(Collections.singletonList(new Attribute("Count", 500L))));
+
+        Map<TableReference, Long> diskSpaceUsed = newJmxProxyFactory().connect()
+                .liveDiskSpaceUsed(Arrays.asList(tableReference, otherTableReference, tableReferenceWithoutMetric));
+
+        assertThat(diskSpaceUsed).containsOnly(entry(tableReference, 1000L), entry(otherTableReference, 500L));
+        verify(myMBeanServerConnection).queryNames(any(ObjectName.class), isNull());
+        verify(myMBeanServerConnection, never()).getAttribute(any(ObjectName.class), any(String.class));
+    }
+
+    private JmxProxyFactoryImpl newJmxProxyFactory()
+    {
+        return JmxProxyFactoryImpl.builder()
+                .withJmxConnectionProvider(myJmxConnectionProvider)
+                .withReconnectBackoff(1, 1, TimeUnit.HOURS)
+                .build();
+    }
+
+    private static ObjectName liveDiskSpaceUsedMetric(String keyspace, String table) throws Exception
+    {
+        return new ObjectName(String.format("org.apache.cassandra.metrics:type=Table,keyspace=%s,scope=%s,name=LiveDiskSpaceUsed", keyspace, table));
+    }
+
+    private NotificationListener getStorageServiceListener() throws Exception
+    {
+        ArgumentCaptor<NotificationListener> listenerCaptor = ArgumentCaptor.forClass(NotificationListener.class);
+        verify(myMBeanServerConnection).addNotificationListener(eq(new ObjectName(SS_OBJ_NAME)), listenerCaptor.capture(), isNull(), isNull());
+        return listenerCaptor.getValue();
+    }
+}
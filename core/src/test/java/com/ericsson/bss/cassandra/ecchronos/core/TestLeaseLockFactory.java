@@ -0,0 +1,335 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.SimpleStatement;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory.DistributedLock;
+
+import net.jcip.annotations.NotThreadSafe;
+
+@NotThreadSafe
+public class TestLeaseLockFactory extends AbstractCassandraTest
+{
+    private static final String KEYSPACE_NAME = "ecchronos";
+    private static final String DATA_CENTER = "DC1";
+
+    private LeaseLockFactory myLockFactory;
+    private PreparedStatement myLeaseStatement;
+    private PreparedStatement myGetLeaseStatement;
+    private PreparedStatement myCompeteStatement;
+    private PreparedStatement myGetPriorityStatement;
+
+    private HostStates myHostStates;
+
+    @Before
+    public void startup()
+    {
+        mySession.execute(String.format("CREATE KEYSPACE IF NOT EXISTS %s WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': 1}", KEYSPACE_NAME));
+        mySession.execute(String.format("CREATE TABLE IF NOT EXISTS %s.lease (resource text, node uuid, priority int, metadata map<text,text>, PRIMARY KEY(resource)) WITH default_time_to_live = 600 AND gc_grace_seconds = 0", KEYSPACE_NAME));
+        mySession.execute(String.format("CREATE TABLE IF NOT EXISTS %s.lease_priority (resource text, node uuid, priority int, PRIMARY KEY(resource, node)) WITH default_time_to_live = 600 AND gc_grace_seconds = 0", KEYSPACE_NAME));
+
+        myHostStates = mock(HostStates.class);
+        when(myHostStates.isUp(any(Host.class))).thenReturn(true);
+        myLockFactory = LeaseLockFactory.builder()
+                .withNativeConnectionProvider(getNativeConnectionProvider())
+                .withHostStates(myHostStates)
+                .withStatementDecorator(s -> s)
+                .withKeyspaceName(KEYSPACE_NAME)
+                .build();
+
+        myLeaseStatement = mySession.prepare(String.format("INSERT INTO %s.lease (resource, node, priority, metadata) VALUES (?, ?, ?, ?) USING TIMESTAMP ?", KEYSPACE_NAME));
+        myGetLeaseStatement = mySession.prepare(String.format("SELECT node, metadata FROM %s.lease WHERE resource = ?", KEYSPACE_NAME));
+        myCompeteStatement = mySession.prepare(String.format("INSERT INTO %s.lease_priority (resource, node, priority) VALUES (?, ?, ?)", KEYSPACE_NAME));
+        myGetPriorityStatement = mySession.prepare(String.format("SELECT priority FROM %s.lease_priority WHERE resource = ? AND node = ?", KEYSPACE_NAME));
+    }
+
+    @After
+    public void testCleanup()
+    {
+        mySession.execute(new SimpleStatement(String.format("TRUNCATE %s.lease", KEYSPACE_NAME)));
+        mySession.execute(new SimpleStatement(String.format("TRUNCATE %s.lease_priority", KEYSPACE_NAME)));
+        myLockFactory.close();
+    }
+
+    @Test
+    public void testGetLock() throws LockException
+    {
+        Map<String, String> metadata = Collections.singletonMap("data", "something");
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, metadata))
+        {
+            assertThat(getLeaseHolder("lock")).isEqualTo(myLockFactory.getHostId());
+            assertThat(myLockFactory.getLockMetadata(DATA_CENTER, "lock")).isEqualTo(metadata);
+        }
+
+        assertThat(getLeaseHolder("lock")).isNull();
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
+    }
+
+    @Test
+    public void testGetLockRemovesPriorityOnRelease() throws LockException
+    {
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 2, new HashMap<>()))
+        {
+            assertThat(getPriority("lock", myLockFactory.getHostId())).isEqualTo(2);
+        }
+
+        assertThat(getPriority("lock", myLockFactory.getHostId())).isNull();
+    }
+
+    @Test
+    public void testGetLockWithLowerPriority()
+    {
+        UUID otherNode = UUID.randomUUID();
+        competeWith("lock", otherNode, 2);
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()));
+
+        assertThat(getLeaseHolder("lock")).isNull();
+        assertThat(getPriority("lock", myLockFactory.getHostId())).isEqualTo(1);
+        assertThat(getPriority("lock", otherNode)).isEqualTo(2);
+    }
+
+    @Test
+    public void testGetLockWithHigherPriority() throws LockException
+    {
+        UUID otherNode = UUID.randomUUID();
+        competeWith("lock", otherNode, 1);
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 2, new HashMap<>()))
+        {
+            assertThat(getLeaseHolder("lock")).isEqualTo(myLockFactory.getHostId());
+        }
+
+        assertThat(getPriority("lock", otherNode)).isEqualTo(1);
+    }
+
+    @Test
+    public void testGetLockKeepsLocallyHigherPriority() throws LockException
+    {
+        competeWith("lock", myLockFactory.getHostId(), 3);
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 2, new HashMap<>()))
+        {
+            assertThat(getLeaseHolder("lock")).isEqualTo(myLockFactory.getHostId());
+        }
+
+        assertThat(getPriority("lock", myLockFactory.getHostId())).isEqualTo(3);
+    }
+
+    @Test
+    public void testGetLockHeldByOtherNode()
+    {
+        UUID otherNode = UUID.randomUUID();
+        writeLease("lock", otherNode, currentTimestamp());
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()));
+
+        assertThat(getLeaseHolder("lock")).isEqualTo(otherNode);
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isNotEmpty();
+    }
+
+    @Test
+    public void testGetLockHeldLocally() throws LockException
+    {
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+            assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isNotEmpty();
+            assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 2, new HashMap<>()));
+        }
+
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
+    }
+
+    @Test
+    public void testStaleLeaseOfThisNodeIsTakenOver() throws LockException
+    {
+        writeLease("lock", myLockFactory.getHostId(), currentTimestamp() - TimeUnit.MINUTES.toMicros(1));
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+            assertThat(getLeaseHolder("lock")).isEqualTo(myLockFactory.getHostId());
+        }
+
+        assertThat(getLeaseHolder("lock")).isNull();
+    }
+
+    @Test
+    public void testReleaseDoesNotRemoveNewerLease() throws LockException
+    {
+        UUID otherNode = UUID.randomUUID();
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+            writeLease("lock", otherNode, currentTimestamp() + TimeUnit.SECONDS.toMicros(1));
+        }
+
+        assertThat(getLeaseHolder("lock")).isEqualTo(otherNode);
+    }
+
+    @Test
+    public void testRenewLease() throws Exception
+    {
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+            LeaseLockFactory.LeaseLock leaseLock = (LeaseLockFactory.LeaseLock) lock;
+
+            assertThat(leaseLock.renewAsync().get()).isTrue();
+            assertThat(getLeaseHolder("lock")).isEqualTo(myLockFactory.getHostId());
+        }
+
+        assertThat(getLeaseHolder("lock")).isNull();
+    }
+
+    @Test
+    public void testRenewLeaseTakenByOtherNode() throws LockException, ExecutionException, InterruptedException
+    {
+        UUID otherNode = UUID.randomUUID();
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+            writeLease("lock", otherNode, currentTimestamp() + TimeUnit.SECONDS.toMicros(1));
+
+            assertThat(((LeaseLockFactory.LeaseLock) lock).renewAsync().get()).isFalse();
+        }
+
+        assertThat(getLeaseHolder("lock")).isEqualTo(otherNode);
+    }
+
+    @Test
+    public void testGetMultipleLocks() throws LockException
+    {
+        List<LockFactory.Resource> resources = Arrays.asList(new LockFactory.Resource(DATA_CENTER, "lock"),
+                new LockFactory.Resource(DATA_CENTER, "lock2"));
+
+        try (DistributedLock lock = myLockFactory.tryLock(resources, 1, new HashMap<>()))
+        {
+            assertThat(getLeaseHolder("lock")).isEqualTo(myLockFactory.getHostId());
+            assertThat(getLeaseHolder("lock2")).isEqualTo(myLockFactory.getHostId());
+        }
+
+        assertThat(getLeaseHolder("lock")).isNull();
+        assertThat(getLeaseHolder("lock2")).isNull();
+    }
+
+    @Test
+    public void testGetMultipleLocksOneTakenReleasesOthers()
+    {
+        UUID otherNode = UUID.randomUUID();
+        writeLease("lock2", otherNode, currentTimestamp());
+
+        List<LockFactory.Resource> resources = Arrays.asList(new LockFactory.Resource(DATA_CENTER, "lock"),
+                new LockFactory.Resource(DATA_CENTER, "lock2"));
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(resources, 1, new HashMap<>()));
+
+        assertThat(getLeaseHolder("lock")).isNull();
+        assertThat(getLeaseHolder("lock2")).isEqualTo(otherNode);
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
+    }
+
+    @Test
+    public void testActivateWithoutLeasePriorityTableCausesIllegalStateException()
+    {
+        mySession.execute(String.format("DROP TABLE %s.lease_priority", KEYSPACE_NAME));
+
+        try
+        {
+            assertThatExceptionOfType(IllegalStateException.class)
+                    .isThrownBy(() -> LeaseLockFactory.builder()
+                            .withNativeConnectionProvider(getNativeConnectionProvider())
+                            .withHostStates(myHostStates)
+                            .withStatementDecorator(s -> s)
+                            .withKeyspaceName(KEYSPACE_NAME)
+                            .build());
+        }
+        finally
+        {
+            mySession.execute(String.format("CREATE TABLE IF NOT EXISTS %s.lease_priority (resource text, node uuid, priority int, PRIMARY KEY(resource, node)) WITH default_time_to_live = 600 AND gc_grace_seconds = 0", KEYSPACE_NAME));
+        }
+    }
+
+    @Test
+    public void testActivateWithoutLeaseTableCausesIllegalStateException()
+    {
+        mySession.execute(String.format("DROP TABLE %s.lease", KEYSPACE_NAME));
+
+        try
+        {
+            assertThatExceptionOfType(IllegalStateException.class)
+                    .isThrownBy(() -> LeaseLockFactory.builder()
+                            .withNativeConnectionProvider(getNativeConnectionProvider())
+                            .withHostStates(myHostStates)
+                            .withStatementDecorator(s -> s)
+                            .withKeyspaceName(KEYSPACE_NAME)
+                            .build());
+        }
+        finally
+        {
+            mySession.execute(String.format("CREATE TABLE IF NOT EXISTS %s.lease (resource text, node uuid, priority int, metadata map<text,text>, PRIMARY KEY(resource)) WITH default_time_to_live = 600 AND gc_grace_seconds = 0", KEYSPACE_NAME));
+        }
+    }
+
+    private void writeLease(String resource, UUID node, long timestamp)
+    {
+        mySession.execute(myLeaseStatement.bind(resource, node, 1, new HashMap<>(), timestamp));
+    }
+
+    private void competeWith(String resource, UUID node, int priority)
+    {
+        mySession.execute(myCompeteStatement.bind(resource, node, priority));
+    }
+
+    private Integer getPriority(String resource, UUID node)
+    {
+        Row row = mySession.execute(myGetPriorityStatement.bind(resource, node)).one();
+        return row == null ? null : row.getInt("priority");
+    }
+
+    private UUID getLeaseHolder(String resource)
+    {
+        Row row = mySession.execute(myGetLeaseStatement.bind(resource)).one();
+        return row == null ? null : row.getUUID("node");
+    }
+
+    private static long currentTimestamp()
+    {
+        return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory.Resource;
+
+public class TestLocalLockTable
+{
+    private static final Resource RESOURCE = new Resource("DC1", "RepairResource-DC1-1");
+    private static final Resource OTHER_DC_RESOURCE = new Resource("DC2", "RepairResource-DC1-1");
+    private static final Resource OTHER_RESOURCE = new Resource("DC1", "RepairResource-DC1-2");
+
+    private final LocalLockTable myLocalLockTable = new LocalLockTable();
+
+    @Test
+    public void testPendingResourceConflicts() throws LockException
+    {
+        myLocalLockTable.reserve(Collections.singletonList(RESOURCE));
+
+        assertThat(myLocalLockTable.getConflict(RESOURCE)).isNotEmpty();
+        assertThatExceptionOfType(LockException.class)
+                .isThrownBy(() -> myLocalLockTable.reserve(Collections.singletonList(RESOURCE)));
+    }
+
+    @Test
+    public void testHeldResourceConflicts() throws LockException
+    {
+        List<Resource> resources = Collections.singletonList(RESOURCE);
+        myLocalLockTable.reserve(resources);
+        myLocalLockTable.held(resources);
+
+        assertThat(myLocalLockTable.getConflict(RESOURCE)).isNotEmpty();
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLocalLockTable.reserve(resources));
+    }
+
+    @Test
+    public void testOtherResourcesDoNotConflict() throws LockException
+    {
+        myLocalLockTable.reserve(Collections.singletonList(RESOURCE));
+
+        assertThat(myLocalLockTable.getConflict(OTHER_DC_RESOURCE)).isEmpty();
+        assertThat(myLocalLockTable.getConflict(OTHER_RESOURCE)).isEmpty();
+
+        myLocalLockTable.reserve(Arrays.asList(OTHER_DC_RESOURCE, OTHER_RESOURCE));
+    }
+
+    @Test
+    public void testReserveIsAllOrNothing() throws LockException
+    {
+        myLocalLockTable.reserve(Collections.singletonList(RESOURCE));
+
+        assertThatExceptionOfType(LockException.class)
+                .isThrownBy(() -> myLocalLockTable.reserve(Arrays.asList(OTHER_RESOURCE, RESOURCE)));
+
+        assertThat(myLocalLockTable.getConflict(OTHER_RESOURCE)).isEmpty();
+    }
+
+    @Test
+    public void testReleasedResourceCanBeReserved() throws LockException
+    {
+        List<Resource> resources = Arrays.asList(RESOURCE, OTHER_RESOURCE);
+        myLocalLockTable.reserve(resources);
+        myLocalLockTable.held(resources);
+
+        myLocalLockTable.release(RESOURCE);
+
+        assertThat(myLocalLockTable.getConflict(RESOURCE)).isEmpty();
+        assertThat(myLocalLockTable.getConflict(OTHER_RESOURCE)).isNotEmpty();
+
+        myLocalLockTable.release(resources);
+
+        assertThat(myLocalLockTable.getConflict(OTHER_RESOURCE)).isEmpty();
+        myLocalLockTable.reserve(resources);
+    }
+}
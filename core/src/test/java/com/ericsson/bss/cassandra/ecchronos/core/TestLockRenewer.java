@@ -0,0 +1,228 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class TestLockRenewer
+{
+    private static final long RENEWAL_INTERVAL_IN_MS = TimeUnit.SECONDS.toMillis(60);
+    private static final int MAX_IN_FLIGHT_RENEWALS = 2;
+
+    private final ScheduledExecutorService myExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final MetricRegistry myMetricRegistry = new MetricRegistry();
+
+    private LockRenewer myLockRenewer;
+
+    @Before
+    public void setup()
+    {
+        // Use a long tick interval so that renewals are only triggered by the tests
+        myLockRenewer = new LockRenewer(myExecutor, RENEWAL_INTERVAL_IN_MS, TimeUnit.HOURS.toMillis(1),
+                TimeUnit.MILLISECONDS, MAX_IN_FLIGHT_RENEWALS, myMetricRegistry);
+    }
+
+    @After
+    public void cleanup()
+    {
+        myLockRenewer.close();
+        myExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testLockIsRenewedWhenDue()
+    {
+        long now = System.currentTimeMillis();
+        TestLock lock = new TestLock();
+
+        myLockRenewer.register(lock);
+
+        assertThat(myLockRenewer.renewDueLocks(now)).isZero();
+        assertThat(lock.renewals).isZero();
+
+        long due = now + RENEWAL_INTERVAL_IN_MS + 1000;
+        assertThat(myLockRenewer.renewDueLocks(due)).isEqualTo(1);
+        lock.complete(true);
+
+        assertThat(lock.renewals).isEqualTo(1);
+        assertThat(lock.succeeded).isEqualTo(1);
+        assertThat(lock.failures).isEmpty();
+        assertThat(myMetricRegistry.timer(LockRenewer.RENEWAL_LATENCY).getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.histogram(LockRenewer.RENEWAL_LAG).getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.counter(LockRenewer.RENEWAL_FAILURES).getCount()).isZero();
+
+        // Next renewal is one interval after the previous renewal was issued
+        assertThat(myLockRenewer.renewDueLocks(due + RENEWAL_INTERVAL_IN_MS - 1)).isZero();
+        assertThat(myLockRenewer.renewDueLocks(due + RENEWAL_INTERVAL_IN_MS)).isEqualTo(1);
+    }
+
+    @Test
+    public void testInFlightRenewalIsNotIssuedAgain()
+    {
+        TestLock lock = new TestLock();
+        myLockRenewer.register(lock);
+
+        long due = System.currentTimeMillis() + RENEWAL_INTERVAL_IN_MS;
+        assertThat(myLockRenewer.renewDueLocks(due)).isEqualTo(1);
+        assertThat(myLockRenewer.renewDueLocks(due + RENEWAL_INTERVAL_IN_MS)).isZero();
+        assertThat(myLockRenewer.inFlightRenewals()).isEqualTo(1);
+
+        lock.complete(true);
+
+        assertThat(myLockRenewer.inFlightRenewals()).isZero();
+        assertThat(lock.renewals).isEqualTo(1);
+    }
+
+    @Test
+    public void testInFlightRenewalsAreBounded()
+    {
+        List<TestLock> locks = new ArrayList<>();
+        for (int i = 0; i < MAX_IN_FLIGHT_RENEWALS + 1; i++)
+        {
+            TestLock lock = new TestLock();
+            locks.add(lock);
+            myLockRenewer.register(lock);
+        }
+
+        long due = System.currentTimeMillis() + RENEWAL_INTERVAL_IN_MS;
+        assertThat(myLockRenewer.renewDueLocks(due)).isEqualTo(MAX_IN_FLIGHT_RENEWALS);
+        assertThat(myLockRenewer.renewDueLocks(due)).isZero();
+
+        TestLock renewedLock = locks.stream().filter(l -> l.renewals == 1).findFirst().get();
+        renewedLock.complete(true);
+
+        assertThat(myLockRenewer.renewDueLocks(due + 1000)).isEqualTo(1);
+        assertThat(locks).allMatch(l -> l.renewals == 1);
+        assertThat(myMetricRegistry.histogram(LockRenewer.RENEWAL_LAG).getCount()).isEqualTo(MAX_IN_FLIGHT_RENEWALS + 1);
+    }
+
+    @Test
+    public void testRenewalNotApplied()
+    {
+        TestLock lock = new TestLock();
+        myLockRenewer.register(lock);
+
+        long due = System.currentTimeMillis() + RENEWAL_INTERVAL_IN_MS;
+        assertThat(myLockRenewer.renewDueLocks(due)).isEqualTo(1);
+        lock.complete(false);
+
+        assertThat(lock.succeeded).isZero();
+        assertThat(lock.failures).hasSize(1);
+        assertThat(lock.failures.get(0)).isInstanceOf(LockException.class);
+        assertThat(myMetricRegistry.counter(LockRenewer.RENEWAL_FAILURES).getCount()).isEqualTo(1);
+
+        // Failed renewals are retried on the next interval
+        assertThat(myLockRenewer.renewDueLocks(due + RENEWAL_INTERVAL_IN_MS)).isEqualTo(1);
+    }
+
+    @Test
+    public void testRenewalFailed()
+    {
+        TestLock lock = new TestLock();
+        myLockRenewer.register(lock);
+
+        long due = System.currentTimeMillis() + RENEWAL_INTERVAL_IN_MS;
+        assertThat(myLockRenewer.renewDueLocks(due)).isEqualTo(1);
+
+        IllegalStateException error = new IllegalStateException();
+        lock.future.setException(error);
+
+        assertThat(lock.failures).containsExactly(error);
+        assertThat(myMetricRegistry.counter(LockRenewer.RENEWAL_FAILURES).getCount()).isEqualTo(1);
+        assertThat(myLockRenewer.inFlightRenewals()).isZero();
+    }
+
+    @Test
+    public void testUnregisterDuringRenewal()
+    {
+        TestLock lock = new TestLock();
+        myLockRenewer.register(lock);
+
+        long due = System.currentTimeMillis() + RENEWAL_INTERVAL_IN_MS;
+        assertThat(myLockRenewer.renewDueLocks(due)).isEqualTo(1);
+
+        assertThat(myLockRenewer.unregister(lock)).isTrue();
+        lock.complete(true);
+
+        assertThat(myLockRenewer.unregister(lock)).isFalse();
+        assertThat(myLockRenewer.renewDueLocks(due + RENEWAL_INTERVAL_IN_MS)).isZero();
+        assertThat(lock.renewals).isEqualTo(1);
+    }
+
+    @Test
+    public void testUnregisterNotRegistered()
+    {
+        assertThat(myLockRenewer.unregister(new TestLock())).isFalse();
+    }
+
+    @Test
+    public void testCloseRemovesMetrics()
+    {
+        assertThat(myMetricRegistry.getMetrics()).containsKeys(LockRenewer.RENEWAL_LATENCY, LockRenewer.RENEWAL_LAG,
+                LockRenewer.RENEWAL_FAILURES, LockRenewer.HELD_LOCKS);
+
+        myLockRenewer.close();
+
+        assertThat(myMetricRegistry.getMetrics()).isEmpty();
+    }
+
+    private static class TestLock implements LockRenewer.RenewableLock
+    {
+        private final List<Throwable> failures = new ArrayList<>();
+        private SettableFuture<Boolean> future;
+        private int renewals;
+        private int succeeded;
+
+        @Override
+        public ListenableFuture<Boolean> renewAsync()
+        {
+            renewals++;
+            future = SettableFuture.create();
+            return future;
+        }
+
+        @Override
+        public void renewalSucceeded()
+        {
+            succeeded++;
+        }
+
+        @Override
+        public void renewalFailed(Throwable error)
+        {
+            failures.add(error);
+        }
+
+        void complete(boolean applied)
+        {
+            future.set(applied);
+        }
+    }
+}
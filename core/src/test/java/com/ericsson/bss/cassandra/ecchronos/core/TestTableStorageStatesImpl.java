@@ -24,16 +24,22 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
-import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
 public class TestTableStorageStatesImpl
@@ -49,6 +55,8 @@ public class TestTableStorageStatesImpl
 
     private Set<TableReference> myReplicatedTables = new HashSet<>();
 
+    private Map<TableReference, Long> myTableSizes = new HashMap<>();
+
     private TableStorageStatesImpl myTableStorageeStatesImpl;
 
     @Before
@@ -210,9 +218,43 @@ public class TestTableStorageStatesImpl
         assertThat(myTableStorageeStatesImpl.getDataSize(tableReference2)).isEqualTo(expectedTableDataSize2);
     }
 
+    @Test
+    public void testTableStatesForTableWithoutMetric()
+    {
+        TableReference tableReference = tableReference("keyspace", "table");
+        TableReference tableReferenceWithoutMetric = tableReference("keyspace", "table2");
+        long expectedTableDataSize = 1000;
+
+        mockTable(tableReference, expectedTableDataSize);
+        myReplicatedTables.add(tableReferenceWithoutMetric);
+
+        myTableStorageeStatesImpl.updateTableStates();
+
+        assertThat(myTableStorageeStatesImpl.getDataSize()).isEqualTo(expectedTableDataSize);
+        assertThat(myTableStorageeStatesImpl.getDataSize(tableReference)).isEqualTo(expectedTableDataSize);
+        assertThat(myTableStorageeStatesImpl.getDataSize(tableReferenceWithoutMetric)).isEqualTo(0);
+    }
+
+    @Test
+    public void testTableStatesUseBulkQuery()
+    {
+        TableReference tableReference1 = tableReference("keyspace", "table");
+        TableReference tableReference2 = tableReference("keyspace", "table2");
+
+        mockTable(tableReference1, 1000);
+        mockTable(tableReference2, 500);
+
+        myTableStorageeStatesImpl.updateTableStates();
+        myTableStorageeStatesImpl.updateTableStates();
+
+        verify(myJmxProxy, times(2)).liveDiskSpaceUsed(anyCollection());
+        verify(myJmxProxy, never()).liveDiskSpaceUsed(any(TableReference.class));
+    }
+
     private void mockTable(TableReference tableReference, long dataSize)
     {
         myReplicatedTables.add(tableReference);
-        doReturn(dataSize).when(myJmxProxy).liveDiskSpaceUsed(eq(tableReference));
+        myTableSizes.put(tableReference, dataSize);
+        doReturn(new HashMap<>(myTableSizes)).when(myJmxProxy).liveDiskSpaceUsed(anyCollection());
     }
 }
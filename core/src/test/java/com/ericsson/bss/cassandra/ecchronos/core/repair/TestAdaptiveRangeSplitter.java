@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+
+public class TestAdaptiveRangeSplitter
+{
+    private static final long TARGET_REPAIR_TIME_IN_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final LongTokenRange VNODE = new LongTokenRange(0, 1000);
+    private static final LongTokenRange OTHER_VNODE = new LongTokenRange(1000, 2000);
+
+    private final AdaptiveRangeSplitter myRangeSplitter = new AdaptiveRangeSplitter(TARGET_REPAIR_TIME_IN_MS);
+
+    @Test
+    public void testWithoutEstimateUsesSizeBasedTokens()
+    {
+        assertThat(myRangeSplitter.getEstimatedRepairTimeInMs(VNODE)).isEmpty();
+        assertThat(myRangeSplitter.getTokensPerRepair(VNODE, LongTokenRange.FULL_RANGE)).isEqualTo(LongTokenRange.FULL_RANGE);
+    }
+
+    @Test
+    public void testFastRangeUsesSizeBasedTokens()
+    {
+        myRangeSplitter.record(VNODE, VNODE, TimeUnit.MINUTES.toMillis(1), true);
+
+        assertThat(myRangeSplitter.getTokensPerRepair(VNODE, LongTokenRange.FULL_RANGE)).isEqualTo(LongTokenRange.FULL_RANGE);
+        assertThat(myRangeSplitter.getTokensPerRepair(VNODE, BigInteger.valueOf(100))).isEqualTo(BigInteger.valueOf(100));
+    }
+
+    @Test
+    public void testSlowRangeIsSplitToTargetTime()
+    {
+        myRangeSplitter.record(VNODE, VNODE, TimeUnit.MINUTES.toMillis(40), true);
+
+        assertThat(myRangeSplitter.getEstimatedRepairTimeInMs(VNODE)).hasValue(TimeUnit.MINUTES.toMillis(40));
+        assertThat(myRangeSplitter.getTokensPerRepair(VNODE, LongTokenRange.FULL_RANGE)).isEqualTo(BigInteger.valueOf(250));
+        assertThat(myRangeSplitter.getTokensPerRepair(VNODE, BigInteger.valueOf(100))).isEqualTo(BigInteger.valueOf(100));
+        assertThat(myRangeSplitter.getTokensPerRepair(OTHER_VNODE, LongTokenRange.FULL_RANGE)).isEqualTo(LongTokenRange.FULL_RANGE);
+    }
+
+    @Test
+    public void testEstimateFromSubRange()
+    {
+        myRangeSplitter.record(VNODE, new LongTokenRange(0, 100), TimeUnit.MINUTES.toMillis(5), true);
+
+        assertThat(myRangeSplitter.getEstimatedRepairTimeInMs(VNODE)).hasValue(TimeUnit.MINUTES.toMillis(50));
+        assertThat(myRangeSplitter.getTokensPerRepair(VNODE, LongTokenRange.FULL_RANGE)).isEqualTo(BigInteger.valueOf(200));
+    }
+
+    @Test
+    public void testSuccessfulSessionsAreAveraged()
+    {
+        myRangeSplitter.record(VNODE, VNODE, TimeUnit.MINUTES.toMillis(40), true);
+        myRangeSplitter.record(VNODE, VNODE, TimeUnit.MINUTES.toMillis(20), true);
+
+        assertThat(myRangeSplitter.getEstimatedRepairTimeInMs(VNODE)).hasValue(TimeUnit.MINUTES.toMillis(30));
+    }
+
+    @Test
+    public void testFailedSessionOnlyIncreasesEstimate()
+    {
+        myRangeSplitter.record(VNODE, VNODE, TimeUnit.MINUTES.toMillis(20), true);
+        myRangeSplitter.record(VNODE, VNODE, TimeUnit.SECONDS.toMillis(1), false);
+
+        assertThat(myRangeSplitter.getEstimatedRepairTimeInMs(VNODE)).hasValue(TimeUnit.MINUTES.toMillis(20));
+
+        myRangeSplitter.record(VNODE, VNODE, TimeUnit.MINUTES.toMillis(30), false);
+
+        assertThat(myRangeSplitter.getEstimatedRepairTimeInMs(VNODE)).hasValue(TimeUnit.MINUTES.toMillis(30));
+    }
+
+    @Test
+    public void testSplitIsLimited()
+    {
+        myRangeSplitter.record(VNODE, VNODE, TimeUnit.DAYS.toMillis(7), true);
+
+        BigInteger minTokensPerRepair = BigInteger.valueOf(1000 / AdaptiveRangeSplitter.MAX_SUB_RANGES_PER_RANGE);
+
+        assertThat(myRangeSplitter.getTokensPerRepair(VNODE, LongTokenRange.FULL_RANGE)).isEqualTo(minTokensPerRepair);
+    }
+}
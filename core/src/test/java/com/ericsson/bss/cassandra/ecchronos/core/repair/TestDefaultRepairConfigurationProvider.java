@@ -47,6 +47,7 @@ import com.datastax.driver.core.Session;
 import com.datastax.driver.core.TableMetadata;
 import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
 import com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistoryProvider;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.ReplicatedTableProvider;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReferenceFactory;
@@ -134,6 +135,24 @@ public class TestDefaultRepairConfigurationProvider
         defaultRepairConfigurationProvider.close();
     }
 
+    @Test
+    public void testExistingTablesArePrefetched()
+    {
+        TableReference nonReplicatedTableReference = tableReference("non_replicated_keyspace", TABLE_NAME);
+        mockReplicatedTable(TABLE_REFERENCE);
+        mockNonReplicatedTable(nonReplicatedTableReference);
+        RepairHistoryProvider repairHistoryProvider = mock(RepairHistoryProvider.class);
+
+        DefaultRepairConfigurationProvider defaultRepairConfigurationProvider = defaultRepairConfigurationProviderBuilder()
+                .withRepairHistoryProvider(repairHistoryProvider)
+                .build();
+
+        verify(repairHistoryProvider).prefetch(eq(Collections.singletonList(TABLE_REFERENCE)));
+        verify(myRepairScheduler).putConfiguration(eq(TABLE_REFERENCE), eq(RepairConfiguration.DEFAULT));
+
+        defaultRepairConfigurationProvider.close();
+    }
+
     @Test
     public void testNonReplicatedExistingTablesAreNotScheduled()
     {
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHangPreventionTimer
+{
+    private static final long TIMEOUT_IN_MINUTES = 30;
+
+    private final ScheduledExecutorService myExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private HangPreventionTimer myTimer;
+
+    @Before
+    public void setup()
+    {
+        myTimer = new HangPreventionTimer(myExecutor, TIMEOUT_IN_MINUTES, TIMEOUT_IN_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @After
+    public void cleanup()
+    {
+        myTimer.close();
+        myExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testActiveWatchIsNotExpired()
+    {
+        AtomicInteger hangs = new AtomicInteger();
+        myTimer.watch(hangs::incrementAndGet);
+
+        assertThat(myTimer.expire(System.nanoTime())).isZero();
+        assertThat(hangs.get()).isZero();
+        assertThat(myTimer.watched()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInactiveWatchIsExpiredOnce()
+    {
+        AtomicInteger hangs = new AtomicInteger();
+        myTimer.watch(hangs::incrementAndGet);
+
+        long afterTimeout = System.nanoTime() + TimeUnit.MINUTES.toNanos(TIMEOUT_IN_MINUTES);
+
+        assertThat(myTimer.expire(afterTimeout)).isEqualTo(1);
+        assertThat(myTimer.expire(afterTimeout)).isZero();
+        assertThat(hangs.get()).isEqualTo(1);
+        assertThat(myTimer.watched()).isZero();
+    }
+
+    @Test
+    public void testTouchPostponesExpiry()
+    {
+        AtomicInteger hangs = new AtomicInteger();
+        HangPreventionTimer.Watch watch = myTimer.watch(hangs::incrementAndGet);
+
+        long beforeTouch = System.nanoTime();
+        watch.touch();
+
+        assertThat(myTimer.expire(beforeTouch + TimeUnit.MINUTES.toNanos(TIMEOUT_IN_MINUTES) - 1)).isZero();
+        assertThat(hangs.get()).isZero();
+    }
+
+    @Test
+    public void testCancelledWatchIsNotExpired()
+    {
+        AtomicInteger hangs = new AtomicInteger();
+        HangPreventionTimer.Watch watch = myTimer.watch(hangs::incrementAndGet);
+
+        watch.cancel();
+
+        assertThat(myTimer.expire(System.nanoTime() + TimeUnit.MINUTES.toNanos(TIMEOUT_IN_MINUTES))).isZero();
+        assertThat(hangs.get()).isZero();
+        assertThat(myTimer.watched()).isZero();
+    }
+
+    @Test
+    public void testFailingHangHandlerDoesNotAffectOtherWatches()
+    {
+        AtomicInteger hangs = new AtomicInteger();
+        myTimer.watch(() ->
+        {
+            throw new IllegalStateException();
+        });
+        myTimer.watch(hangs::incrementAndGet);
+
+        assertThat(myTimer.expire(System.nanoTime() + TimeUnit.MINUTES.toNanos(TIMEOUT_IN_MINUTES))).isEqualTo(2);
+        assertThat(hangs.get()).isEqualTo(1);
+    }
+}
@@ -75,6 +75,8 @@ public class TestOnDemandRepairJob
 
     private final TableReference myTableReference = tableReference(keyspaceName, tableName);
 
+    private final RepairTaskExecutor myRepairTaskExecutor = new RepairTaskExecutor();
+
     @Before
     public void setup()
     {
@@ -86,6 +88,7 @@ public class TestOnDemandRepairJob
     @After
     public void finalVerification()
     {
+        myRepairTaskExecutor.close();
         verifyNoMoreInteractions(ignoreStubs(myJmxProxyFactory));
         verifyNoMoreInteractions(ignoreStubs(myTableRepairMetrics));
     }
@@ -190,6 +193,7 @@ public class TestOnDemandRepairJob
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairLockType(RepairLockType.VNODE)
                 .withRepairHistory(myRepairHistory)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .withOngoingJob(myOngoingJob)
                 .build();
     }
@@ -214,6 +218,7 @@ public class TestOnDemandRepairJob
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairLockType(RepairLockType.VNODE)
                 .withRepairHistory(myRepairHistory)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .withOngoingJob(myOngoingJob)
                 .build();
     }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.ScheduledJobException;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicaRepairGroup;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.DummyLock;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+public class TestParallelRepairGroups
+{
+    private static final int PRIORITY = 1;
+
+    private final Node node1 = mockNode();
+    private final Node node2 = mockNode();
+    private final Node node3 = mockNode();
+    private final Node node4 = mockNode();
+    private final Node node5 = mockNode();
+    private final Node node6 = mockNode();
+
+    private final RepairLockFactory myRepairLockFactory = mock(RepairLockFactory.class);
+
+    @Test
+    public void testPartitionDisjointGroups()
+    {
+        RepairGroup group1 = mockRepairGroup(node1, node2);
+        RepairGroup group2 = mockRepairGroup(node3, node4);
+        RepairGroup group3 = mockRepairGroup(node2, node3);
+        RepairGroup group4 = mockRepairGroup(node5, node6);
+
+        List<List<RepairGroup>> partitions = ParallelRepairGroups.partition(
+                Arrays.asList(group1, group2, group3, group4), 4, 1);
+
+        assertThat(partitions).containsExactly(Arrays.asList(group1, group2, group4),
+                Collections.singletonList(group3));
+    }
+
+    @Test
+    public void testPartitionLimitedByParallelGroups()
+    {
+        RepairGroup group1 = mockRepairGroup(node1, node2);
+        RepairGroup group2 = mockRepairGroup(node3, node4);
+        RepairGroup group3 = mockRepairGroup(node2, node3);
+        RepairGroup group4 = mockRepairGroup(node5, node6);
+
+        List<List<RepairGroup>> partitions = ParallelRepairGroups.partition(
+                Arrays.asList(group1, group2, group3, group4), 2, 1);
+
+        assertThat(partitions).containsExactly(Arrays.asList(group1, group2), Arrays.asList(group3, group4));
+    }
+
+    @Test
+    public void testPartitionWithMultipleSessionsPerNode()
+    {
+        RepairGroup group1 = mockRepairGroup(node1, node2);
+        RepairGroup group2 = mockRepairGroup(node2, node3);
+        RepairGroup group3 = mockRepairGroup(node2, node4);
+
+        List<List<RepairGroup>> partitions = ParallelRepairGroups.partition(
+                Arrays.asList(group1, group2, group3), 4, 2);
+
+        assertThat(partitions).containsExactly(Arrays.asList(group1, group2), Collections.singletonList(group3));
+    }
+
+    @Test
+    public void testGetLockCombinesRepairResources() throws LockException
+    {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("keyspace", "keyspace");
+        metadata.put("table", "table");
+        RepairResource resource1 = new RepairResource("DC1", "resource1");
+        RepairResource resource2 = new RepairResource("DC1", "resource2");
+        RepairResource resource3 = new RepairResource("DC1", "resource3");
+
+        RepairGroup group1 = mockRepairGroup(node1, node2);
+        when(group1.getRepairResources()).thenReturn(Sets.newHashSet(resource1, resource2));
+        when(group1.getLockMetadata()).thenReturn(metadata);
+        RepairGroup group2 = mockRepairGroup(node3, node4);
+        when(group2.getRepairResources()).thenReturn(Sets.newHashSet(resource3));
+        when(group2.getLockMetadata()).thenReturn(metadata);
+
+        LockFactory lockFactory = mock(LockFactory.class);
+        Set<RepairResource> expectedResources = Sets.newHashSet(resource1, resource2, resource3);
+        when(myRepairLockFactory.getLock(eq(lockFactory), eq(expectedResources), eq(metadata), eq(PRIORITY)))
+                .thenReturn(new DummyLock());
+
+        ParallelRepairGroups parallelRepairGroups = new ParallelRepairGroups(PRIORITY,
+                Arrays.asList(group1, group2), myRepairLockFactory);
+
+        assertThat(parallelRepairGroups.getLock(lockFactory)).isInstanceOf(DummyLock.class);
+        verify(myRepairLockFactory).getLock(eq(lockFactory), eq(expectedResources), eq(metadata), eq(PRIORITY));
+    }
+
+    @Test
+    public void testExecuteRunsGroupsInParallel()
+    {
+        CompletableFuture<Boolean> run1 = new CompletableFuture<>();
+        CompletableFuture<Boolean> run2 = new CompletableFuture<>();
+
+        RepairGroup group1 = mockRepairGroup(node1, node2);
+        when(group1.executeAsync()).thenReturn(run1);
+        RepairGroup group2 = mockRepairGroup(node3, node4);
+        when(group2.executeAsync()).thenReturn(run2);
+
+        ParallelRepairGroups parallelRepairGroups = new ParallelRepairGroups(PRIORITY,
+                Arrays.asList(group1, group2), myRepairLockFactory);
+
+        CompletableFuture<Boolean> result = parallelRepairGroups.executeAsync();
+
+        verify(group1).executeAsync();
+        verify(group2).executeAsync();
+        assertThat(result).isNotDone();
+
+        run2.complete(true);
+        assertThat(result).isNotDone();
+
+        run1.complete(true);
+        assertThat(result).isCompletedWithValue(true);
+    }
+
+    @Test
+    public void testExecuteWithFailingGroup() throws ScheduledJobException
+    {
+        RepairGroup group1 = mockRepairGroup(node1, node2);
+        when(group1.executeAsync()).thenReturn(CompletableFuture.completedFuture(true));
+        RepairGroup group2 = mockRepairGroup(node3, node4);
+        when(group2.executeAsync()).thenReturn(CompletableFuture.completedFuture(false));
+
+        ParallelRepairGroups parallelRepairGroups = new ParallelRepairGroups(PRIORITY,
+                Arrays.asList(group1, group2), myRepairLockFactory);
+
+        assertThat(parallelRepairGroups.execute()).isFalse();
+        verify(group1).executeAsync();
+        verify(group2).executeAsync();
+    }
+
+    @Test
+    public void testExecuteWithThrowingGroup()
+    {
+        CompletableFuture<Boolean> failedRun = new CompletableFuture<>();
+        failedRun.completeExceptionally(new IllegalStateException());
+
+        RepairGroup group1 = mockRepairGroup(node1, node2);
+        when(group1.executeAsync()).thenReturn(failedRun);
+        RepairGroup group2 = mockRepairGroup(node3, node4);
+        when(group2.executeAsync()).thenReturn(CompletableFuture.completedFuture(true));
+
+        ParallelRepairGroups parallelRepairGroups = new ParallelRepairGroups(PRIORITY,
+                Arrays.asList(group1, group2), myRepairLockFactory);
+
+        assertThat(parallelRepairGroups.executeAsync()).isCompletedWithValue(false);
+        verify(group2).executeAsync();
+    }
+
+    private RepairGroup mockRepairGroup(Node... replicas)
+    {
+        RepairGroup repairGroup = mock(RepairGroup.class);
+        when(repairGroup.getReplicaRepairGroup()).thenReturn(
+                new ReplicaRepairGroup(ImmutableSet.copyOf(replicas), ImmutableList.of()));
+        return repairGroup;
+    }
+
+    private static Node mockNode()
+    {
+        Node node = mock(Node.class);
+        when(node.getId()).thenReturn(UUID.randomUUID());
+        when(node.getDatacenter()).thenReturn("DC1");
+        return node;
+    }
+}
@@ -20,6 +20,7 @@ import org.junit.Test;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 public class TestRepairConfiguration
 {
@@ -29,6 +30,10 @@ public class TestRepairConfiguration
     private static final RepairOptions.RepairParallelism DEFAULT_REPAIR_PARALLELISM = RepairOptions.RepairParallelism.PARALLEL;
     private static final double DEFAULT_REPAIR_UNWIND_RATIO = 0.0d;
     private static final long DEFAULT_TARGET_REPAIR_SIZE_IN_BYTES = Long.MAX_VALUE;
+    private static final long DEFAULT_TARGET_REPAIR_TIME_IN_MS = Long.MAX_VALUE;
+    private static final int DEFAULT_PARALLEL_REPAIR_GROUPS = 1;
+    private static final int DEFAULT_SESSIONS_PER_NODE = 1;
+    private static final long DEFAULT_COALESCE_SIZE_IN_BYTES = 0L;
 
     @Test
     public void testDefaultValues()
@@ -43,6 +48,61 @@ public class TestRepairConfiguration
         assertThat(repairConfiguration.getRepairErrorTimeInMs()).isEqualTo(DEFAULT_REPAIR_ERROR_TIME_IN_MS);
         assertThat(repairConfiguration.getRepairUnwindRatio()).isEqualTo(DEFAULT_REPAIR_UNWIND_RATIO);
         assertThat(repairConfiguration.getTargetRepairSizeInBytes()).isEqualTo(DEFAULT_TARGET_REPAIR_SIZE_IN_BYTES);
+        assertThat(repairConfiguration.getTargetRepairTimeInMs()).isEqualTo(DEFAULT_TARGET_REPAIR_TIME_IN_MS);
+        assertThat(repairConfiguration.getParallelRepairGroups()).isEqualTo(DEFAULT_PARALLEL_REPAIR_GROUPS);
+        assertThat(repairConfiguration.getSessionsPerNode()).isEqualTo(DEFAULT_SESSIONS_PER_NODE);
+        assertThat(repairConfiguration.getCoalesceSizeInBytes()).isEqualTo(DEFAULT_COALESCE_SIZE_IN_BYTES);
+    }
+
+    @Test
+    public void testSetCoalesceSize()
+    {
+        RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder()
+                .withCoalesceSizeInBytes(1024L)
+                .build();
+
+        assertThat(repairConfiguration.getCoalesceSizeInBytes()).isEqualTo(1024L);
+        assertThat(repairConfiguration.getTargetRepairSizeInBytes()).isEqualTo(DEFAULT_TARGET_REPAIR_SIZE_IN_BYTES);
+        assertThat(RepairConfiguration.newBuilder(repairConfiguration).build()).isEqualTo(repairConfiguration);
+    }
+
+    @Test
+    public void testSetParallelRepairGroups()
+    {
+        RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder()
+                .withParallelRepairGroups(4)
+                .withSessionsPerNode(2)
+                .build();
+
+        assertThat(repairConfiguration.getParallelRepairGroups()).isEqualTo(4);
+        assertThat(repairConfiguration.getSessionsPerNode()).isEqualTo(2);
+        assertThat(RepairConfiguration.newBuilder(repairConfiguration).build()).isEqualTo(repairConfiguration);
+    }
+
+    @Test
+    public void testSetInvalidParallelRepairGroups()
+    {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> RepairConfiguration.newBuilder().withParallelRepairGroups(0));
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> RepairConfiguration.newBuilder().withSessionsPerNode(0));
+    }
+
+    @Test
+    public void testSetTargetRepairTime()
+    {
+        RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder()
+                .withTargetRepairTime(5, TimeUnit.MINUTES)
+                .build();
+
+        assertThat(repairConfiguration.getTargetRepairTimeInMs()).isEqualTo(TimeUnit.MINUTES.toMillis(5));
+        assertThat(repairConfiguration.getTargetRepairSizeInBytes()).isEqualTo(DEFAULT_TARGET_REPAIR_SIZE_IN_BYTES);
+
+        RepairConfiguration noTargetTime = RepairConfiguration.newBuilder()
+                .withTargetRepairTime(RepairConfiguration.NO_TARGET_REPAIR_TIME, TimeUnit.MINUTES)
+                .build();
+
+        assertThat(noTargetTime.getTargetRepairTimeInMs()).isEqualTo(RepairConfiguration.NO_TARGET_REPAIR_TIME);
     }
 
     @Test
@@ -18,11 +18,16 @@ import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactor
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.ignoreStubs;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -37,17 +42,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import com.ericsson.bss.cassandra.ecchronos.core.JmxProxyFactory;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.ScheduledJobException;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistory;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicaRepairGroup;
@@ -96,6 +104,8 @@ public class TestRepairGroup
 
     private RepairConfiguration repairConfiguration;
 
+    private final RepairTaskExecutor myRepairTaskExecutor = new RepairTaskExecutor();
+
     @Before
     public void init()
     {
@@ -111,6 +121,7 @@ public class TestRepairGroup
     @After
     public void finalVerification()
     {
+        myRepairTaskExecutor.close();
         verifyNoMoreInteractions(ignoreStubs(myLockFactory));
         verifyNoMoreInteractions(ignoreStubs(myJmxProxyFactory));
         verifyNoMoreInteractions(ignoreStubs(myTableRepairMetrics));
@@ -222,6 +233,83 @@ public class TestRepairGroup
         }
     }
 
+    @Test
+    public void testGetRepairTaskWithAdaptiveSubRange()
+    {
+        List<LongTokenRange> expectedTokenRanges = Arrays.asList(
+                new LongTokenRange(0, 50),
+                new LongTokenRange(50, 100)
+        );
+
+        // setup
+        Node node = mockNode("DC1");
+        LongTokenRange vnode = new LongTokenRange(0, 100);
+
+        ImmutableSet<Node> nodes = ImmutableSet.of(node);
+
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(nodes, ImmutableList.of(vnode));
+
+        AdaptiveRangeSplitter rangeSplitter = new AdaptiveRangeSplitter(TimeUnit.MINUTES.toMillis(15));
+        rangeSplitter.record(vnode, vnode, TimeUnit.MINUTES.toMillis(30), true);
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup)
+                .withRangeSplitter(rangeSplitter)
+                .build(priority);
+
+        Collection<RepairTask> repairTasks = repairGroup.getRepairTasks();
+
+        assertThat(repairTasks).hasSize(2);
+        Iterator<RepairTask> iterator = repairTasks.iterator();
+
+        for (LongTokenRange expectedRange : expectedTokenRanges)
+        {
+            assertThat(iterator.next().getTokenRanges()).containsExactly(expectedRange);
+        }
+    }
+
+    @Test
+    public void testGetCoalescedRepairTasks()
+    {
+        // setup
+        Node node = mockNode("DC1");
+        LongTokenRange vnode = new LongTokenRange(0, 100);
+
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(node), ImmutableList.of(vnode));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup)
+                .withTokensPerRepair(BigInteger.TEN)
+                .withTokensPerCommand(BigInteger.valueOf(30))
+                .build(priority);
+
+        Collection<RepairTask> repairTasks = repairGroup.getRepairTasks();
+
+        assertThat(repairTasks).extracting(RepairTask::getTokenRanges).containsExactly(
+                Sets.newHashSet(new LongTokenRange(0, 10), new LongTokenRange(10, 20), new LongTokenRange(20, 30)),
+                Sets.newHashSet(new LongTokenRange(30, 40), new LongTokenRange(40, 50), new LongTokenRange(50, 60)),
+                Sets.newHashSet(new LongTokenRange(60, 70), new LongTokenRange(70, 80), new LongTokenRange(80, 90)),
+                Sets.newHashSet(new LongTokenRange(90, 100)));
+    }
+
+    @Test
+    public void testGetCoalescedRepairTasksLimitedByRanges()
+    {
+        // setup
+        Node node = mockNode("DC1");
+        LongTokenRange vnode = new LongTokenRange(0, 100);
+
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(node), ImmutableList.of(vnode));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup)
+                .withTokensPerRepair(BigInteger.ONE)
+                .withTokensPerCommand(LongTokenRange.FULL_RANGE)
+                .build(priority);
+
+        Collection<RepairTask> repairTasks = repairGroup.getRepairTasks();
+
+        assertThat(repairTasks).extracting(task -> task.getTokenRanges().size())
+                .containsExactly(RepairGroup.MAX_RANGES_PER_REPAIR, 100 - RepairGroup.MAX_RANGES_PER_REPAIR);
+    }
+
     @Test
     public void testGetPartialRepairTasks()
     {
@@ -258,6 +346,113 @@ public class TestRepairGroup
         assertThat(repairTaskRanges).containsExactlyInAnyOrderElementsOf(vnodes);
     }
 
+    @Test
+    public void testExecuteAsyncRunsRepairTasksOneAtATime()
+    {
+        CompletableFuture<Void> repair1 = new CompletableFuture<>();
+        CompletableFuture<Void> repair2 = new CompletableFuture<>();
+        RepairTask repairTask1 = mock(RepairTask.class);
+        when(repairTask1.executeAsync()).thenReturn(repair1);
+        RepairTask repairTask2 = mock(RepairTask.class);
+        when(repairTask2.executeAsync()).thenReturn(repair2);
+
+        RepairGroup repairGroup = spy(builderFor(mockReplicaRepairGroup()).build(priority));
+        doReturn(Arrays.asList(repairTask1, repairTask2)).when(repairGroup).getRepairTasks();
+
+        CompletableFuture<Boolean> result = repairGroup.executeAsync();
+
+        verify(repairTask1).executeAsync();
+        verify(repairTask2, never()).executeAsync();
+        assertThat(result).isNotDone();
+
+        repair1.complete(null);
+
+        verify(repairTask2).executeAsync();
+        assertThat(result).isNotDone();
+
+        repair2.complete(null);
+
+        assertThat(result).isCompletedWithValue(true);
+    }
+
+    @Test
+    public void testExecuteAsyncContinuesAfterFailedRepairTask()
+    {
+        CompletableFuture<Void> failedRepair = new CompletableFuture<>();
+        failedRepair.completeExceptionally(new ScheduledJobException("Repair failed"));
+        RepairTask repairTask1 = mock(RepairTask.class);
+        when(repairTask1.executeAsync()).thenReturn(failedRepair);
+        RepairTask repairTask2 = mock(RepairTask.class);
+        when(repairTask2.executeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+
+        RepairGroup repairGroup = spy(builderFor(mockReplicaRepairGroup()).build(priority));
+        doReturn(Arrays.asList(repairTask1, repairTask2)).when(repairGroup).getRepairTasks();
+
+        assertThat(repairGroup.executeAsync()).isCompletedWithValue(false);
+        verify(repairTask2).executeAsync();
+    }
+
+    @Test
+    public void testExecuteAsyncStoppedByPolicy()
+    {
+        TableRepairPolicy repairPolicy = mock(TableRepairPolicy.class);
+        when(repairPolicy.shouldRun(eq(tableReference))).thenReturn(true, false);
+
+        RepairTask repairTask1 = mock(RepairTask.class);
+        when(repairTask1.executeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        RepairTask repairTask2 = mock(RepairTask.class);
+
+        RepairGroup repairGroup = spy(builderFor(mockReplicaRepairGroup())
+                .withRepairPolicies(Arrays.asList(repairPolicy))
+                .build(priority));
+        doReturn(Arrays.asList(repairTask1, repairTask2)).when(repairGroup).getRepairTasks();
+
+        assertThat(repairGroup.executeAsync()).isCompletedWithValue(false);
+        verify(repairTask2, never()).executeAsync();
+    }
+
+    @Test
+    public void testExecuteAsyncRecordsRepairTimeDividedBetweenCoalescedRanges() throws InterruptedException
+    {
+        LongTokenRange vnode1 = new LongTokenRange(0, 100);
+        LongTokenRange vnode2 = new LongTokenRange(100, 400);
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(mockNode("DC1")),
+                ImmutableList.of(vnode1, vnode2));
+
+        CompletableFuture<Void> repair = new CompletableFuture<>();
+        RepairTask repairTask = mock(RepairTask.class);
+        when(repairTask.executeAsync()).thenReturn(repair);
+        when(repairTask.getTokenRanges()).thenReturn(Sets.newHashSet(vnode1, vnode2));
+
+        AdaptiveRangeSplitter rangeSplitter = mock(AdaptiveRangeSplitter.class);
+        RepairGroup repairGroup = spy(builderFor(replicaRepairGroup)
+                .withRangeSplitter(rangeSplitter)
+                .build(priority));
+        doReturn(Arrays.asList(repairTask)).when(repairGroup).getRepairTasks();
+
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> result = repairGroup.executeAsync();
+        Thread.sleep(200);
+        repair.complete(null);
+        long durationInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(result).isCompletedWithValue(true);
+
+        ArgumentCaptor<Long> vnode1Duration = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<Long> vnode2Duration = ArgumentCaptor.forClass(Long.class);
+        verify(rangeSplitter).record(eq(vnode1), eq(vnode1), vnode1Duration.capture(), eq(true));
+        verify(rangeSplitter).record(eq(vnode2), eq(vnode2), vnode2Duration.capture(), eq(true));
+        verify(rangeSplitter, times(2)).record(any(), any(), anyLong(), anyBoolean());
+
+        assertThat(vnode1Duration.getValue() + vnode2Duration.getValue()).isBetween(199L, durationInMs);
+        assertThat(vnode2Duration.getValue()).isBetween(3 * vnode1Duration.getValue(), 3 * vnode1Duration.getValue() + 3);
+    }
+
+    private ReplicaRepairGroup mockReplicaRepairGroup()
+    {
+        return new ReplicaRepairGroup(ImmutableSet.of(mockNode("DC1")), ImmutableList.of(new LongTokenRange(1, 2)));
+    }
+
     private RepairGroup.Builder builderFor(ReplicaRepairGroup replicaRepairGroup)
     {
         return RepairGroup.newBuilder()
@@ -269,7 +464,8 @@ public class TestRepairGroup
                 .withRepairResourceFactory(myRepairResourceFactory)
                 .withRepairLockFactory(myRepairLockFactory)
                 .withRepairHistory(myRepairHistory)
-                .withJobId(myJobId);
+                .withJobId(myJobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor);
     }
 
     private Node mockNode(String dataCenter)
@@ -42,6 +42,7 @@ import java.util.function.BiConsumer;
 import javax.management.Notification;
 import javax.management.NotificationListener;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -98,6 +99,8 @@ public class TestRepairGroupTasks
 
     private final ConcurrentMap<LongTokenRange, RepairHistory.RepairSession> repairSessions = new ConcurrentHashMap<>();
 
+    private final RepairTaskExecutor myRepairTaskExecutor = new RepairTaskExecutor();
+
     @Before
     public void init()
     {
@@ -115,6 +118,12 @@ public class TestRepairGroupTasks
         });
     }
 
+    @After
+    public void cleanup()
+    {
+        myRepairTaskExecutor.close();
+    }
+
     @Test
     public void testExecute() throws Exception
     {
@@ -187,7 +196,8 @@ public class TestRepairGroupTasks
                 .withRepairResourceFactory(mockRepairResourceFactory)
                 .withRepairLockFactory(mockRepairLockFactory)
                 .withRepairHistory(mockRepairHistory)
-                .withJobId(jobId);
+                .withJobId(jobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor);
     }
 
     private void progressAndComplete(NotificationListener notificationListener, LongTokenRange range)
@@ -31,6 +31,7 @@ import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -43,7 +44,7 @@ public class TestRepairLockFactoryImpl
 {
     private static final int LOCKS_PER_RESOURCE = 1;
 
-    @Mock
+    @Mock(answer = Answers.CALLS_REAL_METHODS)
     private LockFactory mockLockFactory;
 
     @Mock
@@ -148,6 +149,29 @@ public class TestRepairLockFactoryImpl
         verify(mockLock, never()).close();
     }
 
+    @Test
+    public void testMultipleLocksAreRequestedTogether() throws LockException
+    {
+        RepairResource repairResourceDc1 = new RepairResource("DC1", "my-resource-dc1");
+        RepairResource repairResourceDc2 = new RepairResource("DC2", "my-resource-dc2");
+        RepairLockFactoryImpl repairLockFactory = new RepairLockFactoryImpl();
+        Map<String, String> metadata = Collections.singletonMap("metadatakey", "metadatavalue");
+        int priority = 1;
+
+        withSufficientNodesForLocking(repairResourceDc1);
+        withSufficientNodesForLocking(repairResourceDc2);
+
+        withSuccessfulLocking(repairResourceDc1, priority, metadata);
+        withSuccessfulLocking(repairResourceDc2, priority, metadata);
+
+        repairLockFactory.getLock(mockLockFactory, Sets.newLinkedHashSet(Arrays.asList(repairResourceDc1, repairResourceDc2)), metadata, priority);
+
+        verify(mockLockFactory).tryLock(eq(Arrays.asList(
+                new LockFactory.Resource(repairResourceDc1.getDataCenter(), repairResourceDc1.getResourceName(LOCKS_PER_RESOURCE)),
+                new LockFactory.Resource(repairResourceDc2.getDataCenter(), repairResourceDc2.getResourceName(LOCKS_PER_RESOURCE)))),
+                eq(priority), eq(metadata));
+    }
+
     @Test
     public void testMultipleLocksNotSufficientNodes()
     {
@@ -16,10 +16,12 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair;
 
 import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.awaitility.Awaitility.await;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.ignoreStubs;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -37,10 +39,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.management.Notification;
 import javax.management.NotificationListener;
@@ -92,6 +99,8 @@ public class TestRepairTask
 
     private ConcurrentMap<LongTokenRange, RepairHistory.RepairSession> repairSessions = new ConcurrentHashMap<>();
 
+    private final RepairTaskExecutor myRepairTaskExecutor = new RepairTaskExecutor();
+
     @Before
     public void setup() throws IOException
     {
@@ -109,6 +118,7 @@ public class TestRepairTask
     @After
     public void finalVerification()
     {
+        myRepairTaskExecutor.close();
         verifyNoMoreInteractions(ignoreStubs(myTableRepairMetrics));
     }
 
@@ -129,6 +139,7 @@ public class TestRepairTask
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairHistory(repairHistory)
                 .withJobId(jobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .withReplicas(participants)
                 .build();
 
@@ -159,6 +170,54 @@ public class TestRepairTask
         verify(repairSessions.get(range2)).finish(eq(RepairStatus.SUCCESS));
     }
 
+    @Test
+    public void testRepairCoalescedRangesInSingleSessionSuccessfully() throws InterruptedException
+    {
+        Collection<LongTokenRange> ranges = new ArrayList<>();
+        LongTokenRange range1 = new LongTokenRange(1, 2);
+        LongTokenRange range2 = new LongTokenRange(3, 4);
+        LongTokenRange range3 = new LongTokenRange(-5, -4);
+
+        ranges.add(range1);
+        ranges.add(range2);
+        ranges.add(range3);
+
+        final RepairTask repairTask = new RepairTask.Builder()
+                .withJMXProxyFactory(jmxProxyFactory)
+                .withTableReference(myTableReference)
+                .withTokenRanges(ranges)
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairHistory(repairHistory)
+                .withJobId(jobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
+                .withReplicas(participants)
+                .build();
+
+        CountDownLatch cdl = startRepair(repairTask, false);
+
+        // All ranges of the command share the same replicas and are repaired in a single session by Cassandra
+        Notification notification = new Notification("progress", "repair:1", 0, getRepairMessage(range1, range2, range3));
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.PROGRESS.ordinal(), 1, 2));
+        proxy.notify(notification);
+
+        notification = new Notification("progress", "repair:1", 1, "Done with repair");
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.COMPLETE.ordinal(), 2, 2));
+        proxy.notify(notification);
+
+        cdl.await();
+
+        assertThat(repairTask.getUnknownRanges()).isNull();
+        assertThat(repairTask.getCompletedRanges()).containsExactlyInAnyOrderElementsOf(ranges);
+        assertThat(proxy.myTerminated).isFalse();
+
+        verify(myTableRepairMetrics).repairTiming(eq(TABLE_REFERENCE), anyLong(), any(TimeUnit.class), eq(true));
+        for (LongTokenRange range : ranges)
+        {
+            verify(repairSessions.get(range)).start();
+            verify(repairSessions.get(range)).finish(eq(RepairStatus.SUCCESS));
+        }
+    }
+
     @Test
     public void testRepairSingleRangeSuccessfully() throws InterruptedException
     {
@@ -174,6 +233,7 @@ public class TestRepairTask
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairHistory(repairHistory)
                 .withJobId(jobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .withReplicas(participants)
                 .build();
 
@@ -215,6 +275,7 @@ public class TestRepairTask
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairHistory(repairHistory)
                 .withJobId(jobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .withReplicas(participants)
                 .build();
 
@@ -257,6 +318,7 @@ public class TestRepairTask
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairHistory(repairHistory)
                 .withJobId(jobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .withReplicas(participants)
                 .build();
 
@@ -304,6 +366,7 @@ public class TestRepairTask
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairHistory(repairHistory)
                 .withJobId(jobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .withReplicas(participants)
                 .build();
 
@@ -334,6 +397,131 @@ public class TestRepairTask
         verify(repairSessions.get(range2)).finish(eq(RepairStatus.SUCCESS));
     }
 
+    @Test
+    public void testRepairAsyncCompletedByNotifications() throws Exception
+    {
+        LongTokenRange range = new LongTokenRange(1, 2);
+
+        final RepairTask repairTask = new RepairTask.Builder()
+                .withJMXProxyFactory(jmxProxyFactory)
+                .withTableReference(myTableReference)
+                .withTokenRanges(Collections.singletonList(range))
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairHistory(repairHistory)
+                .withJobId(jobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
+                .withReplicas(participants)
+                .build();
+
+        CompletableFuture<Void> future = repairTask.executeAsync();
+
+        assertThat(future).isNotDone();
+
+        Notification notification = new Notification("progress", "repair:1", 0, getRepairMessage(range));
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.PROGRESS.ordinal(), 1, 1));
+        proxy.notify(notification);
+
+        assertThat(future).isNotDone();
+
+        notification = new Notification("progress", "repair:1", 1, "Done with repair");
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.COMPLETE.ordinal(), 1, 1));
+        proxy.notify(notification);
+
+        future.get(1, TimeUnit.SECONDS);
+
+        assertThat(repairTask.getUnknownRanges()).isNull();
+        assertThat(proxy.myListener).isNull();
+
+        verify(myTableRepairMetrics).repairTiming(eq(TABLE_REFERENCE), anyLong(), any(TimeUnit.class), eq(true));
+        verify(repairSessions.get(range)).start();
+        verify(repairSessions.get(range)).finish(eq(RepairStatus.SUCCESS));
+    }
+
+    @Test
+    public void testRepairIsCompletedOutsideOfNotificationThread() throws Exception
+    {
+        LongTokenRange range = new LongTokenRange(1, 2);
+        AtomicReference<Thread> completionThread = new AtomicReference<>();
+
+        doAnswer(invocation ->
+        {
+            completionThread.set(Thread.currentThread());
+            return null;
+        }).when(myTableRepairMetrics).repairTiming(eq(TABLE_REFERENCE), anyLong(), any(TimeUnit.class), eq(true));
+
+        final RepairTask repairTask = new RepairTask.Builder()
+                .withJMXProxyFactory(jmxProxyFactory)
+                .withTableReference(myTableReference)
+                .withTokenRanges(Collections.singletonList(range))
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairHistory(repairHistory)
+                .withJobId(jobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
+                .withReplicas(participants)
+                .build();
+
+        CompletableFuture<Void> future = repairTask.executeAsync();
+
+        Notification notification = new Notification("progress", "repair:1", 0, getRepairMessage(range));
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.PROGRESS.ordinal(), 1, 1));
+        proxy.notify(notification);
+
+        notification = new Notification("progress", "repair:1", 1, "Done with repair");
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.COMPLETE.ordinal(), 1, 1));
+        proxy.notify(notification);
+
+        future.get(1, TimeUnit.SECONDS);
+
+        assertThat(completionThread.get()).isNotSameAs(Thread.currentThread());
+        assertThat(completionThread.get().getName()).startsWith("RepairCompletion");
+
+        verify(myTableRepairMetrics).repairTiming(eq(TABLE_REFERENCE), anyLong(), any(TimeUnit.class), eq(true));
+        verify(repairSessions.get(range)).finish(eq(RepairStatus.SUCCESS));
+    }
+
+    @Test
+    public void testHangingRepairIsTerminated() throws Exception
+    {
+        LongTokenRange range = new LongTokenRange(1, 2);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        HangPreventionTimer hangPreventionTimer = new HangPreventionTimer(executor, 30, 30, TimeUnit.MINUTES);
+
+        try
+        {
+            final RepairTask repairTask = new RepairTask.Builder()
+                    .withJMXProxyFactory(jmxProxyFactory)
+                    .withTableReference(myTableReference)
+                    .withTokenRanges(Collections.singletonList(range))
+                    .withTableRepairMetrics(myTableRepairMetrics)
+                    .withRepairHistory(repairHistory)
+                    .withJobId(jobId)
+                    .withRepairTaskExecutor(myRepairTaskExecutor)
+                    .withReplicas(participants)
+                    .withHangPreventionTimer(hangPreventionTimer)
+                    .build();
+
+            CompletableFuture<Void> future = repairTask.executeAsync();
+
+            assertThat(hangPreventionTimer.expire(System.nanoTime() + TimeUnit.MINUTES.toNanos(30))).isEqualTo(1);
+
+            assertThatExceptionOfType(ExecutionException.class)
+                    .isThrownBy(() -> future.get(1, TimeUnit.SECONDS))
+                    .withCauseInstanceOf(ScheduledJobException.class);
+
+            assertThat(proxy.myTerminated).isTrue();
+            assertThat(repairTask.getUnknownRanges()).containsExactly(range);
+            assertThat(hangPreventionTimer.watched()).isZero();
+
+            verify(myTableRepairMetrics).repairTiming(eq(TABLE_REFERENCE), anyLong(), any(TimeUnit.class), eq(false));
+            verify(repairSessions.get(range)).finish(eq(RepairStatus.FAILED));
+        }
+        finally
+        {
+            hangPreventionTimer.close();
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testShouldMatchProgressNotificationPattern()
     {
@@ -346,6 +534,7 @@ public class TestRepairTask
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairHistory(repairHistory)
                 .withJobId(jobId)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .withReplicas(participants)
                 .build();
 
@@ -423,6 +612,8 @@ public class TestRepairTask
 
         public volatile Map<String, String> myOptions;
 
+        public volatile boolean myTerminated;
+
         public MockedJmxProxy(String keyspace, String table)
         {
             myKeyspace = keyspace;
@@ -451,7 +642,7 @@ public class TestRepairTask
         @Override
         public void forceTerminateAllRepairSessions()
         {
-            // NOOP
+            myTerminated = true;
         }
 
         @Override
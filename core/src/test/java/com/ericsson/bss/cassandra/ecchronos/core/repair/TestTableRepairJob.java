@@ -17,6 +17,7 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair;
 import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
@@ -33,6 +34,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
@@ -45,13 +47,19 @@ import org.mockito.junit.MockitoJUnitRunner;
 import com.datastax.driver.core.KeyspaceMetadata;
 import com.datastax.driver.core.Metadata;
 import com.datastax.driver.core.exceptions.OverloadedException;
+import com.ericsson.bss.cassandra.ecchronos.core.HostStates;
 import com.ericsson.bss.cassandra.ecchronos.core.JmxProxyFactory;
 import com.ericsson.bss.cassandra.ecchronos.core.TableStorageStates;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.PostUpdateHook;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairEntry;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistory;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistoryProvider;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairStateFactoryImpl;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairStateSnapshot;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicaRepairGroup;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicationState;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairStates;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairStatesImpl;
@@ -62,7 +70,9 @@ import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 
 @RunWith (MockitoJUnitRunner.Silent.class)
 public class TestTableRepairJob
@@ -111,6 +121,8 @@ public class TestTableRepairJob
     private final TableReference myTableReference = tableReference(keyspaceName, tableName);
     private RepairConfiguration myRepairConfiguration;
 
+    private final RepairTaskExecutor myRepairTaskExecutor = new RepairTaskExecutor();
+
     @Before
     public void startup()
     {
@@ -144,12 +156,14 @@ public class TestTableRepairJob
                 .withRepairLockType(RepairLockType.VNODE)
                 .withTableStorageStates(myTableStorageStates)
                 .withRepairHistory(myRepairHistory)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
                 .build();
     }
 
     @After
     public void finalVerification()
     {
+        myRepairTaskExecutor.close();
         verifyNoMoreInteractions(ignoreStubs(myJmxProxyFactory));
         verifyNoMoreInteractions(ignoreStubs(myMetadata));
         verifyNoMoreInteractions(ignoreStubs(myLockFactory));
@@ -336,6 +350,65 @@ public class TestTableRepairJob
         assertThat(repairTask.getTableReference()).isEqualTo(myTableReference);
     }
 
+    @Test
+    public void testIteratorWithParallelRepairGroups()
+    {
+        Node node1 = mockNode();
+        Node node2 = mockNode();
+        Node node3 = mockNode();
+        Node node4 = mockNode();
+
+        ReplicaRepairGroup replicaRepairGroup1 = new ReplicaRepairGroup(ImmutableSet.of(node1, node2),
+                ImmutableList.of(new LongTokenRange(0, 10)));
+        ReplicaRepairGroup replicaRepairGroup2 = new ReplicaRepairGroup(ImmutableSet.of(node3, node4),
+                ImmutableList.of(new LongTokenRange(10, 20)));
+        ReplicaRepairGroup replicaRepairGroup3 = new ReplicaRepairGroup(ImmutableSet.of(node1, node3),
+                ImmutableList.of(new LongTokenRange(20, 30)));
+
+        VnodeRepairStates vnodeRepairStates = VnodeRepairStatesImpl.newBuilder(ImmutableList.of(
+                new VnodeRepairState(new LongTokenRange(0, 10), ImmutableSet.of(node1, node2), 1234L),
+                new VnodeRepairState(new LongTokenRange(10, 20), ImmutableSet.of(node3, node4), 1234L),
+                new VnodeRepairState(new LongTokenRange(20, 30), ImmutableSet.of(node1, node3), 1234L)))
+                .build();
+
+        RepairStateSnapshot repairStateSnapshot = RepairStateSnapshot.newBuilder()
+                .withReplicaRepairGroups(Arrays.asList(replicaRepairGroup1, replicaRepairGroup2, replicaRepairGroup3))
+                .withLastCompletedAt(1234L)
+                .withVnodeRepairStates(vnodeRepairStates)
+                .build();
+        when(myRepairState.getSnapshot()).thenReturn(repairStateSnapshot);
+
+        TableRepairJob repairJob = new TableRepairJob.Builder()
+                .withTableReference(myTableReference)
+                .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairState(myRepairState)
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairConfiguration(RepairConfiguration.newBuilder(myRepairConfiguration)
+                        .withParallelRepairGroups(2)
+                        .build())
+                .withRepairLockType(RepairLockType.VNODE)
+                .withTableStorageStates(myTableStorageStates)
+                .withRepairHistory(myRepairHistory)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
+                .build();
+
+        Iterator<ScheduledTask> iterator = repairJob.iterator();
+
+        ScheduledTask task = iterator.next();
+        assertThat(task).isInstanceOf(ParallelRepairGroups.class);
+        assertThat(((ParallelRepairGroups) task).getRepairGroups())
+                .extracting(RepairGroup::getReplicaRepairGroup)
+                .containsExactly(replicaRepairGroup1, replicaRepairGroup2);
+
+        task = iterator.next();
+        assertThat(task).isInstanceOf(ParallelRepairGroups.class);
+        assertThat(((ParallelRepairGroups) task).getRepairGroups())
+                .extracting(RepairGroup::getReplicaRepairGroup)
+                .containsExactly(replicaRepairGroup3);
+
+        assertThat(iterator.hasNext()).isFalse();
+    }
+
     @Test
     public void testIteratorWithTargetSize()
     {
@@ -389,6 +462,103 @@ public class TestTableRepairJob
         }
     }
 
+    @Test
+    public void testIteratorWithCoalescedSubRanges()
+    {
+        LongTokenRange tokenRange = new LongTokenRange(0, 10);
+        ImmutableSet<Node> replicas = ImmutableSet.of(mock(Node.class), mock(Node.class));
+        ImmutableList<LongTokenRange> vnodes = ImmutableList.of(tokenRange);
+
+        VnodeRepairStates vnodeRepairStates = VnodeRepairStatesImpl.newBuilder(ImmutableList.of(new VnodeRepairState(tokenRange, replicas, 1234L))).build();
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(replicas, vnodes);
+
+        RepairStateSnapshot repairStateSnapshot = RepairStateSnapshot.newBuilder()
+                .withReplicaRepairGroups(Collections.singletonList(replicaRepairGroup))
+                .withLastCompletedAt(1234L)
+                .withVnodeRepairStates(vnodeRepairStates)
+                .build();
+        when(myRepairState.getSnapshot()).thenReturn(repairStateSnapshot);
+        // 100 MB target size, 500 MB coalesce size, 1000MB in table
+        when(myTableStorageStates.getDataSize(eq(myTableReference))).thenReturn(THOUSAND_MB_IN_BYTES);
+
+        TableRepairJob repairJob = new TableRepairJob.Builder()
+                .withTableReference(myTableReference)
+                .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairState(myRepairState)
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairConfiguration(RepairConfiguration.newBuilder(myRepairConfiguration)
+                        .withCoalesceSizeInBytes(5 * HUNDRED_MB_IN_BYTES)
+                        .build())
+                .withRepairLockType(RepairLockType.VNODE)
+                .withTableStorageStates(myTableStorageStates)
+                .withRepairHistory(myRepairHistory)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
+                .build();
+
+        Iterator<ScheduledTask> iterator = repairJob.iterator();
+
+        ScheduledTask task = iterator.next();
+        assertThat(task).isInstanceOf(RepairGroup.class);
+        Collection<RepairTask> repairTasks = ((RepairGroup)task).getRepairTasks();
+
+        assertThat(repairTasks).extracting(RepairTask::getTokenRanges).containsExactly(
+                Sets.newHashSet(new LongTokenRange(0, 1), new LongTokenRange(1, 2), new LongTokenRange(2, 3),
+                        new LongTokenRange(3, 4), new LongTokenRange(4, 5)),
+                Sets.newHashSet(new LongTokenRange(5, 6), new LongTokenRange(6, 7), new LongTokenRange(7, 8),
+                        new LongTokenRange(8, 9), new LongTokenRange(9, 10)));
+    }
+
+    @Test
+    public void testSplitVnodeIsRepairedWithTargetRepairTime()
+    {
+        long startedAt = System.currentTimeMillis();
+        long repairedAt = startedAt - TimeUnit.DAYS.toMillis(8);
+        LongTokenRange vnode = new LongTokenRange(0, 10);
+        ImmutableSet<Node> replicas = ImmutableSet.of(mock(Node.class), mock(Node.class));
+
+        ReplicationState replicationState = mock(ReplicationState.class);
+        when(replicationState.getTokenRangeToReplicas(eq(myTableReference))).thenReturn(ImmutableMap.of(vnode, replicas));
+        RepairHistoryProvider repairHistoryProvider = mock(RepairHistoryProvider.class);
+        when(repairHistoryProvider.iterate(eq(myTableReference), anyLong(), any())).thenReturn(Collections.singletonList(
+                new RepairEntry(vnode, repairedAt, repairedAt + 1, replicas, "SUCCESS")).iterator());
+        HostStates hostStates = mock(HostStates.class);
+        when(hostStates.isUp(any(Node.class))).thenReturn(true);
+        TableRepairMetrics tableRepairMetrics = mock(TableRepairMetrics.class);
+        RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder()
+                .withTargetRepairTime(15, TimeUnit.MINUTES)
+                .build();
+
+        RepairState repairState = RepairStateFactoryImpl.builder()
+                .withReplicationState(replicationState)
+                .withHostStates(hostStates)
+                .withRepairHistoryProvider(repairHistoryProvider)
+                .withTableRepairMetrics(tableRepairMetrics)
+                .build()
+                .create(myTableReference, repairConfiguration, mock(PostUpdateHook.class));
+
+        TableRepairJob repairJob = new TableRepairJob.Builder()
+                .withTableReference(myTableReference)
+                .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairState(repairState)
+                .withTableRepairMetrics(tableRepairMetrics)
+                .withRepairConfiguration(repairConfiguration)
+                .withRepairLockType(RepairLockType.VNODE)
+                .withTableStorageStates(myTableStorageStates)
+                .withRepairHistory(myRepairHistory)
+                .withRepairTaskExecutor(myRepairTaskExecutor)
+                .build();
+
+        assertThat(repairJob.getView().getRepairStateSnapshot().canRepair()).isTrue();
+
+        repairState.addRepairEntry(new RepairEntry(new LongTokenRange(0, 5), startedAt, startedAt + 1, replicas, "SUCCESS"));
+        repairState.addRepairEntry(new RepairEntry(new LongTokenRange(5, 10), startedAt + 2, startedAt + 3, replicas, "SUCCESS"));
+
+        RepairJobView view = repairJob.getView();
+        assertThat(view.getProgress()).isEqualTo(1.0d);
+        assertThat(view.getLastCompletedAt()).isEqualTo(startedAt);
+        assertThat(view.getRepairStateSnapshot().canRepair()).isFalse();
+    }
+
     @Test
     public void testStatusCompleted()
     {
@@ -546,4 +716,11 @@ public class TestTableRepairJob
         doReturn(repairedAt).when(myRepairStateSnapshot).lastCompletedAt();
         assertThat(myRepairJob.runnable()).isFalse();
     }
+
+    private Node mockNode()
+    {
+        Node node = mock(Node.class);
+        when(node.getId()).thenReturn(UUID.randomUUID());
+        return node;
+    }
 }
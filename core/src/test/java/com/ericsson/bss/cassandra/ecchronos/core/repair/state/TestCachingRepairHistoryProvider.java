@@ -0,0 +1,290 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
+
+import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class TestCachingRepairHistoryProvider
+{
+    private static final long LOOKBACK_TIME_IN_MS = TimeUnit.DAYS.toMillis(30);
+    private static final long TIME_TO_LIVE_IN_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long START_TIME = TimeUnit.DAYS.toMillis(100);
+
+    private static final TableReference TABLE_REFERENCE = tableReference("keyspace", "table");
+
+    @Mock
+    private RepairHistoryProvider myDelegateRepairHistoryProvider;
+
+    @Mock
+    private Clock myClock;
+
+    private final Map<TableReference, List<RepairEntry>> myHistory = new HashMap<>();
+    private final Node myNode = mock(Node.class);
+
+    private long myTime = START_TIME;
+
+    @Before
+    public void setup()
+    {
+        when(myClock.millis()).thenAnswer(invocation -> myTime);
+        when(myDelegateRepairHistoryProvider.iterate(any(TableReference.class), anyLong(), anyLong(), any()))
+                .thenAnswer(invocation -> {
+                    long to = invocation.getArgument(1);
+                    long from = invocation.getArgument(2);
+                    return myHistory.getOrDefault(invocation.<TableReference> getArgument(0), new ArrayList<>())
+                            .stream()
+                            .filter(repairEntry -> repairEntry.getStartedAt() >= from && repairEntry.getStartedAt() <= to)
+                            .collect(Collectors.toList())
+                            .iterator();
+                });
+    }
+
+    @Test
+    public void testIterateReadsFullHistoryOnce()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(10, Long.MAX_VALUE);
+        RepairEntry repairEntry = addEntry(TABLE_REFERENCE, new LongTokenRange(1, 2), myTime - 1000, RepairStatus.SUCCESS);
+        RepairEntry repairEntry2 = addEntry(TABLE_REFERENCE, new LongTokenRange(2, 3), myTime - 2000, RepairStatus.SUCCESS);
+
+        assertThat(iterate(repairHistoryProvider, TABLE_REFERENCE)).containsExactly(repairEntry2, repairEntry);
+        verify(myDelegateRepairHistoryProvider).iterate(eq(TABLE_REFERENCE), eq(START_TIME),
+                eq(START_TIME - LOOKBACK_TIME_IN_MS), any());
+
+        myTime += TimeUnit.MINUTES.toMillis(5);
+        RepairEntry repairEntry3 = addEntry(TABLE_REFERENCE, new LongTokenRange(3, 4), myTime - 1000, RepairStatus.SUCCESS);
+
+        assertThat(iterate(repairHistoryProvider, TABLE_REFERENCE)).containsExactly(repairEntry2, repairEntry,
+                repairEntry3);
+        verify(myDelegateRepairHistoryProvider).iterate(eq(TABLE_REFERENCE), eq(myTime),
+                eq(START_TIME - CachingRepairHistoryProvider.OVERLAP_IN_MS), any());
+    }
+
+    @Test
+    public void testIterateWithinInterval()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(10, Long.MAX_VALUE);
+        addEntry(TABLE_REFERENCE, new LongTokenRange(1, 2), myTime - 3000, RepairStatus.SUCCESS);
+        RepairEntry repairEntry = addEntry(TABLE_REFERENCE, new LongTokenRange(2, 3), myTime - 2000, RepairStatus.SUCCESS);
+        RepairEntry failedEntry = addEntry(TABLE_REFERENCE, new LongTokenRange(3, 4), myTime - 1500, RepairStatus.FAILED);
+        addEntry(TABLE_REFERENCE, new LongTokenRange(4, 5), myTime - 1000, RepairStatus.SUCCESS);
+
+        List<RepairEntry> repairEntries = Lists.newArrayList(repairHistoryProvider.iterate(TABLE_REFERENCE,
+                myTime - 1500, myTime - 2500, Predicates.alwaysTrue()));
+        assertThat(repairEntries).containsExactly(repairEntry, failedEntry);
+
+        repairEntries = Lists.newArrayList(repairHistoryProvider.iterate(TABLE_REFERENCE, myTime - 1500,
+                myTime - 2500, entry -> entry.getStatus() == RepairStatus.SUCCESS));
+        assertThat(repairEntries).containsExactly(repairEntry);
+
+        verify(myDelegateRepairHistoryProvider, times(1)).iterate(any(TableReference.class), anyLong(), anyLong(),
+                any());
+    }
+
+    @Test
+    public void testRunningRepairIsReadAgain()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(10, Long.MAX_VALUE);
+        long startedAt = myTime - TimeUnit.HOURS.toMillis(2);
+        RepairEntry runningEntry = addEntry(TABLE_REFERENCE, new LongTokenRange(1, 2), startedAt, RepairStatus.STARTED);
+
+        assertThat(iterate(repairHistoryProvider, TABLE_REFERENCE)).containsExactly(runningEntry);
+
+        myHistory.get(TABLE_REFERENCE).clear();
+        RepairEntry finishedEntry = addEntry(TABLE_REFERENCE, new LongTokenRange(1, 2), startedAt, RepairStatus.SUCCESS);
+        myTime += TimeUnit.MINUTES.toMillis(5);
+
+        assertThat(iterate(repairHistoryProvider, TABLE_REFERENCE)).containsExactly(finishedEntry);
+        verify(myDelegateRepairHistoryProvider).iterate(eq(TABLE_REFERENCE), eq(myTime), eq(startedAt), any());
+    }
+
+    @Test
+    public void testEntryNotReadAgainIsKept()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(10, Long.MAX_VALUE);
+        RepairEntry repairEntry = addEntry(TABLE_REFERENCE, new LongTokenRange(1, 2), myTime - 1000, RepairStatus.SUCCESS);
+
+        assertThat(iterate(repairHistoryProvider, TABLE_REFERENCE)).containsExactly(repairEntry);
+
+        myHistory.get(TABLE_REFERENCE).clear();
+        myTime += TimeUnit.MINUTES.toMillis(5);
+
+        assertThat(iterate(repairHistoryProvider, TABLE_REFERENCE)).containsExactly(repairEntry);
+    }
+
+    @Test
+    public void testFullHistoryIsReadAfterTimeToLive()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(10, Long.MAX_VALUE);
+        RepairEntry repairEntry = addEntry(TABLE_REFERENCE, new LongTokenRange(1, 2), myTime - 1000, RepairStatus.SUCCESS);
+
+        assertThat(iterate(repairHistoryProvider, TABLE_REFERENCE)).containsExactly(repairEntry);
+
+        myHistory.get(TABLE_REFERENCE).clear();
+        myTime += TIME_TO_LIVE_IN_MS;
+
+        assertThat(iterate(repairHistoryProvider, TABLE_REFERENCE)).isEmpty();
+        verify(myDelegateRepairHistoryProvider).iterate(eq(TABLE_REFERENCE), eq(myTime),
+                eq(myTime - LOOKBACK_TIME_IN_MS), any());
+    }
+
+    @Test
+    public void testFullHistoryIsReadForEarlierInterval()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(10, Long.MAX_VALUE);
+        long from = myTime - LOOKBACK_TIME_IN_MS;
+        RepairEntry oldEntry = addEntry(TABLE_REFERENCE, new LongTokenRange(1, 2), from - 1000, RepairStatus.SUCCESS);
+
+        assertThat(iterate(repairHistoryProvider, TABLE_REFERENCE)).isEmpty();
+
+        List<RepairEntry> repairEntries = Lists.newArrayList(repairHistoryProvider.iterate(TABLE_REFERENCE, myTime,
+                from - 2000, Predicates.alwaysTrue()));
+        assertThat(repairEntries).containsExactly(oldEntry);
+        verify(myDelegateRepairHistoryProvider).iterate(eq(TABLE_REFERENCE), eq(myTime), eq(from - 2000), any());
+    }
+
+    @Test
+    public void testEvictByMaxTables()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(2, Long.MAX_VALUE);
+        TableReference tableReference2 = tableReference("keyspace", "table2");
+        TableReference tableReference3 = tableReference("keyspace", "table3");
+
+        iterate(repairHistoryProvider, TABLE_REFERENCE);
+        iterate(repairHistoryProvider, tableReference2);
+        iterate(repairHistoryProvider, TABLE_REFERENCE);
+        iterate(repairHistoryProvider, tableReference3);
+
+        assertThat(repairHistoryProvider.cachedTables()).isEqualTo(2);
+
+        iterate(repairHistoryProvider, TABLE_REFERENCE);
+        iterate(repairHistoryProvider, tableReference2);
+
+        verify(myDelegateRepairHistoryProvider, times(1)).iterate(eq(TABLE_REFERENCE), anyLong(), anyLong(), any());
+        verify(myDelegateRepairHistoryProvider, times(2)).iterate(eq(tableReference2), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void testEvictByMaxSize()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(10,
+                CachingRepairHistoryProvider.ESTIMATED_ENTRY_SIZE_IN_BYTES * 2);
+        TableReference tableReference2 = tableReference("keyspace", "table2");
+        addEntry(TABLE_REFERENCE, new LongTokenRange(1, 2), myTime - 1000, RepairStatus.SUCCESS);
+        addEntry(tableReference2, new LongTokenRange(1, 2), myTime - 1000, RepairStatus.SUCCESS);
+
+        iterate(repairHistoryProvider, TABLE_REFERENCE);
+        assertThat(repairHistoryProvider.cachedTables()).isEqualTo(1);
+
+        iterate(repairHistoryProvider, tableReference2);
+        assertThat(repairHistoryProvider.cachedTables()).isEqualTo(1);
+
+        iterate(repairHistoryProvider, tableReference2);
+        verify(myDelegateRepairHistoryProvider, times(1)).iterate(eq(tableReference2), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(10, Long.MAX_VALUE);
+
+        iterate(repairHistoryProvider, TABLE_REFERENCE);
+        repairHistoryProvider.invalidate(TABLE_REFERENCE);
+
+        assertThat(repairHistoryProvider.cachedTables()).isZero();
+    }
+
+    @Test
+    public void testFailedReadIsNotCached()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(10, Long.MAX_VALUE);
+        when(myDelegateRepairHistoryProvider.iterate(eq(TABLE_REFERENCE), anyLong(), anyLong(), any()))
+                .thenThrow(new IllegalStateException());
+
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> iterate(repairHistoryProvider, TABLE_REFERENCE));
+        assertThat(repairHistoryProvider.cachedTables()).isZero();
+    }
+
+    @Test
+    public void testIterateWithInvalidInterval()
+    {
+        CachingRepairHistoryProvider repairHistoryProvider = newProvider(10, Long.MAX_VALUE);
+
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> repairHistoryProvider.iterate(TABLE_REFERENCE, myTime, myTime,
+                        Predicates.alwaysTrue()));
+    }
+
+    private List<RepairEntry> iterate(CachingRepairHistoryProvider repairHistoryProvider,
+            TableReference tableReference)
+    {
+        Predicate<RepairEntry> predicate = Predicates.alwaysTrue();
+        return Lists.newArrayList(repairHistoryProvider.iterate(tableReference, myTime, predicate));
+    }
+
+    private RepairEntry addEntry(TableReference tableReference, LongTokenRange range, long startedAt,
+            RepairStatus repairStatus)
+    {
+        long finishedAt = repairStatus == RepairStatus.STARTED ? -1L : startedAt + 500;
+        RepairEntry repairEntry = new RepairEntry(range, startedAt, finishedAt, Sets.newHashSet(myNode),
+                repairStatus.name());
+        myHistory.computeIfAbsent(tableReference, tb -> new ArrayList<>()).add(repairEntry);
+        return repairEntry;
+    }
+
+    private CachingRepairHistoryProvider newProvider(int maxTables, long maxSizeInBytes)
+    {
+        return CachingRepairHistoryProvider.newBuilder()
+                .withRepairHistoryProvider(myDelegateRepairHistoryProvider)
+                .withLookbackTime(LOOKBACK_TIME_IN_MS, TimeUnit.MILLISECONDS)
+                .withTimeToLive(TIME_TO_LIVE_IN_MS, TimeUnit.MILLISECONDS)
+                .withMaxTables(maxTables)
+                .withMaxSizeInBytes(maxSizeInBytes)
+                .withClock(myClock)
+                .build();
+    }
+}
@@ -18,6 +18,7 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.awaitility.Awaitility.await;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -127,6 +128,12 @@ public class TestEccRepairHistory extends AbstractCassandraTest
                 .and(eq(COLUMN_REPAIR_ID, bindMarker())));
     }
 
+    @Parameterized.AfterParam
+    public static void closeRepairHistory()
+    {
+        repairHistory.close();
+    }
+
     @After
     public void cleanup()
     {
@@ -204,6 +211,7 @@ public class TestEccRepairHistory extends AbstractCassandraTest
         RepairHistory.RepairSession repairSession = repairHistory
                 .newSession(tableReference, jobId, range, participants);
         repairSession.start();
+        repairHistory.flush();
 
         long to = System.currentTimeMillis();
 
@@ -220,6 +228,7 @@ public class TestEccRepairHistory extends AbstractCassandraTest
         assertThat(repairEntryIterator.hasNext()).isFalse();
 
         repairSession.finish(RepairStatus.SUCCESS);
+        repairHistory.flush();
 
         // Assert that the session has finished
         repairEntryIterator = repairHistoryProvider.iterate(tableReference, to, from, Predicates.alwaysTrue());
@@ -257,6 +266,7 @@ public class TestEccRepairHistory extends AbstractCassandraTest
                 .newSession(tableReference, jobId, range2, participants);
         repairSession2.start();
         repairSession2.finish(RepairStatus.SUCCESS);
+        repairHistory.flush();
 
         long to = System.currentTimeMillis();
 
@@ -273,6 +283,80 @@ public class TestEccRepairHistory extends AbstractCassandraTest
         assertThat(repairEntries.get(1).getRange()).isEqualTo(range);
     }
 
+    @Test
+    public void testPrefetchAndIterate()
+    {
+        UUID jobId = UUID.randomUUID();
+        LongTokenRange range = new LongTokenRange(1, 2);
+        LongTokenRange range2 = new LongTokenRange(2, 3);
+
+        Set<Node> participants = Sets.newHashSet(mockLocalNode, mockNode());
+        withKnownRange(range, participants);
+        withKnownRange(range2, participants);
+
+        RepairHistory.RepairSession repairSession = repairHistory
+                .newSession(tableReference, jobId, range, participants);
+        repairSession.start();
+        repairSession.finish(RepairStatus.SUCCESS);
+        repairHistory.flush();
+
+        repairHistoryProvider.prefetch(Collections.singletonList(tableReference));
+
+        long to = System.currentTimeMillis();
+
+        List<RepairEntry> repairEntries = Lists.newArrayList(repairHistoryProvider.iterate(tableReference, to,
+                Predicates.alwaysTrue()));
+        assertThat(repairEntries).hasSize(1);
+        assertThat(repairEntries.get(0).getRange()).isEqualTo(range);
+        assertThat(repairEntries.get(0).getStatus()).isEqualTo(RepairStatus.SUCCESS);
+
+        RepairHistory.RepairSession repairSession2 = repairHistory
+                .newSession(tableReference, jobId, range2, participants);
+        repairSession2.start();
+        repairSession2.finish(RepairStatus.SUCCESS);
+        repairHistory.flush();
+
+        // The prefetched history is only used once
+        repairEntries = Lists.newArrayList(repairHistoryProvider.iterate(tableReference, System.currentTimeMillis(),
+                Predicates.alwaysTrue()));
+        assertThat(repairEntries).hasSize(2);
+    }
+
+    @Test
+    public void testPrefetchAndIterateNewerHistory()
+    {
+        UUID jobId = UUID.randomUUID();
+        LongTokenRange range = new LongTokenRange(1, 2);
+        LongTokenRange range2 = new LongTokenRange(2, 3);
+
+        Set<Node> participants = Sets.newHashSet(mockLocalNode, mockNode());
+        withKnownRange(range, participants);
+        withKnownRange(range2, participants);
+
+        RepairHistory.RepairSession repairSession = repairHistory
+                .newSession(tableReference, jobId, range, participants);
+        repairSession.start();
+        repairSession.finish(RepairStatus.SUCCESS);
+        repairHistory.flush();
+
+        long prefetchedAt = System.currentTimeMillis();
+        repairHistoryProvider.prefetch(Collections.singletonList(tableReference));
+        await().until(() -> System.currentTimeMillis() > prefetchedAt + 1);
+
+        RepairHistory.RepairSession repairSession2 = repairHistory
+                .newSession(tableReference, jobId, range2, participants);
+        repairSession2.start();
+        repairSession2.finish(RepairStatus.SUCCESS);
+        repairHistory.flush();
+
+        // The repair started after the prefetch is read from the repair history
+        List<RepairEntry> repairEntries = Lists.newArrayList(repairHistoryProvider.iterate(tableReference,
+                System.currentTimeMillis(), Predicates.alwaysTrue()));
+        assertThat(repairEntries).hasSize(2);
+        assertThat(repairEntries.get(0).getRange()).isEqualTo(range2);
+        assertThat(repairEntries.get(1).getRange()).isEqualTo(range);
+    }
+
     @Test
     public void testMultipleInvocationsThrowsException()
     {
@@ -381,6 +465,7 @@ public class TestEccRepairHistory extends AbstractCassandraTest
 
     private EccEntry fromDb(UUID nodeId, RepairHistory.RepairSession repairSession)
     {
+        repairHistory.flush();
         return fromRow(mySession.execute(iterateStatement.bind(nodeId, internalSession(repairSession).getId())).one());
     }
 
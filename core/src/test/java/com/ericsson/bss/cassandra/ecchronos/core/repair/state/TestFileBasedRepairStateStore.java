@@ -0,0 +1,157 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
+
+import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.collect.ImmutableSet;
+
+public class TestFileBasedRepairStateStore
+{
+    private static final TableReference TABLE_REFERENCE = tableReference("ks", "tb");
+
+    @Rule
+    public TemporaryFolder stateFolder = new TemporaryFolder();
+
+    private final Node node1 = mockNode(new UUID(0, 1));
+    private final Node node2 = mockNode(new UUID(0, 2));
+
+    private File directory;
+    private FileBasedRepairStateStore repairStateStore;
+
+    @Before
+    public void setup()
+    {
+        directory = new File(stateFolder.getRoot(), "repair_state");
+        repairStateStore = new FileBasedRepairStateStore(directory);
+    }
+
+    @Test
+    public void testStoreAndLoad()
+    {
+        LongTokenRange range1 = new LongTokenRange(Long.MIN_VALUE, 0);
+        LongTokenRange range2 = new LongTokenRange(0, Long.MIN_VALUE);
+
+        repairStateStore.store(TABLE_REFERENCE, 1234L, Arrays.asList(
+                new VnodeRepairState(range1, ImmutableSet.of(node1, node2), 1000L, 1001L),
+                new VnodeRepairState(range2, ImmutableSet.of(node1), VnodeRepairState.UNREPAIRED)));
+
+        StoredRepairState storedRepairState = repairStateStore.load(TABLE_REFERENCE);
+
+        assertThat(storedRepairState).isNotNull();
+        assertThat(storedRepairState.getReconciledAt()).isEqualTo(1234L);
+        assertThat(storedRepairState.getEntries()).containsExactly(
+                new StoredRepairState.Entry(range1, ImmutableSet.of(node1.getId(), node2.getId()), 1000L, 1001L),
+                new StoredRepairState.Entry(range2, ImmutableSet.of(node1.getId()), VnodeRepairState.UNREPAIRED,
+                        VnodeRepairState.UNREPAIRED));
+    }
+
+    @Test
+    public void testStoreReplacesPreviousState()
+    {
+        LongTokenRange range = new LongTokenRange(1, 2);
+
+        repairStateStore.store(TABLE_REFERENCE, 1234L,
+                Collections.singletonList(new VnodeRepairState(range, ImmutableSet.of(node1), 1000L, 1001L)));
+        repairStateStore.store(TABLE_REFERENCE, 2345L,
+                Collections.singletonList(new VnodeRepairState(range, ImmutableSet.of(node1), 2000L, 2001L)));
+
+        StoredRepairState storedRepairState = repairStateStore.load(TABLE_REFERENCE);
+
+        assertThat(storedRepairState.getReconciledAt()).isEqualTo(2345L);
+        assertThat(storedRepairState.getEntries()).containsExactly(
+                new StoredRepairState.Entry(range, ImmutableSet.of(node1.getId()), 2000L, 2001L));
+        assertThat(directory.list()).containsExactly(TABLE_REFERENCE.getId() + ".state");
+    }
+
+    @Test
+    public void testLoadWithoutStoredState()
+    {
+        assertThat(repairStateStore.load(TABLE_REFERENCE)).isNull();
+    }
+
+    @Test
+    public void testLoadWithUnknownVersion() throws IOException
+    {
+        assertThat(directory.mkdirs()).isTrue();
+
+        try (DataOutputStream out = new DataOutputStream(
+                Files.newOutputStream(new File(directory, TABLE_REFERENCE.getId() + ".state").toPath())))
+        {
+            out.writeInt(FileBasedRepairStateStore.MAGIC);
+            out.writeInt(FileBasedRepairStateStore.VERSION + 1);
+        }
+
+        assertThat(repairStateStore.load(TABLE_REFERENCE)).isNull();
+    }
+
+    @Test
+    public void testLoadTruncatedState() throws IOException
+    {
+        repairStateStore.store(TABLE_REFERENCE, 1234L, Collections.singletonList(
+                new VnodeRepairState(new LongTokenRange(1, 2), ImmutableSet.of(node1), 1000L, 1001L)));
+
+        File file = new File(directory, TABLE_REFERENCE.getId() + ".state");
+        byte[] content = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(content, content.length - 1));
+
+        assertThat(repairStateStore.load(TABLE_REFERENCE)).isNull();
+    }
+
+    @Test
+    public void testLoadWithInvalidEntryCount() throws IOException
+    {
+        assertThat(directory.mkdirs()).isTrue();
+
+        try (DataOutputStream out = new DataOutputStream(
+                Files.newOutputStream(new File(directory, TABLE_REFERENCE.getId() + ".state").toPath())))
+        {
+            out.writeInt(FileBasedRepairStateStore.MAGIC);
+            out.writeInt(FileBasedRepairStateStore.VERSION);
+            out.writeLong(TABLE_REFERENCE.getId().getMostSignificantBits());
+            out.writeLong(TABLE_REFERENCE.getId().getLeastSignificantBits());
+            out.writeLong(1234L);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+
+        assertThat(repairStateStore.load(TABLE_REFERENCE)).isNull();
+    }
+
+    private static Node mockNode(UUID id)
+    {
+        Node node = mock(Node.class);
+        when(node.getId()).thenReturn(id);
+        return node;
+    }
+}
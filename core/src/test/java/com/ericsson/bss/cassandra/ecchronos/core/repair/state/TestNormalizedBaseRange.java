@@ -91,7 +91,7 @@ public class TestNormalizedBaseRange
         VnodeRepairState vnodeRepairState = withVnode(Long.MIN_VALUE, Long.MIN_VALUE, 1234L, 1235L);
         NormalizedBaseRange normalizedBaseRange = new NormalizedBaseRange(vnodeRepairState);
 
-        assertThat(normalizedBaseRange.end).isEqualTo(LongTokenRange.FULL_RANGE);
+        assertThat(LongTokenRange.toBigInteger(normalizedBaseRange.end)).isEqualTo(LongTokenRange.FULL_RANGE);
 
         NormalizedRange expectedRange = new NormalizedRange(normalizedBaseRange, START, LongTokenRange.FULL_RANGE, 1234L, 1235L);
 
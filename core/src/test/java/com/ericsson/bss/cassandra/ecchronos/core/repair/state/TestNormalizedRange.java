@@ -327,6 +327,23 @@ public class TestNormalizedRange
         assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> range1.compareTo(range2));
     }
 
+    @Test
+    public void testCombineFullRange()
+    {
+        NormalizedBaseRange normalizedBaseRange = new NormalizedBaseRange(withVnode(Long.MIN_VALUE, Long.MIN_VALUE, 1234L, 1235L));
+        BigInteger middle = bi(Long.MAX_VALUE).add(BigInteger.TEN);
+        NormalizedRange firstRange = new NormalizedRange(normalizedBaseRange, START, middle, 1234L, 1235L);
+        NormalizedRange secondRange = new NormalizedRange(normalizedBaseRange, middle, LongTokenRange.FULL_RANGE, 1235L, 1236L);
+
+        NormalizedRange combined = firstRange.combine(secondRange);
+        assertThat(combined.start()).isEqualTo(START);
+        assertThat(combined.end()).isEqualTo(LongTokenRange.FULL_RANGE);
+        assertThat(combined.isCovering(firstRange)).isTrue();
+        assertThat(combined.isCovering(secondRange)).isTrue();
+        assertThat(secondRange.isCovering(combined)).isFalse();
+        assertThat(combined.compareTo(firstRange)).isNegative();
+    }
+
     @Test
     public void testEqualsContract()
     {
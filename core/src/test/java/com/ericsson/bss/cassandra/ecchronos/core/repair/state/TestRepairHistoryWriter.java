@@ -0,0 +1,267 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class TestRepairHistoryWriter
+{
+    private static final int QUEUE_CAPACITY = 4;
+    private static final int MAX_BATCH_SIZE = 2;
+    private static final long MIN_BACKOFF_IN_MS = 1000L;
+    private static final long MAX_BACKOFF_IN_MS = 4000L;
+
+    private static final UUID TABLE_ID = UUID.randomUUID();
+    private static final UUID NODE_ID = UUID.randomUUID();
+    private static final UUID NODE_ID2 = UUID.randomUUID();
+
+    @Mock
+    private Session mySession;
+
+    @Mock
+    private ScheduledExecutorService myExecutor;
+
+    @Mock
+    private ScheduledFuture myScheduledFuture;
+
+    @Mock
+    private ResultSetFuture mySuccessfulFuture;
+
+    @Mock
+    private ResultSetFuture myFailedFuture;
+
+    private final MetricRegistry myMetricRegistry = new MetricRegistry();
+
+    private RepairHistoryWriter myRepairHistoryWriter;
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(myExecutor.scheduleWithFixedDelay(any(), anyLong(), anyLong(), any())).thenReturn(myScheduledFuture);
+        when(myFailedFuture.get(anyLong(), any(TimeUnit.class))).thenThrow(new ExecutionException(new Exception()));
+
+        myRepairHistoryWriter = new RepairHistoryWriter(mySession, s -> s, myExecutor,
+                new RepairHistoryWriter.Configuration(QUEUE_CAPACITY, MAX_BATCH_SIZE, 100L, 10L,
+                        MIN_BACKOFF_IN_MS, MAX_BACKOFF_IN_MS),
+                myMetricRegistry);
+    }
+
+    @After
+    public void cleanup()
+    {
+        myRepairHistoryWriter.close();
+    }
+
+    @Test
+    public void testSingleWriteIsNotBatched()
+    {
+        when(mySession.executeAsync(any(Statement.class))).thenReturn(mySuccessfulFuture);
+        Statement statement = mock(Statement.class);
+
+        assertThat(myRepairHistoryWriter.write(TABLE_ID, NODE_ID, UUID.randomUUID(), statement)).isTrue();
+        assertThat(myRepairHistoryWriter.queuedWrites()).isEqualTo(1);
+
+        assertThat(myRepairHistoryWriter.flush(0L)).isEqualTo(1);
+
+        verify(mySession).executeAsync(statement);
+        assertThat(myRepairHistoryWriter.queuedWrites()).isZero();
+    }
+
+    @Test
+    public void testWritesAreBatchedPerPartition()
+    {
+        when(mySession.executeAsync(any(Statement.class))).thenReturn(mySuccessfulFuture);
+
+        myRepairHistoryWriter.write(TABLE_ID, NODE_ID, UUID.randomUUID(), mock(Statement.class));
+        myRepairHistoryWriter.write(TABLE_ID, NODE_ID2, UUID.randomUUID(), mock(Statement.class));
+        myRepairHistoryWriter.write(TABLE_ID, NODE_ID, UUID.randomUUID(), mock(Statement.class));
+        myRepairHistoryWriter.write(TABLE_ID, NODE_ID, UUID.randomUUID(), mock(Statement.class));
+
+        assertThat(myRepairHistoryWriter.flush(0L)).isEqualTo(4);
+
+        ArgumentCaptor<Statement> statementCaptor = ArgumentCaptor.forClass(Statement.class);
+        verify(mySession, times(3)).executeAsync(statementCaptor.capture());
+
+        List<Statement> statements = statementCaptor.getAllValues();
+        assertThat(statements.get(0)).isInstanceOf(BatchStatement.class);
+        assertThat(((BatchStatement) statements.get(0)).size()).isEqualTo(MAX_BATCH_SIZE);
+        assertThat(statements.get(1)).isNotInstanceOf(BatchStatement.class);
+        assertThat(statements.get(2)).isNotInstanceOf(BatchStatement.class);
+        assertThat(myRepairHistoryWriter.queuedWrites()).isZero();
+    }
+
+    @Test
+    public void testWritesOfSameRowAreWrittenInOrder()
+    {
+        when(mySession.executeAsync(any(Statement.class))).thenReturn(mySuccessfulFuture);
+        UUID repairId = UUID.randomUUID();
+        Statement start = mock(Statement.class);
+        Statement finish = mock(Statement.class);
+
+        myRepairHistoryWriter.write(TABLE_ID, NODE_ID, repairId, start);
+        myRepairHistoryWriter.write(TABLE_ID, NODE_ID, repairId, finish);
+
+        assertThat(myRepairHistoryWriter.flush(0L)).isEqualTo(1);
+        verify(mySession).executeAsync(start);
+        verify(mySession, never()).executeAsync(finish);
+
+        assertThat(myRepairHistoryWriter.flush(0L)).isEqualTo(1);
+        verify(mySession).executeAsync(finish);
+        assertThat(myRepairHistoryWriter.queuedWrites()).isZero();
+    }
+
+    @Test
+    public void testFailedWriteIsRetriedWithBackoff()
+    {
+        Statement statement = mock(Statement.class);
+        when(mySession.executeAsync(statement)).thenReturn(myFailedFuture, mySuccessfulFuture);
+
+        myRepairHistoryWriter.write(TABLE_ID, NODE_ID, UUID.randomUUID(), statement);
+
+        assertThat(myRepairHistoryWriter.flush(0L)).isEqualTo(1);
+        assertThat(myRepairHistoryWriter.queuedWrites()).isEqualTo(1);
+        assertThat(myMetricRegistry.counter(RepairHistoryWriter.WRITE_FAILURES).getCount()).isEqualTo(1);
+
+        assertThat(myRepairHistoryWriter.flush(MIN_BACKOFF_IN_MS - 1)).isZero();
+        assertThat(myRepairHistoryWriter.flush(MIN_BACKOFF_IN_MS)).isEqualTo(1);
+
+        verify(mySession, times(2)).executeAsync(statement);
+        assertThat(myRepairHistoryWriter.queuedWrites()).isZero();
+    }
+
+    @Test
+    public void testFailedWriteIsRetriedAfterMaxAttempts()
+    {
+        Statement statement = mock(Statement.class);
+        when(mySession.executeAsync(statement)).thenReturn(myFailedFuture);
+
+        myRepairHistoryWriter.write(TABLE_ID, NODE_ID, UUID.randomUUID(), statement);
+
+        long now = 0L;
+        for (int i = 0; i < RepairHistoryWriter.MAX_ATTEMPTS; i++)
+        {
+            assertThat(myRepairHistoryWriter.flush(now)).isEqualTo(1);
+            now += MAX_BACKOFF_IN_MS;
+        }
+
+        assertThat(myRepairHistoryWriter.queuedWrites()).isEqualTo(1);
+        assertThat(myMetricRegistry.counter(RepairHistoryWriter.WRITE_FAILURES).getCount())
+                .isEqualTo(RepairHistoryWriter.MAX_ATTEMPTS);
+
+        when(mySession.executeAsync(statement)).thenReturn(mySuccessfulFuture);
+
+        assertThat(myRepairHistoryWriter.flush(now - 1)).isZero();
+        assertThat(myRepairHistoryWriter.flush(now)).isEqualTo(1);
+
+        verify(mySession, times(RepairHistoryWriter.MAX_ATTEMPTS + 1)).executeAsync(statement);
+        assertThat(myRepairHistoryWriter.queuedWrites()).isZero();
+        assertThat(myMetricRegistry.counter(RepairHistoryWriter.DROPPED_WRITES).getCount()).isZero();
+    }
+
+    @Test
+    public void testWriteWaitsWhenQueueIsFull() throws Exception
+    {
+        when(mySession.executeAsync(any(Statement.class))).thenReturn(mySuccessfulFuture);
+        fillQueue();
+
+        Statement statement = mock(Statement.class);
+        CompletableFuture<Boolean> blockedWrite = CompletableFuture.supplyAsync(
+                () -> myRepairHistoryWriter.write(TABLE_ID, NODE_ID, UUID.randomUUID(), statement));
+
+        await().atMost(1, TimeUnit.SECONDS).until(
+                () -> myMetricRegistry.counter(RepairHistoryWriter.BLOCKED_WRITES).getCount() == 1);
+        assertThat(blockedWrite).isNotDone();
+
+        assertThat(myRepairHistoryWriter.flush(0L)).isEqualTo(QUEUE_CAPACITY);
+
+        assertThat(blockedWrite.get(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(myRepairHistoryWriter.flush(0L)).isEqualTo(1);
+
+        verify(mySession).executeAsync(statement);
+        assertThat(myRepairHistoryWriter.queuedWrites()).isZero();
+        assertThat(myMetricRegistry.counter(RepairHistoryWriter.DROPPED_WRITES).getCount()).isZero();
+    }
+
+    @Test
+    public void testWriteIsDroppedWhenQueueIsFullAndClosed()
+    {
+        fillQueue();
+        Counter blockedWrites = myMetricRegistry.counter(RepairHistoryWriter.BLOCKED_WRITES);
+        Counter droppedWrites = myMetricRegistry.counter(RepairHistoryWriter.DROPPED_WRITES);
+
+        myRepairHistoryWriter.close();
+
+        assertThat(myRepairHistoryWriter.write(TABLE_ID, NODE_ID, UUID.randomUUID(), mock(Statement.class)))
+                .isFalse();
+
+        assertThat(myRepairHistoryWriter.queuedWrites()).isEqualTo(QUEUE_CAPACITY);
+        assertThat(blockedWrites.getCount()).isEqualTo(1);
+        assertThat(droppedWrites.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCloseRemovesMetrics()
+    {
+        assertThat(myMetricRegistry.getMetrics()).containsKeys(RepairHistoryWriter.QUEUED_WRITES,
+                RepairHistoryWriter.BATCH_LATENCY, RepairHistoryWriter.WRITE_FAILURES,
+                RepairHistoryWriter.BLOCKED_WRITES, RepairHistoryWriter.DROPPED_WRITES);
+
+        myRepairHistoryWriter.close();
+
+        assertThat(myMetricRegistry.getMetrics()).isEmpty();
+        verify(myScheduledFuture).cancel(false);
+    }
+
+    private void fillQueue()
+    {
+        for (int i = 0; i < QUEUE_CAPACITY; i++)
+        {
+            assertThat(myRepairHistoryWriter.write(TABLE_ID, NODE_ID, UUID.randomUUID(), mock(Statement.class)))
+                    .isTrue();
+        }
+    }
+}
@@ -16,9 +16,11 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
 
 import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -190,6 +192,116 @@ public class TestRepairStateImpl
         verify(mockPostUpdateHook, times(2)).postUpdate(updatedRepairStateSnapshot);
     }
 
+    @Test
+    public void testUpdateWithinReconciliationIntervalDoesNotCalculateNewState()
+    {
+        long now = System.currentTimeMillis();
+        long repairIntervalInMs = TimeUnit.HOURS.toMillis(1);
+
+        RepairConfiguration repairConfiguration = repairConfiguration(repairIntervalInMs);
+
+        Node node = mockNode("DC1");
+        when(mockHostStates.isUp(eq(node))).thenReturn(true);
+
+        VnodeRepairState vnodeRepairState = new VnodeRepairState(new LongTokenRange(1, 2), ImmutableSet.of(node), VnodeRepairState.UNREPAIRED);
+        VnodeRepairState repairedVnodeRepairState = new VnodeRepairState(new LongTokenRange(2, 3), ImmutableSet.of(node), now, now);
+
+        VnodeRepairStates vnodeRepairStates = VnodeRepairStatesImpl.newBuilder(Arrays.asList(vnodeRepairState, repairedVnodeRepairState))
+                .build();
+
+        when(mockVnodeRepairStateFactory.calculateNewState(eq(tableReference), isNull())).thenReturn(vnodeRepairStates);
+        when(mockReplicaRepairGroupFactory.generateReplicaRepairGroups(repairGroupCaptor.capture())).thenReturn(Collections.singletonList(mockReplicaRepairGroup));
+
+        RepairState repairState = new RepairStateImpl(tableReference, repairConfiguration,
+                mockVnodeRepairStateFactory, mockHostStates,
+                mockTableRepairMetrics, mockReplicaRepairGroupFactory, mockPostUpdateHook, TimeUnit.HOURS.toMillis(1));
+
+        RepairStateSnapshot repairStateSnapshot = repairState.getSnapshot();
+
+        when(mockVnodeRepairStateFactory.updateState(eq(tableReference), eq(repairStateSnapshot), eq(Collections.emptyList()))).thenReturn(vnodeRepairStates);
+        repairState.update();
+
+        verify(mockVnodeRepairStateFactory, times(1)).calculateNewState(eq(tableReference), isNull());
+        verify(mockVnodeRepairStateFactory, never()).calculateNewState(eq(tableReference), eq(repairStateSnapshot));
+        verify(mockVnodeRepairStateFactory, times(1)).updateState(eq(tableReference), eq(repairStateSnapshot), eq(Collections.emptyList()));
+        assertRepairStateSnapshot(repairState.getSnapshot(), now - repairIntervalInMs, Collections.singletonList(mockReplicaRepairGroup), vnodeRepairStates);
+    }
+
+    @Test
+    public void testUpdateWithoutReconciliationIntervalCalculatesNewState()
+    {
+        long now = System.currentTimeMillis();
+        long repairIntervalInMs = TimeUnit.HOURS.toMillis(1);
+
+        RepairConfiguration repairConfiguration = repairConfiguration(repairIntervalInMs);
+
+        Node node = mockNode("DC1");
+        when(mockHostStates.isUp(eq(node))).thenReturn(true);
+
+        VnodeRepairState vnodeRepairState = new VnodeRepairState(new LongTokenRange(1, 2), ImmutableSet.of(node), VnodeRepairState.UNREPAIRED);
+        VnodeRepairState repairedVnodeRepairState = new VnodeRepairState(new LongTokenRange(2, 3), ImmutableSet.of(node), now, now);
+
+        VnodeRepairStates vnodeRepairStates = VnodeRepairStatesImpl.newBuilder(Arrays.asList(vnodeRepairState, repairedVnodeRepairState))
+                .build();
+
+        when(mockVnodeRepairStateFactory.calculateNewState(eq(tableReference), isNull())).thenReturn(vnodeRepairStates);
+        when(mockReplicaRepairGroupFactory.generateReplicaRepairGroups(repairGroupCaptor.capture())).thenReturn(Collections.singletonList(mockReplicaRepairGroup));
+
+        RepairState repairState = new RepairStateImpl(tableReference, repairConfiguration,
+                mockVnodeRepairStateFactory, mockHostStates,
+                mockTableRepairMetrics, mockReplicaRepairGroupFactory, mockPostUpdateHook, 0L);
+
+        RepairStateSnapshot repairStateSnapshot = repairState.getSnapshot();
+
+        when(mockVnodeRepairStateFactory.calculateNewState(eq(tableReference), eq(repairStateSnapshot))).thenReturn(vnodeRepairStates);
+        repairState.update();
+
+        verify(mockVnodeRepairStateFactory, times(1)).calculateNewState(eq(tableReference), eq(repairStateSnapshot));
+        verify(mockVnodeRepairStateFactory, never()).updateState(any(), any(), any());
+    }
+
+    @Test
+    public void testAddRepairEntry()
+    {
+        long now = System.currentTimeMillis();
+        long repairIntervalInMs = TimeUnit.HOURS.toMillis(1);
+
+        RepairConfiguration repairConfiguration = repairConfiguration(repairIntervalInMs);
+
+        Node node = mockNode("DC1");
+        when(mockHostStates.isUp(eq(node))).thenReturn(true);
+
+        LongTokenRange range = new LongTokenRange(1, 2);
+        VnodeRepairState vnodeRepairState = new VnodeRepairState(range, ImmutableSet.of(node), VnodeRepairState.UNREPAIRED);
+        VnodeRepairState repairedVnodeRepairState = new VnodeRepairState(range, ImmutableSet.of(node), now, now);
+
+        VnodeRepairStates vnodeRepairStates = VnodeRepairStatesImpl.newBuilder(Collections.singletonList(vnodeRepairState))
+                .build();
+        VnodeRepairStates repairedVnodeRepairStates = VnodeRepairStatesImpl.newBuilder(Collections.singletonList(repairedVnodeRepairState))
+                .build();
+
+        when(mockVnodeRepairStateFactory.calculateNewState(eq(tableReference), isNull())).thenReturn(vnodeRepairStates);
+        when(mockReplicaRepairGroupFactory.generateReplicaRepairGroups(repairGroupCaptor.capture())).thenReturn(Lists.emptyList());
+
+        RepairState repairState = new RepairStateImpl(tableReference, repairConfiguration,
+                mockVnodeRepairStateFactory, mockHostStates,
+                mockTableRepairMetrics, mockReplicaRepairGroupFactory, mockPostUpdateHook, TimeUnit.HOURS.toMillis(1));
+
+        RepairStateSnapshot repairStateSnapshot = repairState.getSnapshot();
+
+        RepairEntry repairEntry = new RepairEntry(range, now, now, ImmutableSet.of(node), "SUCCESS");
+        when(mockVnodeRepairStateFactory.updateState(eq(tableReference), eq(repairStateSnapshot), eq(Collections.singletonList(repairEntry))))
+                .thenReturn(repairedVnodeRepairStates);
+
+        repairState.addRepairEntry(repairEntry);
+
+        RepairStateSnapshot updatedRepairStateSnapshot = repairState.getSnapshot();
+        assertRepairStateSnapshot(updatedRepairStateSnapshot, now, Lists.emptyList(), repairedVnodeRepairStates);
+
+        verify(mockVnodeRepairStateFactory, times(1)).calculateNewState(eq(tableReference), isNull());
+        verify(mockPostUpdateHook, times(1)).postUpdate(updatedRepairStateSnapshot);
+    }
+
     private void assertRepairStateSnapshot(RepairStateSnapshot repairStateSnapshot, long expectedAtLeastRepairedAt, List<ReplicaRepairGroup> replicaRepairGroups, VnodeRepairStates vnodeRepairStatesBase)
     {
         long expectedAtMostRepairedAt = expectedAtLeastRepairedAt + TimeUnit.MINUTES.toMillis(1);
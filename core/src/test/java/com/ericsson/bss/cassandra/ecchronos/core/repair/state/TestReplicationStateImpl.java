@@ -14,13 +14,17 @@
  */
 package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
 
+import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.Host;
+import com.datastax.driver.core.KeyspaceMetadata;
 import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.SchemaChangeListener;
 import com.datastax.driver.core.TokenRange;
 import com.ericsson.bss.cassandra.ecchronos.core.TokenUtil;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.NodeResolver;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.ReplicaSetRegistry;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
@@ -28,6 +32,7 @@ import com.google.common.collect.Sets;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -38,8 +43,11 @@ import java.util.UUID;
 
 import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -158,6 +166,29 @@ public class TestReplicationStateImpl
         assertThat(replicationState.getNodes(tableReference, range2)).isSameAs(tokenRangeToReplicas.get(range2));
     }
 
+    @Test
+    public void testGetTokenRangeToReplicaSetSharedBetweenKeyspaces() throws Exception
+    {
+        LongTokenRange range1 = new LongTokenRange(1, 2);
+        TableReference tableReference = tableReference("ks", "tb");
+        TableReference tableReference2 = tableReference("ks2", "tb");
+
+        TokenRange tokenRange1 = TokenUtil.getRange(1, 2);
+
+        doReturn(Sets.newHashSet(tokenRange1)).when(mockMetadata).getTokenRanges(eq("ks"), eq(mockReplica1));
+        doReturn(Sets.newHashSet(tokenRange1)).when(mockMetadata).getTokenRanges(eq("ks2"), eq(mockReplica1));
+        doReturn(Sets.newHashSet(mockReplica1, mockReplica2)).when(mockMetadata).getReplicas(eq("ks"), eq(tokenRange1));
+        doReturn(Sets.newHashSet(mockReplica2, mockReplica1)).when(mockMetadata).getReplicas(eq("ks2"), eq(tokenRange1));
+
+        ReplicationState replicationState = new ReplicationStateImpl(mockNodeResolver, mockMetadata, mockReplica1);
+
+        ImmutableSet<Node> replicas = replicationState.getNodes(tableReference, range1);
+
+        assertThat(replicas).containsExactlyInAnyOrder(mockNode1, mockNode2);
+        assertThat(replicationState.getNodes(tableReference2, range1)).isSameAs(replicas);
+        assertThat(ReplicaSetRegistry.INSTANCE.intern(Sets.newHashSet(mockNode1, mockNode2))).isSameAs(replicas);
+    }
+
     @Test
     public void testGetTokenRangeToReplicaMapReuse() throws Exception
     {
@@ -232,4 +263,106 @@ public class TestReplicationStateImpl
 
         assertThat(replicationState.getNodes(tableReference, subRange)).isNull();
     }
+
+    @Test
+    public void testGetNodesForWrapAroundRange() throws Exception
+    {
+        TableReference tableReference = tableReference("ks", "tb");
+
+        TokenRange wrapAroundRange = TokenUtil.getRange(5, -5);
+        TokenRange range = TokenUtil.getRange(-5, 5);
+
+        doReturn(Sets.newHashSet(wrapAroundRange, range)).when(mockMetadata).getTokenRanges(eq("ks"), eq(mockReplica1));
+        doReturn(Sets.newHashSet(mockReplica1, mockReplica2)).when(mockMetadata).getReplicas(eq("ks"), eq(wrapAroundRange));
+        doReturn(Sets.newHashSet(mockReplica1, mockReplica3)).when(mockMetadata).getReplicas(eq("ks"), eq(range));
+
+        ReplicationState replicationState = new ReplicationStateImpl(mockNodeResolver, mockMetadata, mockReplica1);
+
+        assertThat(replicationState.getNodes(tableReference, new LongTokenRange(6, 7))).containsExactlyInAnyOrder(mockNode1, mockNode2);
+        assertThat(replicationState.getNodes(tableReference, new LongTokenRange(-7, -6))).containsExactlyInAnyOrder(mockNode1, mockNode2);
+        assertThat(replicationState.getNodes(tableReference, new LongTokenRange(6, -6))).containsExactlyInAnyOrder(mockNode1, mockNode2);
+        assertThat(replicationState.getNodes(tableReference, new LongTokenRange(-4, 3))).containsExactlyInAnyOrder(mockNode1, mockNode3);
+        assertThat(replicationState.getNodes(tableReference, new LongTokenRange(4, 6))).isNull();
+    }
+
+    @Test
+    public void testReplicationIsRenewedWhenInvalidated() throws Exception
+    {
+        LongTokenRange range1 = new LongTokenRange(1, 2);
+        TableReference tableReference = tableReference("ks", "tb");
+
+        TokenRange tokenRange = TokenUtil.getRange(1, 2);
+
+        doReturn(Sets.newHashSet(tokenRange)).when(mockMetadata).getTokenRanges(eq("ks"), eq(mockReplica1));
+        doReturn(Sets.newHashSet(mockReplica1, mockReplica2)).when(mockMetadata).getReplicas(eq("ks"), eq(tokenRange));
+
+        ReplicationStateImpl replicationState = new ReplicationStateImpl(mockNodeResolver, mockMetadata, mockReplica1);
+
+        Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicas = replicationState.getTokenRangeToReplicas(tableReference);
+        long version = replicationState.getVersion("ks");
+
+        doReturn(Sets.newHashSet(mockReplica1, mockReplica3)).when(mockMetadata).getReplicas(eq("ks"), eq(tokenRange));
+
+        assertThat(replicationState.getTokenRangeToReplicas(tableReference)).isSameAs(tokenRangeToReplicas);
+
+        replicationState.invalidate("ks");
+
+        Map<LongTokenRange, ImmutableSet<Node>> renewedTokenRangeToReplicas = replicationState.getTokenRangeToReplicas(tableReference);
+        assertThat(renewedTokenRangeToReplicas.get(range1)).containsExactlyInAnyOrder(mockNode1, mockNode3);
+        assertThat(replicationState.getVersion("ks")).isGreaterThan(version);
+    }
+
+    @Test
+    public void testReplicationIsKeptWhenUnchanged() throws Exception
+    {
+        TableReference tableReference = tableReference("ks", "tb");
+
+        TokenRange tokenRange = TokenUtil.getRange(1, 2);
+
+        doReturn(Sets.newHashSet(tokenRange)).when(mockMetadata).getTokenRanges(eq("ks"), eq(mockReplica1));
+        doReturn(Sets.newHashSet(mockReplica1, mockReplica2)).when(mockMetadata).getReplicas(eq("ks"), eq(tokenRange));
+
+        ReplicationStateImpl replicationState = new ReplicationStateImpl(mockNodeResolver, mockMetadata, mockReplica1);
+
+        Map<LongTokenRange, ImmutableSet<Node>> tokenRangeToReplicas = replicationState.getTokenRangeToReplicas(tableReference);
+        long version = replicationState.getVersion("ks");
+
+        replicationState.invalidateAll();
+
+        assertThat(replicationState.getTokenRangeToReplicas(tableReference)).isSameAs(tokenRangeToReplicas);
+        assertThat(replicationState.getVersion("ks")).isEqualTo(version);
+    }
+
+    @Test
+    public void testKeyspaceChangeRenewsReplication() throws Exception
+    {
+        LongTokenRange range1 = new LongTokenRange(1, 2);
+        TableReference tableReference = tableReference("ks", "tb");
+
+        TokenRange tokenRange = TokenUtil.getRange(1, 2);
+
+        doReturn(Sets.newHashSet(tokenRange)).when(mockMetadata).getTokenRanges(eq("ks"), eq(mockReplica1));
+        doReturn(Sets.newHashSet(mockReplica1, mockReplica2)).when(mockMetadata).getReplicas(eq("ks"), eq(tokenRange));
+
+        Cluster cluster = mock(Cluster.class);
+        when(cluster.getMetadata()).thenReturn(mockMetadata);
+
+        ReplicationStateImpl replicationState = new ReplicationStateImpl(mockNodeResolver, cluster, mockReplica1);
+
+        ArgumentCaptor<SchemaChangeListener> schemaChangeListenerCaptor = ArgumentCaptor.forClass(SchemaChangeListener.class);
+        verify(cluster).register(schemaChangeListenerCaptor.capture());
+        verify(cluster).register(any(Host.StateListener.class));
+
+        assertThat(replicationState.getNodes(tableReference, range1)).containsExactlyInAnyOrder(mockNode1, mockNode2);
+
+        doReturn(Sets.newHashSet(mockReplica1, mockReplica3)).when(mockMetadata).getReplicas(eq("ks"), eq(tokenRange));
+        KeyspaceMetadata keyspaceMetadata = mock(KeyspaceMetadata.class);
+        when(keyspaceMetadata.getName()).thenReturn("ks");
+        schemaChangeListenerCaptor.getValue().onKeyspaceChanged(keyspaceMetadata, keyspaceMetadata);
+
+        assertThat(replicationState.getNodes(tableReference, range1)).containsExactlyInAnyOrder(mockNode1, mockNode3);
+
+        replicationState.close();
+        verify(cluster).unregister(schemaChangeListenerCaptor.getValue());
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class TestVnodeRepairGroupFactory
+{
+    private final Node node1 = mock(Node.class);
+    private final Node node2 = mock(Node.class);
+    private final Node node3 = mock(Node.class);
+    private final Node node4 = mock(Node.class);
+
+    @Test
+    public void testNoVnodes()
+    {
+        assertThat(VnodeRepairGroupFactory.INSTANCE.generateReplicaRepairGroups(Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    public void testSingleReplicaSet()
+    {
+        ImmutableSet<Node> replicas = ImmutableSet.of(node1, node2, node3);
+        LongTokenRange range1 = new LongTokenRange(1, 2);
+        LongTokenRange range2 = new LongTokenRange(2, 3);
+        LongTokenRange range3 = new LongTokenRange(3, 4);
+
+        List<ReplicaRepairGroup> replicaRepairGroups = VnodeRepairGroupFactory.INSTANCE.generateReplicaRepairGroups(Arrays.asList(
+                new VnodeRepairState(range1, replicas, 3),
+                new VnodeRepairState(range2, replicas, 1),
+                new VnodeRepairState(range3, replicas, 2)));
+
+        assertThat(replicaRepairGroups).hasSize(1);
+        assertThat(replicaRepairGroups.get(0).getReplicas()).isEqualTo(replicas);
+        assertThat(replicaRepairGroups.get(0)).containsExactly(range1, range2, range3);
+    }
+
+    @Test
+    public void testGroupsAreSortedByOldestVnode()
+    {
+        ImmutableSet<Node> replicas1 = ImmutableSet.of(node1, node2, node3);
+        ImmutableSet<Node> replicas2 = ImmutableSet.of(node1, node2, node4);
+        ImmutableSet<Node> replicas3 = ImmutableSet.of(node1, node3, node4);
+        LongTokenRange range1 = new LongTokenRange(1, 2);
+        LongTokenRange range2 = new LongTokenRange(2, 3);
+        LongTokenRange range3 = new LongTokenRange(3, 4);
+        LongTokenRange range4 = new LongTokenRange(4, 5);
+        LongTokenRange range5 = new LongTokenRange(5, 6);
+
+        List<ReplicaRepairGroup> replicaRepairGroups = VnodeRepairGroupFactory.INSTANCE.generateReplicaRepairGroups(Arrays.asList(
+                new VnodeRepairState(range1, replicas1, 5),
+                new VnodeRepairState(range2, replicas2, 3),
+                new VnodeRepairState(range3, replicas3, 4),
+                new VnodeRepairState(range4, replicas1, 2),
+                new VnodeRepairState(range5, replicas2, 6)));
+
+        assertThat(replicaRepairGroups).hasSize(3);
+        assertThat(replicaRepairGroups.get(0).getReplicas()).isEqualTo(replicas1);
+        assertThat(replicaRepairGroups.get(0)).containsExactly(range1, range4);
+        assertThat(replicaRepairGroups.get(1).getReplicas()).isEqualTo(replicas2);
+        assertThat(replicaRepairGroups.get(1)).containsExactly(range2, range5);
+        assertThat(replicaRepairGroups.get(2).getReplicas()).isEqualTo(replicas3);
+        assertThat(replicaRepairGroups.get(2)).containsExactly(range3);
+    }
+
+    @Test
+    public void testGroupsWithSameRepairTimeKeepOrder()
+    {
+        ImmutableSet<Node> replicas1 = ImmutableSet.of(node1, node2, node3);
+        ImmutableSet<Node> replicas2 = ImmutableSet.of(node1, node2, node4);
+        LongTokenRange range1 = new LongTokenRange(1, 2);
+        LongTokenRange range2 = new LongTokenRange(2, 3);
+        LongTokenRange range3 = new LongTokenRange(3, 4);
+
+        List<ReplicaRepairGroup> replicaRepairGroups = VnodeRepairGroupFactory.INSTANCE.generateReplicaRepairGroups(Arrays.asList(
+                new VnodeRepairState(range1, replicas1, 2),
+                new VnodeRepairState(range2, replicas2, 1),
+                new VnodeRepairState(range3, replicas1, 1)));
+
+        assertThat(replicaRepairGroups).hasSize(2);
+        assertThat(replicaRepairGroups.get(0).getReplicas()).isEqualTo(replicas2);
+        assertThat(replicaRepairGroups.get(1).getReplicas()).isEqualTo(replicas1);
+        assertThat(replicaRepairGroups.get(1)).containsExactly(range1, range3);
+    }
+
+    @Test
+    public void testEqualReplicaSetsAreGrouped()
+    {
+        LongTokenRange range1 = new LongTokenRange(1, 2);
+        LongTokenRange range2 = new LongTokenRange(2, 3);
+
+        List<VnodeRepairState> vnodeRepairStates = new ArrayList<>();
+        vnodeRepairStates.add(new VnodeRepairState(range1, ImmutableSet.of(node1, node2, node3), 1));
+        vnodeRepairStates.add(new VnodeRepairState(range2, ImmutableSet.of(node3, node2, node1), 2));
+
+        List<ReplicaRepairGroup> replicaRepairGroups = VnodeRepairGroupFactory.INSTANCE.generateReplicaRepairGroups(vnodeRepairStates);
+
+        assertThat(replicaRepairGroups).hasSize(1);
+        assertThat(replicaRepairGroups.get(0)).containsExactly(range1, range2);
+    }
+}
@@ -16,8 +16,11 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair.state;
 
 import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.InetAddress;
@@ -26,15 +29,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -57,6 +64,10 @@ public class TestVnodeRepairStateFactoryImpl
 
     private RepairHistoryProvider repairHistoryProvider = new MockedRepairHistoryProvider(TABLE_REFERENCE);
     private List<RepairEntry> repairHistory = new ArrayList<>();
+    private Long iteratedFrom = null;
+
+    @Mock
+    private RepairStateStore mockRepairStateStore;
 
     @Before
     public void setup()
@@ -265,6 +276,227 @@ public class TestVnodeRepairStateFactoryImpl
                 newState(range(5, 0), 1236L, 1237L));
     }
 
+    @Test
+    public void testUpdateStateAppliesRepairEntriesWithoutHistory() throws UnknownHostException
+    {
+        Node node1 = withNode("127.0.0.1");
+        Node node2 = withNode("127.0.0.2");
+
+        withRange(range(1, 2), node1, node2);
+        withRange(range(2, 3), node1, node2);
+
+        VnodeRepairStateFactory vnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(mockReplicationState, repairHistoryProvider, false);
+        RepairStateSnapshot previousSnapshot = snapshot(VnodeRepairState.UNREPAIRED, vnodeRepairStateFactory.calculateNewState(TABLE_REFERENCE, null));
+
+        withSuccessfulRepairHistory(range(2, 3), 2345L, 2346L); // Not read by the update
+        RepairEntry repairEntry = new RepairEntry(range(1, 2), 3456L, 3457L, getKnownReplicas(range(1, 2)), "SUCCESS");
+
+        VnodeRepairStates newStates = vnodeRepairStateFactory.updateState(TABLE_REFERENCE, previousSnapshot, Collections.singletonList(repairEntry));
+
+        assertThat(newStates.getVnodeRepairStates()).containsOnly(newState(range(1, 2), 3456L, 3457L),
+                newUnrepairedState(range(2, 3)));
+    }
+
+    @Test
+    public void testUpdateStateIgnoresFailedAndNonMatchingRepairEntries() throws UnknownHostException
+    {
+        Node node1 = withNode("127.0.0.1");
+        Node node2 = withNode("127.0.0.2");
+        Node node3 = withNode("127.0.0.3");
+
+        withRange(range(1, 2), node1, node2);
+        withRange(range(2, 3), node1, node2);
+
+        VnodeRepairStateFactory vnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(mockReplicationState, repairHistoryProvider, false);
+        RepairStateSnapshot previousSnapshot = snapshot(VnodeRepairState.UNREPAIRED, vnodeRepairStateFactory.calculateNewState(TABLE_REFERENCE, null));
+
+        List<RepairEntry> repairEntries = Arrays.asList(
+                new RepairEntry(range(1, 2), 3456L, 3457L, getKnownReplicas(range(1, 2)), "FAILED"),
+                new RepairEntry(range(2, 3), 3456L, 3457L, ImmutableSet.of(node1, node3), "SUCCESS"));
+
+        VnodeRepairStates newStates = vnodeRepairStateFactory.updateState(TABLE_REFERENCE, previousSnapshot, repairEntries);
+
+        assertThat(newStates.getVnodeRepairStates()).containsOnly(newUnrepairedState(range(1, 2)),
+                newUnrepairedState(range(2, 3)));
+    }
+
+    @Test
+    public void testUpdateStateAfterTopologyChangeReadsHistory() throws UnknownHostException
+    {
+        Node node1 = withNode("127.0.0.1");
+        Node node2 = withNode("127.0.0.2");
+        Node node3 = withNode("127.0.0.3");
+
+        withRange(range(1, 2), node1, node2);
+        withRange(range(2, 3), node1, node2);
+
+        VnodeRepairStateFactory vnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(mockReplicationState, repairHistoryProvider, false);
+        RepairStateSnapshot previousSnapshot = snapshot(VnodeRepairState.UNREPAIRED, vnodeRepairStateFactory.calculateNewState(TABLE_REFERENCE, null));
+
+        replaceRange(range(2, 3), range(2, 3), node1, node3);
+        withSuccessfulRepairHistory(range(2, 3), 2345L, 2346L);
+
+        VnodeRepairStates newStates = vnodeRepairStateFactory.updateState(TABLE_REFERENCE, previousSnapshot, Collections.emptyList());
+
+        assertThat(newStates.getVnodeRepairStates()).containsOnly(newUnrepairedState(range(1, 2)),
+                newState(range(2, 3), 2345L, 2346L));
+    }
+
+    @Test
+    public void testStoredStateIsUsedWithoutPrevious() throws UnknownHostException
+    {
+        Node node1 = withNode("127.0.0.1");
+        Node node2 = withNode("127.0.0.2");
+
+        withRange(range(1, 2), node1, node2);
+        withRange(range(2, 3), node1, node2);
+
+        withStoredState(5000L,
+                storedEntry(range(1, 2), 1234L, 1235L, node1, node2),
+                storedEntry(range(2, 3), VnodeRepairState.UNREPAIRED, VnodeRepairState.UNREPAIRED, node1, node2));
+        withSuccessfulRepairHistory(range(2, 3), 6000L, 6001L);
+
+        VnodeRepairStateFactory vnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(mockReplicationState, repairHistoryProvider, false, mockRepairStateStore);
+        VnodeRepairStates newStates = vnodeRepairStateFactory.calculateNewState(TABLE_REFERENCE, null);
+
+        assertThat(newStates.getVnodeRepairStates()).containsOnly(newState(range(1, 2), 1234L, 1235L),
+                newState(range(2, 3), 6000L, 6001L));
+        assertThat(iteratedFrom).isEqualTo(5000L);
+        verify(mockRepairStateStore).store(eq(TABLE_REFERENCE), anyLong(), eq(newStates.getVnodeRepairStates()));
+    }
+
+    @Test
+    public void testStoredSubRangeStateIsUsedWithoutPrevious() throws UnknownHostException
+    {
+        Node node1 = withNode("127.0.0.1");
+        Node node2 = withNode("127.0.0.2");
+
+        withRange(range(1, 5), node1, node2);
+
+        withStoredState(5000L,
+                storedEntry(range(1, 3), 1234L, 1235L, node1, node2),
+                storedEntry(range(3, 5), 1236L, 1237L, node1, node2));
+
+        VnodeRepairStateFactory subRangeRepairStateFactory = new VnodeRepairStateFactoryImpl(mockReplicationState, repairHistoryProvider, true, mockRepairStateStore);
+        VnodeRepairStates newStates = subRangeRepairStateFactory.calculateNewState(TABLE_REFERENCE, null);
+
+        assertThat(newStates.getVnodeRepairStates()).containsOnly(newState(range(1, 5), 1234L, 1237L));
+        assertThat(iteratedFrom).isEqualTo(5000L);
+    }
+
+    @Test
+    public void testStoredStateWithChangedReplicasIsIgnored() throws UnknownHostException
+    {
+        Node node1 = withNode("127.0.0.1");
+        Node node2 = withNode("127.0.0.2");
+        Node node3 = withNode("127.0.0.3");
+
+        withRange(range(1, 2), node1, node2);
+        withRange(range(2, 3), node1, node2);
+
+        withStoredState(5000L,
+                storedEntry(range(1, 2), 1234L, 1235L, node1, node2),
+                storedEntry(range(2, 3), 1234L, 1235L, node1, node3));
+        withSuccessfulRepairHistory(range(2, 3), 2345L, 2346L);
+
+        VnodeRepairStateFactory vnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(mockReplicationState, repairHistoryProvider, false, mockRepairStateStore);
+        VnodeRepairStates newStates = vnodeRepairStateFactory.calculateNewState(TABLE_REFERENCE, null);
+
+        assertThat(newStates.getVnodeRepairStates()).containsOnly(newUnrepairedState(range(1, 2)),
+                newState(range(2, 3), 2345L, 2346L));
+        assertThat(iteratedFrom).isNull();
+    }
+
+    @Test
+    public void testStoredStateMissingVnodeIsIgnored() throws UnknownHostException
+    {
+        Node node1 = withNode("127.0.0.1");
+        Node node2 = withNode("127.0.0.2");
+
+        withRange(range(1, 2), node1, node2);
+        withRange(range(2, 3), node1, node2);
+
+        withStoredState(5000L, storedEntry(range(1, 2), 1234L, 1235L, node1, node2));
+
+        VnodeRepairStateFactory vnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(mockReplicationState, repairHistoryProvider, false, mockRepairStateStore);
+        VnodeRepairStates newStates = vnodeRepairStateFactory.calculateNewState(TABLE_REFERENCE, null);
+
+        assertThat(newStates.getVnodeRepairStates()).containsOnly(newUnrepairedState(range(1, 2)),
+                newUnrepairedState(range(2, 3)));
+        assertThat(iteratedFrom).isNull();
+    }
+
+    @Test
+    public void testStoredStateIsReconciledAtOldestRunningRepair() throws UnknownHostException
+    {
+        Node node1 = withNode("127.0.0.1");
+        Node node2 = withNode("127.0.0.2");
+
+        withRange(range(1, 2), node1, node2);
+        withRange(range(2, 3), node1, node2);
+
+        long now = System.currentTimeMillis();
+        long runningStartedAt = now - TimeUnit.HOURS.toMillis(1);
+        long abandonedStartedAt = now - VnodeRepairStateFactoryImpl.MAX_SESSION_TIME_IN_MS - TimeUnit.HOURS.toMillis(1);
+
+        withSuccessfulRepairHistory(range(1, 2), runningStartedAt - 1000L, runningStartedAt - 500L);
+        withRepairHistory(range(2, 3), runningStartedAt, VnodeRepairState.UNREPAIRED, getKnownReplicas(range(2, 3)),
+                "STARTED");
+        withRepairHistory(range(1, 2), abandonedStartedAt, VnodeRepairState.UNREPAIRED, getKnownReplicas(range(1, 2)),
+                "STARTED");
+
+        VnodeRepairStateFactory vnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(mockReplicationState, repairHistoryProvider, false, mockRepairStateStore);
+        VnodeRepairStates newStates = vnodeRepairStateFactory.calculateNewState(TABLE_REFERENCE, null);
+
+        assertThat(newStates.getVnodeRepairStates()).containsOnly(
+                newState(range(1, 2), runningStartedAt - 1000L, runningStartedAt - 500L),
+                newUnrepairedState(range(2, 3)));
+        verify(mockRepairStateStore).store(eq(TABLE_REFERENCE), eq(runningStartedAt), eq(newStates.getVnodeRepairStates()));
+    }
+
+    @Test
+    public void testStoredStateIsReconciledAtCalculationWithoutRunningRepairs() throws UnknownHostException
+    {
+        Node node1 = withNode("127.0.0.1");
+        Node node2 = withNode("127.0.0.2");
+
+        withRange(range(1, 2), node1, node2);
+
+        long before = System.currentTimeMillis();
+        withSuccessfulRepairHistory(range(1, 2), before - 1000L, before - 500L);
+
+        VnodeRepairStateFactory vnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(mockReplicationState, repairHistoryProvider, false, mockRepairStateStore);
+        vnodeRepairStateFactory.calculateNewState(TABLE_REFERENCE, null);
+
+        ArgumentCaptor<Long> reconciledAt = ArgumentCaptor.forClass(Long.class);
+        verify(mockRepairStateStore).store(eq(TABLE_REFERENCE), reconciledAt.capture(), any());
+        assertThat(reconciledAt.getValue()).isBetween(before, System.currentTimeMillis());
+    }
+
+    private void withStoredState(long reconciledAt, StoredRepairState.Entry... entries)
+    {
+        when(mockRepairStateStore.load(eq(TABLE_REFERENCE))).thenReturn(new StoredRepairState(reconciledAt, Arrays.asList(entries)));
+    }
+
+    private StoredRepairState.Entry storedEntry(LongTokenRange range, long startedAt, long finishedAt, Node... replicas)
+    {
+        Set<UUID> replicaIds = new HashSet<>();
+        for (Node replica : replicas)
+        {
+            replicaIds.add(replica.getId());
+        }
+        return new StoredRepairState.Entry(range, replicaIds, startedAt, finishedAt);
+    }
+
+    private RepairStateSnapshot snapshot(long repairedAt, VnodeRepairStates vnodeRepairStates)
+    {
+        return RepairStateSnapshot.newBuilder()
+                .withLastCompletedAt(repairedAt)
+                .withReplicaRepairGroups(Collections.emptyList())
+                .withVnodeRepairStates(vnodeRepairStates)
+                .build();
+    }
+
     private RepairStateSnapshot snapshot(long repairedAt, VnodeRepairState... states)
     {
         return RepairStateSnapshot.newBuilder()
@@ -276,7 +508,7 @@ public class TestVnodeRepairStateFactoryImpl
 
     private VnodeRepairStates vnodeRepairStates(VnodeRepairState... states)
     {
-        return VnodeRepairStatesImpl.newBuilder(Arrays.asList(states)).build();
+        return CompactVnodeRepairStates.newBuilder(Arrays.asList(states)).build();
     }
 
     private void withSubRangeSuccessfulRepairHistory(LongTokenRange range, long startedAt, long finishedAt)
@@ -371,6 +603,7 @@ public class TestVnodeRepairStateFactoryImpl
         Node node = mock(Node.class);
         InetAddress nodeAddress = InetAddress.getByName(inetAddress);
         when(node.getPublicAddress()).thenReturn(nodeAddress);
+        when(node.getId()).thenReturn(UUID.nameUUIDFromBytes(nodeAddress.getAddress()));
         return node;
     }
 
@@ -382,7 +615,7 @@ public class TestVnodeRepairStateFactoryImpl
     private void assertVnodeStates(RepairStateSnapshot previous, VnodeRepairState... states)
     {
         VnodeRepairStateFactory vnodeRepairStateFactory = new VnodeRepairStateFactoryImpl(mockReplicationState, repairHistoryProvider, false);
-        assertNewState(vnodeRepairStateFactory, previous, VnodeRepairStatesImpl.class, states);
+        assertNewState(vnodeRepairStateFactory, previous, CompactVnodeRepairStates.class, states);
     }
 
     private void assertSubRangeStates(VnodeRepairState... states)
@@ -442,6 +675,7 @@ public class TestVnodeRepairStateFactoryImpl
         public Iterator<RepairEntry> iterate(TableReference tableReference, long to, long from, Predicate<RepairEntry> predicate)
         {
             assertThat(tableReference).isEqualTo(myTableReference);
+            iteratedFrom = from;
 
             return new MockedRepairEntryIterator(repairHistory.iterator(), predicate);
         }
@@ -169,6 +169,26 @@ public class TestVnodeRepairStateSummarizer
         );
     }
 
+    @Test
+    public void summarizeSingleTokenMultiplePartialOverlappingKeepsFinishedAtOfLatestRepair()
+    {
+        VnodeRepairState baseVnode = withVnode(500, 3000, dateToTimestamp("2020-03-12T16:00:00"));
+
+        VnodeRepairState partialVnode1 = withVnode(600, 1800, dateToTimestamp("2020-03-13T16:00:00"),
+                dateToTimestamp("2020-03-13T16:20:00"));
+        VnodeRepairState partialVnode2 = withVnode(1600, 2800, dateToTimestamp("2020-03-13T17:00:01"),
+                dateToTimestamp("2020-03-13T17:10:00"));
+
+        List<VnodeRepairState> actualVnodeRepairStates = summarize(baseVnode, partialVnode2, partialVnode1);
+
+        assertThat(actualVnodeRepairStates).containsExactly(
+                withVnode(500, 600, dateToTimestamp("2020-03-12T16:00:00")),
+                withVnode(600, 1600, dateToTimestamp("2020-03-13T16:00:00"), dateToTimestamp("2020-03-13T16:20:00")),
+                withVnode(1600, 2800, dateToTimestamp("2020-03-13T17:00:01"), dateToTimestamp("2020-03-13T17:10:00")),
+                withVnode(2800, 3000, dateToTimestamp("2020-03-12T16:00:00"))
+        );
+    }
+
     @Test
     public void summarizeSingleTokenMultiplePartialOverlappingMoreThanOneHourBefore()
     {
@@ -365,6 +385,62 @@ public class TestVnodeRepairStateSummarizer
         );
     }
 
+    @Test
+    public void summarizeFullTokenRangeMultiplePartial()
+    {
+        VnodeRepairState baseVnode = withVnode(100, 100, dateToTimestamp("2020-03-12T16:00:00"));
+
+        VnodeRepairState partialVnode1 = withVnode(200, 100, dateToTimestamp("2020-03-13T16:00:00"));
+        VnodeRepairState partialVnode2 = withVnode(150, 300, dateToTimestamp("2020-03-13T18:00:00"));
+
+        List<VnodeRepairState> actualVnodeRepairStates = summarize(baseVnode, partialVnode2, partialVnode1);
+
+        assertThat(actualVnodeRepairStates).containsExactly(
+                withVnode(100, 150, dateToTimestamp("2020-03-12T16:00:00")),
+                withVnode(150, 300, dateToTimestamp("2020-03-13T18:00:00")),
+                withVnode(300, 100, dateToTimestamp("2020-03-13T16:00:00"))
+        );
+    }
+
+    @Test
+    public void summarizePartialNotCoveredByBaseVnode()
+    {
+        VnodeRepairState baseVnode1 = withVnode(500, 3000, dateToTimestamp("2020-03-12T16:00:00"));
+        VnodeRepairState baseVnode2 = withVnode(3000, 5500, dateToTimestamp("2020-03-12T16:05:00"));
+
+        VnodeRepairState partialVnode1 = withVnode(2500, 3500, dateToTimestamp("2020-03-13T16:00:00"));
+        VnodeRepairState partialVnode2 = withVnode(3000, 4000, dateToTimestamp("2020-03-13T16:00:00"));
+
+        List<VnodeRepairState> actualVnodeRepairStates = summarize(Arrays.asList(baseVnode1, baseVnode2),
+                partialVnode1, partialVnode2);
+
+        assertThat(actualVnodeRepairStates).containsExactly(
+                partialVnode1,
+                baseVnode1,
+                withVnode(3000, 4000, dateToTimestamp("2020-03-13T16:00:00")),
+                withVnode(4000, 5500, dateToTimestamp("2020-03-12T16:05:00"))
+        );
+    }
+
+    @Test
+    public void summarizeManyOverlappingPartial()
+    {
+        VnodeRepairState baseVnode = withVnode(0, 10000, dateToTimestamp("2020-03-12T16:00:00"));
+
+        VnodeRepairState[] partialVnodes = new VnodeRepairState[999];
+        for (int i = 0; i < partialVnodes.length; i++)
+        {
+            // Every sub range overlaps the next one and is repaired earlier
+            partialVnodes[i] = withVnode(i * 10, i * 10 + 20, dateToTimestamp("2020-03-13T16:00:00") + i);
+        }
+
+        List<VnodeRepairState> actualVnodeRepairStates = summarize(baseVnode, partialVnodes);
+
+        assertThat(actualVnodeRepairStates).containsExactly(
+                withVnode(0, 10000, dateToTimestamp("2020-03-13T16:00:00"))
+        );
+    }
+
     private List<VnodeRepairState> summarize(VnodeRepairState baseVnode, VnodeRepairState... partialVnodes)
     {
         return summarize(Collections.singletonList(baseVnode), partialVnodes);
@@ -380,6 +456,11 @@ public class TestVnodeRepairStateSummarizer
         return new VnodeRepairState(new LongTokenRange(start, end), ImmutableSet.of(mockNode), lastRepairedAt);
     }
 
+    private VnodeRepairState withVnode(long start, long end, long startedAt, long finishedAt)
+    {
+        return new VnodeRepairState(new LongTokenRange(start, end), ImmutableSet.of(mockNode), startedAt, finishedAt);
+    }
+
     private long dateToTimestamp(String date)
     {
         return LocalDateTime.parse(date).toEpochSecond(ZoneOffset.UTC) * 1000;
@@ -258,6 +258,107 @@ public class TestVnodeRepairStates
                 .collect(Collectors.toList());
     }
 
+    @Test
+    public void testCompactCombineWithRepairedAt()
+    {
+        LongTokenRange range = new LongTokenRange(1, 2);
+        LongTokenRange range2 = new LongTokenRange(2, 3);
+        Node node1 = mock(Node.class);
+        Node node2 = mock(Node.class);
+
+        VnodeRepairState vnodeRepairState = new VnodeRepairState(range, ImmutableSet.of(node1), 1234L, 1235L);
+        VnodeRepairState vnodeRepairState2 = new VnodeRepairState(range2, ImmutableSet.of(node2), 1240L, 1241L);
+
+        List<VnodeRepairState> base = Arrays.asList(vnodeRepairState, vnodeRepairState2);
+
+        VnodeRepairStates vnodeRepairStates = VnodeRepairStatesImpl.newBuilder(base).build().combineWithRepairedAt(1238L);
+        CompactVnodeRepairStates compactVnodeRepairStates = CompactVnodeRepairStates.newBuilder(base).build();
+        CompactVnodeRepairStates combinedVnodeRepairStates = compactVnodeRepairStates.combineWithRepairedAt(1238L);
+
+        assertThat(combinedVnodeRepairStates.getVnodeRepairStates()).containsExactly(
+                new VnodeRepairState(range, ImmutableSet.of(node1), 1238L),
+                vnodeRepairState2);
+        assertThat(combinedVnodeRepairStates.getVnodeRepairStates())
+                .containsExactlyElementsOf(vnodeRepairStates.getVnodeRepairStates());
+        assertThat(compactVnodeRepairStates.getVnodeRepairStates()).containsExactly(vnodeRepairState, vnodeRepairState2);
+    }
+
+    @Test
+    public void testCompactCombineWithOlderRepairedAt()
+    {
+        LongTokenRange range = new LongTokenRange(1, 2);
+        Node node1 = mock(Node.class);
+
+        VnodeRepairState vnodeRepairState = new VnodeRepairState(range, ImmutableSet.of(node1), 1234L, 1235L);
+
+        CompactVnodeRepairStates compactVnodeRepairStates = CompactVnodeRepairStates
+                .newBuilder(Collections.singletonList(vnodeRepairState))
+                .build();
+
+        assertThat(compactVnodeRepairStates.combineWithRepairedAt(1230L)).isSameAs(compactVnodeRepairStates);
+    }
+
+    @Test
+    public void testCompactKeepsInsertionOrder()
+    {
+        Node node1 = mock(Node.class);
+        List<VnodeRepairState> base = new ArrayList<>();
+        for (long i = 10; i > 0; i--)
+        {
+            base.add(new VnodeRepairState(new LongTokenRange(i, i + 1), ImmutableSet.of(node1), i));
+        }
+
+        CompactVnodeRepairStates compactVnodeRepairStates = CompactVnodeRepairStates.newBuilder(base).build();
+
+        assertThat(compactVnodeRepairStates.size()).isEqualTo(base.size());
+        assertThat(compactVnodeRepairStates.getVnodeRepairStates()).containsExactlyElementsOf(base);
+    }
+
+    @Test
+    public void testCompactAccessors()
+    {
+        Node node1 = mock(Node.class);
+        Node node2 = mock(Node.class);
+        VnodeRepairState first = new VnodeRepairState(new LongTokenRange(1, 2), ImmutableSet.of(node1), 1234L, 1240L);
+        VnodeRepairState second = new VnodeRepairState(new LongTokenRange(2, 3), ImmutableSet.of(node1, node2),
+                VnodeRepairState.UNREPAIRED);
+
+        CompactVnodeRepairStates compactVnodeRepairStates = CompactVnodeRepairStates
+                .newBuilder(Arrays.asList(first, second)).build();
+
+        assertThat(compactVnodeRepairStates.tokenRange(0)).isEqualTo(first.getTokenRange());
+        assertThat(compactVnodeRepairStates.replicas(0)).isEqualTo(first.getReplicas());
+        assertThat(compactVnodeRepairStates.startedAt(0)).isEqualTo(1234L);
+        assertThat(compactVnodeRepairStates.finishedAt(0)).isEqualTo(1240L);
+        assertThat(compactVnodeRepairStates.lastRepairedAt(0)).isEqualTo(1234L);
+        assertThat(compactVnodeRepairStates.get(0)).isEqualTo(first);
+
+        assertThat(compactVnodeRepairStates.tokenRange(1)).isEqualTo(second.getTokenRange());
+        assertThat(compactVnodeRepairStates.replicas(1)).isEqualTo(second.getReplicas());
+        assertThat(compactVnodeRepairStates.lastRepairedAt(1)).isEqualTo(VnodeRepairState.UNREPAIRED);
+        assertThat(compactVnodeRepairStates.get(1)).isEqualTo(second);
+    }
+
+    @Test
+    public void testCompactEquals()
+    {
+        LongTokenRange range = new LongTokenRange(1, 2);
+        Node node1 = mock(Node.class);
+        Node node2 = mock(Node.class);
+
+        VnodeRepairState vnodeRepairState = new VnodeRepairState(range, ImmutableSet.of(node1), 1234L);
+        VnodeRepairState otherReplicas = new VnodeRepairState(range, ImmutableSet.of(node2), 1234L);
+
+        CompactVnodeRepairStates compactVnodeRepairStates = CompactVnodeRepairStates
+                .newBuilder(Collections.singletonList(vnodeRepairState)).build();
+
+        assertThat(compactVnodeRepairStates)
+                .isEqualTo(CompactVnodeRepairStates.newBuilder(Collections.singletonList(vnodeRepairState)).build())
+                .hasSameHashCodeAs(CompactVnodeRepairStates.newBuilder(Collections.singletonList(vnodeRepairState)).build())
+                .isNotEqualTo(CompactVnodeRepairStates.newBuilder(Collections.singletonList(otherReplicas)).build())
+                .isNotEqualTo(compactVnodeRepairStates.combineWithRepairedAt(1235L));
+    }
+
     @Test
     public void testEqualsContract()
     {
@@ -293,5 +394,12 @@ public class TestVnodeRepairStates
                 .build();
 
         assertThat(actualVnodeRepairStates.getVnodeRepairStates()).containsOnlyElementsOf(expectedVnodeRepairStates);
+
+        VnodeRepairStates actualCompactVnodeRepairStates = CompactVnodeRepairStates.newBuilder(base)
+                .updateVnodeRepairStates(toUpdate)
+                .build();
+
+        assertThat(actualCompactVnodeRepairStates.getVnodeRepairStates())
+                .containsExactlyElementsOf(actualVnodeRepairStates.getVnodeRepairStates());
     }
 }
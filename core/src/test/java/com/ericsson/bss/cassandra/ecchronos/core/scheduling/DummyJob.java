@@ -16,6 +16,7 @@ package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
 
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.ScheduledJobException;
@@ -29,6 +30,11 @@ public class DummyJob extends ScheduledJob
         super(new ConfigurationBuilder().withPriority(priority).withRunInterval(1, TimeUnit.SECONDS).build());
     }
 
+    public DummyJob(Priority priority, UUID id)
+    {
+        super(new ConfigurationBuilder().withPriority(priority).withRunInterval(1, TimeUnit.SECONDS).build(), id);
+    }
+
     public boolean hasRun()
     {
         return hasRun;
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+
+public class TestLockFactory
+{
+    private final List<DummyLock> myLocks = new ArrayList<>();
+
+    @Test
+    public void testLockMultipleResources() throws LockException
+    {
+        LockFactory lockFactory = new DummyLockFactory(null);
+
+        LockFactory.DistributedLock lock = lockFactory.tryLock(Arrays.asList(
+                new LockFactory.Resource("dc1", "resource1"),
+                new LockFactory.Resource("dc2", "resource2")), 1, Collections.emptyMap());
+
+        assertThat(myLocks).hasSize(2);
+        assertThat(myLocks).noneMatch(l -> l.closed);
+
+        lock.close();
+
+        assertThat(myLocks).allMatch(l -> l.closed);
+    }
+
+    @Test
+    public void testLockMultipleResourcesReleasesAcquiredLocksOnFailure()
+    {
+        LockFactory lockFactory = new DummyLockFactory("resource2");
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> lockFactory.tryLock(Arrays.asList(
+                new LockFactory.Resource("dc1", "resource1"),
+                new LockFactory.Resource("dc1", "resource2"),
+                new LockFactory.Resource("dc1", "resource3")), 1, Collections.emptyMap()));
+
+        assertThat(myLocks).hasSize(1);
+        assertThat(myLocks).allMatch(l -> l.closed);
+    }
+
+    private class DummyLockFactory implements LockFactory
+    {
+        private final String myFailingResource;
+
+        DummyLockFactory(String failingResource)
+        {
+            myFailingResource = failingResource;
+        }
+
+        @Override
+        public DistributedLock tryLock(String dataCenter, String resource, int priority, Map<String, String> metadata)
+                throws LockException
+        {
+            if (resource.equals(myFailingResource))
+            {
+                throw new LockException("Unable to lock " + resource);
+            }
+
+            DummyLock lock = new DummyLock();
+            myLocks.add(lock);
+            return lock;
+        }
+
+        @Override
+        public Map<String, String> getLockMetadata(String dataCenter, String resource)
+        {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public boolean sufficientNodesForLocking(String dataCenter, String resource)
+        {
+            return true;
+        }
+    }
+}
@@ -28,6 +28,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -57,6 +59,7 @@ public class TestScheduleManager
     {
         myScheduler = ScheduleManagerImpl.builder()
                 .withLockFactory(myLockFactory)
+                .withStartWorkers(false)
                 .build();
         myScheduler.addRunPolicy(job -> myRunPolicy.validate(job));
 
@@ -150,7 +153,7 @@ public class TestScheduleManager
     }
 
     @Test (timeout = 2000L)
-    public void testRunningTwoJobsInParallelShouldFail() throws InterruptedException
+    public void testRunningTwoJobsInParallelSkipsRunningJob() throws InterruptedException
     {
         LongRunningJob job = new LongRunningJob(ScheduledJob.Priority.HIGH);
         LongRunningJob job2 = new LongRunningJob(ScheduledJob.Priority.LOW);
@@ -175,10 +178,227 @@ public class TestScheduleManager
         cdl.await();
 
         assertThat(job.hasRun()).isTrue();
-        assertThat(job2.hasRun()).isFalse();
+        assertThat(job2.hasRun()).isTrue();
+        assertThat(job.getNumberOfRuns()).isEqualTo(1);
         assertThat(myScheduler.getQueueSize()).isEqualTo(2);
     }
 
+    @Test (timeout = 5000L)
+    public void testRunningTwoJobsWithWorkers() throws InterruptedException
+    {
+        myScheduler.close();
+        myScheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withRunInterval(10, TimeUnit.MILLISECONDS)
+                .withWorkers(2)
+                .build();
+
+        LongRunningJob job = new LongRunningJob(ScheduledJob.Priority.HIGH);
+        LongRunningJob job2 = new LongRunningJob(ScheduledJob.Priority.LOW);
+        myScheduler.schedule(job);
+        myScheduler.schedule(job2);
+
+        while(!job.hasStarted() || !job2.hasStarted())
+        {
+            Thread.sleep(10);
+        }
+
+        assertThat(job.getNumberOfRuns()).isEqualTo(1);
+        assertThat(job2.getNumberOfRuns()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAsyncTaskKeepsLockUntilCompleted() throws LockException
+    {
+        DummyLock lock1 = new DummyLock();
+        DummyLock lock2 = new DummyLock();
+        when(myLockFactory.tryLock(any(), anyString(), anyInt(), anyMap())).thenReturn(lock1, lock2);
+
+        AsyncJob job = new AsyncJob(ScheduledJob.Priority.HIGH, 2);
+        myScheduler.schedule(job);
+
+        myScheduler.run();
+
+        assertThat(job.getStartedTasks()).hasSize(1);
+        assertThat(lock1.closed).isFalse();
+
+        job.getStartedTasks().get(0).complete(true);
+        myScheduler.run();
+
+        assertThat(lock1.closed).isTrue();
+        assertThat(job.getStartedTasks()).hasSize(2);
+        assertThat(lock2.closed).isFalse();
+
+        job.getStartedTasks().get(1).complete(true);
+        myScheduler.run();
+
+        assertThat(lock2.closed).isTrue();
+        assertThat(job.getCompletedTasks()).isEqualTo(2);
+    }
+
+    @Test (timeout = 5000L)
+    public void testAsyncTaskOccupiesWorker() throws InterruptedException
+    {
+        myScheduler.close();
+        myScheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withRunInterval(10, TimeUnit.MILLISECONDS)
+                .build();
+
+        AsyncJob job = new AsyncJob(ScheduledJob.Priority.HIGH, 1);
+        DummyJob job2 = new DummyJob(ScheduledJob.Priority.LOW);
+        myScheduler.schedule(job);
+
+        while (job.getStartedTasks().isEmpty())
+        {
+            Thread.sleep(10);
+        }
+
+        myScheduler.schedule(job2);
+        Thread.sleep(100);
+
+        assertThat(job2.hasRun()).isFalse();
+
+        job.getStartedTasks().get(0).complete(true);
+
+        while (!job2.hasRun())
+        {
+            Thread.sleep(10);
+        }
+
+        assertThat(job.getCompletedTasks()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAsyncTaskCompletedAfterClose() throws LockException
+    {
+        DummyLock lock = new DummyLock();
+        when(myLockFactory.tryLock(any(), anyString(), anyInt(), anyMap())).thenReturn(lock);
+
+        AsyncJob job = new AsyncJob(ScheduledJob.Priority.HIGH, 1);
+        myScheduler.schedule(job);
+
+        myScheduler.run();
+        myScheduler.close();
+
+        job.getStartedTasks().get(0).complete(false);
+
+        assertThat(lock.closed).isTrue();
+        assertThat(job.getCompletedTasks()).isEqualTo(1);
+    }
+
+    @Test (timeout = 2000L)
+    public void testWorkerWokenUpOnSchedule() throws InterruptedException
+    {
+        myScheduler.close();
+        myScheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withRunInterval(1, TimeUnit.DAYS)
+                .build();
+
+        DummyJob job = new DummyJob(ScheduledJob.Priority.LOW);
+        myScheduler.schedule(job);
+
+        while(!job.hasRun())
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test (timeout = 2000L)
+    public void testWorkerWakesUpWhenJobBecomesRunnable() throws InterruptedException
+    {
+        myScheduler.close();
+        myScheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withRunInterval(1, TimeUnit.DAYS)
+                .build();
+
+        AtomicInteger validations = new AtomicInteger();
+        myScheduler.addRunPolicy(job -> validations.getAndIncrement() == 0 ? 100L : -1L);
+
+        DummyJob job = new DummyJob(ScheduledJob.Priority.LOW);
+        myScheduler.schedule(job);
+
+        while(!job.hasRun())
+        {
+            Thread.sleep(10);
+        }
+
+        assertThat(validations.get()).isGreaterThan(1);
+    }
+
+    @Test (timeout = 5000L)
+    public void testStateOfJobIsNotEvaluatedConcurrently() throws InterruptedException
+    {
+        StatefulJob job = new StatefulJob(ScheduledJob.State.RUNNABLE);
+        myScheduler.schedule(job);
+
+        runConcurrently(4);
+
+        assertThat(job.getStateEvaluations()).isGreaterThan(0);
+        assertThat(job.getMaxConcurrentStateEvaluations()).isEqualTo(1);
+        assertThat(job.hasRun()).isTrue();
+    }
+
+    @Test (timeout = 5000L)
+    public void testFinishedJobIsOnlyFinishedOnce() throws InterruptedException
+    {
+        StatefulJob job = new StatefulJob(ScheduledJob.State.FINISHED);
+        myScheduler.schedule(job);
+
+        runConcurrently(4);
+
+        assertThat(job.getMaxConcurrentStateEvaluations()).isEqualTo(1);
+        assertThat(job.getFinishedCount()).isEqualTo(1);
+        assertThat(job.hasRun()).isFalse();
+        assertThat(myScheduler.getQueueSize()).isZero();
+    }
+
+    @Test (timeout = 2000L)
+    public void testWorkerWokenUpWhenJobNotifiesChange() throws InterruptedException
+    {
+        myScheduler.close();
+        myScheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withRunInterval(1, TimeUnit.DAYS)
+                .build();
+
+        ChangingJob job = new ChangingJob(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        myScheduler.schedule(job);
+
+        Thread.sleep(100);
+        assertThat(job.hasRun()).isFalse();
+
+        job.changeRunnableTime(System.currentTimeMillis());
+
+        while(!job.hasRun())
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testJobChangeIsIgnoredAfterDeschedule()
+    {
+        ChangingJob job = new ChangingJob(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1));
+        myScheduler.schedule(job);
+        myScheduler.deschedule(job);
+
+        job.changeRunnableTime(System.currentTimeMillis());
+
+        assertThat(myScheduler.getQueueSize()).isZero();
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testNoWorkersNotAllowed()
+    {
+        ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withWorkers(0)
+                .build();
+    }
+
     @Test
     public void testTwoJobsRejected()
     {
@@ -265,10 +485,133 @@ public class TestScheduleManager
 
 
 
+    private void runConcurrently(int threads) throws InterruptedException
+    {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++)
+        {
+            Thread worker = new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                    myScheduler.run();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        start.countDown();
+
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+    }
+
+    /**
+     * A job where the runnable time changes outside of a run, like the repair state of a table.
+     */
+    private class ChangingJob extends DummyJob
+    {
+        private volatile long myRunnableTime;
+
+        ChangingJob(long runnableTime)
+        {
+            super(Priority.LOW);
+            myRunnableTime = runnableTime;
+        }
+
+        void changeRunnableTime(long runnableTime)
+        {
+            myRunnableTime = runnableTime;
+            notifyChanged();
+        }
+
+        @Override
+        public long getRunnableTime()
+        {
+            return myRunnableTime;
+        }
+
+        @Override
+        public boolean runnable()
+        {
+            return myRunnableTime <= System.currentTimeMillis() && super.runnable();
+        }
+    }
+
+    /**
+     * A job where evaluating the state takes time and has side effects, like updating the repair state.
+     */
+    private class StatefulJob extends DummyJob
+    {
+        private final State myState;
+        private final AtomicInteger myConcurrentStateEvaluations = new AtomicInteger();
+        private final AtomicInteger myMaxConcurrentStateEvaluations = new AtomicInteger();
+        private final AtomicInteger myStateEvaluations = new AtomicInteger();
+        private final AtomicInteger myFinishedCount = new AtomicInteger();
+
+        StatefulJob(State state)
+        {
+            super(Priority.LOW);
+            myState = state;
+        }
+
+        @Override
+        public State getState()
+        {
+            int concurrent = myConcurrentStateEvaluations.incrementAndGet();
+            myMaxConcurrentStateEvaluations.accumulateAndGet(concurrent, Math::max);
+            myStateEvaluations.incrementAndGet();
+            try
+            {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                myConcurrentStateEvaluations.decrementAndGet();
+            }
+            return myState;
+        }
+
+        @Override
+        protected void finishJob()
+        {
+            myFinishedCount.incrementAndGet();
+        }
+
+        int getStateEvaluations()
+        {
+            return myStateEvaluations.get();
+        }
+
+        int getMaxConcurrentStateEvaluations()
+        {
+            return myMaxConcurrentStateEvaluations.get();
+        }
+
+        int getFinishedCount()
+        {
+            return myFinishedCount.get();
+        }
+    }
+
     private class LongRunningJob extends ScheduledJob
     {
         private volatile boolean hasRun = false;
         private volatile boolean hasStarted = false;
+        private final AtomicInteger numberOfRuns = new AtomicInteger();
 
         public LongRunningJob(Priority priority)
         {
@@ -285,6 +628,11 @@ public class TestScheduleManager
             return hasRun;
         }
 
+        public int getNumberOfRuns()
+        {
+            return numberOfRuns.get();
+        }
+
         @Override
         public Iterator<ScheduledTask> iterator()
         {
@@ -302,6 +650,7 @@ public class TestScheduleManager
             @Override
             public boolean execute()
             {
+                numberOfRuns.incrementAndGet();
                 hasStarted = true;
                 try
                 {
@@ -323,6 +672,66 @@ public class TestScheduleManager
         }
     }
 
+    private class AsyncJob extends ScheduledJob
+    {
+        private final List<CompletableFuture<Boolean>> myStartedTasks = new CopyOnWriteArrayList<>();
+        private final AtomicInteger myCompletedTasks = new AtomicInteger();
+        private final int myNumTasks;
+
+        AsyncJob(Priority priority, int numTasks)
+        {
+            super(new ConfigurationBuilder().withPriority(priority).withRunInterval(1, TimeUnit.SECONDS).build());
+            myNumTasks = numTasks;
+        }
+
+        List<CompletableFuture<Boolean>> getStartedTasks()
+        {
+            return myStartedTasks;
+        }
+
+        int getCompletedTasks()
+        {
+            return myCompletedTasks.get();
+        }
+
+        @Override
+        protected void postExecute(boolean successful, ScheduledTask task)
+        {
+            myCompletedTasks.incrementAndGet();
+            super.postExecute(successful, task);
+        }
+
+        @Override
+        public Iterator<ScheduledTask> iterator()
+        {
+            List<ScheduledTask> tasks = new ArrayList<>();
+
+            for (int i = 0; i < myNumTasks; i++)
+            {
+                tasks.add(new AsyncTask());
+            }
+
+            return tasks.iterator();
+        }
+
+        private class AsyncTask extends ScheduledTask
+        {
+            @Override
+            public boolean execute()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<Boolean> executeAsync()
+            {
+                CompletableFuture<Boolean> future = new CompletableFuture<>();
+                myStartedTasks.add(future);
+                return future;
+            }
+        }
+    }
+
     private class ShortRunningMultipleTasks extends ScheduledJob
     {
         private final AtomicInteger numRuns = new AtomicInteger();
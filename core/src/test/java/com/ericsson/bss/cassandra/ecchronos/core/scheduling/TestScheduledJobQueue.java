@@ -19,6 +19,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.ScheduledJobException;
@@ -136,6 +138,120 @@ public class TestScheduledJobQueue
         assertThat(queue.iterator()).toIterable().containsExactly(job2);
     }
 
+    @Test
+    public void testNextChangeTimeEmptyQueue()
+    {
+        assertThat(queue.getNextChangeTime(System.currentTimeMillis())).isEqualTo(-1L);
+    }
+
+    @Test
+    public void testNextChangeTimeIsEarliestOfJobs()
+    {
+        DummyJob job = new DummyJob(Priority.LOW);
+        DummyJob job2 = new DummyJob(Priority.HIGH);
+        job.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+        job2.setRunnableIn(TimeUnit.MINUTES.toMillis(5));
+
+        queue.add(job);
+        queue.add(job2);
+
+        long now = System.currentTimeMillis();
+        assertThat(queue.getNextChangeTime(now)).isEqualTo(job2.getRunnableTime());
+    }
+
+    @Test
+    public void testNextChangeTimeOfRunnableJobIsNextPriorityIncrease()
+    {
+        long now = System.currentTimeMillis();
+        DummyJob job = new DummyJob(Priority.LOW);
+
+        queue.add(job);
+
+        long nextChange = queue.getNextChangeTime(now);
+        assertThat(nextChange).isGreaterThan(now);
+        assertThat(nextChange).isLessThanOrEqualTo(now + TimeUnit.HOURS.toMillis(1));
+    }
+
+    @Test
+    public void testJobNotRunnableIsNotReturned()
+    {
+        DummyJob job = new DummyJob(Priority.HIGH);
+        DummyJob job2 = new DummyJob(Priority.LOW);
+        job.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+
+        queue.add(job);
+        queue.add(job2);
+
+        assertThat(queue.iterator()).toIterable().containsExactly(job2);
+        assertThat(queue.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testUpdatedJobIsNotReturned()
+    {
+        DummyJob job = new DummyJob(Priority.HIGH);
+        DummyJob job2 = new DummyJob(Priority.LOW);
+
+        queue.add(job);
+        queue.add(job2);
+
+        job.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+        queue.update(job);
+
+        assertThat(queue.iterator()).toIterable().containsExactly(job2);
+        assertThat(queue.getNextChangeTime(System.currentTimeMillis())).isLessThanOrEqualTo(job.getRunnableTime());
+    }
+
+    @Test
+    public void testJobBecomesRunnable() throws InterruptedException
+    {
+        DummyJob job = new DummyJob(Priority.HIGH);
+        job.setRunnableIn(50);
+
+        queue.add(job);
+
+        assertThat(queue.iterator()).toIterable().isEmpty();
+
+        Thread.sleep(100);
+
+        assertThat(queue.iterator()).toIterable().containsExactly(job);
+    }
+
+    @Test
+    public void testRemoveJobWithSameIdOnlyRemovesSameJob()
+    {
+        DummyJob job = new DummyJob(Priority.LOW);
+        StateJob otherJob = new StateJob(Priority.LOW, ScheduledJob.State.RUNNABLE, job.getId());
+
+        queue.add(job);
+        queue.remove(otherJob);
+
+        assertThat(queue.iterator()).toIterable().containsExactly(job);
+    }
+
+    @Test
+    public void testManyJobsInPriorityOrder()
+    {
+        List<ScheduledJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            Priority priority = Priority.values()[i % Priority.values().length];
+            jobs.add(new WaitingJob(priority, TimeUnit.HOURS.toMillis(i % 7)));
+        }
+
+        queue.addAll(jobs);
+
+        List<ScheduledJob> sorted = new ArrayList<>(jobs);
+        sorted.sort(new Comp());
+
+        List<Integer> expectedPriorities = new ArrayList<>();
+        sorted.forEach(j -> expectedPriorities.add(j.getRealPriority()));
+        List<Integer> actualPriorities = new ArrayList<>();
+        queue.forEach(j -> actualPriorities.add(j.getRealPriority()));
+
+        assertThat(actualPriorities).containsExactlyElementsOf(expectedPriorities);
+    }
+
     private class Comp implements Comparator<ScheduledJob>
     {
 
@@ -174,6 +290,15 @@ public class TestScheduledJobQueue
         }
     }
 
+    private class WaitingJob extends DummyJob
+    {
+        WaitingJob(Priority priority, long waitingTime)
+        {
+            super(priority);
+            myLastSuccessfulRun -= waitingTime;
+        }
+    }
+
     private class StateJob extends DummyJob
     {
         private State state;
@@ -183,6 +308,12 @@ public class TestScheduledJobQueue
             this.state = state;
         }
 
+        StateJob(Priority priority, State state, UUID id)
+        {
+            super(priority, id);
+            this.state = state;
+        }
+
         @Override
         public State getState()
         {
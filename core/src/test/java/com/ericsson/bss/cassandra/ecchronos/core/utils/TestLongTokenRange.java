@@ -106,6 +106,47 @@ public class TestLongTokenRange
         assertThat(tokenRange.rangeSize()).isEqualTo(expectedRangeSize);
     }
 
+    @Test
+    public void testUnsignedRangeSizeFullRange()
+    {
+        LongTokenRange tokenRange = new LongTokenRange(Long.MIN_VALUE, Long.MIN_VALUE);
+
+        assertThat(tokenRange.unsignedRangeSize()).isZero();
+        assertThat(LongTokenRange.toBigInteger(tokenRange.unsignedRangeSize())).isEqualTo(FULL_RANGE);
+    }
+
+    @Test
+    public void testUnsignedRangeSizeWrapAround()
+    {
+        LongTokenRange tokenRange = new LongTokenRange(10, -10);
+        BigInteger expectedRangeSize = FULL_RANGE.subtract(BigInteger.valueOf(20));
+
+        assertThat(tokenRange.unsignedRangeSize()).isEqualTo(-20L);
+        assertThat(LongTokenRange.toBigInteger(tokenRange.unsignedRangeSize())).isEqualTo(expectedRangeSize);
+    }
+
+    @Test
+    public void testUnsignedRangeSizeLargerThanLong()
+    {
+        LongTokenRange tokenRange = new LongTokenRange(Long.MIN_VALUE, Long.MAX_VALUE);
+        BigInteger expectedRangeSize = FULL_RANGE.subtract(BigInteger.ONE);
+
+        assertThat(LongTokenRange.toBigInteger(tokenRange.unsignedRangeSize())).isEqualTo(expectedRangeSize);
+    }
+
+    @Test
+    public void testCompareRangeSize()
+    {
+        long fullRange = new LongTokenRange(0, 0).unsignedRangeSize();
+        long largeRange = new LongTokenRange(Long.MIN_VALUE, Long.MAX_VALUE).unsignedRangeSize();
+        long smallRange = new LongTokenRange(0, 10).unsignedRangeSize();
+
+        assertThat(LongTokenRange.compareRangeSize(fullRange, largeRange)).isPositive();
+        assertThat(LongTokenRange.compareRangeSize(largeRange, smallRange)).isPositive();
+        assertThat(LongTokenRange.compareRangeSize(smallRange, fullRange)).isNegative();
+        assertThat(LongTokenRange.compareRangeSize(fullRange, fullRange)).isZero();
+    }
+
     @Test
     public void testNotCovering()
     {
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2022 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+public class TestReplicaSetRegistry
+{
+    private final Node myNode1 = mock(Node.class);
+    private final Node myNode2 = mock(Node.class);
+
+    private final ReplicaSetRegistry myReplicaSetRegistry = new ReplicaSetRegistry();
+
+    @Test
+    public void testInternReturnsSharedInstance()
+    {
+        ImmutableSet<Node> replicas = myReplicaSetRegistry.intern(ImmutableSet.of(myNode1, myNode2));
+
+        assertThat(replicas).containsExactlyInAnyOrder(myNode1, myNode2);
+        assertThat(myReplicaSetRegistry.intern(Sets.newHashSet(myNode2, myNode1))).isSameAs(replicas);
+        assertThat(myReplicaSetRegistry.intern(ImmutableSet.of(myNode1, myNode2))).isSameAs(replicas);
+    }
+
+    @Test
+    public void testInternImmutableSetIsKept()
+    {
+        ImmutableSet<Node> replicas = ImmutableSet.of(myNode1);
+
+        assertThat(myReplicaSetRegistry.intern(replicas)).isSameAs(replicas);
+    }
+
+    @Test
+    public void testDifferentSetsAreNotShared()
+    {
+        ImmutableSet<Node> replicas1 = myReplicaSetRegistry.intern(ImmutableSet.of(myNode1));
+        ImmutableSet<Node> replicas2 = myReplicaSetRegistry.intern(ImmutableSet.of(myNode1, myNode2));
+        ImmutableSet<Node> replicas3 = myReplicaSetRegistry.intern(Collections.emptySet());
+
+        assertThat(replicas1).containsExactly(myNode1);
+        assertThat(replicas2).containsExactlyInAnyOrder(myNode1, myNode2);
+        assertThat(replicas3).isEmpty();
+        assertThat(myReplicaSetRegistry.intern(Sets.newHashSet(myNode2, myNode1))).isSameAs(replicas2);
+    }
+
+    @Test
+    public void testUnusedSetIsRemoved()
+    {
+        WeakReference<ImmutableSet<Node>> replicas = new WeakReference<>(
+                myReplicaSetRegistry.intern(Sets.newHashSet(myNode1, myNode2)));
+
+        await().atMost(10, TimeUnit.SECONDS).until(() ->
+        {
+            System.gc();
+            return replicas.get() == null;
+        });
+
+        assertThat(myReplicaSetRegistry.intern(Sets.newHashSet(myNode1, myNode2)))
+                .containsExactlyInAnyOrder(myNode1, myNode2);
+    }
+}